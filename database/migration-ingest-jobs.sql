@@ -0,0 +1,29 @@
+-- 异步摄入任务（已有库迁移）
+USE astroguide;
+
+CREATE TABLE IF NOT EXISTS `ingest_jobs` (
+  `id` VARCHAR(64) NOT NULL COMMENT '任务 id',
+  `source` VARCHAR(255) DEFAULT NULL COMMENT '来源显示名',
+  `source_named` TINYINT(1) NOT NULL DEFAULT 0 COMMENT '来源名是否由提交方指定（是才清理旧版本 chunk）',
+  `file_name` VARCHAR(255) DEFAULT NULL COMMENT '原始文件名',
+  `content_type` VARCHAR(128) DEFAULT NULL COMMENT 'Content-Type',
+  `language` VARCHAR(8) DEFAULT NULL COMMENT '正文语言 en|zh',
+  `level` VARCHAR(16) DEFAULT NULL COMMENT '难度档位',
+  `source_version` BIGINT NOT NULL DEFAULT 0 COMMENT '本次摄入的来源版本',
+  `spool_path` VARCHAR(512) NOT NULL COMMENT '上传文件暂存路径',
+  `status` VARCHAR(16) NOT NULL COMMENT 'queued|running|succeeded|failed',
+  `stage` VARCHAR(16) NOT NULL COMMENT 'queued|parsing|embedding|stored',
+  `chunks_total` INT DEFAULT NULL COMMENT 'chunk 总数',
+  `chunks_skipped` INT NOT NULL DEFAULT 0 COMMENT '已在库中而跳过的 chunk 数',
+  `chunks_deleted` INT NOT NULL DEFAULT 0 COMMENT '已从资料中删去而清理的旧 chunk 数',
+  `batches_total` INT DEFAULT NULL COMMENT '批次总数',
+  `batches_done` INT NOT NULL DEFAULT 0 COMMENT '已提交批次数',
+  `attempts` INT NOT NULL DEFAULT 0 COMMENT '已领取执行次数',
+  `owner` VARCHAR(64) DEFAULT NULL COMMENT '当前执行实例',
+  `error_message` TEXT DEFAULT NULL COMMENT '错误信息',
+  `created_at` DATETIME(3) NOT NULL COMMENT '创建时间',
+  `updated_at` DATETIME(3) NOT NULL COMMENT '最近进度/心跳时间',
+  `finished_at` DATETIME(3) DEFAULT NULL COMMENT '结束时间',
+  PRIMARY KEY (`id`),
+  KEY `idx_ingest_jobs_status_updated` (`status`, `updated_at`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='异步摄入任务';
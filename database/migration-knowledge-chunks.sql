@@ -0,0 +1,19 @@
+-- 知识库 chunk 目录（已有库迁移）
+USE astroguide;
+
+CREATE TABLE IF NOT EXISTS `knowledge_chunks` (
+  `id` VARCHAR(64) NOT NULL COMMENT 'chunk id（即 Qdrant 点位 UUID）',
+  `source` VARCHAR(255) NOT NULL COMMENT '来源显示名',
+  `chunk_index` INT DEFAULT NULL COMMENT '来源内序号',
+  `chunk_total` INT DEFAULT NULL COMMENT '来源 chunk 总数',
+  `parent_id` VARCHAR(64) DEFAULT NULL COMMENT '父窗口 id（父子分块时）',
+  `content_hash` CHAR(64) NOT NULL COMMENT '正文 SHA-256',
+  `source_version` BIGINT DEFAULT NULL COMMENT '来源版本（最近一次包含该 chunk 的摄入）',
+  `content` MEDIUMTEXT NOT NULL COMMENT 'chunk 正文',
+  `metadata_json` TEXT DEFAULT NULL COMMENT '其余 metadata（JSON）',
+  `created_at` DATETIME(3) NOT NULL COMMENT '创建时间',
+  PRIMARY KEY (`id`),
+  KEY `idx_knowledge_chunks_source_index` (`source`, `chunk_index`),
+  KEY `idx_knowledge_chunks_source_version` (`source`, `source_version`),
+  KEY `idx_knowledge_chunks_hash` (`content_hash`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='知识库 chunk 目录';
@@ -0,0 +1,6 @@
+-- 消息显式指定的难度/语言标记（已有库迁移）：检索只按用户显式指定的值缩小范围，未指定时保存的默认值仅用于作答
+USE astroguide;
+
+ALTER TABLE `messages`
+  ADD COLUMN `difficulty_explicit` TINYINT(1) DEFAULT NULL COMMENT '难度档位是否由客户端显式指定（检索只按显式值过滤）' AFTER `language`,
+  ADD COLUMN `language_explicit` TINYINT(1) DEFAULT NULL COMMENT '语言是否由客户端显式指定（检索只按显式值过滤）' AFTER `difficulty_explicit`;
@@ -10,6 +10,8 @@ SET FOREIGN_KEY_CHECKS = 0;
 -- ----------------------------
 -- 用户表
 -- ----------------------------
+DROP TABLE IF EXISTS `ingest_jobs`;
+DROP TABLE IF EXISTS `knowledge_chunks`;
 DROP TABLE IF EXISTS `request_usage`;
 DROP TABLE IF EXISTS `agent_checkpoints`;
 DROP TABLE IF EXISTS `agent_runs`;
@@ -55,6 +57,8 @@ CREATE TABLE `messages` (
   `content` LONGTEXT NOT NULL COMMENT '消息内容',
   `difficulty` VARCHAR(32) DEFAULT NULL COMMENT '难度档位：basic | intermediate | advanced',
   `language` VARCHAR(8) DEFAULT NULL COMMENT '语言：en | zh',
+  `difficulty_explicit` TINYINT(1) DEFAULT NULL COMMENT '难度档位是否由客户端显式指定（检索只按显式值过滤）',
+  `language_explicit` TINYINT(1) DEFAULT NULL COMMENT '语言是否由客户端显式指定（检索只按显式值过滤）',
   `status` VARCHAR(32) NOT NULL COMMENT '状态：queued | streaming | done | error | cancelled',
   `error_code` VARCHAR(64) DEFAULT NULL COMMENT '错误码（status=error 时）',
   `error_message` TEXT DEFAULT NULL COMMENT '错误信息',
@@ -154,6 +158,56 @@ CREATE TABLE `conversation_memory_summary` (
   CONSTRAINT `fk_memory_summary_conversation` FOREIGN KEY (`conversation_id`) REFERENCES `conversations` (`id`) ON DELETE CASCADE
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='会话级摘要记忆';
 
+-- ----------------------------
+-- 知识库 chunk 目录表（citation 展开、按来源枚举）
+-- ----------------------------
+CREATE TABLE `knowledge_chunks` (
+  `id` VARCHAR(64) NOT NULL COMMENT 'chunk id（即 Qdrant 点位 UUID）',
+  `source` VARCHAR(255) NOT NULL COMMENT '来源显示名',
+  `chunk_index` INT DEFAULT NULL COMMENT '来源内序号',
+  `chunk_total` INT DEFAULT NULL COMMENT '来源 chunk 总数',
+  `parent_id` VARCHAR(64) DEFAULT NULL COMMENT '父窗口 id（父子分块时）',
+  `content_hash` CHAR(64) NOT NULL COMMENT '正文 SHA-256',
+  `source_version` BIGINT DEFAULT NULL COMMENT '来源版本（最近一次包含该 chunk 的摄入）',
+  `content` MEDIUMTEXT NOT NULL COMMENT 'chunk 正文',
+  `metadata_json` TEXT DEFAULT NULL COMMENT '其余 metadata（JSON）',
+  `created_at` DATETIME(3) NOT NULL COMMENT '创建时间',
+  PRIMARY KEY (`id`),
+  KEY `idx_knowledge_chunks_source_index` (`source`, `chunk_index`),
+  KEY `idx_knowledge_chunks_source_version` (`source`, `source_version`),
+  KEY `idx_knowledge_chunks_hash` (`content_hash`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='知识库 chunk 目录';
+
+-- ----------------------------
+-- 异步摄入任务表（阶段进度、断点续传）
+-- ----------------------------
+CREATE TABLE `ingest_jobs` (
+  `id` VARCHAR(64) NOT NULL COMMENT '任务 id',
+  `source` VARCHAR(255) DEFAULT NULL COMMENT '来源显示名',
+  `source_named` TINYINT(1) NOT NULL DEFAULT 0 COMMENT '来源名是否由提交方指定（是才清理旧版本 chunk）',
+  `file_name` VARCHAR(255) DEFAULT NULL COMMENT '原始文件名',
+  `content_type` VARCHAR(128) DEFAULT NULL COMMENT 'Content-Type',
+  `language` VARCHAR(8) DEFAULT NULL COMMENT '正文语言 en|zh',
+  `level` VARCHAR(16) DEFAULT NULL COMMENT '难度档位',
+  `source_version` BIGINT NOT NULL DEFAULT 0 COMMENT '本次摄入的来源版本',
+  `spool_path` VARCHAR(512) NOT NULL COMMENT '上传文件暂存路径',
+  `status` VARCHAR(16) NOT NULL COMMENT 'queued|running|succeeded|failed',
+  `stage` VARCHAR(16) NOT NULL COMMENT 'queued|parsing|embedding|stored',
+  `chunks_total` INT DEFAULT NULL COMMENT 'chunk 总数',
+  `chunks_skipped` INT NOT NULL DEFAULT 0 COMMENT '已在库中而跳过的 chunk 数',
+  `chunks_deleted` INT NOT NULL DEFAULT 0 COMMENT '已从资料中删去而清理的旧 chunk 数',
+  `batches_total` INT DEFAULT NULL COMMENT '批次总数',
+  `batches_done` INT NOT NULL DEFAULT 0 COMMENT '已提交批次数',
+  `attempts` INT NOT NULL DEFAULT 0 COMMENT '已领取执行次数',
+  `owner` VARCHAR(64) DEFAULT NULL COMMENT '当前执行实例',
+  `error_message` TEXT DEFAULT NULL COMMENT '错误信息',
+  `created_at` DATETIME(3) NOT NULL COMMENT '创建时间',
+  `updated_at` DATETIME(3) NOT NULL COMMENT '最近进度/心跳时间',
+  `finished_at` DATETIME(3) DEFAULT NULL COMMENT '结束时间',
+  PRIMARY KEY (`id`),
+  KEY `idx_ingest_jobs_status_updated` (`status`, `updated_at`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci COMMENT='异步摄入任务';
+
 SET FOREIGN_KEY_CHECKS = 1;
 
 -- 若已有库未包含 estimated_cost_usd，可执行以下迁移（V0 可观测性与成本估算）：
@@ -21,6 +21,11 @@ public class TokenBudgetEstimator {
         return (int) Math.ceil(text.length() / CHARS_PER_TOKEN);
     }
 
+    /** token 预算折算为字符上限（与 {@link #estimateTokens(String)} 使用同一比率） */
+    public int charsForTokens(int tokens) {
+        return tokens <= 0 ? 0 : (int) (tokens * CHARS_PER_TOKEN);
+    }
+
     public int estimateTokens(List<Message> messages) {
         if (messages == null || messages.isEmpty()) {
             return 0;
@@ -0,0 +1,440 @@
+package com.imperium.astroguide.ai.embedding;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * embedding 微批调度：并发的检索与摄入 embedding 请求在 max-wait-ms 内（或凑满 max-batch-size 条文本）
+ * 合并为一次批量调用，结果按请求拆回各调用方。
+ * <p>
+ * 降低高并发下对 embedding 提供方的请求数（更不易触发 RPM 限流）与连接开销。单个请求文本数已达批上限时单独成批。
+ * <p>
+ * 优先级：请求分交互（检索，默认）与批量（摄入，经 {@link #inLane} 标记）两条队列，各自合批、互不混批；
+ * 有交互请求排队时不发出批量批次（已凑好的批量批次退回队首），发出前经 {@link EmbeddingThrottle} 占用配额与并发槽位，
+ * 大批量摄入不拖慢聊天检索。提供方返回 429 的批次重新排队（至多 rate-limit-retries 次），不直接报错给调用方。
+ * 关闭时（{@code enabled=false}）直接在调用线程上调用模型，不经排队与配额控制。
+ * <p>
+ * 调用方已放弃（返回的 future 已因超时或取消结束）的请求在合批与发出前丢弃，不再发往提供方；
+ * 已发出的批次无法中断，提供方调用会照常完成，其结果被丢弃。
+ * <p>
+ * 容器关闭时停止收集线程与批次线程池，仍在排队的请求以异常结束，之后的提交直接失败。
+ */
+@Component
+public class EmbeddingDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(EmbeddingDispatcher.class);
+
+    /** 请求优先级队列 */
+    public enum Lane {
+        /** 交互检索：优先发出，可用全部并发与配额 */
+        INTERACTIVE,
+        /** 批量摄入：仅在无交互请求排队时发出 */
+        BULK
+    }
+
+    private static final ThreadLocal<Lane> CURRENT_LANE = ThreadLocal.withInitial(() -> Lane.INTERACTIVE);
+
+    @Nullable
+    private final EmbeddingModel delegate;
+    private final EmbeddingThrottle throttle;
+    private final boolean enabled;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    /** 排队、批次完成或配额变化时唤醒收集线程 */
+    private final Condition changed = lock.newCondition();
+    private final Map<Lane, Deque<Pending>> queues = new EnumMap<>(Lane.class);
+    private final ExecutorService workers;
+    @Nullable
+    private final Thread collector;
+    private volatile boolean closed;
+    private final DistributionSummary batchSize;
+    private final DistributionSummary requestsPerBatch;
+    private final Map<Lane, Timer> queueWait = new EnumMap<>(Lane.class);
+
+    public EmbeddingDispatcher(@Nullable EmbeddingModel delegate,
+            MeterRegistry meterRegistry,
+            EmbeddingThrottle throttle,
+            @Value("${app.embedding.batching.enabled:true}") boolean enabled,
+            @Value("${app.embedding.batching.max-batch-size:32}") int maxBatchSize,
+            @Value("${app.embedding.batching.max-wait-ms:5}") long maxWaitMs,
+            @Value("${app.embedding.batching.max-in-flight:4}") int maxInFlight) {
+        this.delegate = delegate;
+        this.throttle = throttle;
+        this.enabled = enabled && delegate != null;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxWaitMs));
+        this.batchSize = DistributionSummary.builder("astroguide.embedding.batch.size")
+                .description("texts per embedding call").register(meterRegistry);
+        this.requestsPerBatch = DistributionSummary.builder("astroguide.embedding.batch.requests")
+                .description("caller requests merged into one embedding call").register(meterRegistry);
+        for (Lane lane : Lane.values()) {
+            queues.put(lane, new ArrayDeque<>());
+            queueWait.put(lane, Timer.builder("astroguide.embedding.queue.wait")
+                    .description("time a request waited before its batch was sent")
+                    .tag("lane", lane.name().toLowerCase(Locale.ROOT))
+                    .register(meterRegistry));
+        }
+        AtomicInteger seq = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(Math.max(1, maxInFlight), r -> {
+            Thread t = new Thread(r, "embedding-batch-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        if (this.enabled) {
+            this.collector = new Thread(this::collectLoop, "embedding-dispatcher");
+            this.collector.setDaemon(true);
+            this.collector.start();
+        } else {
+            this.collector = null;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        closed = true;
+        if (collector != null) {
+            collector.interrupt();
+        }
+        workers.shutdownNow();
+        IllegalStateException e = new IllegalStateException("Embedding dispatcher shut down");
+        lock.lock();
+        try {
+            queues.values().forEach(queue -> {
+                queue.forEach(p -> p.future().completeExceptionally(e));
+                queue.clear();
+            });
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** 是否有可用的 embedding 模型 */
+    public boolean available() {
+        return delegate != null;
+    }
+
+    /**
+     * @throws IllegalStateException 未配置 embedding 模型
+     */
+    public int dimensions() {
+        if (delegate == null) {
+            throw new IllegalStateException("No embedding model configured");
+        }
+        return delegate.dimensions();
+    }
+
+    /**
+     * 在当前线程上以 lane 执行 action：期间经 {@link #submit(List)}、{@link #embed} 或 {@link #asEmbeddingModel}
+     * 发起的请求归入该队列（供 VectorStore.add 等无法传参的调用路径使用）。
+     */
+    public static <T> T inLane(Lane lane, Callable<T> action) throws Exception {
+        Lane previous = CURRENT_LANE.get();
+        CURRENT_LANE.set(lane);
+        try {
+            return action.call();
+        } finally {
+            CURRENT_LANE.set(previous);
+        }
+    }
+
+    /**
+     * 按当前线程的队列（默认交互）提交。
+     *
+     * @return 与 texts 一一对应的向量
+     */
+    public CompletableFuture<List<float[]>> submit(List<String> texts) {
+        return submit(texts, CURRENT_LANE.get());
+    }
+
+    /**
+     * @return 与 texts 一一对应的向量
+     */
+    public CompletableFuture<List<float[]>> submit(List<String> texts, Lane lane) {
+        if (delegate == null) {
+            return CompletableFuture.failedFuture(new IllegalStateException("No embedding model configured"));
+        }
+        if (texts.isEmpty()) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+        if (!enabled) {
+            try {
+                return CompletableFuture.completedFuture(delegate.embed(texts));
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        int tokens = 0;
+        for (String text : texts) {
+            tokens += EmbeddingThrottle.estimateTokens(text);
+        }
+        Pending pending = new Pending(List.copyOf(texts), new CompletableFuture<>(), System.nanoTime(), tokens, 0);
+        lock.lock();
+        try {
+            if (closed) {
+                return CompletableFuture.failedFuture(new IllegalStateException("Embedding dispatcher shut down"));
+            }
+            queues.get(lane).addLast(pending);
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        return pending.future();
+    }
+
+    /** 阻塞版本 */
+    public List<float[]> embed(List<String> texts) {
+        try {
+            return submit(texts).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException re ? re : e;
+        }
+    }
+
+    /** 适配为 EmbeddingModel，供 VectorStore 等只接受 EmbeddingModel 的组件复用同一调度 */
+    public EmbeddingModel asEmbeddingModel() {
+        return new EmbeddingModel() {
+            @Override
+            public EmbeddingResponse call(EmbeddingRequest request) {
+                List<float[]> vectors = embed(request.getInstructions());
+                List<Embedding> embeddings = new ArrayList<>(vectors.size());
+                for (int i = 0; i < vectors.size(); i++) {
+                    embeddings.add(new Embedding(vectors.get(i), i));
+                }
+                return new EmbeddingResponse(embeddings);
+            }
+
+            @Override
+            public float[] embed(Document document) {
+                return embed(document.getText());
+            }
+
+            @Override
+            public List<float[]> embed(List<String> texts) {
+                return EmbeddingDispatcher.this.embed(texts);
+            }
+
+            @Override
+            public int dimensions() {
+                return EmbeddingDispatcher.this.dimensions();
+            }
+        };
+    }
+
+    private void collectLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Batch batch = null;
+            try {
+                batch = nextBatch();
+                if (!awaitPermit(batch)) {
+                    requeue(batch.lane(), batch.requests());
+                    continue;
+                }
+                Batch ready = batch;
+                workers.execute(() -> dispatch(ready));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(batch, new IllegalStateException("Embedding dispatcher shut down"));
+            } catch (Exception e) {
+                log.warn("embedding dispatcher loop error: {}", e.getMessage());
+                fail(batch, e);
+            }
+        }
+    }
+
+    /** 取交互队列（为空时取批量队列）队首请求，在其 max-wait 内从同一队列补足到批上限 */
+    private Batch nextBatch() throws InterruptedException {
+        List<Pending> requests = new ArrayList<>();
+        lock.lock();
+        try {
+            Deque<Pending> interactive = queues.get(Lane.INTERACTIVE);
+            queues.values().forEach(q -> q.removeIf(p -> p.future().isDone()));
+            while (interactive.isEmpty() && queues.get(Lane.BULK).isEmpty()) {
+                changed.await();
+            }
+            Lane lane = interactive.isEmpty() ? Lane.BULK : Lane.INTERACTIVE;
+            Deque<Pending> queue = queues.get(lane);
+            Pending first = queue.pollFirst();
+            requests.add(first);
+            int texts = first.texts().size();
+            int tokens = first.tokens();
+            long deadline = first.enqueuedNanos() + maxWaitNanos;
+            while (texts < maxBatchSize) {
+                if (lane == Lane.BULK && !interactive.isEmpty()) {
+                    break;
+                }
+                Pending next = queue.peekFirst();
+                if (next == null) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    changed.awaitNanos(remaining);
+                    continue;
+                }
+                if (next.future().isDone()) {
+                    queue.pollFirst();
+                    continue;
+                }
+                if (texts + next.texts().size() > maxBatchSize) {
+                    break;
+                }
+                requests.add(queue.pollFirst());
+                texts += next.texts().size();
+                tokens += next.tokens();
+            }
+            return new Batch(lane, requests, tokens);
+        } catch (InterruptedException e) {
+            // 已取出但未成批的请求不在队列中，关闭时需在此结束
+            IllegalStateException closedError = new IllegalStateException("Embedding dispatcher shut down");
+            requests.forEach(p -> p.future().completeExceptionally(closedError));
+            throw e;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** 等到配额与并发槽位可用；批量批次等待期间出现交互请求则放弃（返回 false，由调用方退回队首） */
+    private boolean awaitPermit(Batch batch) throws InterruptedException {
+        lock.lock();
+        try {
+            while (true) {
+                if (batch.lane() == Lane.BULK && !queues.get(Lane.INTERACTIVE).isEmpty()) {
+                    return false;
+                }
+                long wait = throttle.tryAcquire(batch.lane(), batch.tokens());
+                if (wait == 0) {
+                    return true;
+                }
+                if (wait == Long.MAX_VALUE) {
+                    changed.await();
+                } else {
+                    changed.awaitNanos(wait);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** 已取出但未能发出的批次：以异常结束其请求 */
+    private static void fail(@Nullable Batch batch, Exception e) {
+        if (batch != null) {
+            batch.requests().forEach(p -> p.future().completeExceptionally(e));
+        }
+    }
+
+    private void requeue(Lane lane, List<Pending> requests) {
+        lock.lock();
+        try {
+            Deque<Pending> queue = queues.get(lane);
+            for (int i = requests.size() - 1; i >= 0; i--) {
+                queue.addFirst(requests.get(i));
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void dispatch(Batch taken) {
+        List<Pending> live = taken.requests().stream().filter(p -> !p.future().isDone()).toList();
+        if (live.isEmpty()) {
+            throttle.release(0, EmbeddingThrottle.Outcome.FAILED);
+            // 空的退回仅用于唤醒等待槽位的收集线程
+            requeue(taken.lane(), List.of());
+            return;
+        }
+        Batch batch = new Batch(taken.lane(), live, taken.tokens());
+        long now = System.nanoTime();
+        List<String> texts = new ArrayList<>();
+        for (Pending p : batch.requests()) {
+            queueWait.get(batch.lane()).record(now - p.enqueuedNanos(), TimeUnit.NANOSECONDS);
+            texts.addAll(p.texts());
+        }
+        batchSize.record(texts.size());
+        requestsPerBatch.record(batch.requests().size());
+        EmbeddingThrottle.Outcome outcome = EmbeddingThrottle.Outcome.FAILED;
+        List<Pending> retry = new ArrayList<>();
+        try {
+            List<float[]> vectors = delegate.embed(texts);
+            if (vectors.size() != texts.size()) {
+                IllegalStateException e = new IllegalStateException(
+                        "Embedding model returned " + vectors.size() + " vectors for " + texts.size() + " texts");
+                batch.requests().forEach(p -> p.future().completeExceptionally(e));
+                return;
+            }
+            outcome = EmbeddingThrottle.Outcome.SUCCESS;
+            int offset = 0;
+            for (Pending p : batch.requests()) {
+                p.future().complete(List.copyOf(vectors.subList(offset, offset + p.texts().size())));
+                offset += p.texts().size();
+            }
+        } catch (Exception e) {
+            if (!EmbeddingThrottle.isRateLimited(e)) {
+                batch.requests().forEach(p -> p.future().completeExceptionally(e));
+                return;
+            }
+            outcome = EmbeddingThrottle.Outcome.RATE_LIMITED;
+            for (Pending p : batch.requests()) {
+                if (p.future().isDone()) {
+                    continue;
+                }
+                if (p.attempts() < throttle.rateLimitRetries()) {
+                    retry.add(p.retried());
+                } else {
+                    p.future().completeExceptionally(e);
+                }
+            }
+            log.warn("Embedding provider rate limited a {} batch of {} texts; requeued {} of {} requests",
+                    batch.lane(), texts.size(), retry.size(), batch.requests().size());
+        } finally {
+            throttle.release(System.nanoTime() - now, outcome);
+            requeue(batch.lane(), retry);
+        }
+    }
+
+    private record Batch(Lane lane, List<Pending> requests, int tokens) {
+    }
+
+    /**
+     * @param tokens   粗估 token 数（配额计量用）
+     * @param attempts 因限流重新排队的次数
+     */
+    private record Pending(List<String> texts, CompletableFuture<List<float[]>> future, long enqueuedNanos, int tokens,
+            int attempts) {
+
+        Pending retried() {
+            return new Pending(texts, future, enqueuedNanos, tokens, attempts + 1);
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.imperium.astroguide.ai.embedding;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientResponseException;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * embedding 提供方配额与并发控制，由 {@link EmbeddingDispatcher} 在发出每个批次前调用。
+ * <p>
+ * 配额：每分钟请求数与 token 数各一个令牌桶（0 表示不限），桶满即允许突发；token 数按正文粗估（见 {@link #estimateTokens}）。
+ * 每个桶按 bulk-reserve 比例分出交互预留部分：批量摄入（{@link EmbeddingDispatcher.Lane#BULK}）只从共享部分取用，
+ * 超大批次透支的也只是共享部分；交互检索先取共享部分，不足时动用预留部分，因此批量再大也不会耗尽交互配额。
+ * 批量最多占用并发上限减一个槽位；上限降到 1 时批量仍可占用唯一槽位（否则批量会一直等待），交互检索最多等一个批次。
+ * <p>
+ * 自适应并发（AIMD）：提供方返回 429 时并发上限减半、清空令牌桶并暂停 rate-limit-cooldown-ms；
+ * 单批耗时超过 latency-target-ms（0 不检查）时上限减一；连续成功达当前上限次数后加一，不超过 max-in-flight。
+ */
+@Component
+public class EmbeddingThrottle {
+
+    /** 一个批次的结果，用于调整并发上限 */
+    public enum Outcome {
+        SUCCESS, RATE_LIMITED, FAILED
+    }
+
+    private final int maxConcurrency;
+    private final double bulkReserve;
+    private final long latencyTargetNanos;
+    private final long cooldownNanos;
+    private final int rateLimitRetries;
+    private final LongSupplier clock;
+    private final Quota requests;
+    private final Quota tokens;
+    private final MeterRegistry meterRegistry;
+    private final Counter rateLimited;
+    private int limit;
+    private int inFlight;
+    private int successes;
+    private long cooldownUntil;
+
+    @Autowired
+    public EmbeddingThrottle(MeterRegistry meterRegistry,
+            @Value("${app.embedding.batching.max-in-flight:4}") int maxInFlight,
+            @Value("${app.embedding.scheduler.requests-per-minute:0}") int requestsPerMinute,
+            @Value("${app.embedding.scheduler.tokens-per-minute:0}") int tokensPerMinute,
+            @Value("${app.embedding.scheduler.bulk-reserve:0.2}") double bulkReserve,
+            @Value("${app.embedding.scheduler.latency-target-ms:0}") long latencyTargetMs,
+            @Value("${app.embedding.scheduler.rate-limit-cooldown-ms:2000}") long cooldownMs,
+            @Value("${app.embedding.scheduler.rate-limit-retries:3}") int rateLimitRetries) {
+        this(meterRegistry, maxInFlight, requestsPerMinute, tokensPerMinute, bulkReserve, latencyTargetMs, cooldownMs,
+                rateLimitRetries, System::nanoTime);
+    }
+
+    EmbeddingThrottle(MeterRegistry meterRegistry, int maxInFlight, int requestsPerMinute, int tokensPerMinute,
+            double bulkReserve, long latencyTargetMs, long cooldownMs, int rateLimitRetries, LongSupplier clock) {
+        this.maxConcurrency = Math.max(1, maxInFlight);
+        this.bulkReserve = Math.min(0.9, Math.max(0, bulkReserve));
+        this.latencyTargetNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, latencyTargetMs));
+        this.cooldownNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, cooldownMs));
+        this.rateLimitRetries = Math.max(0, rateLimitRetries);
+        this.clock = clock;
+        long now = clock.getAsLong();
+        this.requests = requestsPerMinute > 0 ? new Quota(requestsPerMinute, this.bulkReserve, now) : null;
+        this.tokens = tokensPerMinute > 0 ? new Quota(tokensPerMinute, this.bulkReserve, now) : null;
+        this.limit = maxConcurrency;
+        this.cooldownUntil = now;
+        this.meterRegistry = meterRegistry;
+        this.rateLimited = Counter.builder("astroguide.embedding.rate_limited")
+                .description("embedding calls rejected by the provider with 429").register(meterRegistry);
+    }
+
+    @PostConstruct
+    void registerGauge() {
+        Gauge.builder("astroguide.embedding.concurrency.limit", this, EmbeddingThrottle::limit)
+                .description("adaptive embedding concurrency limit").register(meterRegistry);
+    }
+
+    /** 被限流的批次最多重新排队的次数 */
+    public int rateLimitRetries() {
+        return rateLimitRetries;
+    }
+
+    public synchronized int limit() {
+        return limit;
+    }
+
+    /**
+     * 为一个批次占用并发槽位与配额。
+     *
+     * @return 0 表示已占用（完成后须 {@link #release}）；{@link Long#MAX_VALUE} 表示需等待在途批次完成；
+     * 其余为配额恢复前的建议等待纳秒数
+     */
+    public synchronized long tryAcquire(EmbeddingDispatcher.Lane lane, int tokenCount) {
+        long now = clock.getAsLong();
+        if (now < cooldownUntil) {
+            return cooldownUntil - now;
+        }
+        boolean bulk = lane == EmbeddingDispatcher.Lane.BULK;
+        int slots = bulk ? Math.max(1, limit - 1) : limit;
+        if (inFlight >= slots) {
+            return Long.MAX_VALUE;
+        }
+        long wait = Math.max(requests != null ? requests.nanosUntil(1, bulk, now) : 0,
+                tokens != null ? tokens.nanosUntil(tokenCount, bulk, now) : 0);
+        if (wait > 0) {
+            return wait;
+        }
+        if (requests != null) {
+            requests.take(1, bulk);
+        }
+        if (tokens != null) {
+            tokens.take(tokenCount, bulk);
+        }
+        inFlight++;
+        return 0;
+    }
+
+    public synchronized void release(long latencyNanos, Outcome outcome) {
+        inFlight = Math.max(0, inFlight - 1);
+        switch (outcome) {
+            case RATE_LIMITED -> {
+                rateLimited.increment();
+                limit = Math.max(1, limit / 2);
+                successes = 0;
+                cooldownUntil = clock.getAsLong() + cooldownNanos;
+                if (requests != null) {
+                    requests.drain();
+                }
+                if (tokens != null) {
+                    tokens.drain();
+                }
+            }
+            case SUCCESS -> {
+                if (latencyTargetNanos > 0 && latencyNanos > latencyTargetNanos) {
+                    limit = Math.max(1, limit - 1);
+                    successes = 0;
+                } else if (++successes >= limit) {
+                    limit = Math.min(maxConcurrency, limit + 1);
+                    successes = 0;
+                }
+            }
+            case FAILED -> {
+            }
+        }
+    }
+
+    /**
+     * 是否为提供方限流（HTTP 429），沿异常链按状态码判断：HTTP 客户端异常取响应状态；
+     * Spring AI 的 {@link NonTransientAiException} / {@link TransientAiException} 不带状态字段，
+     * 其消息固定以 "状态码 - 响应体" 开头，只认该前缀。
+     */
+    public static boolean isRateLimited(Throwable error) {
+        int status = HttpStatus.TOO_MANY_REQUESTS.value();
+        for (Throwable t = error; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            if (t instanceof RestClientResponseException e && e.getStatusCode().value() == status) {
+                return true;
+            }
+            if ((t instanceof NonTransientAiException || t instanceof TransientAiException)
+                    && t.getMessage() != null && t.getMessage().startsWith(status + " - ")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** 粗估 token 数：汉字、假名、谚文每字约 1 token，其余字符约 4 个 1 token */
+    public static int estimateTokens(String text) {
+        if (text == null || text.isEmpty()) {
+            return 1;
+        }
+        int cjk = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); ) {
+            int cp = text.codePointAt(i);
+            Character.UnicodeScript script = Character.UnicodeScript.of(cp);
+            if (script == Character.UnicodeScript.HAN || script == Character.UnicodeScript.HIRAGANA
+                    || script == Character.UnicodeScript.KATAKANA || script == Character.UnicodeScript.HANGUL) {
+                cjk++;
+            } else {
+                other++;
+            }
+            i += Character.charCount(cp);
+        }
+        return Math.max(1, cjk + (other + 3) / 4);
+    }
+
+    /**
+     * 每分钟 perMinute 个令牌的桶，容量同为 perMinute，按 reserveFraction 分为共享部分与交互预留部分，
+     * 两部分按比例补充，一部分满后溢出到另一部分。可透支（大批次一次扣足，之后按速率补回）。
+     */
+    private static final class Quota {
+
+        private final double sharedCapacity;
+        private final double reservedCapacity;
+        private final double reserveFraction;
+        private final double perNano;
+        private double shared;
+        private double reserved;
+        private long last;
+
+        Quota(int perMinute, double reserveFraction, long now) {
+            this.reserveFraction = reserveFraction;
+            this.sharedCapacity = perMinute * (1 - reserveFraction);
+            this.reservedCapacity = perMinute * reserveFraction;
+            this.perNano = perMinute / (double) TimeUnit.MINUTES.toNanos(1);
+            this.shared = sharedCapacity;
+            this.reserved = reservedCapacity;
+            this.last = now;
+        }
+
+        /**
+         * 可用余量达到 amount 所需的等待纳秒：批量只看共享部分，交互看共享部分的正余量与预留部分之和。
+         * 需要量不超过对应容量，超大批次在桶满时放行。
+         */
+        long nanosUntil(double amount, boolean bulk, long now) {
+            refill(now);
+            if (bulk) {
+                double need = Math.min(sharedCapacity, amount);
+                return shared >= need ? 0 : (long) Math.ceil((need - shared) / (perNano * (1 - reserveFraction)));
+            }
+            double need = Math.min(sharedCapacity + reservedCapacity, amount);
+            // 共享部分被批量透支时不拖累交互，只计其正余量
+            double level = Math.max(0, shared) + reserved;
+            return level >= need ? 0 : (long) Math.ceil((need - level) / perNano);
+        }
+
+        /** 批量只扣共享部分；交互先扣共享部分的正余量，不足部分记到预留部分 */
+        void take(double amount, boolean bulk) {
+            double fromShared = bulk ? amount : Math.min(amount, Math.max(0, shared));
+            shared -= fromShared;
+            reserved -= amount - fromShared;
+        }
+
+        void drain() {
+            shared = Math.min(shared, 0);
+            reserved = Math.min(reserved, 0);
+        }
+
+        private void refill(long now) {
+            double added = (now - last) * perNano;
+            last = now;
+            shared += added * (1 - reserveFraction);
+            reserved += added * reserveFraction;
+            if (shared > sharedCapacity) {
+                reserved += shared - sharedCapacity;
+                shared = sharedCapacity;
+            }
+            if (reserved > reservedCapacity) {
+                shared = Math.min(sharedCapacity, shared + reserved - reservedCapacity);
+                reserved = reservedCapacity;
+            }
+        }
+    }
+}
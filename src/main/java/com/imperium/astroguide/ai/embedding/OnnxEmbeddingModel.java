@@ -0,0 +1,170 @@
+package com.imperium.astroguide.ai.embedding;
+
+import ai.onnxruntime.OrtException;
+import com.imperium.astroguide.infra.onnx.OnnxTextModel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 本地 CPU embedding：进程内运行 ONNX 句向量模型，省去每次检索到第三方 API 的网络往返。
+ * <p>
+ * 输入按 batch-size 切批，各批在按 CPU 核数定长的线程池上并行推理；模型输出为 token 级隐藏状态时做
+ * attention-mask 加权平均池化，最后 L2 归一化（与 Qdrant Cosine 距离配合）。
+ * <p>
+ * 向量维度在首次调用 {@link #dimensions()} 时以一次探测推理得出，构造本身不做推理。
+ */
+public class OnnxEmbeddingModel implements EmbeddingModel, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(OnnxEmbeddingModel.class);
+
+    private final OnnxTextModel model;
+    private final int batchSize;
+    private final ExecutorService pool;
+    private final int threads;
+    private volatile int dimensions;
+
+    public OnnxEmbeddingModel(OnnxTextModel model, int batchSize, int threads) {
+        this.model = model;
+        this.batchSize = Math.max(1, batchSize);
+        this.threads = Math.max(1, threads);
+        AtomicInteger seq = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(this.threads, r -> {
+            Thread t = new Thread(r, "onnx-embed-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        List<float[]> vectors = embed(request.getInstructions());
+        List<Embedding> embeddings = new ArrayList<>(vectors.size());
+        for (int i = 0; i < vectors.size(); i++) {
+            embeddings.add(new Embedding(vectors.get(i), i));
+        }
+        return new EmbeddingResponse(embeddings);
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return embed(document.getText());
+    }
+
+    @Override
+    public List<float[]> embed(List<String> texts) {
+        if (texts.isEmpty()) {
+            return List.of();
+        }
+        if (texts.size() <= batchSize) {
+            return embedBatch(texts);
+        }
+        List<CompletableFuture<List<float[]>>> batches = new ArrayList<>();
+        for (int from = 0; from < texts.size(); from += batchSize) {
+            List<String> slice = texts.subList(from, Math.min(texts.size(), from + batchSize));
+            batches.add(CompletableFuture.supplyAsync(() -> embedBatch(slice), pool));
+        }
+        List<float[]> out = new ArrayList<>(texts.size());
+        try {
+            batches.forEach(f -> out.addAll(f.join()));
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException re ? re : e;
+        }
+        return out;
+    }
+
+    @Override
+    public int dimensions() {
+        int dim = dimensions;
+        if (dim == 0) {
+            synchronized (this) {
+                dim = dimensions;
+                if (dim == 0) {
+                    dim = embedBatch(List.of("dimension probe")).getFirst().length;
+                    dimensions = dim;
+                    log.info("Local ONNX embedding model ready: dim={} batchSize={} threads={}", dim, batchSize, threads);
+                }
+            }
+        }
+        return dim;
+    }
+
+    private List<float[]> embedBatch(List<String> texts) {
+        try {
+            return pool(model.run(texts));
+        } catch (Exception e) {
+            throw new IllegalStateException("Local embedding inference failed: " + e.getMessage(), e);
+        }
+    }
+
+    /** [batch, seq, hidden] 做 mask 平均池化；[batch, hidden] 直接取用；均 L2 归一化 */
+    static List<float[]> pool(OnnxTextModel.Output output) {
+        long[] shape = output.shape();
+        int batch = (int) shape[0];
+        List<float[]> out = new ArrayList<>(batch);
+        if (shape.length == 2) {
+            int hidden = (int) shape[1];
+            for (int b = 0; b < batch; b++) {
+                float[] v = new float[hidden];
+                System.arraycopy(output.data(), b * hidden, v, 0, hidden);
+                out.add(normalize(v));
+            }
+            return out;
+        }
+        int seq = (int) shape[1];
+        int hidden = (int) shape[2];
+        for (int b = 0; b < batch; b++) {
+            float[] v = new float[hidden];
+            int tokens = 0;
+            for (int t = 0; t < seq; t++) {
+                if (output.attentionMask()[b * output.seqLength() + t] == 0) {
+                    continue;
+                }
+                tokens++;
+                int base = (b * seq + t) * hidden;
+                for (int h = 0; h < hidden; h++) {
+                    v[h] += output.data()[base + h];
+                }
+            }
+            if (tokens > 0) {
+                for (int h = 0; h < hidden; h++) {
+                    v[h] /= tokens;
+                }
+            }
+            out.add(normalize(v));
+        }
+        return out;
+    }
+
+    private static float[] normalize(float[] v) {
+        double norm = 0;
+        for (float x : v) {
+            norm += (double) x * x;
+        }
+        if (norm > 0) {
+            float inv = (float) (1.0 / Math.sqrt(norm));
+            for (int i = 0; i < v.length; i++) {
+                v[i] *= inv;
+            }
+        }
+        return v;
+    }
+
+    @Override
+    public void close() throws OrtException {
+        pool.shutdownNow();
+        model.close();
+    }
+}
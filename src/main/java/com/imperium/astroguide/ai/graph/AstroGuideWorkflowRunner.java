@@ -42,7 +42,9 @@ import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
 /**
- * Phase 3 Workflow：route → retrieve → [plan] → prepare → react → review → finalize。
+ * Phase 3 Workflow：route → [plan] → retrieve → prepare → react → review → finalize。
+ * <p>
+ * COMPLEX 路由先出计划，再以计划要点作为子查询与原问题一起批量召回。
  */
 @Service
 public class AstroGuideWorkflowRunner {
@@ -100,9 +102,6 @@ public class AstroGuideWorkflowRunner {
                 return decision;
             });
 
-            RagRetrievalResult rag = runPhase(metrics, eventConsumer, NODE_RETRIEVE,
-                    () -> ragRetrievalService.retrieve(request.userText()));
-
             String executionPlan = "";
             if (route.mode() == RouteMode.COMPLEX) {
                 executionPlan = runPhase(metrics, eventConsumer, NODE_PLAN,
@@ -110,6 +109,10 @@ public class AstroGuideWorkflowRunner {
             }
             final String planForContext = executionPlan;
 
+            RagRetrievalResult rag = runPhase(metrics, eventConsumer, NODE_RETRIEVE,
+                    () -> ragRetrievalService.retrieve(request.userText(), plannerService.subQueries(planForContext),
+                            request.retrievalFilter(), route.mode().name()));
+
             String summary = request.conversationSummary() != null ? request.conversationSummary() : "";
             PreparedContext prepared = runPhase(metrics, eventConsumer, NODE_PREPARE, () ->
                     contextAssemblyService.prepare(
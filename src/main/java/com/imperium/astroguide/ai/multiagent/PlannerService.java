@@ -6,6 +6,10 @@ import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
 /**
  * 复杂问题执行计划：为 ReAct Agent 提供结构化步骤，不直接面向用户输出。
  */
@@ -14,6 +18,9 @@ public class PlannerService {
 
     private static final Logger log = LoggerFactory.getLogger(PlannerService.class);
 
+    /** 计划要点前缀：-、*、•、1. 或 1) */
+    private static final Pattern BULLET_PREFIX = Pattern.compile("^(?:[-*•]|\\d+[.)])\\s*");
+
     private static final String PLANNER_PROMPT = """
             You are an astronomy tutoring planner. Given the user question, produce a concise execution plan \
             (3-5 bullet points) for an assistant that may use tools and reference materials.
@@ -47,4 +54,21 @@ public class PlannerService {
             return "";
         }
     }
+
+    /**
+     * 将计划要点拆为检索子查询（去掉列表符号与 Markdown 强调），供批量召回使用。
+     */
+    public List<String> subQueries(String plan) {
+        if (plan == null || plan.isBlank()) {
+            return List.of();
+        }
+        List<String> queries = new ArrayList<>();
+        for (String line : plan.split("\\R")) {
+            String query = BULLET_PREFIX.matcher(line.trim()).replaceFirst("").replace("**", "").trim();
+            if (query.length() >= 4) {
+                queries.add(query);
+            }
+        }
+        return queries;
+    }
 }
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.imperium.astroguide.ai.memory.MemoryUpdateQueue;
 import com.imperium.astroguide.ai.memory.SessionMemoryService;
 import com.imperium.astroguide.ai.memory.SummaryMemoryService;
+import com.imperium.astroguide.ai.rag.RetrievalFilter;
 import com.imperium.astroguide.ai.runtime.AgentRunCancellationRegistry;
 import com.imperium.astroguide.ai.runtime.AgentRunRequest;
 import com.imperium.astroguide.ai.runtime.AgentRunResult;
@@ -140,8 +141,12 @@ public class ChatStreamOrchestrator {
             return Flux.just(sseError("invalid_argument", "Message is not a user message", resolvedRequestId));
         }
 
+        // 未显式指定时保存的是默认档位与语言，只用于作答；检索只按显式指定的值过滤
         String difficulty = userMessage.getDifficulty() != null ? userMessage.getDifficulty() : "intermediate";
         String language = userMessage.getLanguage() != null ? userMessage.getLanguage() : "en";
+        RetrievalFilter retrievalFilter = RetrievalFilter.of(
+                Boolean.TRUE.equals(userMessage.getLanguageExplicit()) ? userMessage.getLanguage() : null,
+                Boolean.TRUE.equals(userMessage.getDifficultyExplicit()) ? userMessage.getDifficulty() : null);
         String userQuestion = userMessage.getContent() != null ? userMessage.getContent() : "";
         int maxTokens = OutputLimitPolicy.getMaxCompletionTokens(difficulty);
         String systemPrompt = buildSystemPrompt(difficulty, language);
@@ -176,7 +181,8 @@ public class ChatStreamOrchestrator {
                 historyMessages,
                 maxTokens,
                 List.of(),
-                conversationSummary);
+                conversationSummary,
+                retrievalFilter);
 
         Flux<ServerSentEvent<String>> metaFlux = Flux.just(
                 ServerSentEvent.builder(toJson(Map.of(
@@ -224,10 +230,7 @@ public class ChatStreamOrchestrator {
                     donePayload.put("usage", usage);
                 }
                 if (!citations.isEmpty()) {
-                    donePayload.put("citations", citations.stream().map(c -> Map.of(
-                            "chunkId", c.getChunkId() != null ? c.getChunkId() : "",
-                            "source", c.getSource() != null ? c.getSource() : "",
-                            "excerpt", c.getExcerpt() != null ? c.getExcerpt() : "")).toList());
+                    donePayload.put("citations", citations.stream().map(ChatStreamOrchestrator::citationPayload).toList());
                 }
                 if (result != null && result.toolExecutions() != null && !result.toolExecutions().isEmpty()) {
                     donePayload.put("toolCalls", result.toolExecutions().size());
@@ -405,6 +408,25 @@ public class ChatStreamOrchestrator {
                 .record(latencyMs, TimeUnit.MILLISECONDS);
     }
 
+    private static Map<String, Object> citationPayload(CitationDto c) {
+        Map<String, Object> payload = new HashMap<>(Map.of(
+                "chunkId", c.getChunkId() != null ? c.getChunkId() : "",
+                "source", c.getSource() != null ? c.getSource() : "",
+                "excerpt", c.getExcerpt() != null ? c.getExcerpt() : ""));
+        if (c.getSpans() != null && !c.getSpans().isEmpty()) {
+            payload.put("spans", c.getSpans().stream()
+                    .map(span -> List.of(span.getStart(), span.getEnd()))
+                    .toList());
+            // 合并引用的区间分属不同小块，与 spans 一一对应给出所在 chunk id
+            if (c.getSpans().stream().anyMatch(span -> span.getChunkId() != null)) {
+                payload.put("spanChunkIds", c.getSpans().stream()
+                        .map(span -> span.getChunkId() != null ? span.getChunkId() : c.getChunkId())
+                        .toList());
+            }
+        }
+        return payload;
+    }
+
     private void incrementCounter(String metricName, String... tags) {
         meterRegistry.counter(metricName, tags).increment();
     }
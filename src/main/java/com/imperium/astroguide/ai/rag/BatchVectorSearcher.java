@@ -0,0 +1,251 @@
+package com.imperium.astroguide.ai.rag;
+
+import com.imperium.astroguide.ai.embedding.EmbeddingDispatcher;
+import com.imperium.astroguide.infra.qdrant.MatryoshkaLayout;
+import com.imperium.astroguide.infra.qdrant.QdrantClientPool;
+import com.imperium.astroguide.infra.qdrant.QdrantFilters;
+import com.imperium.astroguide.infra.qdrant.QdrantPayloads;
+import com.imperium.astroguide.infra.qdrant.QdrantQuantization;
+import com.imperium.astroguide.infra.resilience.CircuitBreaker;
+import com.imperium.astroguide.infra.resilience.CircuitBreakerRegistry;
+import com.imperium.astroguide.service.ChunkCatalogService;
+import io.qdrant.client.QueryFactory;
+import io.qdrant.client.WithPayloadSelectorFactory;
+import io.qdrant.client.grpc.Points;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 多查询一次往返检索：所有查询合并为一次 embedding 请求 + 一次 Qdrant searchBatch（单查询即批大小为 1）。
+ * <p>
+ * Qdrant 直连客户端不可用时（例如测试或替换了 VectorStore 实现），退化为在线程池上并发执行
+ * {@link VectorStore#similaritySearch}。
+ * <p>
+ * embedding 与向量检索分别受熔断器保护并带独立超时：依赖故障时快速失败，而不是等满客户端超时。
+ * 向量检索以 gRPC deadline 下发到服务端，并从 {@link QdrantClientPool} 轮询取连接，不占用调用线程等待。
+ * 集合启用量化时附带 oversampling/rescore 检索参数（见 {@link QdrantQuantization}）；
+ * 启用 {@link MatryoshkaLayout} 时改用 Query API：前缀向量 prefetch 候选，完整向量重排，仍为一次 queryBatch。
+ * <p>
+ * {@link RetrievalFilter} 以 payload 过滤下推到 Qdrant（退化路径多取候选后在内存中过滤）。
+ * <p>
+ * 正文由 chunk 目录持有时（payload 只存 id 与 metadata），结果在线程池上按 id 一次批量补全正文。
+ */
+@Component
+public class BatchVectorSearcher {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchVectorSearcher.class);
+    /** 退化路径在内存中过滤时的多取倍数 */
+    private static final int FALLBACK_FILTER_OVERFETCH = 4;
+
+    @Nullable
+    private final QdrantClientPool clientPool;
+    private final EmbeddingDispatcher embeddingDispatcher;
+    @Nullable
+    private final VectorStore vectorStore;
+    private final Executor ragExecutor;
+    private final CircuitBreaker embeddingBreaker;
+    private final CircuitBreaker searchBreaker;
+    private final QdrantQuantization quantization;
+    private final MatryoshkaLayout matryoshkaLayout;
+    @Nullable
+    private final ChunkCatalogService chunkCatalogService;
+    private final String collectionName;
+    private final long searchTimeoutMs;
+    private final long embeddingTimeoutMs;
+
+    public BatchVectorSearcher(@Nullable QdrantClientPool clientPool,
+            EmbeddingDispatcher embeddingDispatcher,
+            @Nullable VectorStore vectorStore,
+            @Qualifier("ragTaskExecutor") Executor ragExecutor,
+            CircuitBreakerRegistry circuitBreakerRegistry,
+            QdrantQuantization quantization,
+            MatryoshkaLayout matryoshkaLayout,
+            @Nullable ChunkCatalogService chunkCatalogService,
+            @Value("${spring.ai.vectorstore.qdrant.collection-name:astro_knowledge}") String collectionName,
+            @Value("${app.rag.search.timeout-ms:2000}") long searchTimeoutMs,
+            @Value("${app.rag.search.embedding-timeout-ms:2000}") long embeddingTimeoutMs) {
+        this.clientPool = clientPool;
+        this.embeddingDispatcher = embeddingDispatcher;
+        this.vectorStore = vectorStore;
+        this.ragExecutor = ragExecutor;
+        this.embeddingBreaker = circuitBreakerRegistry.breaker(CircuitBreakerRegistry.EMBEDDING);
+        this.searchBreaker = circuitBreakerRegistry.breaker(CircuitBreakerRegistry.VECTOR_SEARCH);
+        this.quantization = quantization;
+        this.matryoshkaLayout = matryoshkaLayout;
+        this.chunkCatalogService = chunkCatalogService;
+        this.collectionName = collectionName;
+        this.searchTimeoutMs = searchTimeoutMs;
+        this.embeddingTimeoutMs = embeddingTimeoutMs;
+    }
+
+    /**
+     * 阻塞版本，等待 {@link #searchAsync} 完成。
+     *
+     * @return 与 queries 一一对应的召回结果（各自按相似度降序）
+     * @throws com.imperium.astroguide.infra.resilience.CircuitOpenException 依赖已熔断
+     */
+    public List<List<Document>> search(List<String> queries, int topK) throws Exception {
+        return search(queries, topK, RetrievalFilter.NONE, null);
+    }
+
+    /**
+     * @param trace 可选，记录 embedding 与向量检索阶段耗时
+     */
+    public List<List<Document>> search(List<String> queries, int topK, RetrievalFilter filter,
+            @Nullable RetrievalTrace trace) throws Exception {
+        try {
+            return searchAsync(queries, topK, filter, trace).get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        }
+    }
+
+    /**
+     * 非阻塞检索：embedding 经 {@link EmbeddingDispatcher} 与其它并发请求合批，向量检索由 gRPC 回调完成，期间不占用线程。
+     */
+    public CompletableFuture<List<List<Document>>> searchAsync(List<String> queries, int topK, RetrievalFilter filter,
+            @Nullable RetrievalTrace trace) {
+        if (queries == null || queries.isEmpty()) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+        RetrievalFilter scope = filter != null ? filter : RetrievalFilter.NONE;
+        RetrievalTrace timings = trace != null ? trace : new RetrievalTrace();
+        CompletableFuture<List<List<Document>>> results;
+        if (clientPool != null && embeddingDispatcher.available()) {
+            results = searchNative(queries, topK, scope, timings);
+        } else if (vectorStore != null) {
+            results = searchConcurrently(queries, topK, scope, timings);
+        } else {
+            return CompletableFuture.completedFuture(List.of());
+        }
+        if (chunkCatalogService == null || !chunkCatalogService.ownsText()) {
+            return results;
+        }
+        return results.thenApplyAsync(lists -> lists.stream().map(chunkCatalogService::hydrate).toList(), ragExecutor);
+    }
+
+    private CompletableFuture<List<List<Document>>> searchNative(List<String> queries, int topK, RetrievalFilter filter,
+            RetrievalTrace trace) {
+        Optional<Points.Filter> payloadFilter = QdrantFilters.toFilter(filter);
+        long embedStart = System.nanoTime();
+        long[] searchStart = new long[1];
+        // 超时使 dispatcher 返回的 future 以 TimeoutException 结束：尚在排队的请求随之被丢弃，已发出的批次照常跑完
+        return embeddingBreaker.callAsync(() -> embeddingDispatcher.submit(queries)
+                        .orTimeout(embeddingTimeoutMs, TimeUnit.MILLISECONDS))
+                .whenComplete((v, e) -> {
+                    trace.addEmbed(System.nanoTime() - embedStart);
+                    if (e == null) {
+                        searchStart[0] = System.nanoTime();
+                    }
+                })
+                .thenCompose(vectors -> searchBreaker.callAsync(() -> QdrantClientPool.toCompletable(
+                        matryoshkaLayout.enabled()
+                                ? clientPool.next().queryBatchAsync(collectionName, toTwoStageQueries(vectors, topK, payloadFilter),
+                                        null, Duration.ofMillis(searchTimeoutMs))
+                                : clientPool.next().searchBatchAsync(collectionName, toSearches(vectors, topK, payloadFilter), null,
+                                        Duration.ofMillis(searchTimeoutMs)))))
+                .whenComplete((v, e) -> {
+                    if (searchStart[0] > 0) {
+                        trace.addSearch(System.nanoTime() - searchStart[0]);
+                    }
+                })
+                .thenApply(results -> {
+                    List<List<Document>> out = new ArrayList<>(results.size());
+                    for (Points.BatchResult result : results) {
+                        out.add(result.getResultList().stream().map(QdrantPayloads::toDocument).toList());
+                    }
+                    log.debug("batch vector search queries={} topK={}", queries.size(), topK);
+                    return out;
+                })
+                .exceptionallyCompose(e -> CompletableFuture.failedFuture(unwrap(e)));
+    }
+
+    private List<Points.SearchPoints> toSearches(List<float[]> vectors, int topK, Optional<Points.Filter> filter) {
+        List<Points.SearchPoints> searches = new ArrayList<>(vectors.size());
+        for (float[] vector : vectors) {
+            Points.SearchPoints.Builder builder = Points.SearchPoints.newBuilder()
+                    .setCollectionName(collectionName)
+                    .setLimit(topK)
+                    .setWithPayload(WithPayloadSelectorFactory.enable(true));
+            quantization.searchParams().ifPresent(builder::setParams);
+            filter.ifPresent(builder::setFilter);
+            for (float v : vector) {
+                builder.addVector(v);
+            }
+            searches.add(builder.build());
+        }
+        return searches;
+    }
+
+    /** 第一阶段：前缀向量 HNSW 召回候选；第二阶段：候选内按完整向量精确重排 */
+    private List<Points.QueryPoints> toTwoStageQueries(List<float[]> vectors, int topK, Optional<Points.Filter> filter) {
+        List<Points.QueryPoints> queries = new ArrayList<>(vectors.size());
+        for (float[] full : vectors) {
+            Points.PrefetchQuery.Builder prefetch = Points.PrefetchQuery.newBuilder()
+                    .setQuery(QueryFactory.nearest(MatryoshkaLayout.truncate(full, matryoshkaLayout.prefixDims(full.length))))
+                    .setUsing(MatryoshkaLayout.PREFIX_VECTOR)
+                    .setLimit(matryoshkaLayout.candidates(topK));
+            quantization.searchParams().ifPresent(prefetch::setParams);
+            filter.ifPresent(prefetch::setFilter);
+            queries.add(Points.QueryPoints.newBuilder()
+                    .setCollectionName(collectionName)
+                    .addPrefetch(prefetch)
+                    .setQuery(QueryFactory.nearest(full))
+                    .setUsing(MatryoshkaLayout.FULL_VECTOR)
+                    .setLimit(topK)
+                    .setWithPayload(WithPayloadSelectorFactory.enable(true))
+                    .build());
+        }
+        return queries;
+    }
+
+    /** VectorStore 内部完成 embedding，耗时整体计入检索阶段 */
+    private CompletableFuture<List<List<Document>>> searchConcurrently(List<String> queries, int topK,
+            RetrievalFilter filter, RetrievalTrace trace) {
+        int fetchK = filter.isEmpty() ? topK : topK * FALLBACK_FILTER_OVERFETCH;
+        long start = System.nanoTime();
+        return searchBreaker.callAsync(() -> {
+            List<CompletableFuture<List<Document>>> searches = queries.stream()
+                    .map(q -> CompletableFuture.supplyAsync(() -> vectorStore.similaritySearch(
+                            SearchRequest.builder().query(q).topK(fetchK).build()), ragExecutor))
+                    .toList();
+            // 超时后取消尚未开始的检索任务；已在执行的同步检索无法中断，结果被丢弃
+            return CompletableFuture.allOf(searches.toArray(CompletableFuture[]::new))
+                    .orTimeout(embeddingTimeoutMs + searchTimeoutMs, TimeUnit.MILLISECONDS)
+                    .whenComplete((v, e) -> {
+                        if (e != null) {
+                            searches.forEach(f -> f.cancel(false));
+                        }
+                    })
+                    .thenApply(v -> searches.stream()
+                            .map(CompletableFuture::join)
+                            .map(docs -> filter.isEmpty() ? docs : docs.stream()
+                                    .filter(doc -> filter.matches(doc.getMetadata()))
+                                    .limit(topK)
+                                    .toList())
+                            .toList());
+        }).whenComplete((v, e) -> trace.addSearch(System.nanoTime() - start))
+                .exceptionallyCompose(e -> CompletableFuture.failedFuture(unwrap(e)));
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+}
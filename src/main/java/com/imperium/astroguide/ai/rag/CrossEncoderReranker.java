@@ -0,0 +1,166 @@
+package com.imperium.astroguide.ai.rag;
+
+import com.imperium.astroguide.infra.onnx.OnnxTextModel;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.IntStream;
+
+/**
+ * 召回后的 cross-encoder 重排：对 (query, chunk) 句对批量打分，从较多候选（如 30）中保留最相关的少数（如 3），
+ * 以更少、更准的摘录减少提示词 token。
+ * <p>
+ * 重排有独立时间预算：超时或打分失败即旁路（返回空），调用方按原召回顺序截取，不阻塞回答。
+ * <p>
+ * 注意：超时后 cancel 不会中断正在进行的 ONNX 推理，该线程会一直跑完当前打分。为避免 CPU 超订，
+ * 同时在途的打分数限制为 maxConcurrent（超时的推理在真正结束前仍占名额），名额用尽或线程池拒绝提交时直接旁路；
+ * 单次推理的 intra-op 线程数应满足 maxConcurrent × intraOp ≤ CPU 核数（见 RerankConfig）。
+ */
+public class CrossEncoderReranker {
+
+    private static final Logger log = LoggerFactory.getLogger(CrossEncoderReranker.class);
+    private static final String METRIC = "astroguide.rag.rerank";
+
+    /** 句对打分：返回与 passages 一一对应的相关度（越大越相关） */
+    @FunctionalInterface
+    public interface PairScorer {
+        float[] score(String query, List<String> passages) throws Exception;
+    }
+
+    private final PairScorer scorer;
+    private final Executor executor;
+    private final MeterRegistry meterRegistry;
+    private final int candidates;
+    private final int keep;
+    private final long timeBudgetMs;
+    private final int batchSize;
+    private final Semaphore inFlight;
+
+    public CrossEncoderReranker(PairScorer scorer, Executor executor, MeterRegistry meterRegistry,
+            int candidates, int keep, long timeBudgetMs, int batchSize, int maxConcurrent) {
+        this.scorer = scorer;
+        this.executor = executor;
+        this.meterRegistry = meterRegistry;
+        this.candidates = Math.max(1, candidates);
+        this.keep = Math.max(1, keep);
+        this.timeBudgetMs = timeBudgetMs;
+        this.batchSize = Math.max(1, batchSize);
+        this.inFlight = new Semaphore(Math.max(1, maxConcurrent));
+    }
+
+    /** 送入重排的召回候选数 */
+    public int candidates() {
+        return candidates;
+    }
+
+    /** 重排后保留条数（旁路时也按此截取） */
+    public int keep() {
+        return keep;
+    }
+
+    /**
+     * @return 按相关度降序的前 keep 条；超出时间预算、并发名额用尽、线程池拒绝或失败时为空（旁路）
+     */
+    public Optional<List<Document>> rerank(String query, List<Document> docs) {
+        if (docs.size() <= 1) {
+            return Optional.of(docs);
+        }
+        long start = System.nanoTime();
+        if (!inFlight.tryAcquire()) {
+            record("busy", start);
+            log.debug("rerank bypassed: all scoring slots busy");
+            return Optional.empty();
+        }
+        CompletableFuture<float[]> scoring;
+        try {
+            scoring = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return scoreAll(query, docs);
+                } finally {
+                    inFlight.release();
+                }
+            }, executor);
+        } catch (RejectedExecutionException e) {
+            inFlight.release();
+            record("rejected", start);
+            log.debug("rerank bypassed: executor rejected scoring task");
+            return Optional.empty();
+        }
+        float[] scores;
+        try {
+            scores = scoring.get(timeBudgetMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            scoring.cancel(true);
+            record("bypassed", start);
+            log.debug("rerank bypassed: budget {}ms exhausted for {} candidates", timeBudgetMs, docs.size());
+            return Optional.empty();
+        } catch (Exception e) {
+            record("failed", start);
+            log.warn("rerank failed, keeping retrieval order: {}", e.getMessage());
+            return Optional.empty();
+        }
+        List<Document> ranked = IntStream.range(0, docs.size()).boxed()
+                .sorted(Comparator.comparingDouble((Integer i) -> scores[i]).reversed())
+                .limit(keep)
+                .map(docs::get)
+                .toList();
+        record("applied", start);
+        return Optional.of(ranked);
+    }
+
+    private float[] scoreAll(String query, List<Document> docs) {
+        float[] scores = new float[docs.size()];
+        try {
+            for (int from = 0; from < docs.size(); from += batchSize) {
+                int to = Math.min(docs.size(), from + batchSize);
+                List<String> passages = new ArrayList<>(to - from);
+                for (int i = from; i < to; i++) {
+                    passages.add(docs.get(i).getText());
+                }
+                float[] batch = scorer.score(query, passages);
+                System.arraycopy(batch, 0, scores, from, batch.length);
+            }
+        } catch (Exception e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+        return scores;
+    }
+
+    private void record(String outcome, long startNanos) {
+        meterRegistry.timer(METRIC, "outcome", outcome)
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * cross-encoder 输出转相关度：单 logit 直接取用；二分类取正类 logit。
+     */
+    static float[] relevance(OnnxTextModel.Output output) {
+        long[] shape = output.shape();
+        int batch = (int) shape[0];
+        int width = shape.length > 1 ? (int) shape[1] : 1;
+        float[] out = new float[batch];
+        for (int b = 0; b < batch; b++) {
+            out[b] = output.data()[b * width + (width - 1)];
+        }
+        return out;
+    }
+
+    /** 基于 ONNX cross-encoder 的打分器 */
+    public static PairScorer onnx(OnnxTextModel model) {
+        return (query, passages) -> relevance(model.runPairs(
+                Collections.nCopies(passages.size(), query), passages));
+    }
+}
@@ -0,0 +1,305 @@
+package com.imperium.astroguide.ai.rag;
+
+import com.imperium.astroguide.ai.context.ContextTrimPolicy;
+import com.imperium.astroguide.ai.context.TokenBudgetEstimator;
+import com.imperium.astroguide.model.dto.rag.ExcerptSpan;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 面向查询的抽取式摘录压缩：按与问题的词面重叠为每个 chunk 的句子打分，
+ * 在全局 token 预算内挑选最相关的句子，并保留其在原文中的偏移以便引用校验。
+ * <p>
+ * 分两轮挑选：第一轮按召回排名为每个 chunk 取其最佳句（保证引用不丢），
+ * 第二轮把剩余预算按分数分配给其余命中查询词的句子。
+ */
+@Component
+public class ExcerptCompressor {
+
+    private static final String GAP = " … ";
+    private static final String TRUNCATED = "...";
+
+    private static final Set<String> STOPWORDS = Set.of(
+            "a", "an", "the", "is", "are", "was", "were", "be", "of", "in", "on", "at", "to", "for",
+            "and", "or", "with", "by", "as", "it", "its", "this", "that", "what", "how", "why",
+            "do", "does", "can", "from", "about", "which", "who");
+
+    private final TokenBudgetEstimator tokenBudgetEstimator;
+    private final boolean enabled;
+    private final int tokenBudget;
+    private final int maxExcerptChars;
+
+    public ExcerptCompressor(TokenBudgetEstimator tokenBudgetEstimator,
+            @Value("${app.rag.excerpt.compression-enabled:true}") boolean enabled,
+            @Value("${app.rag.excerpt.token-budget:1200}") int tokenBudget,
+            @Value("${app.rag.excerpt.max-chars:" + ContextTrimPolicy.DEFAULT_MAX_RAG_EXCERPT_CHARS + "}") int maxExcerptChars) {
+        this.tokenBudgetEstimator = tokenBudgetEstimator;
+        this.enabled = enabled;
+        this.tokenBudget = Math.max(1, tokenBudget);
+        this.maxExcerptChars = Math.max(50, maxExcerptChars);
+    }
+
+    /**
+     * @param query      用户问题（或多个子查询拼接）
+     * @param chunkTexts 按召回排名排列的 chunk 原文
+     * @return 与 chunkTexts 一一对应的摘录；预算耗尽而未入选的 chunk 返回 {@link CompressedExcerpt#isEmpty()} 为 true
+     */
+    public List<CompressedExcerpt> compress(String query, List<String> chunkTexts) {
+        if (chunkTexts == null || chunkTexts.isEmpty()) {
+            return List.of();
+        }
+        if (!enabled) {
+            return chunkTexts.stream().map(this::leadingExcerpt).toList();
+        }
+
+        Set<String> queryTerms = terms(query);
+        List<List<Candidate>> perChunk = new ArrayList<>(chunkTexts.size());
+        for (int i = 0; i < chunkTexts.size(); i++) {
+            String text = chunkTexts.get(i) != null ? chunkTexts.get(i) : "";
+            List<Candidate> candidates = new ArrayList<>();
+            for (int[] span : splitSentences(text)) {
+                String sentence = text.substring(span[0], span[1]);
+                candidates.add(new Candidate(i, span[0], span[1], score(queryTerms, sentence)));
+            }
+            perChunk.add(candidates);
+        }
+
+        int remaining = tokenBudget;
+        int[] usedChars = new int[chunkTexts.size()];
+        List<List<Candidate>> selected = new ArrayList<>(chunkTexts.size());
+        for (int i = 0; i < chunkTexts.size(); i++) {
+            selected.add(new ArrayList<>());
+        }
+
+        // 第一轮：每个 chunk 的最佳句（按召回排名）
+        for (int i = 0; i < perChunk.size() && remaining > 0; i++) {
+            Candidate best = perChunk.get(i).stream()
+                    .max(Comparator.comparingDouble(Candidate::score)
+                            .thenComparing(Candidate::start, Comparator.reverseOrder()))
+                    .orElse(null);
+            if (best == null) {
+                continue;
+            }
+            int charCap = Math.min(maxExcerptChars, tokenBudgetEstimator.charsForTokens(remaining));
+            Candidate fitted = best.length() > charCap ? best.truncate(charCap) : best;
+            if (fitted.length() <= 0) {
+                break;
+            }
+            selected.get(i).add(fitted);
+            usedChars[i] += fitted.length();
+            remaining -= cost(chunkTexts.get(i), fitted);
+        }
+
+        // 第二轮：剩余预算按分数分配给其余相关句
+        List<Candidate> rest = new ArrayList<>();
+        for (int i = 0; i < perChunk.size(); i++) {
+            if (selected.get(i).isEmpty()) {
+                continue;
+            }
+            for (Candidate c : perChunk.get(i)) {
+                if (c.score() > 0 && selected.get(i).stream().noneMatch(s -> s.start() == c.start())) {
+                    rest.add(c);
+                }
+            }
+        }
+        rest.sort(Comparator.comparingDouble(Candidate::score).reversed()
+                .thenComparingInt(Candidate::chunk)
+                .thenComparingInt(Candidate::start));
+        for (Candidate c : rest) {
+            if (remaining <= 0) {
+                break;
+            }
+            int tokens = cost(chunkTexts.get(c.chunk()), c);
+            if (tokens > remaining || usedChars[c.chunk()] + c.length() > maxExcerptChars) {
+                continue;
+            }
+            selected.get(c.chunk()).add(c);
+            usedChars[c.chunk()] += c.length();
+            remaining -= tokens;
+        }
+
+        List<CompressedExcerpt> out = new ArrayList<>(chunkTexts.size());
+        for (int i = 0; i < chunkTexts.size(); i++) {
+            out.add(assemble(chunkTexts.get(i), selected.get(i)));
+        }
+        return out;
+    }
+
+    private CompressedExcerpt leadingExcerpt(String text) {
+        if (text == null || text.isBlank()) {
+            return CompressedExcerpt.EMPTY;
+        }
+        int end = Math.min(text.length(), maxExcerptChars);
+        String excerpt = text.length() > maxExcerptChars ? text.substring(0, end) + TRUNCATED : text;
+        return new CompressedExcerpt(excerpt, List.of(new ExcerptSpan(0, end)));
+    }
+
+    private static CompressedExcerpt assemble(String text, List<Candidate> picks) {
+        if (picks.isEmpty()) {
+            return CompressedExcerpt.EMPTY;
+        }
+        List<Candidate> ordered = new ArrayList<>(picks);
+        ordered.sort(Comparator.comparingInt(Candidate::start));
+        StringBuilder sb = new StringBuilder();
+        List<ExcerptSpan> spans = new ArrayList<>(ordered.size());
+        int previousEnd = -1;
+        for (Candidate c : ordered) {
+            if (previousEnd >= 0) {
+                boolean adjacent = text.substring(previousEnd, c.start()).isBlank();
+                sb.append(adjacent ? " " : GAP);
+            }
+            sb.append(text, c.start(), c.end());
+            if (c.truncated()) {
+                sb.append(TRUNCATED);
+            }
+            spans.add(new ExcerptSpan(c.start(), c.end()));
+            previousEnd = c.end();
+        }
+        return new CompressedExcerpt(sb.toString(), spans);
+    }
+
+    private int cost(String text, Candidate c) {
+        return Math.max(1, tokenBudgetEstimator.estimateTokens(text.substring(c.start(), c.end())));
+    }
+
+    /**
+     * 切分句子并返回去除首尾空白后的 [start, end) 区间。
+     * 中文句末标点直接断句；英文句末标点需后随空白（避免误切 3.5、e.g 之类）；换行总是断句。
+     */
+    static List<int[]> splitSentences(String text) {
+        List<int[]> spans = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return spans;
+        }
+        int start = 0;
+        int n = text.length();
+        for (int i = 0; i < n; i++) {
+            char c = text.charAt(i);
+            boolean boundary;
+            int end = i + 1;
+            if (c == '\n') {
+                boundary = true;
+                end = i;
+            } else if (c == '。' || c == '！' || c == '？') {
+                boundary = true;
+            } else if (c == '.' || c == '!' || c == '?') {
+                boundary = i + 1 >= n || Character.isWhitespace(text.charAt(i + 1));
+            } else {
+                boundary = false;
+            }
+            if (boundary) {
+                addTrimmed(text, start, end, spans);
+                start = i + 1;
+            }
+        }
+        addTrimmed(text, start, n, spans);
+        return spans;
+    }
+
+    private static void addTrimmed(String text, int start, int end, List<int[]> spans) {
+        while (start < end && Character.isWhitespace(text.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(text.charAt(end - 1))) {
+            end--;
+        }
+        if (end > start) {
+            spans.add(new int[]{start, end});
+        }
+    }
+
+    /**
+     * 词面特征：拉丁字母/数字按词（去停用词），汉字按二元组（单字串取单字）。
+     */
+    static Set<String> terms(String text) {
+        Set<String> out = new HashSet<>();
+        if (text == null || text.isBlank()) {
+            return out;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        StringBuilder word = new StringBuilder();
+        StringBuilder han = new StringBuilder();
+        for (int i = 0; i < lower.length(); i++) {
+            char c = lower.charAt(i);
+            if (Character.UnicodeScript.of(c) == Character.UnicodeScript.HAN) {
+                flushWord(word, out);
+                han.append(c);
+            } else if (Character.isLetterOrDigit(c)) {
+                flushHan(han, out);
+                word.append(c);
+            } else {
+                flushWord(word, out);
+                flushHan(han, out);
+            }
+        }
+        flushWord(word, out);
+        flushHan(han, out);
+        return out;
+    }
+
+    private static void flushWord(StringBuilder word, Set<String> out) {
+        if (word.length() > 1 && !STOPWORDS.contains(word.toString())) {
+            out.add(word.toString());
+        }
+        word.setLength(0);
+    }
+
+    private static void flushHan(StringBuilder han, Set<String> out) {
+        if (han.length() == 1) {
+            out.add(han.toString());
+        }
+        for (int i = 0; i + 1 < han.length(); i++) {
+            out.add(han.substring(i, i + 2));
+        }
+        han.setLength(0);
+    }
+
+    /** 查询词覆盖率：句子命中的查询特征数 / 查询特征总数 */
+    static double score(Set<String> queryTerms, String sentence) {
+        if (queryTerms.isEmpty()) {
+            return 0;
+        }
+        Set<String> sentenceTerms = terms(sentence);
+        int hits = 0;
+        for (String t : queryTerms) {
+            if (sentenceTerms.contains(t)) {
+                hits++;
+            }
+        }
+        return (double) hits / queryTerms.size();
+    }
+
+    private record Candidate(int chunk, int start, int end, double score, boolean truncated) {
+
+        Candidate(int chunk, int start, int end, double score) {
+            this(chunk, start, end, score, false);
+        }
+
+        int length() {
+            return end - start;
+        }
+
+        Candidate truncate(int maxChars) {
+            return new Candidate(chunk, start, start + Math.max(0, maxChars), score, true);
+        }
+    }
+
+    /**
+     * 单个 chunk 的压缩结果：拼接后的摘录文本及其在原文中的区间。
+     */
+    public record CompressedExcerpt(String text, List<ExcerptSpan> spans) {
+
+        static final CompressedExcerpt EMPTY = new CompressedExcerpt("", List.of());
+
+        public boolean isEmpty() {
+            return text == null || text.isBlank();
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.imperium.astroguide.ai.rag;
+
+import com.imperium.astroguide.ai.context.TokenBudgetEstimator;
+import com.imperium.astroguide.ingest.ChunkMetadata;
+import com.imperium.astroguide.model.dto.rag.ExcerptSpan;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * 父窗口扩展：检索命中的是小块，同一父窗口内的多个命中合并为一条，再向相邻小块扩展补足上下文。
+ * <p>
+ * 命中小块本身总是保留；扩展按召回排名依次处理各父窗口，每个命中向两侧逐步扩展至多 max-neighbours 个小块，
+ * 所有父窗口共享 token 预算，放不下即停止。合并后文本中连续小块以空格相接，不连续处以 “ … ” 分隔。
+ * <p>
+ * 合并结果沿用排名最高命中的 id 与 metadata，并在 {@value #MERGED_CHUNK_IDS} 中记录组成它的小块 id、
+ * 在 {@value #MERGED_CHUNK_OFFSETS} 中记录各小块在合并文本中的区间；合并文本上的摘录区间经 {@link #chunkSpans}
+ * 映射回各小块自身的 id 与偏移。
+ * 没有 {@code parent_id} 的旧数据原样透传；取相邻小块失败时退化为原始命中。
+ */
+@Component
+public class ParentContextExpander {
+
+    private static final Logger log = LoggerFactory.getLogger(ParentContextExpander.class);
+    public static final String MERGED_CHUNK_IDS = "merged_chunk_ids";
+    public static final String MERGED_CHUNK_OFFSETS = "merged_chunk_offsets";
+    private static final String GAP = " … ";
+    /** 命中 metadata 缺少 child_total 时每个父窗口预估的小块数 */
+    private static final int DEFAULT_CHILDREN_PER_PARENT = 16;
+
+    @Nullable
+    private final SiblingChunkLoader siblingChunkLoader;
+    private final TokenBudgetEstimator tokenBudgetEstimator;
+    private final boolean enabled;
+    private final int tokenBudget;
+    private final int maxNeighbours;
+
+    public ParentContextExpander(@Nullable SiblingChunkLoader siblingChunkLoader,
+            TokenBudgetEstimator tokenBudgetEstimator,
+            @Value("${app.rag.parent.expand-enabled:true}") boolean enabled,
+            @Value("${app.rag.parent.token-budget:1500}") int tokenBudget,
+            @Value("${app.rag.parent.max-neighbours:2}") int maxNeighbours) {
+        this.siblingChunkLoader = siblingChunkLoader;
+        this.tokenBudgetEstimator = tokenBudgetEstimator;
+        this.enabled = enabled;
+        this.tokenBudget = Math.max(0, tokenBudget);
+        this.maxNeighbours = Math.max(0, maxNeighbours);
+    }
+
+    /**
+     * @param hits 按排名排列的检索命中
+     * @return 合并/扩展后的文档，顺序为各父窗口最佳命中的排名
+     */
+    public List<Document> expand(List<Document> hits) {
+        if (!enabled || siblingChunkLoader == null || hits == null || hits.isEmpty()) {
+            return hits;
+        }
+        Map<String, List<Document>> groups = new LinkedHashMap<>();
+        int expectedChildren = 0;
+        for (Document hit : hits) {
+            String parentId = parentId(hit);
+            String key = parentId != null ? parentId : "\u0000" + groups.size();
+            List<Document> group = groups.computeIfAbsent(key, k -> new ArrayList<>());
+            if (parentId != null && group.isEmpty()) {
+                int total = intMeta(hit, ChunkMetadata.CHILD_TOTAL);
+                expectedChildren += total > 0 ? total : DEFAULT_CHILDREN_PER_PARENT;
+            }
+            group.add(hit);
+        }
+        List<String> parentIds = groups.keySet().stream().filter(k -> k.charAt(0) != '\u0000').toList();
+        if (parentIds.isEmpty()) {
+            return hits;
+        }
+
+        Map<String, TreeMap<Integer, Document>> siblings = new HashMap<>();
+        try {
+            for (Document doc : siblingChunkLoader.load(parentIds, expectedChildren)) {
+                int index = intMeta(doc, ChunkMetadata.CHILD_INDEX);
+                String parentId = parentId(doc);
+                if (parentId != null && index >= 0) {
+                    siblings.computeIfAbsent(parentId, k -> new TreeMap<>()).put(index, doc);
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Parent context expansion failed, using raw hits: {}", e.getMessage());
+            return hits;
+        }
+
+        List<Group> ordered = new ArrayList<>(groups.size());
+        int remaining = tokenBudget;
+        for (Map.Entry<String, List<Document>> entry : groups.entrySet()) {
+            TreeMap<Integer, Document> chunks = siblings.getOrDefault(entry.getKey(), new TreeMap<>());
+            Group group = new Group(entry.getValue(), chunks);
+            for (Document hit : entry.getValue()) {
+                int index = intMeta(hit, ChunkMetadata.CHILD_INDEX);
+                if (index >= 0) {
+                    chunks.putIfAbsent(index, hit);
+                    group.selected.add(index);
+                }
+                remaining -= tokenBudgetEstimator.estimateTokens(hit.getText());
+            }
+            ordered.add(group);
+        }
+        for (Group group : ordered) {
+            if (remaining <= 0) {
+                break;
+            }
+            remaining = group.grow(remaining);
+        }
+        return ordered.stream().map(Group::toDocument).toList();
+    }
+
+    /**
+     * 把 doc 文本上的摘录区间映射回组成它的小块：跨小块的区间按边界拆开，落在分隔符上的部分丢弃。
+     * 未经合并的文档原样返回（区间即在其自身文本中）。
+     */
+    public static List<ExcerptSpan> chunkSpans(Document doc, List<ExcerptSpan> spans) {
+        Map<String, Object> metadata = doc.getMetadata() != null ? doc.getMetadata() : Map.of();
+        if (spans == null || !(metadata.get(MERGED_CHUNK_IDS) instanceof List<?> ids)
+                || !(metadata.get(MERGED_CHUNK_OFFSETS) instanceof List<?> offsets) || ids.size() != offsets.size()) {
+            return spans;
+        }
+        List<ExcerptSpan> out = new ArrayList<>(spans.size());
+        for (ExcerptSpan span : spans) {
+            for (int i = 0; i < ids.size(); i++) {
+                List<?> segment = (List<?>) offsets.get(i);
+                int segmentStart = ((Number) segment.get(0)).intValue();
+                int segmentEnd = ((Number) segment.get(1)).intValue();
+                int from = Math.max(span.getStart(), segmentStart);
+                int to = Math.min(span.getEnd(), segmentEnd);
+                if (from < to) {
+                    out.add(new ExcerptSpan(from - segmentStart, to - segmentStart, ids.get(i).toString()));
+                }
+            }
+        }
+        return out;
+    }
+
+    @Nullable
+    private static String parentId(Document doc) {
+        Object value = doc.getMetadata() != null ? doc.getMetadata().get(ChunkMetadata.PARENT_ID) : null;
+        return value != null && !value.toString().isBlank() ? value.toString() : null;
+    }
+
+    private static int intMeta(Document doc, String key) {
+        Object value = doc.getMetadata() != null ? doc.getMetadata().get(key) : null;
+        if (value instanceof Number n) {
+            return n.intValue();
+        }
+        try {
+            return value != null ? Integer.parseInt(value.toString()) : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private final class Group {
+        private final List<Document> hits;
+        private final TreeMap<Integer, Document> chunks;
+        private final TreeSet<Integer> selected = new TreeSet<>();
+
+        private Group(List<Document> hits, TreeMap<Integer, Document> chunks) {
+            this.hits = hits;
+            this.chunks = chunks;
+        }
+
+        /** 以命中为中心按距离由近及远扩展，返回剩余预算 */
+        private int grow(int remaining) {
+            List<Integer> centres = List.copyOf(selected);
+            for (int distance = 1; distance <= maxNeighbours; distance++) {
+                for (int centre : centres) {
+                    for (int index : new int[] {centre - distance, centre + distance}) {
+                        Document chunk = chunks.get(index);
+                        if (chunk == null || selected.contains(index)) {
+                            continue;
+                        }
+                        int cost = tokenBudgetEstimator.estimateTokens(chunk.getText());
+                        if (cost > remaining) {
+                            return remaining;
+                        }
+                        selected.add(index);
+                        remaining -= cost;
+                    }
+                }
+            }
+            return remaining;
+        }
+
+        private Document toDocument() {
+            Document best = hits.getFirst();
+            if (selected.isEmpty() || (hits.size() == 1 && selected.size() == 1)) {
+                return best;
+            }
+            StringBuilder text = new StringBuilder();
+            List<String> ids = new ArrayList<>(selected.size());
+            List<List<Integer>> offsets = new ArrayList<>(selected.size());
+            int previous = Integer.MIN_VALUE;
+            for (int index : selected) {
+                Document chunk = chunks.get(index);
+                if (text.length() > 0) {
+                    text.append(index == previous + 1 ? " " : GAP);
+                }
+                int start = text.length();
+                text.append(chunk.getText());
+                ids.add(chunk.getId());
+                offsets.add(List.of(start, text.length()));
+                previous = index;
+            }
+            Map<String, Object> metadata = new HashMap<>(best.getMetadata());
+            metadata.put(MERGED_CHUNK_IDS, ids);
+            metadata.put(MERGED_CHUNK_OFFSETS, offsets);
+            return Document.builder()
+                    .id(best.getId())
+                    .text(text.toString())
+                    .metadata(metadata)
+                    .score(best.getScore())
+                    .build();
+        }
+    }
+}
@@ -1,11 +1,11 @@
 package com.imperium.astroguide.ai.rag;
 
-import com.imperium.astroguide.ai.context.ContextTrimPolicy;
+import com.imperium.astroguide.ai.rag.ExcerptCompressor.CompressedExcerpt;
+import com.imperium.astroguide.infra.resilience.CircuitOpenException;
 import com.imperium.astroguide.model.dto.rag.CitationDto;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.document.Document;
-import org.springframework.ai.vectorstore.SearchRequest;
 import org.springframework.ai.vectorstore.VectorStore;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.lang.Nullable;
@@ -15,9 +15,23 @@ import org.springframework.util.CollectionUtils;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 /**
- * RAG 检索：向量召回 + citation 组装（与 Tool 路径分离，避免双检索）。
+ * RAG 检索：向量召回 + 查询相关摘录压缩 + citation 组装（与 Tool 路径分离，避免双检索）。
+ * <p>
+ * 复杂问题可附带 Planner 拆出的子查询：多个查询一次往返批量召回，再经 RRF 融合去重。
+ * 成功的检索结果写入 {@link RetrievalCache}，热门问题不再重复向量检索；依赖熔断时直接返回空上下文。
+ * <p>
+ * 启用 {@link CrossEncoderReranker} 时先召回更多候选再重排保留少数；重排超出时间预算则按召回顺序截取，
+ * 且该结果不写缓存，下次同一问题仍尝试重排。
+ * <p>
+ * 检索范围由 {@link RetrievalFilter} 限定（会话语言、难度与来源白名单，下推为 Qdrant payload 过滤）；
+ * 过滤后无命中且允许放宽时，去掉语言与难度条件重试一次。
+ * <p>
+ * 按父子分块摄入的数据，命中小块经 {@link ParentContextExpander} 按父窗口合并并在预算内扩展相邻上下文后再压缩。
+ * <p>
+ * 每次实际检索（缓存命中除外）经 {@link RetrievalMetrics} 上报阶段耗时、分数分布与各阶段 chunk 数，并采样审计。
  */
 @Service
 public class RagRetrievalService {
@@ -26,6 +40,13 @@ public class RagRetrievalService {
 
     @Nullable
     private final VectorStore vectorStore;
+    private final BatchVectorSearcher batchVectorSearcher;
+    private final ExcerptCompressor excerptCompressor;
+    private final RetrievalCache retrievalCache;
+    @Nullable
+    private final CrossEncoderReranker reranker;
+    private final ParentContextExpander parentContextExpander;
+    private final RetrievalMetrics retrievalMetrics;
 
     @Value("${app.rag.enabled:false}")
     private boolean ragEnabled;
@@ -33,46 +54,162 @@ public class RagRetrievalService {
     @Value("${app.rag.top-k:8}")
     private int ragTopK;
 
-    public RagRetrievalService(@Nullable VectorStore vectorStore) {
+    @Value("${app.rag.multi-query.max-queries:4}")
+    private int maxQueries;
+
+    @Value("${app.rag.filter.by-language:true}")
+    private boolean filterByLanguage;
+
+    @Value("${app.rag.filter.by-level:true}")
+    private boolean filterByLevel;
+
+    @Value("${app.rag.filter.sources:}")
+    private List<String> defaultSources = List.of();
+
+    @Value("${app.rag.filter.relax-on-empty:true}")
+    private boolean relaxOnEmpty;
+
+    public RagRetrievalService(@Nullable VectorStore vectorStore,
+            BatchVectorSearcher batchVectorSearcher,
+            ExcerptCompressor excerptCompressor,
+            RetrievalCache retrievalCache,
+            @Nullable CrossEncoderReranker reranker,
+            ParentContextExpander parentContextExpander,
+            RetrievalMetrics retrievalMetrics) {
         this.vectorStore = vectorStore;
+        this.batchVectorSearcher = batchVectorSearcher;
+        this.excerptCompressor = excerptCompressor;
+        this.retrievalCache = retrievalCache;
+        this.reranker = reranker;
+        this.parentContextExpander = parentContextExpander;
+        this.retrievalMetrics = retrievalMetrics;
     }
 
     public RagRetrievalResult retrieve(String userText) {
+        return retrieve(userText, List.of());
+    }
+
+    /**
+     * @param subQueries 可选子查询（如 Planner 计划要点）；与原问题一起批量召回后融合
+     */
+    public RagRetrievalResult retrieve(String userText, List<String> subQueries) {
+        return retrieve(userText, subQueries, RetrievalFilter.NONE, null);
+    }
+
+    /**
+     * @param filter    检索范围（通常取自用户消息的 language/difficulty）；按配置裁剪并补上默认来源白名单
+     * @param routeMode 路由模式，仅用于指标标签；可为 null
+     */
+    public RagRetrievalResult retrieve(String userText, List<String> subQueries, RetrievalFilter filter,
+            @Nullable String routeMode) {
         if (!ragEnabled || vectorStore == null || userText == null || userText.isBlank()) {
             return RagRetrievalResult.empty();
         }
 
+        List<String> queries = expandQueries(userText, subQueries);
+        RetrievalFilter scope = effectiveFilter(filter);
+        boolean multiQuery = queries.size() > 1;
+        Optional<RagRetrievalResult> cached = retrievalCache.get(userText, multiQuery, ragTopK, scope);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+
+        int fetchK = reranker != null ? Math.max(ragTopK, reranker.candidates()) : ragTopK;
+        RetrievalTrace trace = new RetrievalTrace();
+        String route = routeMode != null ? routeMode : "unknown";
+        String language = filter != null && filter.language() != null ? filter.language() : "unknown";
+        boolean relaxedRetry = false;
         List<Document> docs;
         try {
-            docs = vectorStore.similaritySearch(
-                    SearchRequest.builder().query(userText).topK(ragTopK).build());
+            docs = search(queries, fetchK, scope, trace);
+            RetrievalFilter relaxed = scope.sourcesOnly();
+            if (docs.isEmpty() && relaxOnEmpty && !relaxed.equals(scope)) {
+                log.debug("RAG retrieval empty under {}, retrying without language/level", scope);
+                relaxedRetry = true;
+                docs = search(queries, fetchK, relaxed, trace);
+            }
+        } catch (CircuitOpenException e) {
+            log.debug("RAG retrieval short-circuited: {}", e.getMessage());
+            return RagRetrievalResult.empty();
         } catch (Exception e) {
             log.warn("RAG retrieval failed, degrading to empty context: {}", e.getMessage());
             return RagRetrievalResult.empty();
         }
         if (CollectionUtils.isEmpty(docs)) {
+            retrievalMetrics.record(userText, route, language, trace, List.of(), 0, List.of(), 0, relaxedRetry);
+            retrievalCache.put(userText, multiQuery, ragTopK, scope, RagRetrievalResult.empty());
             return RagRetrievalResult.empty();
         }
 
+        List<Document> candidates = docs.stream()
+                .filter(doc -> doc != null && doc.getText() != null && !doc.getText().isBlank())
+                .toList();
+        List<Document> ranked = candidates;
+        boolean cacheable = true;
+        if (reranker != null) {
+            Optional<List<Document>> reranked = reranker.rerank(userText.trim(), candidates);
+            cacheable = reranked.isPresent();
+            ranked = reranked.orElseGet(() -> candidates.subList(0, Math.min(candidates.size(), reranker.keep())));
+        }
+        List<Document> usable = parentContextExpander.expand(ranked);
+        List<CompressedExcerpt> excerpts = excerptCompressor.compress(
+                String.join(" ", queries), usable.stream().map(Document::getText).toList());
+
         StringBuilder ref = new StringBuilder();
         List<CitationDto> citations = new ArrayList<>();
-        for (int i = 0; i < docs.size(); i++) {
-            Document doc = docs.get(i);
-            if (doc == null || doc.getText() == null || doc.getText().isBlank()) {
+        for (int i = 0; i < usable.size(); i++) {
+            CompressedExcerpt excerpt = excerpts.get(i);
+            if (excerpt.isEmpty()) {
                 continue;
             }
+            Document doc = usable.get(i);
             Map<String, Object> meta = doc.getMetadata() != null ? doc.getMetadata() : Map.of();
             String source = meta.get("source") != null ? meta.get("source").toString() : "KnowledgeBase";
             String chunkId = doc.getId() != null ? doc.getId()
                     : (meta.get("chunk_id") != null ? meta.get("chunk_id").toString() : "chunk_" + i);
-            String excerpt = truncate(doc.getText(), ContextTrimPolicy.DEFAULT_MAX_RAG_EXCERPT_CHARS);
-            citations.add(new CitationDto(chunkId, source, excerpt));
-            ref.append("[KB-").append(i + 1).append("] ").append(excerpt).append("\n");
+            citations.add(new CitationDto(chunkId, source, excerpt.text(),
+                    ParentContextExpander.chunkSpans(doc, excerpt.spans())));
+            ref.append("[KB-").append(citations.size()).append("] ").append(excerpt.text()).append("\n");
+        }
+        RagRetrievalResult result = new RagRetrievalResult(ref.toString(), citations);
+        retrievalMetrics.record(userText, route, language, trace, docs, usable.size(),
+                citations.stream().map(CitationDto::getChunkId).toList(), ref.length(), relaxedRetry);
+        if (cacheable) {
+            retrievalCache.put(userText, multiQuery, ragTopK, scope, result);
         }
-        return new RagRetrievalResult(ref.toString(), citations);
+        return result;
     }
 
-    private static String truncate(String text, int maxLen) {
-        return text.length() > maxLen ? text.substring(0, maxLen) + "..." : text;
+    private List<Document> search(List<String> queries, int fetchK, RetrievalFilter scope, RetrievalTrace trace)
+            throws Exception {
+        List<List<Document>> ranked = batchVectorSearcher.search(queries, fetchK, scope, trace);
+        return ranked.size() > 1
+                ? RankFusion.reciprocalRank(ranked, fetchK)
+                : (ranked.isEmpty() ? List.of() : ranked.getFirst());
+    }
+
+    private RetrievalFilter effectiveFilter(RetrievalFilter requested) {
+        RetrievalFilter filter = requested != null ? requested : RetrievalFilter.NONE;
+        RetrievalFilter scoped = new RetrievalFilter(
+                filterByLanguage ? filter.language() : null,
+                filterByLevel ? filter.maxLevel() : null,
+                filter.sources());
+        return scoped.sources().isEmpty() && defaultSources != null ? scoped.withSources(defaultSources) : scoped;
+    }
+
+    private List<String> expandQueries(String userText, List<String> subQueries) {
+        List<String> queries = new ArrayList<>();
+        queries.add(userText.trim());
+        if (subQueries != null) {
+            for (String q : subQueries) {
+                if (queries.size() >= Math.max(1, maxQueries)) {
+                    break;
+                }
+                if (q != null && !q.isBlank() && !queries.contains(q.trim())) {
+                    queries.add(q.trim());
+                }
+            }
+        }
+        return queries;
     }
 }
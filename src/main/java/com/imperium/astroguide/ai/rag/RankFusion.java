@@ -0,0 +1,59 @@
+package com.imperium.astroguide.ai.rag;
+
+import org.springframework.ai.document.Document;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 多路召回结果融合：Reciprocal Rank Fusion（RRF），按 chunk id 去重。
+ */
+public final class RankFusion {
+
+    /** RRF 平滑常数，取论文常用值 */
+    static final int RRF_K = 60;
+
+    private RankFusion() {
+    }
+
+    /**
+     * @param rankedLists 每个查询的召回结果（已按相似度降序）
+     * @param limit       融合后保留条数
+     * @return 按 RRF 得分降序、去重后的文档；同分时先出现者优先
+     */
+    public static List<Document> reciprocalRank(List<List<Document>> rankedLists, int limit) {
+        Map<String, Fused> byKey = new LinkedHashMap<>();
+        for (List<Document> list : rankedLists) {
+            if (list == null) {
+                continue;
+            }
+            for (int rank = 0; rank < list.size(); rank++) {
+                Document doc = list.get(rank);
+                if (doc == null || doc.getText() == null || doc.getText().isBlank()) {
+                    continue;
+                }
+                double contribution = 1.0 / (RRF_K + rank + 1);
+                byKey.computeIfAbsent(dedupeKey(doc), k -> new Fused(doc)).score += contribution;
+            }
+        }
+        List<Fused> fused = new ArrayList<>(byKey.values());
+        fused.sort(Comparator.comparingDouble((Fused f) -> f.score).reversed());
+        return fused.stream().limit(Math.max(0, limit)).map(f -> f.document).toList();
+    }
+
+    private static String dedupeKey(Document doc) {
+        return doc.getId() != null ? doc.getId() : "text:" + doc.getText().hashCode();
+    }
+
+    private static final class Fused {
+        private final Document document;
+        private double score;
+
+        private Fused(Document document) {
+            this.document = document;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.imperium.astroguide.ai.rag;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.imperium.astroguide.infra.cache.KnowledgeBaseGeneration;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+/**
+ * 检索结果缓存：归一化用户问题 → 排序后的 chunk 与摘录。
+ * <p>
+ * 键只取用户问题（不含 Planner 生成的子查询，其措辞每次不同，计入键则几乎不会命中），
+ * 另以是否多查询召回区分同一问题的简单与复杂路径。
+ * 缓存键包含 {@link KnowledgeBaseGeneration} 代次，摄入成功即换代，旧结果不再命中；
+ * 代次读取失败（如 Redis 不可用）时按未命中处理且不写入，检索照常进行。
+ * 本地 LRU 始终启用；{@code app.redis.enabled=true} 时额外以 Redis 作为多实例共享的二级缓存。
+ */
+@Component
+public class RetrievalCache {
+
+    private static final Logger log = LoggerFactory.getLogger(RetrievalCache.class);
+    private static final String REDIS_PREFIX = "astroguide:rag:cache:";
+    private static final String METRIC = "astroguide.rag.cache";
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern TRAILING_PUNCT = Pattern.compile("[\\p{Punct}？。！，、]+$");
+
+    private final KnowledgeBaseGeneration generation;
+    @Nullable
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final boolean enabled;
+    private final long ttlMs;
+    private final Map<String, Entry> local;
+
+    public RetrievalCache(KnowledgeBaseGeneration generation,
+            @Nullable StringRedisTemplate redisTemplate,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${app.rag.cache.enabled:true}") boolean enabled,
+            @Value("${app.rag.cache.max-entries:1000}") int maxEntries,
+            @Value("${app.rag.cache.ttl-ms:600000}") long ttlMs) {
+        this.generation = generation;
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.ttlMs = ttlMs;
+        int capacity = Math.max(1, maxEntries);
+        this.local = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @param multiQuery 是否附带子查询批量召回
+     */
+    public Optional<RagRetrievalResult> get(String question, boolean multiQuery, int topK, RetrievalFilter filter) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        String key = key(question, multiQuery, topK, filter);
+        if (key == null) {
+            record("miss", "error");
+            return Optional.empty();
+        }
+        long now = System.currentTimeMillis();
+        synchronized (local) {
+            Entry entry = local.get(key);
+            if (entry != null && entry.expiresAtMs() > now) {
+                record("hit", "local");
+                return Optional.of(entry.result());
+            }
+            if (entry != null) {
+                local.remove(key);
+            }
+        }
+        if (redisTemplate != null) {
+            try {
+                String json = redisTemplate.opsForValue().get(REDIS_PREFIX + key);
+                if (json != null) {
+                    RagRetrievalResult result = objectMapper.readValue(json, RagRetrievalResult.class);
+                    putLocal(key, result);
+                    record("hit", "shared");
+                    return Optional.of(result);
+                }
+            } catch (Exception e) {
+                log.debug("shared retrieval cache read failed: {}", e.getMessage());
+            }
+        }
+        record("miss", "none");
+        return Optional.empty();
+    }
+
+    /** 检索范围不同的同一问题分别缓存 */
+    public void put(String question, boolean multiQuery, int topK, RetrievalFilter filter, RagRetrievalResult result) {
+        if (!enabled || result == null) {
+            return;
+        }
+        String key = key(question, multiQuery, topK, filter);
+        if (key == null) {
+            return;
+        }
+        putLocal(key, result);
+        if (redisTemplate != null) {
+            try {
+                redisTemplate.opsForValue().set(REDIS_PREFIX + key,
+                        objectMapper.writeValueAsString(result), Duration.ofMillis(ttlMs));
+            } catch (Exception e) {
+                log.debug("shared retrieval cache write failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void putLocal(String key, RagRetrievalResult result) {
+        synchronized (local) {
+            local.put(key, new Entry(result, System.currentTimeMillis() + ttlMs));
+        }
+    }
+
+    /** 代次读取失败时返回 null */
+    @Nullable
+    private String key(String question, boolean multiQuery, int topK, RetrievalFilter filter) {
+        long current;
+        try {
+            current = generation.current();
+        } catch (Exception e) {
+            log.debug("knowledge base generation unavailable, bypassing retrieval cache: {}", e.getMessage());
+            return null;
+        }
+        String raw = topK + "\u001e" + (filter != null ? filter : RetrievalFilter.NONE).cacheKey()
+                + "\u001e" + (multiQuery ? "multi" : "single") + "\u001f" + normalize(question);
+        return current + ":" + DigestUtils.md5DigestAsHex(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** 大小写、空白与句末标点不同的同一问题视为同一查询 */
+    static String normalize(String query) {
+        if (query == null) {
+            return "";
+        }
+        String collapsed = WHITESPACE.matcher(query.trim().toLowerCase(Locale.ROOT)).replaceAll(" ");
+        return TRAILING_PUNCT.matcher(collapsed).replaceAll("");
+    }
+
+    private void record(String result, String tier) {
+        meterRegistry.counter(METRIC, "result", result, "tier", tier).increment();
+    }
+
+    private record Entry(RagRetrievalResult result, long expiresAtMs) {
+    }
+}
@@ -0,0 +1,76 @@
+package com.imperium.astroguide.ai.rag;
+
+import com.imperium.astroguide.ingest.ChunkMetadata;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 检索范围：按会话语言、难度档位与来源白名单缩小候选集。
+ * <p>
+ * 语言要求 chunk 的 {@code language} 一致；难度允许不高于当前档位的 {@code level}（basic 只看 basic，
+ * advanced 可看全部）；两者都放行未标注该字段的旧数据。来源白名单非空时只检索其中的来源。
+ *
+ * @param language 语言（en | zh），null 表示不限
+ * @param maxLevel 难度上限（basic | intermediate | advanced），null 表示不限
+ * @param sources  来源白名单，空表示不限
+ */
+public record RetrievalFilter(String language, String maxLevel, List<String> sources) {
+
+    public static final RetrievalFilter NONE = new RetrievalFilter(null, null, List.of());
+
+    public RetrievalFilter {
+        language = language != null && ChunkMetadata.LANGUAGES.contains(language.trim().toLowerCase(Locale.ROOT))
+                ? language.trim().toLowerCase(Locale.ROOT) : null;
+        maxLevel = maxLevel != null && ChunkMetadata.LEVELS.contains(maxLevel.trim().toLowerCase(Locale.ROOT))
+                ? maxLevel.trim().toLowerCase(Locale.ROOT) : null;
+        sources = sources == null ? List.of()
+                : sources.stream().filter(s -> s != null && !s.isBlank()).map(String::trim).distinct().toList();
+    }
+
+    public static RetrievalFilter of(String language, String difficulty) {
+        return new RetrievalFilter(language, difficulty, List.of());
+    }
+
+    public boolean isEmpty() {
+        return language == null && maxLevel == null && sources.isEmpty();
+    }
+
+    /** 允许的 level 值（含当前档位及以下）；不限时为空 */
+    public List<String> allowedLevels() {
+        return maxLevel == null ? List.of() : ChunkMetadata.LEVELS.subList(0, ChunkMetadata.LEVELS.indexOf(maxLevel) + 1);
+    }
+
+    public RetrievalFilter withSources(List<String> allowList) {
+        return new RetrievalFilter(language, maxLevel, allowList);
+    }
+
+    /** 去掉语言与难度，仅保留来源白名单（过滤后无结果时放宽检索） */
+    public RetrievalFilter sourcesOnly() {
+        return new RetrievalFilter(null, null, sources);
+    }
+
+    /** 内存中判定，供不支持 payload 过滤的检索路径使用，语义与 Qdrant 过滤一致 */
+    public boolean matches(Map<String, Object> metadata) {
+        Map<String, Object> meta = metadata != null ? metadata : Map.of();
+        Object lang = meta.get(ChunkMetadata.LANGUAGE);
+        if (language != null && lang != null && !language.equals(lang.toString())) {
+            return false;
+        }
+        Object level = meta.get(ChunkMetadata.LEVEL);
+        if (maxLevel != null && level != null && !allowedLevels().contains(level.toString())) {
+            return false;
+        }
+        Object source = meta.get(ChunkMetadata.SOURCE);
+        return sources.isEmpty() || (source != null && sources.contains(source.toString()));
+    }
+
+    /** 参与缓存键的稳定表示 */
+    public String cacheKey() {
+        List<String> sorted = new ArrayList<>(sources);
+        sorted.sort(null);
+        return (language != null ? language : "*") + "|" + (maxLevel != null ? maxLevel : "*") + "|" + String.join(",", sorted);
+    }
+}
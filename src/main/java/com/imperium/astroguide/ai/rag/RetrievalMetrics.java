@@ -0,0 +1,177 @@
+package com.imperium.astroguide.ai.rag;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.imperium.astroguide.ingest.ChunkMetadata;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 检索可观测性：每次实际检索（不含缓存命中）上报指标，并按采样率输出审计记录。
+ * <p>
+ * 指标均带 {@code route}（路由模式）与 {@code language} 标签：
+ * embedding / 向量检索耗时、最高分与中位分分布、召回/保留/注入 chunk 数、注入摘录字符数、零命中次数。
+ * <p>
+ * 审计记录写入日志 {@value #AUDIT_LOGGER}（JSON 一行）；{@code app.redis.enabled=true} 时同时写入 Redis Stream，
+ * 按 max-length 近似裁剪。默认不采样；记录中问题只以哈希（queryHash，用于归并相同问题）出现，
+ * 原文仅在显式开启 include-query 时写入（用户问题可能含个人信息）。
+ */
+@Component
+public class RetrievalMetrics {
+
+    private static final Logger log = LoggerFactory.getLogger(RetrievalMetrics.class);
+    static final String AUDIT_LOGGER = "astroguide.rag.audit";
+    private static final Logger audit = LoggerFactory.getLogger(AUDIT_LOGGER);
+    private static final String STREAM_KEY = "astroguide:rag:audit";
+    private static final double[] SCORE_SLOS = {0.1, 0.2, 0.3, 0.4, 0.5, 0.6, 0.7, 0.8, 0.9, 1.0};
+    private static final int MAX_QUERY_CHARS = 200;
+    /** 每写入多少条审计记录裁剪一次 Stream */
+    private static final int TRIM_EVERY = 100;
+
+    private final MeterRegistry meterRegistry;
+    @Nullable
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final double sampleRate;
+    private final boolean includeQuery;
+    private final long streamMaxLength;
+    private final AtomicLong streamWrites = new AtomicLong();
+
+    public RetrievalMetrics(MeterRegistry meterRegistry,
+            @Nullable StringRedisTemplate redisTemplate,
+            ObjectMapper objectMapper,
+            @Value("${app.rag.audit.sample-rate:0}") double sampleRate,
+            @Value("${app.rag.audit.include-query:false}") boolean includeQuery,
+            @Value("${app.rag.audit.stream-max-length:10000}") long streamMaxLength) {
+        this.meterRegistry = meterRegistry;
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.sampleRate = Math.max(0, Math.min(1, sampleRate));
+        this.includeQuery = includeQuery;
+        this.streamMaxLength = Math.max(1, streamMaxLength);
+    }
+
+    /**
+     * @param query      用户问题
+     * @param route      路由模式（SIMPLE / COMPLEX 等），未知为 {@code unknown}
+     * @param language   会话语言，未知为 {@code unknown}
+     * @param trace      阶段耗时
+     * @param retrieved  向量召回（融合后、重排前）的候选
+     * @param kept       重排与父窗口扩展后交给压缩的文档
+     * @param citations  实际注入上下文的摘录 chunk id
+     * @param excerptChars 注入的摘录字符数
+     * @param relaxed    是否因过滤后零命中而放宽重试
+     */
+    public void record(String query, String route, String language, RetrievalTrace trace,
+            List<Document> retrieved, int kept, List<String> citations, int excerptChars, boolean relaxed) {
+        try {
+            String[] tags = {"route", route, "language", language};
+            Timer.builder("astroguide.rag.embed").tags(tags).register(meterRegistry)
+                    .record(Duration.ofNanos(trace.embedNanos()));
+            Timer.builder("astroguide.rag.search").tags(tags).register(meterRegistry)
+                    .record(Duration.ofNanos(trace.searchNanos()));
+            summary("astroguide.rag.chunks", tags, "stage", "retrieved").record(retrieved.size());
+            summary("astroguide.rag.chunks", tags, "stage", "kept").record(kept);
+            summary("astroguide.rag.chunks", tags, "stage", "injected").record(citations.size());
+            DistributionSummary.builder("astroguide.rag.excerpt.chars").tags(tags).register(meterRegistry)
+                    .record(excerptChars);
+
+            List<Double> scores = scores(retrieved);
+            Double top = scores.isEmpty() ? null : scores.getFirst();
+            Double median = scores.isEmpty() ? null : median(scores);
+            if (top != null) {
+                scoreSummary("astroguide.rag.score.top", tags).record(top);
+                scoreSummary("astroguide.rag.score.median", tags).record(median);
+            }
+            if (retrieved.isEmpty()) {
+                Counter.builder("astroguide.rag.zero_hit").tags(tags).register(meterRegistry).increment();
+            }
+
+            if (sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate) {
+                Map<String, Object> entry = new LinkedHashMap<>();
+                entry.put("ts", System.currentTimeMillis());
+                entry.put("route", route);
+                entry.put("language", language);
+                entry.put("queryHash", queryHash(query));
+                if (includeQuery) {
+                    entry.put("query", query != null && query.length() > MAX_QUERY_CHARS
+                            ? query.substring(0, MAX_QUERY_CHARS) : query);
+                }
+                entry.put("embedMs", trace.embedNanos() / 1_000_000);
+                entry.put("searchMs", trace.searchNanos() / 1_000_000);
+                entry.put("retrieved", retrieved.size());
+                entry.put("kept", kept);
+                entry.put("injected", citations.size());
+                entry.put("excerptChars", excerptChars);
+                entry.put("topScore", top);
+                entry.put("medianScore", median);
+                entry.put("relaxed", relaxed);
+                entry.put("chunkIds", citations);
+                writeAudit(entry);
+            }
+        } catch (Exception e) {
+            log.debug("retrieval metrics failed: {}", e.getMessage());
+        }
+    }
+
+    private void writeAudit(Map<String, Object> entry) throws Exception {
+        String json = objectMapper.writeValueAsString(entry);
+        audit.info(json);
+        if (redisTemplate == null) {
+            return;
+        }
+        try {
+            redisTemplate.opsForStream().add(StreamRecords.string(Map.of("entry", json)).withStreamKey(STREAM_KEY));
+            if (streamWrites.incrementAndGet() % TRIM_EVERY == 0) {
+                redisTemplate.opsForStream().trim(STREAM_KEY, streamMaxLength, true);
+            }
+        } catch (Exception e) {
+            log.debug("retrieval audit stream write failed: {}", e.getMessage());
+        }
+    }
+
+    private DistributionSummary summary(String name, String[] tags, String key, String value) {
+        return DistributionSummary.builder(name).tags(tags).tag(key, value).register(meterRegistry);
+    }
+
+    private DistributionSummary scoreSummary(String name, String[] tags) {
+        return DistributionSummary.builder(name).tags(tags).serviceLevelObjectives(SCORE_SLOS).register(meterRegistry);
+    }
+
+    /** 问题的短哈希（规范化后 SHA-256 前 16 位），归并相同问题而不直接记录原文 */
+    static String queryHash(String query) {
+        String normalized = query != null ? query.strip().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT) : "";
+        return ChunkMetadata.contentHash(normalized).substring(0, 16);
+    }
+
+    /** 候选的相似度分数，降序 */
+    static List<Double> scores(List<Document> docs) {
+        List<Double> scores = new ArrayList<>(docs.stream().map(Document::getScore).filter(Objects::nonNull).toList());
+        scores.sort((a, b) -> Double.compare(b, a));
+        return scores;
+    }
+
+    static double median(List<Double> sortedDesc) {
+        int n = sortedDesc.size();
+        return n % 2 == 1 ? sortedDesc.get(n / 2) : (sortedDesc.get(n / 2 - 1) + sortedDesc.get(n / 2)) / 2;
+    }
+}
@@ -0,0 +1,27 @@
+package com.imperium.astroguide.ai.rag;
+
+/**
+ * 单次检索的阶段耗时，由 {@link BatchVectorSearcher} 在异步回调中填写，{@link RetrievalMetrics} 汇总上报。
+ * 多次检索（如放宽过滤后重试）累加。
+ */
+public class RetrievalTrace {
+
+    private volatile long embedNanos;
+    private volatile long searchNanos;
+
+    synchronized void addEmbed(long nanos) {
+        embedNanos += nanos;
+    }
+
+    synchronized void addSearch(long nanos) {
+        searchNanos += nanos;
+    }
+
+    public long embedNanos() {
+        return embedNanos;
+    }
+
+    public long searchNanos() {
+        return searchNanos;
+    }
+}
@@ -0,0 +1,18 @@
+package com.imperium.astroguide.ai.rag;
+
+import org.springframework.ai.document.Document;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 按父窗口 id 取回其全部检索小块（含 metadata），供父窗口扩展使用。
+ */
+public interface SiblingChunkLoader {
+
+    /**
+     * @param parentIds 父窗口 id
+     * @param limit     最多返回条数
+     */
+    List<Document> load(Collection<String> parentIds, int limit) throws Exception;
+}
@@ -1,5 +1,6 @@
 package com.imperium.astroguide.ai.runtime;
 
+import com.imperium.astroguide.ai.rag.RetrievalFilter;
 import com.imperium.astroguide.ai.tool.ToolExecutionRecord;
 import com.imperium.astroguide.model.dto.rag.CitationDto;
 import org.springframework.ai.chat.messages.Message;
@@ -19,7 +20,22 @@ public record AgentRunRequest(
         List<Message> historyMessages,
         Integer maxCompletionTokens,
         List<CitationDto> ragCitations,
-        String conversationSummary) {
+        String conversationSummary,
+        RetrievalFilter retrievalFilter) {
+
+    public AgentRunRequest(String runId,
+            String requestId,
+            String conversationId,
+            String messageId,
+            String systemPrompt,
+            String userText,
+            List<Message> historyMessages,
+            Integer maxCompletionTokens,
+            List<CitationDto> ragCitations,
+            String conversationSummary) {
+        this(runId, requestId, conversationId, messageId, systemPrompt, userText,
+                historyMessages, maxCompletionTokens, ragCitations, conversationSummary, RetrievalFilter.NONE);
+    }
 
     public AgentRunRequest(String runId,
             String requestId,
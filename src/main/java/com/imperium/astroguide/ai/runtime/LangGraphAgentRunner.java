@@ -62,7 +62,8 @@ public class LangGraphAgentRunner implements AgentRuntime {
                             request.historyMessages(),
                             request.maxCompletionTokens(),
                             request.ragCitations(),
-                            request.conversationSummary()),
+                            request.conversationSummary(),
+                            request.retrievalFilter()),
                     sink::next);
 
             AgentRunResult result = new AgentRunResult(
@@ -1,12 +1,11 @@
 package com.imperium.astroguide.ai.tools;
 
+import com.imperium.astroguide.ai.rag.BatchVectorSearcher;
+import com.imperium.astroguide.infra.resilience.CircuitOpenException;
 import com.imperium.astroguide.model.dto.rag.CitationDto;
 import com.imperium.astroguide.model.dto.rag.RagRetrieveResult;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.ai.tool.annotation.ToolParam;
-import org.springframework.ai.vectorstore.SearchRequest;
-import org.springframework.ai.vectorstore.VectorStore;
-import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Component;
 
 import org.slf4j.Logger;
@@ -19,17 +18,18 @@ import java.util.Map;
 
 /**
  * Spring AI Tool: Knowledge base search.
+ * <p>
+ * 检索经 {@link BatchVectorSearcher}，与 RAG 主链路共用熔断、超时、量化与 Matryoshka 两阶段检索。
  */
 @Component
 public class KnowledgeBaseTool {
 
     private static final Logger log = LoggerFactory.getLogger(KnowledgeBaseTool.class);
 
-    @Nullable
-    private final VectorStore vectorStore;
+    private final BatchVectorSearcher batchVectorSearcher;
 
-    public KnowledgeBaseTool(@Nullable VectorStore vectorStore) {
-        this.vectorStore = vectorStore;
+    public KnowledgeBaseTool(BatchVectorSearcher batchVectorSearcher) {
+        this.batchVectorSearcher = batchVectorSearcher;
     }
 
     @Tool(name = "search_knowledge_base",
@@ -38,15 +38,18 @@ public class KnowledgeBaseTool {
     public RagRetrieveResult searchKnowledgeBase(
             @ToolParam(description = "User question or a condensed query") String query,
             @ToolParam(required = false, description = "TopK results, default 8") Integer topK) {
-        if (query == null || query.isBlank() || vectorStore == null) {
+        if (query == null || query.isBlank()) {
             return RagRetrieveResult.empty();
         }
 
         int k = (topK != null && topK > 0) ? topK : 8;
-        SearchRequest searchRequest = SearchRequest.builder().query(query).topK(k).build();
         List<org.springframework.ai.document.Document> docs;
         try {
-            docs = vectorStore.similaritySearch(searchRequest);
+            List<List<org.springframework.ai.document.Document>> results = batchVectorSearcher.search(List.of(query), k);
+            docs = results.isEmpty() ? List.of() : results.getFirst();
+        } catch (CircuitOpenException e) {
+            log.debug("Knowledge base search short-circuited: {}", e.getMessage());
+            return RagRetrieveResult.empty();
         } catch (Exception e) {
             log.warn("Knowledge base search failed query={}: {}", query, e.getMessage());
             return RagRetrieveResult.empty();
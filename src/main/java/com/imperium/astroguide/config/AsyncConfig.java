@@ -32,4 +32,15 @@ public class AsyncConfig {
         executor.initialize();
         return executor;
     }
+
+    @Bean(name = "ragTaskExecutor")
+    public Executor ragTaskExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(4);
+        executor.setMaxPoolSize(16);
+        executor.setQueueCapacity(128);
+        executor.setThreadNamePrefix("rag-search-");
+        executor.initialize();
+        return executor;
+    }
 }
@@ -0,0 +1,62 @@
+package com.imperium.astroguide.config;
+
+import com.imperium.astroguide.ingest.CachingTokenCounter;
+import com.imperium.astroguide.ingest.HuggingFaceTokenCounter;
+import com.imperium.astroguide.ingest.TextChunker;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.lang.Nullable;
+
+import java.nio.file.Path;
+
+/**
+ * 摄入分块配置。
+ * <p>
+ * {@code app.ingest.chunk-unit=chars}（默认）按字符分块；{@code tokens} 时加载 tokenizer.json（默认与本地 embedding 模型相同），
+ * 按 token 度量块大小与重叠，句子 token 数经 LRU 缓存。{@code fit-model-window=true} 时块大小取模型窗口减去特殊 token 数，
+ * 使每块占满 embedding 输入而不被截断（句间拼接余量见 {@link TextChunker}）。tokenizer 加载失败直接启动失败。
+ */
+@Configuration
+public class ChunkingConfig {
+
+    @Value("${app.ingest.chunk-size:600}")
+    private int chunkSize;
+
+    @Value("${app.ingest.chunk-overlap:80}")
+    private int chunkOverlap;
+
+    @Value("${app.ingest.tokens.tokenizer-path:models/embedding/tokenizer.json}")
+    private String tokenizerPath;
+
+    @Value("${app.ingest.tokens.chunk-size:256}")
+    private int tokenChunkSize;
+
+    @Value("${app.ingest.tokens.chunk-overlap:32}")
+    private int tokenChunkOverlap;
+
+    @Value("${app.ingest.tokens.fit-model-window:false}")
+    private boolean fitModelWindow;
+
+    @Value("${app.ingest.tokens.model-window:512}")
+    private int modelWindow;
+
+    @Value("${app.ingest.tokens.cache-entries:20000}")
+    private int cacheEntries;
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "app.ingest.chunk-unit", havingValue = "tokens")
+    public HuggingFaceTokenCounter ingestTokenCounter() throws Exception {
+        return new HuggingFaceTokenCounter(Path.of(tokenizerPath));
+    }
+
+    @Bean
+    public TextChunker textChunker(@Nullable HuggingFaceTokenCounter ingestTokenCounter) {
+        if (ingestTokenCounter == null) {
+            return new TextChunker(chunkSize, chunkOverlap);
+        }
+        int tokens = fitModelWindow ? modelWindow - ingestTokenCounter.specialTokens() : tokenChunkSize;
+        return TextChunker.tokens(tokens, tokenChunkOverlap, new CachingTokenCounter(ingestTokenCounter, cacheEntries));
+    }
+}
@@ -0,0 +1,47 @@
+package com.imperium.astroguide.config;
+
+import com.imperium.astroguide.ai.embedding.OnnxEmbeddingModel;
+import com.imperium.astroguide.infra.onnx.OnnxTextModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.nio.file.Path;
+
+/**
+ * 本地 ONNX embedding 配置。
+ * <p>
+ * 仅当 {@code app.embedding.local.enabled=true} 时创建，并作为 {@code @Primary} EmbeddingModel
+ * 替代远程 embedding：检索与摄入共用同一模型，保证查询向量与库内向量处于同一向量空间。
+ * 维度在启动时与 Qdrant 集合校验（见 {@link VectorStoreConfig}），不一致直接启动失败。
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.embedding.local.enabled", havingValue = "true")
+public class LocalEmbeddingConfig {
+
+    @Value("${app.embedding.local.model-path}")
+    private String modelPath;
+
+    @Value("${app.embedding.local.tokenizer-path}")
+    private String tokenizerPath;
+
+    @Value("${app.embedding.local.max-length:512}")
+    private int maxLength;
+
+    @Value("${app.embedding.local.batch-size:16}")
+    private int batchSize;
+
+    /** 0 表示按 CPU 核数 */
+    @Value("${app.embedding.local.threads:0}")
+    private int threads;
+
+    @Bean(destroyMethod = "close")
+    @Primary
+    public OnnxEmbeddingModel localEmbeddingModel() throws Exception {
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        OnnxTextModel model = new OnnxTextModel(Path.of(modelPath), Path.of(tokenizerPath), maxLength, 1);
+        return new OnnxEmbeddingModel(model, batchSize, poolSize);
+    }
+}
@@ -0,0 +1,68 @@
+package com.imperium.astroguide.config;
+
+import com.imperium.astroguide.ai.rag.CrossEncoderReranker;
+import com.imperium.astroguide.infra.onnx.OnnxTextModel;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+import java.util.concurrent.Executor;
+
+/**
+ * cross-encoder 重排配置。
+ * <p>
+ * 仅当 {@code app.rag.rerank.enabled=true} 时加载 ONNX 模型并创建 {@link CrossEncoderReranker}；
+ * 未启用时检索链路保持原样（召回 top-k 直接进入摘录压缩）。
+ */
+@Configuration
+@ConditionalOnProperty(name = "app.rag.rerank.enabled", havingValue = "true")
+public class RerankConfig {
+
+    @Value("${app.rag.rerank.model-path}")
+    private String modelPath;
+
+    @Value("${app.rag.rerank.tokenizer-path}")
+    private String tokenizerPath;
+
+    @Value("${app.rag.rerank.max-length:512}")
+    private int maxLength;
+
+    @Value("${app.rag.rerank.candidates:30}")
+    private int candidates;
+
+    @Value("${app.rag.rerank.keep:3}")
+    private int keep;
+
+    @Value("${app.rag.rerank.time-budget-ms:300}")
+    private long timeBudgetMs;
+
+    @Value("${app.rag.rerank.batch-size:16}")
+    private int batchSize;
+
+    /** 同时在途的重排打分数上限（超时未结束的推理也计入） */
+    @Value("${app.rag.rerank.max-concurrent:2}")
+    private int maxConcurrent;
+
+    /** 0 表示 CPU 核数 / max-concurrent，保证并发推理不超订 CPU */
+    @Value("${app.rag.rerank.threads:0}")
+    private int threads;
+
+    @Bean(destroyMethod = "close")
+    public OnnxTextModel crossEncoderModel() throws Exception {
+        int intraOp = threads > 0 ? threads
+                : Math.max(1, Runtime.getRuntime().availableProcessors() / Math.max(1, maxConcurrent));
+        return new OnnxTextModel(Path.of(modelPath), Path.of(tokenizerPath), maxLength, intraOp);
+    }
+
+    @Bean
+    public CrossEncoderReranker crossEncoderReranker(OnnxTextModel crossEncoderModel,
+            @Qualifier("ragTaskExecutor") Executor ragTaskExecutor,
+            MeterRegistry meterRegistry) {
+        return new CrossEncoderReranker(CrossEncoderReranker.onnx(crossEncoderModel), ragTaskExecutor,
+                meterRegistry, candidates, keep, timeBudgetMs, batchSize, maxConcurrent);
+    }
+}
@@ -1,14 +1,17 @@
 package com.imperium.astroguide.config;
 
-import org.springframework.ai.embedding.EmbeddingModel;
 import org.springframework.ai.vectorstore.qdrant.QdrantVectorStore;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import com.imperium.astroguide.ai.embedding.EmbeddingDispatcher;
+import com.imperium.astroguide.infra.qdrant.MatryoshkaLayout;
+import com.imperium.astroguide.infra.qdrant.QdrantClientPool;
+import com.imperium.astroguide.infra.qdrant.QdrantCollectionInitializer;
+import com.imperium.astroguide.infra.qdrant.QdrantQuantization;
 import io.qdrant.client.QdrantClient;
-import io.qdrant.client.QdrantGrpcClient;
 
 /**
  * 条件性 Qdrant VectorStore 配置。
@@ -16,6 +19,13 @@ import io.qdrant.client.QdrantGrpcClient;
  * 仅当 {@code app.rag.enabled=true} 时才创建 VectorStore bean，
  * 避免 Qdrant 不可达时导致启动失败。
  * 替代了 {@code spring-ai-starter-vector-store-qdrant} 的自动配置。
+ * <p>
+ * Qdrant 连接由 {@link QdrantClientPool} 管理：多条带 keepalive 的 gRPC 连接，检索轮询使用；
+ * VectorStore 写入走首个连接，默认 deadline 取 {@code app.rag.qdrant.upsert-timeout-ms}。
+ * <p>
+ * VectorStore 的 embedding 经 {@link EmbeddingDispatcher} 与检索请求共同合批。
+ * <p>
+ * 集合由 {@link QdrantCollectionInitializer} 按 {@link QdrantQuantization} 与 {@link MatryoshkaLayout} 创建或迁移。
  */
 @Configuration
 @ConditionalOnProperty(name = "app.rag.enabled", havingValue = "true")
@@ -33,17 +43,44 @@ public class VectorStoreConfig {
     @Value("${spring.ai.vectorstore.qdrant.initialize-schema:true}")
     private boolean initializeSchema;
 
-    @Bean
-    public QdrantClient qdrantClient() {
-        QdrantGrpcClient grpcClient = QdrantGrpcClient.newBuilder(qdrantHost, qdrantPort, false).build();
-        return new QdrantClient(grpcClient);
+    @Value("${app.rag.qdrant.channels:4}")
+    private int channels;
+
+    @Value("${app.rag.qdrant.keepalive-time-ms:30000}")
+    private long keepAliveTimeMs;
+
+    @Value("${app.rag.qdrant.keepalive-timeout-ms:5000}")
+    private long keepAliveTimeoutMs;
+
+    @Value("${app.rag.qdrant.upsert-timeout-ms:30000}")
+    private long upsertTimeoutMs;
+
+    @Value("${app.rag.qdrant.quantization.migrate-existing:false}")
+    private boolean migrateExisting;
+
+    @Bean(destroyMethod = "close")
+    public QdrantClientPool qdrantClientPool() {
+        return QdrantClientPool.create(qdrantHost, qdrantPort, channels,
+                keepAliveTimeMs, keepAliveTimeoutMs, upsertTimeoutMs);
+    }
+
+    /** 连接归连接池所有，由池统一关闭 */
+    @Bean(destroyMethod = "")
+    public QdrantClient qdrantClient(QdrantClientPool qdrantClientPool) {
+        return qdrantClientPool.primary();
     }
 
     @Bean
-    public QdrantVectorStore vectorStore(QdrantClient qdrantClient, EmbeddingModel embeddingModel) {
-        return QdrantVectorStore.builder(qdrantClient, embeddingModel)
+    public QdrantVectorStore vectorStore(QdrantClient qdrantClient, EmbeddingDispatcher embeddingDispatcher,
+            QdrantQuantization quantization, MatryoshkaLayout matryoshkaLayout) throws Exception {
+        if (initializeSchema) {
+            QdrantCollectionInitializer.ensure(qdrantClient, collectionName, embeddingDispatcher.dimensions(),
+                    quantization, matryoshkaLayout, migrateExisting);
+        }
+        return QdrantVectorStore.builder(qdrantClient, embeddingDispatcher.asEmbeddingModel())
                 .collectionName(collectionName)
-                .initializeSchema(initializeSchema)
+                // 集合只由 QdrantCollectionInitializer 创建：Spring AI 自带的初始化只会建匿名向量、不带量化的集合
+                .initializeSchema(false)
                 .build();
     }
 }
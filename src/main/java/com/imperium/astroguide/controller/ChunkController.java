@@ -0,0 +1,80 @@
+package com.imperium.astroguide.controller;
+
+import com.imperium.astroguide.config.RequestIdSupport;
+import com.imperium.astroguide.model.dto.response.ChunkResponse;
+import com.imperium.astroguide.service.ChunkCatalogService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * 知识库 chunk 目录查询：citation 展开与按来源枚举，不经向量库。
+ * chunk 写入后内容不变，单条查询允许客户端缓存。
+ */
+@RestController
+@RequestMapping("/api/v0/chunks")
+@Tag(name = "Chunks", description = "知识库 chunk 目录")
+public class ChunkController {
+
+    private static final int MAX_LIST = 1000;
+
+    private final ChunkCatalogService chunkCatalogService;
+
+    public ChunkController(ChunkCatalogService chunkCatalogService) {
+        this.chunkCatalogService = chunkCatalogService;
+    }
+
+    @GetMapping("/{id}")
+    @Operation(summary = "查询 chunk", description = "按 citation.chunkId 返回 chunk 全文与 metadata")
+    public ResponseEntity<?> get(
+            @Parameter(description = "chunk id", required = true) @PathVariable String id,
+            HttpServletRequest request) {
+        if (!chunkCatalogService.enabled()) {
+            return error(HttpStatus.NOT_FOUND, "not_found", "Chunk catalog is disabled", request);
+        }
+        Optional<ChunkResponse> chunk = chunkCatalogService.lookup(id);
+        if (chunk.isEmpty()) {
+            return error(HttpStatus.NOT_FOUND, "not_found", "Chunk not found", request);
+        }
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.maxAge(Duration.ofHours(1)).cachePrivate())
+                .body(chunk.get());
+    }
+
+    @GetMapping
+    @Operation(summary = "按来源列出 chunk", description = "返回某来源写入的 chunk，按序号升序")
+    public ResponseEntity<?> listBySource(
+            @Parameter(description = "来源显示名", required = true) @RequestParam String source,
+            @Parameter(description = "最多返回条数") @RequestParam(defaultValue = "200") int limit,
+            HttpServletRequest request) {
+        if (!chunkCatalogService.enabled()) {
+            return error(HttpStatus.NOT_FOUND, "not_found", "Chunk catalog is disabled", request);
+        }
+        List<ChunkResponse> chunks = chunkCatalogService.listBySource(source, Math.min(MAX_LIST, Math.max(1, limit)));
+        return ResponseEntity.ok(Map.of("source", source, "chunks", chunks));
+    }
+
+    private static ResponseEntity<Map<String, Object>> error(
+            HttpStatus status, String code, String message, HttpServletRequest request) {
+        Map<String, Object> err = new HashMap<>();
+        err.put("code", code);
+        err.put("message", message);
+        err.put("requestId", RequestIdSupport.resolve(request));
+        return ResponseEntity.status(status).body(Map.of("error", err));
+    }
+}
@@ -1,20 +1,33 @@
 package com.imperium.astroguide.controller;
 
+import com.imperium.astroguide.infra.qdrant.KnowledgeSnapshotService;
 import com.imperium.astroguide.model.dto.request.IngestTextRequest;
+import com.imperium.astroguide.model.dto.response.IngestJobResponse;
 import com.imperium.astroguide.model.dto.response.IngestResponse;
+import com.imperium.astroguide.service.IngestJobService;
 import com.imperium.astroguide.service.IngestService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Map;
 
 /**
  * 资料摄入接口：上传 PDF/EPUB/TXT/MD 或提交文本，写入 Qdrant 向量库供 RAG 检索。
+ * 文件走异步任务（可查询进度、中断后续传），文本同步写入；同一来源重新摄入只写入变化的 chunk 并清理删去的内容，
+ * 也可按来源整体删除。
+ * 另提供知识库快照的下载与导入，重建环境时免去重新 embedding。
  */
 @RestController
 @RequestMapping("/api/v0/ingest")
@@ -22,25 +35,57 @@ import org.springframework.web.multipart.MultipartFile;
 public class IngestController {
 
     private final IngestService ingestService;
+    private final IngestJobService ingestJobService;
+    private final KnowledgeSnapshotService snapshotService;
 
-    public IngestController(IngestService ingestService) {
+    public IngestController(IngestService ingestService,
+            IngestJobService ingestJobService,
+            KnowledgeSnapshotService snapshotService) {
         this.ingestService = ingestService;
+        this.ingestJobService = ingestJobService;
+        this.snapshotService = snapshotService;
     }
 
     /**
-     * 上传文件并摄入（PDF、EPUB、TXT、MD）。
+     * 上传文件并登记异步摄入任务（PDF、EPUB、TXT、MD），立即返回任务 id；进度经 {@code GET /jobs/{jobId}} 查询。
      * 根据文件名或 Content-Type 自动识别格式。
      */
     @PostMapping(value = "/file", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    @Operation(summary = "上传文件摄入", description = "支持 PDF、EPUB、TXT、MD；解析后分块并写入向量库")
-    public ResponseEntity<IngestResponse> ingestFile(
+    @Operation(summary = "上传文件摄入", description = "支持 PDF、EPUB、TXT、MD；文件暂存后由后台任务解析、分块并分批写入向量库，返回任务 id")
+    public ResponseEntity<?> ingestFile(
             @Parameter(description = "文件（PDF/EPUB/TXT/MD）", required = true)
             @RequestParam("file") MultipartFile file,
             @Parameter(description = "可选，覆盖来源显示名（如书名）")
             @RequestParam(value = "sourceName", required = false)
-            @Schema(example = "《基础天文学》") String sourceName) {
-        IngestResponse response = ingestService.ingestFromFile(file, sourceName);
-        return ResponseEntity.ok(response);
+            @Schema(example = "《基础天文学》") String sourceName,
+            @Parameter(description = "可选，正文语言 en | zh；缺省按文字自动判定")
+            @RequestParam(value = "language", required = false) String language,
+            @Parameter(description = "可选，适用难度 basic | intermediate | advanced；缺省表示不限")
+            @RequestParam(value = "level", required = false) String level) {
+        try {
+            IngestJobResponse job = ingestJobService.submit(file, sourceName, language, level);
+            return ResponseEntity.accepted()
+                    .header(HttpHeaders.LOCATION, "/api/v0/ingest/jobs/" + job.getJobId())
+                    .body(job);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of("message", e.getMessage()));
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("message", "Failed to store upload: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * 查询异步摄入任务的阶段与进度。
+     */
+    @GetMapping("/jobs/{jobId}")
+    @Operation(summary = "查询摄入任务", description = "返回任务状态、阶段（parsing/embedding/stored）与已提交批次 N（解析结束后给出总数 M）")
+    public ResponseEntity<?> getJob(@Parameter(description = "任务 id", required = true) @PathVariable String jobId) {
+        return ingestJobService.find(jobId)
+                .<ResponseEntity<?>>map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND).body(Map.of("message", "Ingest job not found")));
     }
 
     /**
@@ -51,7 +96,73 @@ public class IngestController {
     public ResponseEntity<IngestResponse> ingestText(@Valid @RequestBody IngestTextRequest request) {
         IngestResponse response = ingestService.ingestFromText(
                 request.getContent(),
-                request.getSourceName());
+                request.getSourceName(),
+                request.getLanguage(),
+                request.getLevel());
         return ResponseEntity.ok(response);
     }
+
+    /**
+     * 删除某来源的全部 chunk：向量库按 payload 中的来源过滤删除，不逐点查询。
+     */
+    @DeleteMapping("/sources/{source}")
+    @Operation(summary = "删除来源", description = "按来源名删除向量库与 chunk 目录中的全部 chunk；来源名含特殊字符时需 URL 编码")
+    public ResponseEntity<?> deleteSource(
+            @Parameter(description = "来源显示名（与摄入时一致）", required = true) @PathVariable String source) {
+        try {
+            return ResponseEntity.ok(ingestService.deleteSource(source));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of("message", e.getMessage()));
+        }
+    }
+
+    /**
+     * 流式下载知识库快照（文本、metadata 与向量）。
+     */
+    @GetMapping(value = "/snapshot", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    @Operation(summary = "导出知识库快照", description = "按批 scroll 集合并流式写出二进制快照，内存占用与知识库大小无关")
+    public ResponseEntity<?> exportSnapshot() {
+        if (!snapshotService.available()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(Map.of("message", "RAG is disabled; vector store not available"));
+        }
+        StreamingResponseBody body = out -> {
+            try {
+                snapshotService.export(out);
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IOException("Snapshot export failed: " + e.getMessage(), e);
+            }
+        };
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"astroguide-kb-" + LocalDate.now() + ".agks\"")
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .body(body);
+    }
+
+    /**
+     * 从快照目录导入快照：批量并行 upsert，中断后再次调用从上次完成的批次继续。
+     */
+    @PostMapping("/snapshot/import")
+    @Operation(summary = "导入知识库快照", description = "读取快照目录下的文件并批量写入向量库；可断点续传")
+    public ResponseEntity<?> importSnapshot(
+            @Parameter(description = "快照目录（app.rag.snapshot.dir）下的文件名", required = true)
+            @RequestParam("file") String file) {
+        if (!snapshotService.available()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(Map.of("message", "RAG is disabled; vector store not available"));
+        }
+        try {
+            return ResponseEntity.ok(snapshotService.importSnapshot(file));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("message", e.getMessage()));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("message", "Snapshot import failed: " + e.getMessage()));
+        }
+    }
 }
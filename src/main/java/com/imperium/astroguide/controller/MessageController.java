@@ -95,8 +95,11 @@ public class MessageController {
         String messageId = "msg_" + UUID.randomUUID().toString().replace("-", "").substring(0, 16);
         LocalDateTime now = LocalDateTime.now();
 
-        String difficulty = body.getDifficulty() == null || body.getDifficulty().isBlank() ? "intermediate" : body.getDifficulty();
-        String language = body.getLanguage() == null || body.getLanguage().isBlank() ? "en" : body.getLanguage();
+        // 未指定时按默认档位与语言作答并保存；是否显式指定另行记录，检索只按显式指定的值缩小范围
+        boolean difficultyExplicit = body.getDifficulty() != null && !body.getDifficulty().isBlank();
+        boolean languageExplicit = body.getLanguage() != null && !body.getLanguage().isBlank();
+        String difficulty = difficultyExplicit ? body.getDifficulty() : "intermediate";
+        String language = languageExplicit ? body.getLanguage() : "en";
 
         Message message = new Message();
         message.setId(messageId);
@@ -105,6 +108,8 @@ public class MessageController {
         message.setContent(content);
         message.setDifficulty(difficulty);
         message.setLanguage(language);
+        message.setDifficultyExplicit(difficultyExplicit);
+        message.setLanguageExplicit(languageExplicit);
         message.setStatus("done");
         message.setClientMessageId(clientMessageId);
         message.setCreatedAt(now);
@@ -0,0 +1,26 @@
+package com.imperium.astroguide.infra.cache;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单机代次计数（不跨实例；多实例部署时其它实例依赖缓存 TTL 兜底）。
+ */
+@Component
+@ConditionalOnProperty(name = "app.redis.enabled", havingValue = "false", matchIfMissing = true)
+public class InMemoryKnowledgeBaseGeneration implements KnowledgeBaseGeneration {
+
+    private final AtomicLong generation = new AtomicLong();
+
+    @Override
+    public long current() {
+        return generation.get();
+    }
+
+    @Override
+    public long bump() {
+        return generation.incrementAndGet();
+    }
+}
@@ -0,0 +1,14 @@
+package com.imperium.astroguide.infra.cache;
+
+/**
+ * 知识库代次计数：每次成功写入向量库后递增，检索缓存键包含代次，旧代次结果自然失效。
+ */
+public interface KnowledgeBaseGeneration {
+
+    long current();
+
+    /**
+     * @return 递增后的代次
+     */
+    long bump();
+}
@@ -0,0 +1,53 @@
+package com.imperium.astroguide.infra.cache;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * 多实例共享代次计数（Redis INCR）。
+ * <p>
+ * 读到的代次在本地保留 refresh-ms，期间不再访问 Redis（检索缓存每次查找都要取代次）；
+ * 本实例换代立即生效，其它实例最多晚 refresh-ms 看到。Redis 读取失败时抛出，由调用方按缓存未命中处理。
+ */
+@Component
+@ConditionalOnProperty(name = "app.redis.enabled", havingValue = "true")
+public class RedisKnowledgeBaseGeneration implements KnowledgeBaseGeneration {
+
+    private static final String KEY = "astroguide:kb:generation";
+
+    private final StringRedisTemplate redisTemplate;
+    private final long refreshMs;
+    private volatile Snapshot snapshot;
+
+    public RedisKnowledgeBaseGeneration(StringRedisTemplate redisTemplate,
+            @Value("${app.rag.cache.generation-refresh-ms:1000}") long refreshMs) {
+        this.redisTemplate = redisTemplate;
+        this.refreshMs = Math.max(0, refreshMs);
+    }
+
+    @Override
+    public long current() {
+        long now = System.currentTimeMillis();
+        Snapshot cached = snapshot;
+        if (cached != null && now - cached.readAtMs() < refreshMs) {
+            return cached.value();
+        }
+        String value = redisTemplate.opsForValue().get(KEY);
+        long current = value != null ? Long.parseLong(value) : 0L;
+        snapshot = new Snapshot(current, now);
+        return current;
+    }
+
+    @Override
+    public long bump() {
+        Long value = redisTemplate.opsForValue().increment(KEY);
+        long current = value != null ? value : 0L;
+        snapshot = new Snapshot(current, System.currentTimeMillis());
+        return current;
+    }
+
+    private record Snapshot(long value, long readAtMs) {
+    }
+}
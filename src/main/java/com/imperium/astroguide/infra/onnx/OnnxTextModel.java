@@ -0,0 +1,120 @@
+package com.imperium.astroguide.infra.onnx;
+
+import ai.djl.huggingface.tokenizers.Encoding;
+import ai.djl.huggingface.tokenizers.HuggingFaceTokenizer;
+import ai.djl.util.PairList;
+import ai.onnxruntime.OnnxTensor;
+import ai.onnxruntime.OnnxValue;
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 进程内 CPU 推理的 Transformer 文本模型（ONNX Runtime + HuggingFace tokenizer.json）。
+ * <p>
+ * 同一批输入按批内最长序列补齐后一次推理；返回首个输出张量（embedding 模型为 last_hidden_state 或句向量，
+ * cross-encoder 为 logits）。OrtSession 线程安全，可被多个线程并发调用。
+ */
+public class OnnxTextModel implements AutoCloseable {
+
+    private final OrtEnvironment environment;
+    private final OrtSession session;
+    private final HuggingFaceTokenizer tokenizer;
+    private final boolean needsTokenTypeIds;
+
+    /**
+     * @param modelPath      ONNX 模型文件
+     * @param tokenizerPath  tokenizer.json
+     * @param maxLength      最大 token 数，超出截断
+     * @param intraOpThreads 单次推理内部并行线程数
+     */
+    public OnnxTextModel(Path modelPath, Path tokenizerPath, int maxLength, int intraOpThreads)
+            throws IOException, OrtException {
+        this.environment = OrtEnvironment.getEnvironment();
+        try (OrtSession.SessionOptions options = new OrtSession.SessionOptions()) {
+            options.setOptimizationLevel(OrtSession.SessionOptions.OptLevel.ALL_OPT);
+            options.setIntraOpNumThreads(Math.max(1, intraOpThreads));
+            options.setInterOpNumThreads(1);
+            this.session = environment.createSession(modelPath.toString(), options);
+        }
+        this.tokenizer = HuggingFaceTokenizer.newInstance(tokenizerPath, Map.of(
+                "maxLength", String.valueOf(maxLength),
+                "truncation", "true",
+                "padding", "true"));
+        this.needsTokenTypeIds = session.getInputNames().contains("token_type_ids");
+    }
+
+    /** 单文本输入 */
+    public Output run(List<String> texts) throws OrtException {
+        return infer(tokenizer.batchEncode(texts));
+    }
+
+    /** 句对输入（cross-encoder：query + passage） */
+    public Output runPairs(List<String> first, List<String> second) throws OrtException {
+        PairList<String, String> pairs = new PairList<>(first, second);
+        return infer(tokenizer.batchEncode(pairs));
+    }
+
+    private Output infer(Encoding[] encodings) throws OrtException {
+        int batch = encodings.length;
+        int seq = 0;
+        for (Encoding e : encodings) {
+            seq = Math.max(seq, e.getIds().length);
+        }
+        long[] ids = new long[batch * seq];
+        long[] mask = new long[batch * seq];
+        long[] types = new long[batch * seq];
+        for (int b = 0; b < batch; b++) {
+            long[] eIds = encodings[b].getIds();
+            long[] eMask = encodings[b].getAttentionMask();
+            long[] eTypes = encodings[b].getTypeIds();
+            System.arraycopy(eIds, 0, ids, b * seq, eIds.length);
+            System.arraycopy(eMask, 0, mask, b * seq, eMask.length);
+            System.arraycopy(eTypes, 0, types, b * seq, eTypes.length);
+        }
+        long[] shape = {batch, seq};
+        Map<String, OnnxTensor> inputs = new HashMap<>();
+        try {
+            inputs.put("input_ids", OnnxTensor.createTensor(environment, LongBuffer.wrap(ids), shape));
+            inputs.put("attention_mask", OnnxTensor.createTensor(environment, LongBuffer.wrap(mask), shape));
+            if (needsTokenTypeIds) {
+                inputs.put("token_type_ids", OnnxTensor.createTensor(environment, LongBuffer.wrap(types), shape));
+            }
+            try (OrtSession.Result result = session.run(inputs)) {
+                OnnxValue first = result.get(0);
+                OnnxTensor tensor = (OnnxTensor) first;
+                FloatBuffer buffer = tensor.getFloatBuffer();
+                float[] data = new float[buffer.remaining()];
+                buffer.get(data);
+                return new Output(data, tensor.getInfo().getShape(), mask, seq);
+            }
+        } finally {
+            inputs.values().forEach(OnnxTensor::close);
+        }
+    }
+
+    @Override
+    public void close() throws OrtException {
+        tokenizer.close();
+        session.close();
+    }
+
+    /**
+     * 推理输出（行优先展开）。
+     *
+     * @param data          首个输出张量数据
+     * @param shape         张量形状：[batch, seq, hidden] 或 [batch, n]
+     * @param attentionMask 输入 attention mask，[batch * seqLength]
+     * @param seqLength     补齐后的序列长度
+     */
+    public record Output(float[] data, long[] shape, long[] attentionMask, int seqLength) {
+    }
+}
@@ -0,0 +1,358 @@
+package com.imperium.astroguide.infra.qdrant;
+
+import com.imperium.astroguide.infra.cache.KnowledgeBaseGeneration;
+import com.imperium.astroguide.infra.resilience.RetryScheduler;
+import com.imperium.astroguide.model.entity.KnowledgeChunk;
+import com.imperium.astroguide.service.ChunkCatalogService;
+import io.qdrant.client.QdrantClient;
+import io.qdrant.client.ValueFactory;
+import io.qdrant.client.WithPayloadSelectorFactory;
+import io.qdrant.client.WithVectorsSelectorFactory;
+import io.qdrant.client.grpc.Collections;
+import io.qdrant.client.grpc.JsonWithInt;
+import io.qdrant.client.grpc.Points;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 知识库快照导出/导入（格式见 {@link SnapshotCodec}），重建环境时免去重新解析与 embedding。
+ * <p>
+ * 导出：按 batch-size 分页 scroll 集合（含 payload 与向量），每页写一帧；正文由 chunk 目录持有时（payload 不含正文）
+ * 按页从目录补全正文，快照始终自带正文。
+ * <p>
+ * 导入：单线程顺序读帧，workers 个线程并行写入，在途帧数受限（内存有界）；目录启用时每帧先 upsert 目录行再 upsert 点位
+ * （与摄入顺序一致），目录持有正文时点位 payload 不写正文；失败的帧按 {@link RetryScheduler} 退避重试；
+ * 连续完成的最大帧号写入 {@code <快照>.progress}，中断后再次导入从其后一帧继续（upsert 按 id 幂等，重复写入无害），
+ * 全部完成后删除进度文件并递增知识库代次。
+ */
+@Component
+public class KnowledgeSnapshotService {
+
+    private static final Logger log = LoggerFactory.getLogger(KnowledgeSnapshotService.class);
+    private static final String PROGRESS_SUFFIX = ".progress";
+
+    @Nullable
+    private final QdrantClientPool clientPool;
+    private final KnowledgeBaseGeneration knowledgeBaseGeneration;
+    private final ChunkCatalogService chunkCatalogService;
+    private final RetryScheduler retryScheduler;
+    private final String collectionName;
+    private final Path snapshotDir;
+    private final int batchSize;
+    private final int workers;
+    private final long timeoutMs;
+    private final ExecutorService pool;
+
+    public KnowledgeSnapshotService(@Nullable QdrantClientPool clientPool,
+            KnowledgeBaseGeneration knowledgeBaseGeneration,
+            ChunkCatalogService chunkCatalogService,
+            RetryScheduler retryScheduler,
+            @Value("${spring.ai.vectorstore.qdrant.collection-name:astro_knowledge}") String collectionName,
+            @Value("${app.rag.snapshot.dir:snapshots}") String snapshotDir,
+            @Value("${app.rag.snapshot.batch-size:256}") int batchSize,
+            @Value("${app.rag.snapshot.workers:4}") int workers,
+            @Value("${app.rag.qdrant.upsert-timeout-ms:30000}") long timeoutMs) {
+        this.clientPool = clientPool;
+        this.knowledgeBaseGeneration = knowledgeBaseGeneration;
+        this.chunkCatalogService = chunkCatalogService;
+        this.retryScheduler = retryScheduler;
+        this.collectionName = collectionName;
+        this.snapshotDir = Path.of(snapshotDir).toAbsolutePath().normalize();
+        this.batchSize = Math.max(1, batchSize);
+        this.workers = Math.max(1, workers);
+        this.timeoutMs = timeoutMs;
+        AtomicInteger seq = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(this.workers, r -> {
+            Thread t = new Thread(r, "kb-snapshot-import-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    public boolean available() {
+        return clientPool != null;
+    }
+
+    /**
+     * @param batches        写入/导入的帧数
+     * @param skippedBatches 导入时因断点续传跳过的帧数
+     */
+    public record Summary(String collection, long points, int batches, int skippedBatches, long elapsedMs) {
+    }
+
+    public Summary export(OutputStream target) throws Exception {
+        QdrantClient client = requireClient();
+        long start = System.currentTimeMillis();
+        SnapshotCodec.Header header = new SnapshotCodec.Header(collectionName, vectorSpecs(client));
+        long points = 0;
+        int batches = 0;
+        try (SnapshotCodec.Writer writer = new SnapshotCodec.Writer(target, header)) {
+            Points.PointId offset = null;
+            do {
+                Points.ScrollPoints.Builder scroll = Points.ScrollPoints.newBuilder()
+                        .setCollectionName(collectionName)
+                        .setLimit(batchSize)
+                        .setWithPayload(WithPayloadSelectorFactory.enable(true))
+                        .setWithVectors(WithVectorsSelectorFactory.enable(true));
+                if (offset != null) {
+                    scroll.setOffset(offset);
+                }
+                Points.ScrollResponse page = client.scrollAsync(scroll.build(), Duration.ofMillis(timeoutMs)).get();
+                List<Points.PointStruct> frame = new ArrayList<>(page.getResultCount());
+                for (Points.RetrievedPoint point : page.getResultList()) {
+                    frame.add(SnapshotCodec.toPointStruct(point));
+                }
+                writer.writeFrame(withCatalogText(frame));
+                points += frame.size();
+                batches += frame.isEmpty() ? 0 : 1;
+                offset = page.hasNextPageOffset() ? page.getNextPageOffset() : null;
+            } while (offset != null);
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        log.info("Knowledge snapshot exported: collection={} points={} batches={} elapsedMs={}",
+                collectionName, points, batches, elapsed);
+        return new Summary(collectionName, points, batches, 0, elapsed);
+    }
+
+    /**
+     * @param fileName 快照目录下的文件名（不允许路径穿越）
+     */
+    public Summary importSnapshot(String fileName) throws Exception {
+        QdrantClient client = requireClient();
+        Path file = resolve(fileName);
+        Path progressFile = file.resolveSibling(file.getFileName() + PROGRESS_SUFFIX);
+        int resumeAfter = readProgress(progressFile);
+        long start = System.currentTimeMillis();
+
+        Semaphore inFlight = new Semaphore(workers * 2);
+        ProgressTracker tracker = new ProgressTracker(progressFile, resumeAfter);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicLong points = new AtomicLong();
+        List<CompletableFuture<?>> pending = new ArrayList<>();
+        int frameIndex = 0;
+        int skipped = 0;
+        try (InputStream in = Files.newInputStream(file);
+             SnapshotCodec.Reader reader = new SnapshotCodec.Reader(in)) {
+            validate(client, reader.header());
+            List<Points.PointStruct> frame;
+            while (failure.get() == null && (frame = reader.nextFrame()) != null) {
+                int index = frameIndex++;
+                if (index <= resumeAfter) {
+                    skipped++;
+                    continue;
+                }
+                inFlight.acquire();
+                List<Points.PointStruct> batch = frame;
+                pending.add(retryScheduler.<Void>submit(() -> {
+                    restoreCatalog(batch);
+                    upsert(batch);
+                    return null;
+                }, pool, (attempt, delayMs, e) -> log.warn(
+                        "Snapshot batch {} upsert failed (attempt {}/{}), retrying in {} ms: {}",
+                        index, attempt, retryScheduler.maxAttempts(), delayMs, e.getMessage()))
+                        .handle((ignored, e) -> {
+                            try {
+                                if (e != null) {
+                                    failure.compareAndSet(null, e instanceof CompletionException && e.getCause() != null
+                                            ? e.getCause() : e);
+                                } else {
+                                    points.addAndGet(batch.size());
+                                    tracker.completed(index);
+                                }
+                            } catch (IOException io) {
+                                failure.compareAndSet(null, io);
+                            } finally {
+                                inFlight.release();
+                            }
+                            return null;
+                        }));
+                pending.removeIf(CompletableFuture::isDone);
+            }
+        } finally {
+            // 读帧出错时也等在途批次结束，进度文件只记录真正写入的帧
+            CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).join();
+        }
+        if (failure.get() != null) {
+            throw new IllegalStateException("Snapshot import stopped after batch " + tracker.watermark()
+                    + "; re-run to resume: " + failure.get().getMessage(), failure.get());
+        }
+        Files.deleteIfExists(progressFile);
+        long generation = knowledgeBaseGeneration.bump();
+        long elapsed = System.currentTimeMillis() - start;
+        log.info("Knowledge snapshot imported: file={} points={} batches={} skipped={} elapsedMs={} kbGeneration={}",
+                file.getFileName(), points.get(), frameIndex, skipped, elapsed, generation);
+        return new Summary(collectionName, points.get(), frameIndex, skipped, elapsed);
+    }
+
+    /** 正文为空的点位（正文只在目录中）按 id 从目录补全 */
+    private List<Points.PointStruct> withCatalogText(List<Points.PointStruct> frame) {
+        if (!chunkCatalogService.ownsText() || frame.isEmpty()) {
+            return frame;
+        }
+        Map<String, KnowledgeChunk> rows = chunkCatalogService.findByIds(
+                frame.stream().map(point -> QdrantPayloads.pointId(point.getId())).toList());
+        List<Points.PointStruct> out = new ArrayList<>(frame.size());
+        for (Points.PointStruct point : frame) {
+            KnowledgeChunk row = rows.get(QdrantPayloads.pointId(point.getId()));
+            out.add(row != null && text(point).isEmpty()
+                    ? point.toBuilder().putPayload(QdrantPayloads.CONTENT_FIELD, ValueFactory.value(row.getContent())).build()
+                    : point);
+        }
+        return out;
+    }
+
+    /** 由快照中的正文与 payload 重建目录行；无正文的点位（旧快照）不写，以免覆盖目录中已有的正文 */
+    private void restoreCatalog(List<Points.PointStruct> batch) {
+        if (!chunkCatalogService.enabled()) {
+            return;
+        }
+        List<Document> documents = new ArrayList<>(batch.size());
+        for (Points.PointStruct point : batch) {
+            String text = text(point);
+            if (text.isEmpty()) {
+                continue;
+            }
+            Map<String, Object> metadata = QdrantPayloads.toObjectMap(point.getPayloadMap());
+            metadata.remove(QdrantPayloads.CONTENT_FIELD);
+            metadata.values().removeIf(Objects::isNull);
+            documents.add(Document.builder()
+                    .id(QdrantPayloads.pointId(point.getId()))
+                    .text(text)
+                    .metadata(metadata)
+                    .build());
+        }
+        chunkCatalogService.saveAll(documents);
+    }
+
+    private void upsert(List<Points.PointStruct> batch) throws Exception {
+        List<Points.PointStruct> points = batch;
+        if (chunkCatalogService.ownsText()) {
+            points = batch.stream().map(point -> point.toBuilder()
+                    .putPayload(QdrantPayloads.CONTENT_FIELD, ValueFactory.value("")).build()).toList();
+        }
+        clientPool.next().upsertAsync(Points.UpsertPoints.newBuilder()
+                .setCollectionName(collectionName)
+                .addAllPoints(points)
+                .setWait(true)
+                .build(), Duration.ofMillis(timeoutMs)).get();
+    }
+
+    private static String text(Points.PointStruct point) {
+        JsonWithInt.Value content = point.getPayloadMap().get(QdrantPayloads.CONTENT_FIELD);
+        return content != null ? content.getStringValue() : "";
+    }
+
+    /** 快照向量布局须与目标集合一致（名称与维度），否则拒绝导入 */
+    private void validate(QdrantClient client, SnapshotCodec.Header header) throws Exception {
+        List<SnapshotCodec.VectorSpec> target = vectorSpecs(client);
+        if (!new HashSet<>(target).equals(new HashSet<>(header.vectors()))) {
+            throw new IllegalStateException("Snapshot vectors " + header.vectors()
+                    + " do not match collection " + collectionName + " " + target);
+        }
+    }
+
+    private List<SnapshotCodec.VectorSpec> vectorSpecs(QdrantClient client) throws Exception {
+        Collections.VectorsConfig config = client.getCollectionInfoAsync(collectionName).get()
+                .getConfig().getParams().getVectorsConfig();
+        if (!config.hasParamsMap()) {
+            return List.of(new SnapshotCodec.VectorSpec("", (int) config.getParams().getSize()));
+        }
+        List<SnapshotCodec.VectorSpec> specs = new ArrayList<>();
+        for (Map.Entry<String, Collections.VectorParams> entry : config.getParamsMap().getMapMap().entrySet()) {
+            specs.add(new SnapshotCodec.VectorSpec(entry.getKey(), (int) entry.getValue().getSize()));
+        }
+        return specs;
+    }
+
+    private Path resolve(String fileName) {
+        Path file = snapshotDir.resolve(fileName == null ? "" : fileName).normalize();
+        if (!file.startsWith(snapshotDir) || file.equals(snapshotDir)) {
+            throw new IllegalArgumentException("Snapshot file must be inside " + snapshotDir);
+        }
+        if (!Files.isRegularFile(file)) {
+            throw new IllegalArgumentException("Snapshot file not found: " + fileName);
+        }
+        return file;
+    }
+
+    private QdrantClient requireClient() {
+        if (clientPool == null) {
+            throw new IllegalStateException("RAG is disabled; vector store not available");
+        }
+        return clientPool.primary();
+    }
+
+    static int readProgress(Path progressFile) throws IOException {
+        if (!Files.exists(progressFile)) {
+            return -1;
+        }
+        String text = Files.readString(progressFile, StandardCharsets.UTF_8).trim();
+        return text.isEmpty() ? -1 : Integer.parseInt(text);
+    }
+
+    /**
+     * 记录连续完成的最大帧号：乱序完成的帧先暂存，补齐空缺后推进水位并落盘（先写临时文件再原子替换）。
+     */
+    static final class ProgressTracker {
+
+        private final Path file;
+        private final TreeSet<Integer> completedAhead = new TreeSet<>();
+        private final AtomicInteger watermark;
+
+        ProgressTracker(Path file, int resumeAfter) {
+            this.file = file;
+            this.watermark = new AtomicInteger(resumeAfter);
+        }
+
+        int watermark() {
+            return watermark.get();
+        }
+
+        synchronized void completed(int index) throws IOException {
+            completedAhead.add(index);
+            int mark = watermark.get();
+            while (completedAhead.remove(mark + 1)) {
+                mark++;
+            }
+            if (mark != watermark.get()) {
+                watermark.set(mark);
+                Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+                Files.writeString(tmp, Integer.toString(mark), StandardCharsets.UTF_8);
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.imperium.astroguide.infra.qdrant;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Matryoshka 两阶段检索的向量布局：每个点同时存两条命名向量——
+ * {@value #PREFIX_VECTOR}（embedding 前 N 维截断后重新归一化，建 HNSW 索引、常驻内存，用于第一阶段召回）与
+ * {@value #FULL_VECTOR}（完整维度，放磁盘且不建索引，仅对第一阶段候选重排）。
+ * <p>
+ * 仅适用于以 Matryoshka 方式训练的模型（如 Qwen3-Embedding），其前缀本身即是有效的低维表示。
+ * 关闭时（默认）集合为单一匿名向量，与 QdrantVectorStore 的布局一致。
+ */
+@Component
+public class MatryoshkaLayout {
+
+    public static final String FULL_VECTOR = "full";
+    public static final String PREFIX_VECTOR = "prefix";
+
+    private final boolean enabled;
+    private final int prefixDims;
+    private final int candidateMultiplier;
+
+    public MatryoshkaLayout(@Value("${app.rag.qdrant.matryoshka.enabled:false}") boolean enabled,
+            @Value("${app.rag.qdrant.matryoshka.dims:512}") int prefixDims,
+            @Value("${app.rag.qdrant.matryoshka.candidate-multiplier:4}") int candidateMultiplier) {
+        this.enabled = enabled;
+        this.prefixDims = Math.max(1, prefixDims);
+        this.candidateMultiplier = Math.max(1, candidateMultiplier);
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    /** 实际前缀维度：不超过完整维度 */
+    public int prefixDims(int fullDims) {
+        return Math.min(prefixDims, fullDims);
+    }
+
+    /** 第一阶段候选数 */
+    public int candidates(int topK) {
+        return topK * candidateMultiplier;
+    }
+
+    /** 取前 dims 维并做 L2 归一化；全零向量原样返回 */
+    public static float[] truncate(float[] vector, int dims) {
+        int n = Math.min(dims, vector.length);
+        float[] out = new float[n];
+        double norm = 0;
+        for (int i = 0; i < n; i++) {
+            out[i] = vector[i];
+            norm += (double) vector[i] * vector[i];
+        }
+        if (norm > 0) {
+            float inv = (float) (1.0 / Math.sqrt(norm));
+            for (int i = 0; i < n; i++) {
+                out[i] *= inv;
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,95 @@
+package com.imperium.astroguide.infra.qdrant;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import io.grpc.ManagedChannel;
+import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
+import io.qdrant.client.QdrantClient;
+import io.qdrant.client.QdrantGrpcClient;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Qdrant gRPC 客户端池：多条 HTTP/2 连接轮询使用，避免高并发检索时在单连接上排队（单连接并发流受服务端限制）。
+ * <p>
+ * 每条连接开启 keepalive，空闲时也探活，及时发现被 NAT/负载均衡静默断开的连接。
+ */
+public class QdrantClientPool implements AutoCloseable {
+
+    private final List<QdrantClient> clients;
+    private final AtomicInteger cursor = new AtomicInteger();
+
+    QdrantClientPool(List<QdrantClient> clients) {
+        if (clients.isEmpty()) {
+            throw new IllegalArgumentException("Qdrant client pool requires at least one client");
+        }
+        this.clients = List.copyOf(clients);
+    }
+
+    /**
+     * @param channels         连接数
+     * @param keepAliveMs      keepalive ping 间隔
+     * @param keepAliveTimeout keepalive ping 超时
+     * @param defaultTimeoutMs 未显式指定 deadline 的调用（建集合、VectorStore 写入等）的默认超时
+     */
+    public static QdrantClientPool create(String host, int port, int channels,
+            long keepAliveMs, long keepAliveTimeout, long defaultTimeoutMs) {
+        List<QdrantClient> clients = new ArrayList<>();
+        for (int i = 0; i < Math.max(1, channels); i++) {
+            ManagedChannel channel = NettyChannelBuilder.forAddress(host, port)
+                    .usePlaintext()
+                    .keepAliveTime(keepAliveMs, TimeUnit.MILLISECONDS)
+                    .keepAliveTimeout(keepAliveTimeout, TimeUnit.MILLISECONDS)
+                    .keepAliveWithoutCalls(true)
+                    .build();
+            QdrantGrpcClient grpcClient = QdrantGrpcClient.newBuilder(channel, true)
+                    .withTimeout(Duration.ofMillis(defaultTimeoutMs))
+                    .build();
+            clients.add(new QdrantClient(grpcClient));
+        }
+        return new QdrantClientPool(clients);
+    }
+
+    /** 固定的首个客户端：供 VectorStore 及管理类操作使用 */
+    public QdrantClient primary() {
+        return clients.getFirst();
+    }
+
+    /** 轮询选取客户端：供高并发检索使用 */
+    public QdrantClient next() {
+        return clients.get(Math.floorMod(cursor.getAndIncrement(), clients.size()));
+    }
+
+    public int size() {
+        return clients.size();
+    }
+
+    /** 将 gRPC 返回的 ListenableFuture 转为 CompletableFuture，便于与其它异步阶段组合 */
+    public static <T> CompletableFuture<T> toCompletable(ListenableFuture<T> future) {
+        CompletableFuture<T> out = new CompletableFuture<>();
+        Futures.addCallback(future, new FutureCallback<>() {
+            @Override
+            public void onSuccess(T result) {
+                out.complete(result);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                out.completeExceptionally(t);
+            }
+        }, MoreExecutors.directExecutor());
+        return out;
+    }
+
+    @Override
+    public void close() {
+        clients.forEach(QdrantClient::close);
+    }
+}
@@ -0,0 +1,163 @@
+package com.imperium.astroguide.infra.qdrant;
+
+import com.imperium.astroguide.ingest.ChunkMetadata;
+import io.qdrant.client.QdrantClient;
+import io.qdrant.client.grpc.Collections;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 知识库集合初始化与量化迁移。
+ * <p>
+ * 集合不存在时按当前量化配置创建（Cosine，与 QdrantVectorStore 一致）；已存在且量化配置不一致时：
+ * {@code migrate-existing=true} 则原地更新集合的量化与原始向量存放位置，Qdrant 在后台由优化器重建段，
+ * 期间检索照常可用；否则仅告警，保持现状。
+ * <p>
+ * 启用 {@link MatryoshkaLayout} 时集合为两条命名向量：前缀向量带量化并建索引，完整向量放磁盘且不建索引（m=0）；
+ * 量化比对与迁移作用于前缀向量。匿名向量与命名向量布局之间无法原地转换，布局不一致时启动失败，需新建集合并重新摄入。
+ * <p>
+ * 已有集合的向量维度必须与当前 EmbeddingModel 一致（例如切换到本地 ONNX 模型后），否则启动失败，
+ * 避免运行期每次写入/检索才报维度错误。
+ * <p>
+ * 过滤用到的 payload 字段（父窗口 {@code parent_id}，检索范围 {@code source}/{@code language}/{@code level}）
+ * 补建 keyword 索引，来源版本 {@code source_version}（重新摄入后按版本删除旧 chunk）补建 integer 索引，已存在的跳过。
+ */
+public final class QdrantCollectionInitializer {
+
+    private static final Logger log = LoggerFactory.getLogger(QdrantCollectionInitializer.class);
+
+    /** 需要建索引的 payload 字段 */
+    static final Map<String, Collections.PayloadSchemaType> PAYLOAD_INDEXES = Map.of(
+            ChunkMetadata.PARENT_ID, Collections.PayloadSchemaType.Keyword,
+            ChunkMetadata.SOURCE, Collections.PayloadSchemaType.Keyword,
+            ChunkMetadata.LANGUAGE, Collections.PayloadSchemaType.Keyword,
+            ChunkMetadata.LEVEL, Collections.PayloadSchemaType.Keyword,
+            ChunkMetadata.SOURCE_VERSION, Collections.PayloadSchemaType.Integer);
+
+    private QdrantCollectionInitializer() {
+    }
+
+    public static void ensure(QdrantClient client, String collectionName, int dimensions,
+            QdrantQuantization quantization, MatryoshkaLayout layout, boolean migrateExisting) throws Exception {
+        ensureVectors(client, collectionName, dimensions, quantization, layout, migrateExisting);
+        ensurePayloadIndexes(client, collectionName, PAYLOAD_INDEXES);
+    }
+
+    static void ensurePayloadIndexes(QdrantClient client, String collectionName,
+            Map<String, Collections.PayloadSchemaType> indexes) throws Exception {
+        Set<String> existing = client.getCollectionInfoAsync(collectionName).get().getPayloadSchemaMap().keySet();
+        for (Map.Entry<String, Collections.PayloadSchemaType> index : indexes.entrySet()) {
+            if (existing.contains(index.getKey())) {
+                continue;
+            }
+            client.createPayloadIndexAsync(collectionName, index.getKey(), index.getValue(),
+                    null, true, null, null).get();
+            log.info("Qdrant payload index created: collection={} field={} type={}",
+                    collectionName, index.getKey(), index.getValue());
+        }
+    }
+
+    private static void ensureVectors(QdrantClient client, String collectionName, int dimensions,
+            QdrantQuantization quantization, MatryoshkaLayout layout, boolean migrateExisting) throws Exception {
+        if (!client.collectionExistsAsync(collectionName).get()) {
+            client.createCollectionAsync(createRequest(collectionName, dimensions, quantization, layout)).get();
+            log.info("Qdrant collection created: name={} dim={} quantization={} originalsOnDisk={} matryoshka={}",
+                    collectionName, dimensions, quantization.mode(), quantization.originalsOnDisk(),
+                    layout.enabled() ? layout.prefixDims(dimensions) : "off");
+            return;
+        }
+        Collections.CollectionConfig config = client.getCollectionInfoAsync(collectionName).get().getConfig();
+        boolean named = config.getParams().getVectorsConfig().hasParamsMap();
+        if (named != layout.enabled()) {
+            throw new IllegalStateException("Qdrant collection " + collectionName + " uses "
+                    + (named ? "named" : "single") + " vectors but app.rag.qdrant.matryoshka.enabled="
+                    + layout.enabled() + "; create a new collection and re-ingest");
+        }
+        long existingDims = named
+                ? config.getParams().getVectorsConfig().getParamsMap().getMapOrThrow(MatryoshkaLayout.FULL_VECTOR).getSize()
+                : config.getParams().getVectorsConfig().getParams().getSize();
+        if (existingDims != dimensions) {
+            throw new IllegalStateException("Qdrant collection " + collectionName + " has dimension " + existingDims
+                    + " but the embedding model produces " + dimensions
+                    + "; use a matching embedding model or a new collection");
+        }
+        boolean matches;
+        boolean onDisk;
+        if (named) {
+            Collections.VectorParams prefix = config.getParams().getVectorsConfig().getParamsMap()
+                    .getMapOrThrow(MatryoshkaLayout.PREFIX_VECTOR);
+            matches = quantization.matches(prefix);
+            onDisk = prefix.getOnDisk();
+        } else {
+            matches = quantization.matches(config);
+            onDisk = config.getParams().getVectorsConfig().getParams().getOnDisk();
+        }
+        if (matches && onDisk == quantization.originalsOnDisk()) {
+            return;
+        }
+        if (!migrateExisting) {
+            log.warn("Qdrant collection {} quantization differs from config (mode={}); "
+                            + "set app.rag.qdrant.quantization.migrate-existing=true to migrate in place",
+                    collectionName, quantization.mode());
+            return;
+        }
+        client.updateCollectionAsync(updateRequest(collectionName, quantization, named)).get();
+        log.info("Qdrant collection migrated: name={} quantization={} originalsOnDisk={} (segments rebuild in background)",
+                collectionName, quantization.mode(), quantization.originalsOnDisk());
+    }
+
+    /** 量化迁移：匿名向量改集合级配置；命名向量只改前缀向量，完整向量保持放磁盘、不量化 */
+    static Collections.UpdateCollection updateRequest(String collectionName, QdrantQuantization quantization,
+            boolean named) {
+        Collections.UpdateCollection.Builder update = Collections.UpdateCollection.newBuilder()
+                .setCollectionName(collectionName);
+        if (!named) {
+            return update.setQuantizationConfig(quantization.collectionConfigDiff())
+                    .setVectorsConfig(Collections.VectorsConfigDiff.newBuilder()
+                            .setParams(Collections.VectorParamsDiff.newBuilder()
+                                    .setOnDisk(quantization.originalsOnDisk())))
+                    .build();
+        }
+        return update.setVectorsConfig(Collections.VectorsConfigDiff.newBuilder()
+                        .setParamsMap(Collections.VectorParamsDiffMap.newBuilder()
+                                .putMap(MatryoshkaLayout.PREFIX_VECTOR, Collections.VectorParamsDiff.newBuilder()
+                                        .setQuantizationConfig(quantization.collectionConfigDiff())
+                                        .setOnDisk(quantization.originalsOnDisk())
+                                        .build())))
+                .build();
+    }
+
+    static Collections.CreateCollection createRequest(String collectionName, int dimensions,
+            QdrantQuantization quantization, MatryoshkaLayout layout) {
+        Collections.CreateCollection.Builder create = Collections.CreateCollection.newBuilder()
+                .setCollectionName(collectionName);
+        if (!layout.enabled()) {
+            create.setVectorsConfig(Collections.VectorsConfig.newBuilder()
+                    .setParams(Collections.VectorParams.newBuilder()
+                            .setSize(dimensions)
+                            .setDistance(Collections.Distance.Cosine)
+                            .setOnDisk(quantization.originalsOnDisk())));
+            quantization.collectionConfig().ifPresent(create::setQuantizationConfig);
+            return create.build();
+        }
+        Collections.VectorParams.Builder prefix = Collections.VectorParams.newBuilder()
+                .setSize(layout.prefixDims(dimensions))
+                .setDistance(Collections.Distance.Cosine)
+                .setOnDisk(quantization.originalsOnDisk());
+        quantization.collectionConfig().ifPresent(prefix::setQuantizationConfig);
+        Collections.VectorParams full = Collections.VectorParams.newBuilder()
+                .setSize(dimensions)
+                .setDistance(Collections.Distance.Cosine)
+                .setOnDisk(true)
+                .setHnswConfig(Collections.HnswConfigDiff.newBuilder().setM(0))
+                .build();
+        create.setVectorsConfig(Collections.VectorsConfig.newBuilder()
+                .setParamsMap(Collections.VectorParamsMap.newBuilder()
+                        .putMap(MatryoshkaLayout.PREFIX_VECTOR, prefix.build())
+                        .putMap(MatryoshkaLayout.FULL_VECTOR, full)));
+        return create.build();
+    }
+}
@@ -0,0 +1,43 @@
+package com.imperium.astroguide.infra.qdrant;
+
+import com.imperium.astroguide.ai.rag.RetrievalFilter;
+import com.imperium.astroguide.ingest.ChunkMetadata;
+import io.qdrant.client.ConditionFactory;
+import io.qdrant.client.grpc.Points;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * {@link RetrievalFilter} → Qdrant payload 过滤（字段均建有 keyword 索引，见 {@link QdrantCollectionInitializer}）。
+ * 语言与难度条件同时放行未标注该字段的点位。
+ */
+public final class QdrantFilters {
+
+    private QdrantFilters() {
+    }
+
+    public static Optional<Points.Filter> toFilter(RetrievalFilter filter) {
+        if (filter == null || filter.isEmpty()) {
+            return Optional.empty();
+        }
+        Points.Filter.Builder builder = Points.Filter.newBuilder();
+        if (filter.language() != null) {
+            builder.addMust(matchOrMissing(ChunkMetadata.LANGUAGE, List.of(filter.language())));
+        }
+        if (filter.maxLevel() != null) {
+            builder.addMust(matchOrMissing(ChunkMetadata.LEVEL, filter.allowedLevels()));
+        }
+        if (!filter.sources().isEmpty()) {
+            builder.addMust(ConditionFactory.matchKeywords(ChunkMetadata.SOURCE, filter.sources()));
+        }
+        return Optional.of(builder.build());
+    }
+
+    private static Points.Condition matchOrMissing(String field, List<String> values) {
+        return ConditionFactory.filter(Points.Filter.newBuilder()
+                .addShould(ConditionFactory.matchKeywords(field, values))
+                .addShould(ConditionFactory.isEmpty(field))
+                .build());
+    }
+}
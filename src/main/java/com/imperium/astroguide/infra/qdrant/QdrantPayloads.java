@@ -0,0 +1,120 @@
+package com.imperium.astroguide.infra.qdrant;
+
+import io.qdrant.client.ValueFactory;
+import io.qdrant.client.grpc.JsonWithInt;
+import io.qdrant.client.grpc.Points;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.document.DocumentMetadata;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Qdrant 原生点位与 Spring AI {@link Document} 的互转，payload 布局与 QdrantVectorStore 保持一致
+ * （正文存于 {@value #CONTENT_FIELD}，其余键为 metadata），以便直连客户端与 VectorStore 读写同一集合。
+ */
+public final class QdrantPayloads {
+
+    /** 与 Spring AI QdrantVectorStore 相同的正文字段名 */
+    public static final String CONTENT_FIELD = "doc_content";
+
+    private QdrantPayloads() {
+    }
+
+    public static Document toDocument(Points.ScoredPoint point) {
+        Map<String, Object> metadata = toObjectMap(point.getPayloadMap());
+        Object content = metadata.remove(CONTENT_FIELD);
+        metadata.put(DocumentMetadata.DISTANCE.value(), 1 - point.getScore());
+        return Document.builder()
+                .id(pointId(point.getId()))
+                .text(content != null ? content.toString() : "")
+                .metadata(metadata)
+                .score((double) point.getScore())
+                .build();
+    }
+
+    public static Document toDocument(Points.RetrievedPoint point) {
+        Map<String, Object> metadata = toObjectMap(point.getPayloadMap());
+        Object content = metadata.remove(CONTENT_FIELD);
+        return Document.builder()
+                .id(pointId(point.getId()))
+                .text(content != null ? content.toString() : "")
+                .metadata(metadata)
+                .build();
+    }
+
+    /** Document → payload：正文写入 {@value #CONTENT_FIELD}，metadata 逐键写入 */
+    public static Map<String, JsonWithInt.Value> toPayload(Document document) {
+        return toPayload(document, true);
+    }
+
+    /**
+     * @param includeText 为 false 时正文字段写空串（正文由 chunk 目录持有，读取时按 id 补全）
+     */
+    public static Map<String, JsonWithInt.Value> toPayload(Document document, boolean includeText) {
+        Map<String, JsonWithInt.Value> payload = new HashMap<>();
+        document.getMetadata().forEach((key, value) -> payload.put(key, toValue(value)));
+        payload.put(CONTENT_FIELD, ValueFactory.value(includeText && document.getText() != null ? document.getText() : ""));
+        return payload;
+    }
+
+    public static String pointId(Points.PointId id) {
+        return id.hasUuid() ? id.getUuid() : String.valueOf(id.getNum());
+    }
+
+    public static Map<String, Object> toObjectMap(Map<String, JsonWithInt.Value> payload) {
+        Map<String, Object> out = new HashMap<>();
+        if (payload != null) {
+            payload.forEach((key, value) -> out.put(key, toObject(value)));
+        }
+        return out;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static JsonWithInt.Value toValue(Object value) {
+        if (value == null) {
+            return ValueFactory.nullValue();
+        }
+        if (value instanceof String s) {
+            return ValueFactory.value(s);
+        }
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            return ValueFactory.value(((Number) value).longValue());
+        }
+        if (value instanceof Number n) {
+            return ValueFactory.value(n.doubleValue());
+        }
+        if (value instanceof Boolean b) {
+            return ValueFactory.value(b);
+        }
+        if (value instanceof Iterable<?> iterable) {
+            List<JsonWithInt.Value> list = new ArrayList<>();
+            iterable.forEach(v -> list.add(toValue(v)));
+            return ValueFactory.list(list);
+        }
+        if (value instanceof Map<?, ?> map) {
+            Map<String, JsonWithInt.Value> struct = new HashMap<>();
+            ((Map<Object, Object>) map).forEach((k, v) -> struct.put(String.valueOf(k), toValue(v)));
+            return ValueFactory.value(struct);
+        }
+        return ValueFactory.value(value.toString());
+    }
+
+    private static Object toObject(JsonWithInt.Value value) {
+        return switch (value.getKindCase()) {
+            case STRING_VALUE -> value.getStringValue();
+            case INTEGER_VALUE -> value.getIntegerValue();
+            case DOUBLE_VALUE -> value.getDoubleValue();
+            case BOOL_VALUE -> value.getBoolValue();
+            case STRUCT_VALUE -> toObjectMap(value.getStructValue().getFieldsMap());
+            case LIST_VALUE -> {
+                List<Object> list = new ArrayList<>();
+                value.getListValue().getValuesList().forEach(v -> list.add(toObject(v)));
+                yield list;
+            }
+            default -> null;
+        };
+    }
+}
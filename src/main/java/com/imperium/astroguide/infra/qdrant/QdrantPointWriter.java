@@ -0,0 +1,190 @@
+package com.imperium.astroguide.infra.qdrant;
+
+import com.imperium.astroguide.ai.embedding.EmbeddingDispatcher;
+import com.imperium.astroguide.ingest.ChunkMetadata;
+import io.qdrant.client.ConditionFactory;
+import io.qdrant.client.PointIdFactory;
+import io.qdrant.client.ValueFactory;
+import io.qdrant.client.VectorFactory;
+import io.qdrant.client.VectorsFactory;
+import io.qdrant.client.grpc.Points;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * 直连 Qdrant 写入点位：payload 布局与 QdrantVectorStore 一致，向量按 {@link MatryoshkaLayout} 写命名向量。
+ * <p>
+ * 仅在 Matryoshka 布局启用，或正文改由 chunk 目录持有（payload 不写正文）时使用；否则摄入仍走 VectorStore。
+ * 来源版本的维护（未变 chunk 刷新 payload 并改记新版本、按 payload 过滤删除旧版本或整个来源）无论哪种写入方式都经本类。
+ */
+@Component
+public class QdrantPointWriter {
+
+    @Nullable
+    private final QdrantClientPool clientPool;
+    private final EmbeddingDispatcher embeddingDispatcher;
+    private final MatryoshkaLayout layout;
+    private final String collectionName;
+    private final boolean omitText;
+
+    public QdrantPointWriter(@Nullable QdrantClientPool clientPool,
+            EmbeddingDispatcher embeddingDispatcher,
+            MatryoshkaLayout layout,
+            @Value("${spring.ai.vectorstore.qdrant.collection-name:astro_knowledge}") String collectionName,
+            @Value("${app.rag.catalog.enabled:false}") boolean catalogEnabled,
+            @Value("${app.rag.catalog.text-in-payload:true}") boolean textInPayload) {
+        this.clientPool = clientPool;
+        this.embeddingDispatcher = embeddingDispatcher;
+        this.layout = layout;
+        this.collectionName = collectionName;
+        this.omitText = catalogEnabled && !textInPayload;
+    }
+
+    /** 是否应由本类（而非 VectorStore）写入 */
+    public boolean enabled() {
+        return (layout.enabled() || omitText) && clientPool != null && embeddingDispatcher.available();
+    }
+
+    public void write(List<Document> documents) throws Exception {
+        if (documents.isEmpty()) {
+            return;
+        }
+        List<float[]> embeddings = embeddingDispatcher.embed(documents.stream().map(Document::getText).toList());
+        List<Points.PointStruct> points = new ArrayList<>(documents.size());
+        for (int i = 0; i < documents.size(); i++) {
+            Document doc = documents.get(i);
+            float[] full = embeddings.get(i);
+            points.add(Points.PointStruct.newBuilder()
+                    .setId(pointId(doc.getId()))
+                    .setVectors(layout.enabled()
+                            ? VectorsFactory.namedVectors(Map.of(
+                                    MatryoshkaLayout.FULL_VECTOR, VectorFactory.vector(full),
+                                    MatryoshkaLayout.PREFIX_VECTOR, VectorFactory.vector(
+                                            MatryoshkaLayout.truncate(full, layout.prefixDims(full.length)))))
+                            : VectorsFactory.vectors(full))
+                    .putAllPayload(QdrantPayloads.toPayload(doc, !omitText))
+                    .build());
+        }
+        clientPool.primary().upsertAsync(collectionName, points).get();
+    }
+
+    /**
+     * 集合中已存在的点位 id（不取 payload 与向量）；未配置 Qdrant 时返回空集。
+     */
+    public Set<String> existingIds(Collection<String> ids) throws Exception {
+        Set<String> out = new HashSet<>();
+        if (clientPool == null || ids.isEmpty()) {
+            return out;
+        }
+        List<Points.PointId> pointIds = ids.stream().map(QdrantPointWriter::pointId).toList();
+        for (Points.RetrievedPoint point : clientPool.next()
+                .retrieveAsync(collectionName, pointIds, false, false, null).get()) {
+            out.add(point.getId().getUuid());
+        }
+        return out;
+    }
+
+    /**
+     * 只改 payload 中的版本号（写为整数），不重新 embedding；已记为更新版本的点位不回退。
+     * 版本号为字符串的点位（经 VectorStore 写入）不满足范围条件，同样会被改写。
+     */
+    public void retainVersion(Collection<String> ids, long version) throws Exception {
+        if (clientPool == null || ids.isEmpty()) {
+            return;
+        }
+        List<Points.PointId> pointIds = ids.stream().map(QdrantPointWriter::pointId).toList();
+        Points.Filter filter = Points.Filter.newBuilder()
+                .addMust(ConditionFactory.hasId(pointIds))
+                .addMustNot(atLeast(version))
+                .build();
+        clientPool.primary().setPayloadAsync(collectionName,
+                Map.of(ChunkMetadata.SOURCE_VERSION, ValueFactory.value(version)), filter, true, null, null).get();
+    }
+
+    /**
+     * 把内容未变的已有点位归入 version：按本次 metadata 整体覆盖 payload（序号、父窗口、章节、language/level 等），
+     * 不重新 embedding；每个点位一个覆盖操作，合为一次批量请求。已记为更新版本的点位不回退。
+     */
+    public void refreshPayload(Collection<Document> documents, long version) throws Exception {
+        if (clientPool == null || documents.isEmpty()) {
+            return;
+        }
+        List<Points.PointsUpdateOperation> operations = new ArrayList<>(documents.size());
+        for (Document doc : documents) {
+            Points.Filter filter = Points.Filter.newBuilder()
+                    .addMust(ConditionFactory.hasId(pointId(doc.getId())))
+                    .addMustNot(atLeast(version))
+                    .build();
+            operations.add(Points.PointsUpdateOperation.newBuilder()
+                    .setOverwritePayload(Points.PointsUpdateOperation.OverwritePayload.newBuilder()
+                            .putAllPayload(QdrantPayloads.toPayload(doc, !omitText))
+                            .setPointsSelector(Points.PointsSelector.newBuilder().setFilter(filter)))
+                    .build());
+        }
+        clientPool.primary().batchUpdateAsync(collectionName, operations).get();
+    }
+
+    /**
+     * 删除来源中版本早于 version 的点位（含未记版本的旧数据），返回删除数。
+     */
+    public long deleteStale(String source, long version) throws Exception {
+        return delete(Points.Filter.newBuilder()
+                .addMust(ConditionFactory.matchKeyword(ChunkMetadata.SOURCE, source))
+                .addMustNot(atLeast(version))
+                .build());
+    }
+
+    /** 删除来源的全部点位，返回删除数 */
+    public long deleteSource(String source) throws Exception {
+        return delete(Points.Filter.newBuilder()
+                .addMust(ConditionFactory.matchKeyword(ChunkMetadata.SOURCE, source))
+                .build());
+    }
+
+    /** 先精确计数再按过滤条件删除；计数只用于上报，与删除之间的并发写入不影响删除本身 */
+    private long delete(Points.Filter filter) throws Exception {
+        if (clientPool == null) {
+            return 0;
+        }
+        long matched = clientPool.primary().countAsync(collectionName, filter, true).get();
+        if (matched > 0) {
+            clientPool.primary().deleteAsync(collectionName, filter).get();
+        }
+        return matched;
+    }
+
+    /**
+     * Qdrant 点位 id 只接受无符号整数或 UUID；本类写入的 chunk id 均为 UUID（见 {@link ChunkMetadata}）。
+     * 只接受标准 36 位写法，否则 {@link #existingIds} 返回的 id 与传入的对不上。
+     *
+     * @throws IllegalArgumentException id 不是标准写法的 UUID
+     */
+    static Points.PointId pointId(@Nullable String id) {
+        UUID uuid = null;
+        if (id != null && id.length() == 36) {
+            try {
+                uuid = UUID.fromString(id);
+            } catch (IllegalArgumentException e) {
+                // 落到下方统一报错
+            }
+        }
+        if (uuid == null) {
+            throw new IllegalArgumentException("Qdrant point id must be a UUID: " + id);
+        }
+        return PointIdFactory.id(uuid);
+    }
+
+    private static Points.Condition atLeast(long version) {
+        return ConditionFactory.range(ChunkMetadata.SOURCE_VERSION, Points.Range.newBuilder().setGte(version).build());
+    }
+}
@@ -0,0 +1,62 @@
+package com.imperium.astroguide.infra.qdrant;
+
+import com.imperium.astroguide.ai.rag.SiblingChunkLoader;
+import com.imperium.astroguide.ingest.ChunkMetadata;
+import com.imperium.astroguide.service.ChunkCatalogService;
+import io.qdrant.client.ConditionFactory;
+import io.qdrant.client.WithPayloadSelectorFactory;
+import io.qdrant.client.grpc.Points;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 以 parent_id 过滤 scroll 一次取回多个父窗口的全部小块（parent_id 建有 keyword 索引）；
+ * 正文由 chunk 目录持有时按 id 补全。
+ */
+@Component
+public class QdrantSiblingChunkLoader implements SiblingChunkLoader {
+
+    @Nullable
+    private final QdrantClientPool clientPool;
+    @Nullable
+    private final ChunkCatalogService chunkCatalogService;
+    private final String collectionName;
+    private final long timeoutMs;
+
+    public QdrantSiblingChunkLoader(@Nullable QdrantClientPool clientPool,
+            @Nullable ChunkCatalogService chunkCatalogService,
+            @Value("${spring.ai.vectorstore.qdrant.collection-name:astro_knowledge}") String collectionName,
+            @Value("${app.rag.search.timeout-ms:2000}") long timeoutMs) {
+        this.clientPool = clientPool;
+        this.chunkCatalogService = chunkCatalogService;
+        this.collectionName = collectionName;
+        this.timeoutMs = timeoutMs;
+    }
+
+    @Override
+    public List<Document> load(Collection<String> parentIds, int limit) throws Exception {
+        if (clientPool == null || parentIds.isEmpty()) {
+            return List.of();
+        }
+        Points.ScrollPoints scroll = Points.ScrollPoints.newBuilder()
+                .setCollectionName(collectionName)
+                .setFilter(Points.Filter.newBuilder()
+                        .addMust(ConditionFactory.matchKeywords(ChunkMetadata.PARENT_ID, List.copyOf(parentIds))))
+                .setLimit(limit)
+                .setWithPayload(WithPayloadSelectorFactory.enable(true))
+                .build();
+        Points.ScrollResponse response = clientPool.next().scrollAsync(scroll, Duration.ofMillis(timeoutMs)).get();
+        List<Document> out = new ArrayList<>(response.getResultCount());
+        for (Points.RetrievedPoint point : response.getResultList()) {
+            out.add(QdrantPayloads.toDocument(point));
+        }
+        return chunkCatalogService != null && chunkCatalogService.ownsText() ? chunkCatalogService.hydrate(out) : out;
+    }
+}
@@ -0,0 +1,159 @@
+package com.imperium.astroguide.infra.qdrant;
+
+import io.qdrant.client.VectorFactory;
+import io.qdrant.client.VectorsFactory;
+import io.qdrant.client.grpc.Points;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 知识库快照二进制格式（gzip 压缩）：
+ * <pre>
+ * header : "AGKS" | version(int) | collection(UTF) | vectorCount(int) | { name(UTF) | dims(int) }*
+ * frame  : pointCount(int > 0) | { PointStruct（protobuf, length-delimited） }*
+ * end    : 0(int)
+ * </pre>
+ * 点位原样保存 id、payload（含正文与 metadata）与向量（匿名向量 name 为空串），导入时无需重新 embedding。
+ * 一帧即一个导入批次，读写均逐帧进行，内存占用与快照大小无关。
+ */
+public final class SnapshotCodec {
+
+    static final int MAGIC = 0x41474B53; // "AGKS"
+    static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private SnapshotCodec() {
+    }
+
+    /** @param name 命名向量名；匿名向量为空串 */
+    public record VectorSpec(String name, int dims) {
+    }
+
+    public record Header(String collection, List<VectorSpec> vectors) {
+
+        public boolean named() {
+            return vectors.stream().anyMatch(v -> !v.name().isEmpty());
+        }
+    }
+
+    /** Qdrant 读出的点位 → 可写回的点位 */
+    public static Points.PointStruct toPointStruct(Points.RetrievedPoint point) {
+        Points.PointStruct.Builder builder = Points.PointStruct.newBuilder()
+                .setId(point.getId())
+                .putAllPayload(point.getPayloadMap());
+        Points.VectorsOutput vectors = point.getVectors();
+        if (vectors.hasVectors()) {
+            Map<String, Points.Vector> named = new HashMap<>();
+            vectors.getVectors().getVectorsMap().forEach((name, v) -> named.put(name, VectorFactory.vector(data(v))));
+            builder.setVectors(VectorsFactory.namedVectors(named));
+        } else {
+            builder.setVectors(VectorsFactory.vectors(VectorFactory.vector(data(vectors.getVector()))));
+        }
+        return builder.build();
+    }
+
+    @SuppressWarnings("deprecation")
+    private static List<Float> data(Points.VectorOutput vector) {
+        return vector.hasDense() ? vector.getDense().getDataList() : vector.getDataList();
+    }
+
+    public static final class Writer implements AutoCloseable {
+
+        private final DataOutputStream out;
+
+        public Writer(OutputStream target, Header header) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(target, BUFFER_SIZE), BUFFER_SIZE));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(header.collection());
+            out.writeInt(header.vectors().size());
+            for (VectorSpec spec : header.vectors()) {
+                out.writeUTF(spec.name());
+                out.writeInt(spec.dims());
+            }
+        }
+
+        public void writeFrame(List<Points.PointStruct> points) throws IOException {
+            if (points.isEmpty()) {
+                return;
+            }
+            out.writeInt(points.size());
+            for (Points.PointStruct point : points) {
+                point.writeDelimitedTo(out);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.writeInt(0);
+            out.close();
+        }
+    }
+
+    public static final class Reader implements AutoCloseable {
+
+        private final DataInputStream in;
+        private final Header header;
+        private boolean finished;
+
+        public Reader(InputStream source) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(source, BUFFER_SIZE), BUFFER_SIZE));
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a knowledge base snapshot");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+            String collection = in.readUTF();
+            int count = in.readInt();
+            List<VectorSpec> vectors = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                vectors.add(new VectorSpec(in.readUTF(), in.readInt()));
+            }
+            this.header = new Header(collection, List.copyOf(vectors));
+        }
+
+        public Header header() {
+            return header;
+        }
+
+        /** @return 下一帧；读完返回 null */
+        public List<Points.PointStruct> nextFrame() throws IOException {
+            if (finished) {
+                return null;
+            }
+            int count = in.readInt();
+            if (count == 0) {
+                finished = true;
+                return null;
+            }
+            List<Points.PointStruct> points = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                Points.PointStruct point = Points.PointStruct.parseDelimitedFrom(in);
+                if (point == null) {
+                    throw new IOException("Snapshot truncated");
+                }
+                points.add(point);
+            }
+            return points;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.imperium.astroguide.infra.resilience;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * 基于滚动窗口的熔断器：最近 N 次调用中失败率或慢调用率超阈值即 OPEN，
+ * 冷却期后进入 HALF_OPEN 放行少量探测请求，全部成功则 CLOSED，任一失败/慢则重新 OPEN。
+ * <p>
+ * 每次调用先在锁内取得许可（HALF_OPEN 下即占用一个探测名额），结果按取得许可时的状态记录：
+ * 状态迁移后才返回的旧调用只计入指标，不推动状态，避免 CLOSED 时发出的迟到请求被当成探测结果。
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * @param windowSize            滚动窗口大小（最近调用次数）
+     * @param minimumCalls          窗口内至少多少次调用才评估阈值
+     * @param failureRateThreshold  失败率阈值（百分比）
+     * @param slowCallThresholdMs   超过该耗时视为慢调用
+     * @param slowCallRateThreshold 慢调用率阈值（百分比）
+     * @param openDurationMs        OPEN 持续时间，之后转 HALF_OPEN
+     * @param halfOpenProbes        HALF_OPEN 放行的探测请求数
+     */
+    public record Settings(int windowSize,
+            int minimumCalls,
+            int failureRateThreshold,
+            long slowCallThresholdMs,
+            int slowCallRateThreshold,
+            long openDurationMs,
+            int halfOpenProbes) {
+    }
+
+    /** 调用结果与状态迁移回调，供指标与日志使用 */
+    public interface Listener {
+
+        Listener NOOP = new Listener() {
+        };
+
+        default void onOutcome(String outcome) {
+        }
+
+        default void onTransition(State from, State to) {
+        }
+    }
+
+    /** {@link #tryAcquire()} 拒绝时的返回值 */
+    static final long REJECTED = -1;
+
+    private final String name;
+    private final Settings settings;
+    private final LongSupplier clockMs;
+    private final Listener listener;
+
+    private final boolean[] failed;
+    private final boolean[] slow;
+    private int cursor;
+    private int recorded;
+    private State state = State.CLOSED;
+    private long openedAtMs;
+    private int probesInFlight;
+    private int probeSuccesses;
+    /** 状态代次，每次迁移递增；许可即取得时的代次 */
+    private long epoch;
+
+    public CircuitBreaker(String name, Settings settings, LongSupplier clockMs, Listener listener) {
+        this.name = name;
+        this.settings = settings;
+        this.clockMs = clockMs;
+        this.listener = listener != null ? listener : Listener.NOOP;
+        int size = Math.max(1, settings.windowSize());
+        this.failed = new boolean[size];
+        this.slow = new boolean[size];
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public synchronized State state() {
+        if (state == State.OPEN && clockMs.getAsLong() - openedAtMs >= settings.openDurationMs()) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    /**
+     * 执行受保护调用；熔断时立即抛出 {@link CircuitOpenException}，不触达下游。
+     */
+    public <T> T call(Callable<T> action) throws Exception {
+        long permit = tryAcquire();
+        if (permit == REJECTED) {
+            listener.onOutcome("rejected");
+            throw new CircuitOpenException(name);
+        }
+        long start = clockMs.getAsLong();
+        try {
+            T result = action.call();
+            onResult(permit, true, clockMs.getAsLong() - start);
+            return result;
+        } catch (Exception e) {
+            onResult(permit, false, clockMs.getAsLong() - start);
+            throw e;
+        }
+    }
+
+    /**
+     * 异步版本：以 future 完成时刻计算耗时；熔断时返回以 {@link CircuitOpenException} 失败的 future。
+     */
+    public <T> CompletableFuture<T> callAsync(Supplier<CompletableFuture<T>> action) {
+        long permit = tryAcquire();
+        if (permit == REJECTED) {
+            listener.onOutcome("rejected");
+            return CompletableFuture.failedFuture(new CircuitOpenException(name));
+        }
+        long start = clockMs.getAsLong();
+        CompletableFuture<T> future;
+        try {
+            future = action.get();
+        } catch (RuntimeException e) {
+            onResult(permit, false, clockMs.getAsLong() - start);
+            return CompletableFuture.failedFuture(e);
+        }
+        return future.whenComplete((r, e) -> onResult(permit, e == null, clockMs.getAsLong() - start));
+    }
+
+    /**
+     * 取得调用许可；OPEN 冷却期满时在此迁移到 HALF_OPEN，并在同一把锁内占用探测名额。
+     *
+     * @return 许可（当前状态代次），拒绝时为 {@link #REJECTED}
+     */
+    synchronized long tryAcquire() {
+        if (state == State.OPEN) {
+            if (clockMs.getAsLong() - openedAtMs < settings.openDurationMs()) {
+                return REJECTED;
+            }
+            transition(State.HALF_OPEN);
+            probesInFlight = 0;
+            probeSuccesses = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (probesInFlight >= Math.max(1, settings.halfOpenProbes())) {
+                return REJECTED;
+            }
+            probesInFlight++;
+        }
+        return epoch;
+    }
+
+    /** 按当前状态代次记录一次结果（测试用） */
+    synchronized void onResult(boolean success, long latencyMs) {
+        onResult(epoch, success, latencyMs);
+    }
+
+    synchronized void onResult(long permit, boolean success, long latencyMs) {
+        boolean isSlow = latencyMs >= settings.slowCallThresholdMs();
+        listener.onOutcome(!success ? "failure" : isSlow ? "slow" : "success");
+        if (permit != epoch) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            if (!success || isSlow) {
+                open();
+            } else if (++probeSuccesses >= Math.max(1, settings.halfOpenProbes())) {
+                resetWindow();
+                transition(State.CLOSED);
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            return;
+        }
+        failed[cursor] = !success;
+        slow[cursor] = isSlow;
+        cursor = (cursor + 1) % failed.length;
+        recorded = Math.min(recorded + 1, failed.length);
+        if (recorded < Math.max(1, settings.minimumCalls())) {
+            return;
+        }
+        int failures = 0;
+        int slowCalls = 0;
+        for (int i = 0; i < recorded; i++) {
+            if (failed[i]) {
+                failures++;
+            }
+            if (slow[i]) {
+                slowCalls++;
+            }
+        }
+        if (failures * 100 >= settings.failureRateThreshold() * recorded
+                || slowCalls * 100 >= settings.slowCallRateThreshold() * recorded) {
+            open();
+        }
+    }
+
+    private void open() {
+        openedAtMs = clockMs.getAsLong();
+        resetWindow();
+        transition(State.OPEN);
+    }
+
+    private void resetWindow() {
+        cursor = 0;
+        recorded = 0;
+        probesInFlight = 0;
+        probeSuccesses = 0;
+    }
+
+    private void transition(State to) {
+        State from = state;
+        state = to;
+        if (from != to) {
+            epoch++;
+            listener.onTransition(from, to);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.imperium.astroguide.infra.resilience;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.stereotype.Component;
+
+/**
+ * 熔断状态暴露到 /actuator/health：任一熔断器非 CLOSED 时报告 DEGRADED（RAG 降级为空上下文，服务仍可用）。
+ */
+@Component
+public class CircuitBreakerHealthIndicator implements HealthIndicator {
+
+    static final Status DEGRADED = new Status("DEGRADED", "RAG dependencies are failing fast");
+
+    private final CircuitBreakerRegistry registry;
+
+    public CircuitBreakerHealthIndicator(CircuitBreakerRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public Health health() {
+        Health.Builder builder = Health.up();
+        for (CircuitBreaker breaker : registry.all()) {
+            CircuitBreaker.State state = breaker.state();
+            builder.withDetail(breaker.name(), state.name());
+            if (state != CircuitBreaker.State.CLOSED) {
+                builder.status(DEGRADED);
+            }
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,74 @@
+package com.imperium.astroguide.infra.resilience;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 命名熔断器注册表：RAG 的 embedding 与向量检索各自独立熔断，共享同一组阈值配置。
+ * <p>
+ * 指标：{@code astroguide.circuit.state}（0=CLOSED，1=HALF_OPEN，2=OPEN）与
+ * {@code astroguide.circuit.calls}（outcome=success|failure|slow|rejected）。
+ */
+@Component
+public class CircuitBreakerRegistry {
+
+    public static final String EMBEDDING = "embedding";
+    public static final String VECTOR_SEARCH = "vector-search";
+
+    private static final Logger log = LoggerFactory.getLogger(CircuitBreakerRegistry.class);
+
+    private final MeterRegistry meterRegistry;
+    private final CircuitBreaker.Settings settings;
+    private final ConcurrentHashMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    public CircuitBreakerRegistry(MeterRegistry meterRegistry,
+            @Value("${app.rag.circuit-breaker.window-size:20}") int windowSize,
+            @Value("${app.rag.circuit-breaker.minimum-calls:10}") int minimumCalls,
+            @Value("${app.rag.circuit-breaker.failure-rate-threshold:50}") int failureRateThreshold,
+            @Value("${app.rag.circuit-breaker.slow-call-threshold-ms:1500}") long slowCallThresholdMs,
+            @Value("${app.rag.circuit-breaker.slow-call-rate-threshold:80}") int slowCallRateThreshold,
+            @Value("${app.rag.circuit-breaker.open-duration-ms:30000}") long openDurationMs,
+            @Value("${app.rag.circuit-breaker.half-open-probes:3}") int halfOpenProbes) {
+        this.meterRegistry = meterRegistry;
+        this.settings = new CircuitBreaker.Settings(windowSize, minimumCalls, failureRateThreshold,
+                slowCallThresholdMs, slowCallRateThreshold, openDurationMs, halfOpenProbes);
+    }
+
+    public CircuitBreaker breaker(String name) {
+        return breakers.computeIfAbsent(name, this::create);
+    }
+
+    public Collection<CircuitBreaker> all() {
+        return Collections.unmodifiableCollection(breakers.values());
+    }
+
+    private CircuitBreaker create(String name) {
+        CircuitBreaker breaker = new CircuitBreaker(name, settings, System::currentTimeMillis, new CircuitBreaker.Listener() {
+            @Override
+            public void onOutcome(String outcome) {
+                meterRegistry.counter("astroguide.circuit.calls", "name", name, "outcome", outcome).increment();
+            }
+
+            @Override
+            public void onTransition(CircuitBreaker.State from, CircuitBreaker.State to) {
+                log.warn("circuit breaker {} transitioned {} -> {}", name, from, to);
+            }
+        });
+        Gauge.builder("astroguide.circuit.state", breaker, b -> switch (b.state()) {
+                    case CLOSED -> 0;
+                    case HALF_OPEN -> 1;
+                    case OPEN -> 2;
+                })
+                .tag("name", name)
+                .register(meterRegistry);
+        return breaker;
+    }
+}
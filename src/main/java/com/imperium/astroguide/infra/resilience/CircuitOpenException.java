@@ -0,0 +1,13 @@
+package com.imperium.astroguide.infra.resilience;
+
+/**
+ * 熔断器处于 OPEN（或半开探测名额已满）时拒绝调用。
+ */
+public class CircuitOpenException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public CircuitOpenException(String breakerName) {
+        super("Circuit breaker '" + breakerName + "' is open");
+    }
+}
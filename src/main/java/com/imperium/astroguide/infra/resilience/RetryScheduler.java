@@ -0,0 +1,124 @@
+package com.imperium.astroguide.infra.resilience;
+
+import com.imperium.astroguide.ai.embedding.EmbeddingThrottle;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 带退避的异步重试，摄入写入流水线与知识库快照导入共用同一策略。
+ * <p>
+ * 每次尝试在调用方给出的线程池上执行；失败后的等待交给单个定时线程，等待期间不占用工作线程。
+ * 第 n 次失败后等待 backoff-ms·2^(n-1)（封顶 max-backoff-ms，带抖动），每个操作最多 max-attempts 次（不超过 {@value #MAX_ATTEMPTS_CAP}）。
+ * <p>
+ * 以下错误不在此层重试：输入错误（{@link IllegalArgumentException}），以及提供方限流（429）——
+ * {@code EmbeddingDispatcher} 已按 rate-limit-retries 重新排队过，再叠加重试只会放大请求量。
+ * 异步摄入任务失败后整体重新排队，单个批次最多被调用 jobs.max-attempts × max-attempts 次。
+ * <p>
+ * 容器关闭时仍在退避等待的操作以异常结束。
+ */
+@Component
+public class RetryScheduler {
+
+    static final int MAX_ATTEMPTS_CAP = 5;
+
+    /** 每次安排重试前回调，供调用方记录日志与指标 */
+    @FunctionalInterface
+    public interface Listener {
+
+        void onRetry(int attempt, long delayMs, Exception error);
+    }
+
+    private final int maxAttempts;
+    private final long backoffMs;
+    private final long maxBackoffMs;
+    /** 正在退避等待的操作 */
+    private final Set<CompletableFuture<?>> waiting = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "retry-backoff");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public RetryScheduler(@Value("${app.retry.max-attempts:3}") int maxAttempts,
+            @Value("${app.retry.backoff-ms:500}") long backoffMs,
+            @Value("${app.retry.max-backoff-ms:8000}") long maxBackoffMs) {
+        this.maxAttempts = Math.min(MAX_ATTEMPTS_CAP, Math.max(1, maxAttempts));
+        this.backoffMs = Math.max(0, backoffMs);
+        this.maxBackoffMs = Math.max(this.backoffMs, maxBackoffMs);
+    }
+
+    public int maxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * 在 executor 上执行 action，失败按退避重试。
+     *
+     * @return action 的结果；重试耗尽或不可重试时以最后一次的异常结束
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> action, Executor executor, Listener listener) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        attempt(action, executor, listener, result, 1);
+        return result;
+    }
+
+    private <T> void attempt(Callable<T> action, Executor executor, Listener listener, CompletableFuture<T> result,
+            int attempt) {
+        try {
+            executor.execute(() -> {
+                try {
+                    result.complete(action.call());
+                } catch (Exception e) {
+                    if (attempt >= maxAttempts || !retryable(e)) {
+                        result.completeExceptionally(e);
+                        return;
+                    }
+                    long delay = backoff(attempt, backoffMs, maxBackoffMs);
+                    listener.onRetry(attempt, delay, e);
+                    waiting.add(result);
+                    try {
+                        timer.schedule(() -> {
+                            waiting.remove(result);
+                            attempt(action, executor, listener, result, attempt + 1);
+                        }, delay, TimeUnit.MILLISECONDS);
+                    } catch (RejectedExecutionException rejected) {
+                        waiting.remove(result);
+                        result.completeExceptionally(e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    static boolean retryable(Exception error) {
+        return !(error instanceof IllegalArgumentException) && !EmbeddingThrottle.isRateLimited(error);
+    }
+
+    /** 第 attempt 次失败后的等待：base·2^(attempt-1) 封顶 max，再在其 [1/2, 1] 区间内随机抖动，避免各批同时重试 */
+    static long backoff(int attempt, long baseMs, long maxMs) {
+        long capped = Math.min(maxMs, baseMs << Math.min(attempt - 1, 20));
+        return capped / 2 + ThreadLocalRandom.current().nextLong(capped / 2 + 1);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+        IllegalStateException e = new IllegalStateException("Retry scheduler shut down");
+        waiting.forEach(f -> f.completeExceptionally(e));
+        waiting.clear();
+    }
+}
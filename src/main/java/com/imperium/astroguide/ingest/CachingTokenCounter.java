@@ -0,0 +1,62 @@
+package com.imperium.astroguide.ingest;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 句子级 token 计数缓存（LRU）：页眉页脚、图注、重叠句等重复句只分词一次。
+ * <p>
+ * 超过 {@value #MAX_CACHED_CHARS} 字符的文本（无标点的长串、超长句的切分片段）几乎不会重复，直接计数而不入缓存，
+ * 缓存占用因此以条目数 × 该上限为界。
+ */
+public class CachingTokenCounter implements TokenCounter {
+
+    static final int MAX_CACHED_CHARS = 2048;
+
+    private final TokenCounter delegate;
+    private final Map<String, Integer> cache;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public CachingTokenCounter(TokenCounter delegate, int maxEntries) {
+        this.delegate = delegate;
+        int capacity = Math.max(1, maxEntries);
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    @Override
+    public int count(String text) {
+        if (text.length() > MAX_CACHED_CHARS) {
+            misses.incrementAndGet();
+            return delegate.count(text);
+        }
+        Integer cached;
+        synchronized (cache) {
+            cached = cache.get(text);
+        }
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        misses.incrementAndGet();
+        int tokens = delegate.count(text);
+        synchronized (cache) {
+            cache.put(text, tokens);
+        }
+        return tokens;
+    }
+
+    public long hits() {
+        return hits.get();
+    }
+
+    public long misses() {
+        return misses.get();
+    }
+}
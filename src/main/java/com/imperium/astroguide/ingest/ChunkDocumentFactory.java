@@ -0,0 +1,180 @@
+package com.imperium.astroguide.ingest;
+
+import org.springframework.ai.document.Document;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * 全文 → 带 metadata 的 chunk 文档（普通分块或父子分块）。
+ * <p>
+ * 每个 chunk 标注 {@code language}（未指定时按文字自动判定）与可选的难度档位 {@code level}，供检索范围过滤；
+ * 父子分块时 metadata 携带父窗口 id 与窗口内序号；按章节输入时携带章节标题 {@code section}。
+ * <p>
+ * chunk id 与父窗口 id 由来源 + 正文 SHA-256 + 该正文在来源内的出现次序生成（内容寻址，哈希同时写入 {@code content_hash}）：
+ * 同一资料重复摄入或任务续传时得到相同 id，已落库的 chunk 可在 embedding 前剔除；同一来源内重复的正文各占一个 id。
+ * 序号、父窗口、章节与过滤字段不参与 id，内容未变时由 {@link ChunkStoreWriter#commit} 按本次 metadata 整体刷新 payload。
+ */
+@Component
+public class ChunkDocumentFactory {
+
+    private final TextChunker textChunker;
+    private final ParentChildChunker parentChildChunker;
+
+    public ChunkDocumentFactory(TextChunker textChunker, ParentChildChunker parentChildChunker) {
+        this.textChunker = textChunker;
+        this.parentChildChunker = parentChildChunker;
+    }
+
+    /**
+     * @param language 可选，en | zh；非法取值按未指定处理
+     * @param level    可选，basic | intermediate | advanced；非法取值按未指定处理
+     */
+    public List<Document> build(String fullText, String sourceLabel, String language, String level) {
+        List<Document> documents = new ArrayList<>();
+        Session session = open(sourceLabel, language, level, documents::add);
+        session.feed(fullText);
+        session.finish();
+        for (Document document : documents) {
+            document.getMetadata().put(ChunkMetadata.CHUNK_TOTAL, documents.size());
+        }
+        return documents;
+    }
+
+    /**
+     * 流式构建：正文分段喂入，chunk 文档产出即回调（与 {@link #build} 的 id 与 metadata 一致，
+     * 只是总数未知，不带 {@code chunk_total}）。
+     */
+    public Session open(String sourceLabel, String language, String level, Consumer<Document> documentConsumer) {
+        return new Session(sourceLabel, ChunkMetadata.normalize(language, ChunkMetadata.LANGUAGES),
+                ChunkMetadata.normalize(level, ChunkMetadata.LEVELS), documentConsumer);
+    }
+
+    /**
+     * 解析器 sink：来源标签未被 sourceOverride 覆盖时取解析结果，正文流式切分后交给 documentConsumer。
+     */
+    public ChunkingTextSink sink(@Nullable String sourceOverride, String language, String level,
+            Consumer<Document> documentConsumer) {
+        return new ChunkingTextSink(this, sourceOverride, language, level, documentConsumer);
+    }
+
+    /**
+     * 一次流式构建会话（非线程安全）。
+     * <p>
+     * {@link #section} 标记章节边界：此前的正文先切完，chunk 与父窗口不跨章节；
+     * 之后产出的 chunk 带 {@code section}（章节标题），{@code chunk_index} 与 {@code parent_index} 跨章节连续编号。
+     */
+    public final class Session {
+
+        private final String sourceLabel;
+        private final String language;
+        private final String level;
+        private final Consumer<Document> out;
+        private TextChunker.Session flat;
+        private ParentChildChunker.Session parentChild;
+        private String section;
+        private int index = 0;
+        private int parentIndex = -1;
+        /** 当前分块器会话内最近一个父窗口的序号（每章重新从 0 开始） */
+        private int localParent = -1;
+        private String parentId;
+        /** kind + 正文哈希 → 已出现次数，区分来源内的重复内容 */
+        private final Map<String, Integer> occurrences = new HashMap<>();
+
+        private Session(String sourceLabel, String language, String level, Consumer<Document> out) {
+            this.sourceLabel = sourceLabel;
+            this.language = language;
+            this.level = level;
+            this.out = out;
+            openChunker();
+        }
+
+        private void openChunker() {
+            localParent = -1;
+            if (parentChildChunker.enabled()) {
+                this.parentChild = parentChildChunker.open(chunk -> {
+                    Map<String, Object> metadata = metadata(chunk.text());
+                    if (chunk.parentIndex() != localParent) {
+                        localParent = chunk.parentIndex();
+                        parentIndex++;
+                        parentId = contentId("parent", ChunkMetadata.contentHash(chunk.parentText()));
+                    }
+                    metadata.put(ChunkMetadata.PARENT_ID, parentId);
+                    metadata.put(ChunkMetadata.PARENT_INDEX, parentIndex);
+                    metadata.put(ChunkMetadata.CHILD_INDEX, chunk.childIndex());
+                    metadata.put(ChunkMetadata.CHILD_TOTAL, chunk.childTotal());
+                    out.accept(document(chunk.text(), metadata));
+                });
+            } else {
+                this.flat = textChunker.open(text -> out.accept(document(text, metadata(text))));
+            }
+        }
+
+        private Document document(String text, Map<String, Object> metadata) {
+            String hash = ChunkMetadata.contentHash(text);
+            metadata.put(ChunkMetadata.CONTENT_HASH, hash);
+            return new Document(contentId("chunk", hash), text, metadata);
+        }
+
+        private String contentId(String kind, String hash) {
+            int occurrence = occurrences.merge(kind + "\n" + hash, 1, Integer::sum) - 1;
+            return ChunkMetadata.contentId(sourceLabel, kind, hash, occurrence);
+        }
+
+        private Map<String, Object> metadata(String text) {
+            Map<String, Object> metadata = baseMetadata(text, sourceLabel, language, level);
+            metadata.put(ChunkMetadata.CHUNK_INDEX, index++);
+            if (section != null) {
+                metadata.put(ChunkMetadata.SECTION, section);
+            }
+            return metadata;
+        }
+
+        public void feed(CharSequence segment) {
+            if (flat != null) {
+                flat.feed(segment);
+            } else {
+                parentChild.feed(segment);
+            }
+        }
+
+        /**
+         * 开始新章节：切完已喂入的正文后重新开启分块器。
+         *
+         * @param title 章节标题，空白表示无标题
+         */
+        public void section(String title) {
+            finish();
+            section = title != null && !title.isBlank() ? title.strip() : null;
+            openChunker();
+        }
+
+        public void finish() {
+            if (flat != null) {
+                flat.finish();
+            } else {
+                parentChild.finish();
+            }
+        }
+
+        /** 已产出的 chunk 数 */
+        public int produced() {
+            return index;
+        }
+    }
+
+    private static Map<String, Object> baseMetadata(String text, String sourceLabel, String language, String level) {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put(ChunkMetadata.SOURCE, sourceLabel);
+        metadata.put(ChunkMetadata.LANGUAGE, language != null ? language : ChunkMetadata.detectLanguage(text));
+        if (level != null) {
+            metadata.put(ChunkMetadata.LEVEL, level);
+        }
+        return metadata;
+    }
+}
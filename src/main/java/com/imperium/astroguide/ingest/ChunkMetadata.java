@@ -0,0 +1,106 @@
+package com.imperium.astroguide.ingest;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+
+/**
+ * 向量库中 chunk 的 metadata 键（即 Qdrant payload 字段）。
+ */
+public final class ChunkMetadata {
+
+    public static final String SOURCE = "source";
+    public static final String CHUNK_INDEX = "chunk_index";
+    public static final String CHUNK_TOTAL = "chunk_total";
+    /** 正文语言：en | zh */
+    public static final String LANGUAGE = "language";
+    /** 适用难度档位：basic | intermediate | advanced（缺省表示不限） */
+    public static final String LEVEL = "level";
+
+    /** 由低到高的难度档位（{@link #LEVEL} 取值） */
+    public static final List<String> LEVELS = List.of("basic", "intermediate", "advanced");
+    /** {@link #LANGUAGE} 取值 */
+    public static final List<String> LANGUAGES = List.of("en", "zh");
+
+    /** 章节标题（EPUB 取目录标题，缺省时取章节首个标题元素）；无章节结构的资料不带 */
+    public static final String SECTION = "section";
+
+    /** 父窗口 id：同一父窗口内的检索小块共享 */
+    public static final String PARENT_ID = "parent_id";
+    public static final String PARENT_INDEX = "parent_index";
+    /** 小块在父窗口内的序号与总数 */
+    public static final String CHILD_INDEX = "child_index";
+    public static final String CHILD_TOTAL = "child_total";
+
+    /** 正文 SHA-256（hex）；chunk id 由来源 + 该值确定性生成，重复摄入同一内容得到相同 id */
+    public static final String CONTENT_HASH = "content_hash";
+
+    /**
+     * 来源版本（摄入开始时刻的毫秒数）：每次摄入把本次出现的 chunk 归入新版本，
+     * 写完后同来源中版本更旧的 chunk 即为已从资料中删去的内容，按过滤条件删除。
+     */
+    public static final String SOURCE_VERSION = "source_version";
+
+    private ChunkMetadata() {
+    }
+
+    /** 粗略判定正文语言：汉字占字母类字符三成以上视为 zh，否则 en */
+    public static String detectLanguage(String text) {
+        if (text == null || text.isEmpty()) {
+            return "en";
+        }
+        int letters = 0;
+        int han = 0;
+        for (int i = 0; i < text.length(); ) {
+            int cp = text.codePointAt(i);
+            if (Character.isLetter(cp)) {
+                letters++;
+                if (Character.UnicodeScript.of(cp) == Character.UnicodeScript.HAN) {
+                    han++;
+                }
+            }
+            i += Character.charCount(cp);
+        }
+        return letters > 0 && han * 10 >= letters * 3 ? "zh" : "en";
+    }
+
+    public static String contentHash(String text) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                    .digest((text != null ? text : "").getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 内容寻址 id：同一来源下内容相同即 id 相同（跨来源不冲突）。
+     *
+     * @param kind chunk | parent，避免父窗口与恰好等长的小块冲突
+     */
+    public static String contentId(String source, String kind, String contentHash) {
+        return UUID.nameUUIDFromBytes((source + "\n" + kind + "\n" + contentHash).getBytes(StandardCharsets.UTF_8))
+                .toString();
+    }
+
+    /**
+     * 同一来源内第 occurrence 次（从 0 起）出现的相同内容的 id：首次出现与 {@link #contentId(String, String, String)} 相同，
+     * 重复出现的段落各占一个点位，不会因内容相同而合并。
+     */
+    public static String contentId(String source, String kind, String contentHash, int occurrence) {
+        return contentId(source, kind, occurrence == 0 ? contentHash : contentHash + "\n" + occurrence);
+    }
+
+    /** 规范为小写取值；不在 allowed 中（含 null）按未指定返回 null */
+    public static String normalize(String value, List<String> allowed) {
+        if (value == null) {
+            return null;
+        }
+        String v = value.trim().toLowerCase(Locale.ROOT);
+        return allowed.contains(v) ? v : null;
+    }
+}
@@ -0,0 +1,224 @@
+package com.imperium.astroguide.ingest;
+
+import com.imperium.astroguide.ai.embedding.EmbeddingDispatcher;
+import com.imperium.astroguide.infra.qdrant.QdrantPointWriter;
+import com.imperium.astroguide.service.ChunkCatalogService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * chunk 落库：按批先写 chunk 目录再写向量库（检索命中总能在目录中解析），向量写入失败则回删本批目录行；
+ * 切批、并发与重试见 {@link EmbeddingUpsertPipeline}。
+ * <p>
+ * 启用 Matryoshka 布局或正文只存目录时由 {@link QdrantPointWriter} 直接写点位，否则经 VectorStore。
+ * VectorStore 会把 Long 型 metadata 写成字符串 payload，经它写入的批次随后把 {@code source_version} 改写为整数，
+ * 否则按版本范围过滤删除旧 chunk 时会把刚写入的点位一并删掉。
+ * 不负责知识库换代，由调用方在整个来源写完后统一递增。
+ * <p>
+ * chunk id 按来源 + 正文哈希（+ 来源内出现次序）确定（见 {@link ChunkMetadata#contentId}），写入前经 {@link #unknown} 剔除已落库的 chunk，
+ * 重复摄入同一资料不再重复 embedding。
+ * <p>
+ * 来源版本：{@link #commit} 把一批 chunk 归入本次摄入的版本（新 chunk 写入，已有的按本次 metadata 刷新 payload 与目录行），
+ * 整个来源写完后 {@link #purgeStale} 按 payload 过滤删除版本更旧的 chunk，即资料修订后删去的内容。
+ */
+@Component
+public class ChunkStoreWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(ChunkStoreWriter.class);
+
+    @Nullable
+    private final VectorStore vectorStore;
+    private final QdrantPointWriter pointWriter;
+    private final ChunkCatalogService chunkCatalogService;
+    private final EmbeddingUpsertPipeline pipeline;
+
+    public ChunkStoreWriter(@Nullable VectorStore vectorStore,
+            QdrantPointWriter pointWriter,
+            ChunkCatalogService chunkCatalogService,
+            EmbeddingUpsertPipeline pipeline) {
+        this.vectorStore = vectorStore;
+        this.pointWriter = pointWriter;
+        this.chunkCatalogService = chunkCatalogService;
+        this.pipeline = pipeline;
+    }
+
+    public boolean available() {
+        return vectorStore != null;
+    }
+
+    /**
+     * 经 {@link EmbeddingUpsertPipeline} 分批并发写入，每批失败按退避重试。
+     *
+     * @throws IllegalStateException 某批重试耗尽：目录或向量库写入失败（消息区分两者）；此前成功的批次保留
+     */
+    public void write(List<Document> documents) {
+        if (vectorStore == null) {
+            throw new IllegalStateException("RAG is disabled; vector store not available");
+        }
+        pipeline.run(documents, this::writeBatch);
+    }
+
+    /** 单批：先目录后向量库，向量写入失败回删本批目录行 */
+    private void writeBatch(List<Document> documents) {
+        try {
+            chunkCatalogService.saveAll(documents);
+        } catch (Exception e) {
+            log.warn("Chunk catalog write failed: {}", e.getMessage());
+            throw new IllegalStateException("Failed to write chunk catalog: " + e.getMessage(), e);
+        }
+        try {
+            // 摄入 embedding 走批量队列，让位于交互检索
+            EmbeddingDispatcher.inLane(EmbeddingDispatcher.Lane.BULK, () -> {
+                if (pointWriter.enabled()) {
+                    pointWriter.write(documents);
+                } else {
+                    vectorStore.add(documents);
+                    restampVersion(documents);
+                }
+                return null;
+            });
+        } catch (Exception e) {
+            log.warn("VectorStore.add failed: {}", e.getMessage());
+            discardCatalog(documents.stream().map(Document::getId).toList());
+            throw new IllegalStateException("Failed to write to vector store: " + e.getMessage(), e);
+        }
+    }
+
+    /** 把 VectorStore 写成字符串的来源版本改写为整数 payload（同批 chunk 版本相同） */
+    private void restampVersion(List<Document> documents) throws Exception {
+        Object version = documents.get(0).getMetadata().get(ChunkMetadata.SOURCE_VERSION);
+        if (version instanceof Number n) {
+            pointWriter.retainVersion(documents.stream().map(Document::getId).toList(), n.longValue());
+        }
+    }
+
+    /**
+     * 按来源版本提交一批 chunk：库中尚无的写入；已有的（内容未变）不重新 embedding，只按本次 metadata
+     * 覆盖 payload 与目录行（版本号改为 version，序号、父窗口、language/level 等随之更新）。
+     *
+     * @return 新写入的 chunk 数；其余（含本批内重复）为未变而跳过
+     * @throws IllegalStateException  写入失败
+     * @throws VersionUpdateException 新 chunk 已写入但未变 chunk 的刷新失败；此时不可再执行 {@link #purgeStale}，
+     *                                否则会删掉未变的 chunk
+     */
+    public int commit(List<Document> documents, long version) {
+        documents.forEach(doc -> doc.getMetadata().put(ChunkMetadata.SOURCE_VERSION, version));
+        List<Document> fresh = unknown(documents);
+        Map<String, Document> unchanged = new LinkedHashMap<>();
+        documents.forEach(doc -> unchanged.putIfAbsent(doc.getId(), doc));
+        fresh.forEach(doc -> unchanged.remove(doc.getId()));
+        if (!fresh.isEmpty()) {
+            write(fresh);
+        }
+        if (!unchanged.isEmpty()) {
+            List<Document> retained = new ArrayList<>(unchanged.values());
+            try {
+                pointWriter.refreshPayload(retained, version);
+                chunkCatalogService.refresh(retained, version);
+            } catch (Exception e) {
+                log.warn("Source version update failed: {}", e.getMessage());
+                throw new VersionUpdateException(fresh.size(), e);
+            }
+        }
+        return fresh.size();
+    }
+
+    /**
+     * 删除来源中版本早于 version 的 chunk（本次摄入未再出现的内容），先向量库后目录；须在整个来源提交完后调用。
+     *
+     * @return 向量库中删除的点位数
+     * @throws IllegalStateException 删除失败（可重试：删除按条件执行，幂等）
+     */
+    public long purgeStale(String source, long version) {
+        try {
+            long deleted = pointWriter.deleteStale(source, version);
+            chunkCatalogService.deleteStale(source, version);
+            return deleted;
+        } catch (Exception e) {
+            log.warn("Stale chunk purge failed: source={} error={}", source, e.getMessage());
+            throw new IllegalStateException("Failed to purge stale chunks: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 删除来源的全部 chunk，先向量库后目录。
+     *
+     * @return 向量库中删除的点位数
+     * @throws IllegalStateException 向量库不可用或删除失败
+     */
+    public long purgeSource(String source) {
+        if (vectorStore == null) {
+            throw new IllegalStateException("RAG is disabled; vector store not available");
+        }
+        try {
+            long deleted = pointWriter.deleteSource(source);
+            chunkCatalogService.deleteBySource(source);
+            return deleted;
+        } catch (Exception e) {
+            log.warn("Source purge failed: source={} error={}", source, e.getMessage());
+            throw new IllegalStateException("Failed to delete source: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 剔除已落库的 chunk 与本批内 id 重复的 chunk，返回需写入的部分（保持原顺序）。
+     * 已落库指向量库中已有该点位，且目录启用时目录中也有对应行（两者缺一则重写，upsert 幂等）。
+     * 查询失败时不剔除，退化为全部写入。
+     */
+    public List<Document> unknown(List<Document> documents) {
+        Map<String, Document> byId = new LinkedHashMap<>();
+        for (Document document : documents) {
+            byId.putIfAbsent(document.getId(), document);
+        }
+        if (byId.isEmpty()) {
+            return List.of();
+        }
+        try {
+            Set<String> known = pointWriter.existingIds(byId.keySet());
+            if (!known.isEmpty() && chunkCatalogService.enabled()) {
+                known.retainAll(chunkCatalogService.existingIds(known));
+            }
+            byId.keySet().removeAll(known);
+        } catch (Exception e) {
+            log.warn("Existing chunk lookup failed, writing all: {}", e.getMessage());
+        }
+        return new ArrayList<>(byId.values());
+    }
+
+    /** {@link #commit} 中版本更新失败；{@link #written} 个新 chunk 已落库，调用方据此上报并使检索缓存失效 */
+    public static final class VersionUpdateException extends IllegalStateException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int written;
+
+        VersionUpdateException(int written, Throwable cause) {
+            super("Failed to update source version: " + cause.getMessage(), cause);
+            this.written = written;
+        }
+
+        public int written() {
+            return written;
+        }
+    }
+
+    /** 删除目录行（向量写入失败回滚，或续传前清理中断批次的残留） */
+    public void discardCatalog(Collection<String> ids) {
+        try {
+            chunkCatalogService.deleteByIds(ids);
+        } catch (Exception e) {
+            log.warn("Chunk catalog rollback failed: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.imperium.astroguide.ingest;
+
+import com.imperium.astroguide.ingest.parser.ParsedTextSink;
+import org.springframework.ai.document.Document;
+import org.springframework.lang.Nullable;
+
+import java.util.function.Consumer;
+
+/**
+ * 解析器输出直接接入流式分块：来源标签确定时开启 {@link ChunkDocumentFactory.Session}，正文片段随到随切，
+ * chunk 文档产出即交给下游（攒批写入等），全程不拼接全文。
+ */
+public final class ChunkingTextSink implements ParsedTextSink {
+
+    private final ChunkDocumentFactory factory;
+    @Nullable
+    private final String sourceOverride;
+    private final String language;
+    private final String level;
+    private final Consumer<Document> out;
+    private ChunkDocumentFactory.Session session;
+    private String sourceLabel;
+
+    ChunkingTextSink(ChunkDocumentFactory factory, @Nullable String sourceOverride, String language, String level,
+            Consumer<Document> out) {
+        this.factory = factory;
+        this.sourceOverride = sourceOverride != null && !sourceOverride.isBlank() ? sourceOverride : null;
+        this.language = language;
+        this.level = level;
+        this.out = out;
+    }
+
+    @Override
+    public void start(String parsedLabel) {
+        sourceLabel = sourceOverride != null ? sourceOverride : parsedLabel;
+        session = factory.open(sourceLabel, language, level, out);
+    }
+
+    @Override
+    public void text(String segment) {
+        if (session == null) {
+            throw new IllegalStateException("start() must be called before text()");
+        }
+        session.feed(segment);
+    }
+
+    @Override
+    public void section(String title) {
+        if (session == null) {
+            throw new IllegalStateException("start() must be called before section()");
+        }
+        session.section(title);
+    }
+
+    /** 输入结束，输出尾部 chunk */
+    public void finish() {
+        if (session != null) {
+            session.finish();
+        }
+    }
+
+    /** 实际使用的来源标签；解析器尚未开始时为 null */
+    public String sourceLabel() {
+        return sourceLabel;
+    }
+
+    public int produced() {
+        return session != null ? session.produced() : 0;
+    }
+}
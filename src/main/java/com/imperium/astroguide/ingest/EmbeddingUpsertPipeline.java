@@ -0,0 +1,147 @@
+package com.imperium.astroguide.ingest;
+
+import com.imperium.astroguide.infra.resilience.RetryScheduler;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 摄入写入流水线：待写 chunk 按 batch-size 切批，同时最多 in-flight 批在途，每批 embedding 完成即 upsert
+ * （单批写入动作由调用方给出），不再把整份资料交给一次 {@code vectorStore.add}。
+ * <p>
+ * 单批失败经 {@link RetryScheduler} 退避重试（退避等待不占工作线程，策略与次数上限见该类），仍失败则不再提交后续批次，
+ * 等在途批次结束后抛出；已写入的批次保留（chunk id 按内容寻址，重新摄入或续传时经去重跳过）。
+ * 工作线程全部写入共享，in-flight 同时限制单次写入的在途批次（含退避中的批次）与全局并发。
+ * <p>
+ * 指标：{@code astroguide.ingest.pipeline.chunks}（写入 chunk 计数，取速率即 chunks/s）、
+ * {@code .batch}（单批耗时，含重试）、{@code .retries}（重试次数）、{@code .throughput}（每次写入整体的 chunks/s）。
+ */
+@Component
+public class EmbeddingUpsertPipeline {
+
+    private static final Logger log = LoggerFactory.getLogger(EmbeddingUpsertPipeline.class);
+
+    /** 单批写入：embedding 并 upsert，失败抛异常 */
+    @FunctionalInterface
+    public interface BatchWriter {
+
+        void write(List<Document> batch) throws Exception;
+    }
+
+    private final RetryScheduler retryScheduler;
+    private final int batchSize;
+    private final int inFlight;
+    private final ExecutorService workers;
+    private final Counter chunks;
+    private final Counter retries;
+    private final Timer batchTimer;
+    private final DistributionSummary throughput;
+
+    public EmbeddingUpsertPipeline(MeterRegistry meterRegistry,
+            RetryScheduler retryScheduler,
+            @Value("${app.ingest.pipeline.batch-size:32}") int batchSize,
+            @Value("${app.ingest.pipeline.in-flight:4}") int inFlight) {
+        this.retryScheduler = retryScheduler;
+        this.batchSize = Math.max(1, batchSize);
+        this.inFlight = Math.max(1, inFlight);
+        AtomicInteger seq = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(this.inFlight, r -> {
+            Thread t = new Thread(r, "ingest-upsert-" + seq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.chunks = Counter.builder("astroguide.ingest.pipeline.chunks")
+                .description("chunks embedded and upserted").register(meterRegistry);
+        this.retries = Counter.builder("astroguide.ingest.pipeline.retries")
+                .description("embedding/upsert batch retries").register(meterRegistry);
+        this.batchTimer = Timer.builder("astroguide.ingest.pipeline.batch")
+                .description("time to embed and upsert one batch, retries included").register(meterRegistry);
+        this.throughput = DistributionSummary.builder("astroguide.ingest.pipeline.throughput")
+                .description("chunks per second of one ingest write").baseUnit("chunks/s").register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * 分批写入 documents，全部成功后返回。
+     *
+     * @throws IllegalStateException 某批重试耗尽（原样抛出写入动作的 IllegalStateException，其余异常包装）
+     */
+    public void run(List<Document> documents, BatchWriter writer) {
+        if (documents.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        Throwable failure = runBatches(documents, writer);
+        if (failure != null) {
+            throw failure instanceof IllegalStateException ise ? ise
+                    : new IllegalStateException("Embedding batch failed: " + failure.getMessage(), failure);
+        }
+        long elapsedNanos = Math.max(1, System.nanoTime() - start);
+        double rate = documents.size() * 1e9 / elapsedNanos;
+        throughput.record(rate);
+        log.debug("Ingest pipeline wrote {} chunks in {} ms ({} chunks/s)", documents.size(),
+                TimeUnit.NANOSECONDS.toMillis(elapsedNanos), Math.round(rate));
+    }
+
+    private Throwable runBatches(List<Document> documents, BatchWriter writer) {
+        Semaphore window = new Semaphore(inFlight);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<CompletableFuture<Void>> pending = new ArrayList<>();
+        try {
+            for (int from = 0; from < documents.size() && failure.get() == null; from += batchSize) {
+                List<Document> batch = documents.subList(from, Math.min(documents.size(), from + batchSize));
+                window.acquire();
+                long batchStart = System.nanoTime();
+                pending.add(retryScheduler.<Void>submit(() -> {
+                    writer.write(batch);
+                    return null;
+                }, workers, (attempt, delayMs, e) -> {
+                    retries.increment();
+                    log.warn("Embedding batch of {} chunks failed (attempt {}/{}), retrying in {} ms: {}",
+                            batch.size(), attempt, retryScheduler.maxAttempts(), delayMs, e.getMessage());
+                }).whenComplete((ignored, e) -> {
+                    batchTimer.record(System.nanoTime() - batchStart, TimeUnit.NANOSECONDS);
+                    if (e == null) {
+                        chunks.increment(batch.size());
+                    } else {
+                        failure.compareAndSet(null, e instanceof CompletionException && e.getCause() != null
+                                ? e.getCause() : e);
+                    }
+                    window.release();
+                }));
+                pending.removeIf(CompletableFuture::isDone);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, e);
+        }
+        try {
+            CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).join();
+        } catch (CompletionException e) {
+            // 失败已记入 failure
+        }
+        return failure.get();
+    }
+}
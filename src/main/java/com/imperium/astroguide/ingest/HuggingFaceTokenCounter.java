@@ -0,0 +1,38 @@
+package com.imperium.astroguide.ingest;
+
+import ai.djl.huggingface.tokenizers.HuggingFaceTokenizer;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * 基于 HuggingFace tokenizer.json 的进程内 token 计数（与本地 embedding 模型使用同一分词器）。
+ * 计数时不截断、不加特殊 token；{@link #specialTokens()} 为模型输入额外占用的特殊 token 数。
+ */
+public class HuggingFaceTokenCounter implements TokenCounter, AutoCloseable {
+
+    private final HuggingFaceTokenizer tokenizer;
+    private final int specialTokens;
+
+    public HuggingFaceTokenCounter(Path tokenizerPath) throws IOException {
+        this.tokenizer = HuggingFaceTokenizer.newInstance(tokenizerPath, Map.of(
+                "truncation", "false",
+                "padding", "false"));
+        this.specialTokens = tokenizer.encode("", true, false).getIds().length;
+    }
+
+    @Override
+    public int count(String text) {
+        return tokenizer.encode(text, false, false).getIds().length;
+    }
+
+    public int specialTokens() {
+        return specialTokens;
+    }
+
+    @Override
+    public void close() {
+        tokenizer.close();
+    }
+}
@@ -0,0 +1,85 @@
+package com.imperium.astroguide.ingest;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 父子分块：先按 parent-size 切出较大的父窗口，再把每个父窗口无重叠地切成 child-size 的检索小块。
+ * <p>
+ * 小块用于向量检索（匹配更精确），命中后按父窗口合并并在 token 预算内向相邻小块扩展（见
+ * {@link com.imperium.astroguide.ai.rag.ParentContextExpander}）；同一父窗口的小块按序拼接即还原父窗口。
+ */
+@Component
+public class ParentChildChunker {
+
+    private final boolean enabled;
+    private final TextChunker parentChunker;
+    private final TextChunker childChunker;
+
+    public ParentChildChunker(
+            @Value("${app.ingest.parent.enabled:false}") boolean enabled,
+            @Value("${app.ingest.parent.parent-size:2000}") int parentSize,
+            @Value("${app.ingest.parent.child-size:300}") int childSize) {
+        this.enabled = enabled;
+        this.parentChunker = new TextChunker(parentSize, 0);
+        this.childChunker = new TextChunker(childSize, 0);
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    public List<Chunk> chunk(String fullText) {
+        List<Chunk> out = new ArrayList<>();
+        if (fullText == null || fullText.isBlank()) {
+            return out;
+        }
+        Session session = open(out::add);
+        session.feed(fullText);
+        session.finish();
+        return out;
+    }
+
+    /** 流式父子分块：每产出一个父窗口即切成小块回调，结果与 {@link #chunk} 一致 */
+    public Session open(Consumer<Chunk> chunkConsumer) {
+        return new Session(chunkConsumer);
+    }
+
+    public final class Session {
+
+        private final TextChunker.Session parents;
+        private int parentIndex = 0;
+
+        private Session(Consumer<Chunk> out) {
+            this.parents = parentChunker.open(parent -> {
+                List<String> children = childChunker.chunk(parent);
+                for (int c = 0; c < children.size(); c++) {
+                    out.accept(new Chunk(children.get(c), parent, parentIndex, c, children.size()));
+                }
+                parentIndex++;
+            });
+        }
+
+        public void feed(CharSequence segment) {
+            parents.feed(segment);
+        }
+
+        public void finish() {
+            parents.finish();
+        }
+    }
+
+    /**
+     * @param text        检索小块正文
+     * @param parentText  所属父窗口正文
+     * @param parentIndex 所属父窗口序号
+     * @param childIndex  在父窗口内的序号
+     * @param childTotal  父窗口内小块总数
+     */
+    public record Chunk(String text, String parentText, int parentIndex, int childIndex, int childTotal) {
+    }
+}
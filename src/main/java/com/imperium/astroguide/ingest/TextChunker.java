@@ -1,35 +1,71 @@
 package com.imperium.astroguide.ingest;
 
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.stereotype.Component;
+import org.springframework.lang.Nullable;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.CharBuffer;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Pattern;
+import java.util.function.Consumer;
 
 /**
  * 将长文本按块大小与重叠切分为多段，便于向量化与检索。
  * <p>
  * 分块策略：优先按句子边界切分，保证块内每个句子完整、不拦腰截断；
  * 超长句再按标点或字符做兜底切分。
+ * <p>
+ * 边界识别为手写单遍扫描（不做整本 normalize、不经正则 split）：
+ * 句末标点（。！？.!?）后的空白串、或换行串（\r、\n）为句子边界；次要标点（，；、,;）后为弱边界。
+ * <p>
+ * 块大小与重叠默认按字符计；按 token 计时（{@link #tokens}）以 embedding 模型的 tokenizer 度量每个句子，
+ * 块长取句子 token 数之和，每个句间另计 1 个 token 作余量：拼接处的分词可能与分句计数不同
+ * （如 BPE 的前导空格），余量保证拼接后的块不超出块大小，块大小取满模型窗口时也不会被截断。中英文块的 token 长度因此一致。
+ * Spring 装配见 {@link com.imperium.astroguide.config.ChunkingConfig}。
  */
-@Component
 public class TextChunker {
 
-    /** 句子结束符（中英文）：句号、问号、感叹号等后的空白或换行作为切分点 */
-    private static final Pattern SENTENCE_END = Pattern.compile("(?<=[。！？.!?])\\s+|\\n+");
-
-    /** 超长句兜底切分：按逗号、分号、顿号等次要边界 */
-    private static final Pattern WEAK_BOUNDARY = Pattern.compile("(?<=[，；、,;])\\s*");
+    private static final int READ_BLOCK_CHARS = 8192;
 
     private final int chunkSize;
     private final int chunkOverlap;
+    /** 为 null 时按字符计 */
+    @Nullable
+    private final TokenCounter tokenCounter;
+    /** 句间分隔的计量：字符模式为 1（空格），token 模式为 1（拼接余量） */
+    private final int separator;
 
-    public TextChunker(
-            @Value("${app.ingest.chunk-size:600}") int chunkSize,
-            @Value("${app.ingest.chunk-overlap:80}") int chunkOverlap) {
+    /** 按字符计的分块器 */
+    public TextChunker(int chunkSize, int chunkOverlap) {
         this.chunkSize = Math.max(200, Math.min(2000, chunkSize));
         this.chunkOverlap = Math.max(0, Math.min(this.chunkSize / 2, chunkOverlap));
+        this.tokenCounter = null;
+        this.separator = 1;
+    }
+
+    private TextChunker(int chunkTokens, int overlapTokens, TokenCounter tokenCounter) {
+        this.chunkSize = Math.max(16, Math.min(8192, chunkTokens));
+        this.chunkOverlap = Math.max(0, Math.min(this.chunkSize / 2, overlapTokens));
+        this.tokenCounter = tokenCounter;
+        this.separator = 1;
+    }
+
+    /**
+     * 按 token 计的分块器。
+     *
+     * @param tokenCounter 每个句子计数一次（重叠句会再计一次），重复句多时宜包一层 {@link CachingTokenCounter}
+     */
+    public static TextChunker tokens(int chunkTokens, int overlapTokens, TokenCounter tokenCounter) {
+        return new TextChunker(chunkTokens, overlapTokens, tokenCounter);
+    }
+
+    public int chunkSize() {
+        return chunkSize;
+    }
+
+    /** 文本长度：字符模式为字符数，token 模式为 token 数 */
+    public int measure(String text) {
+        return tokenCounter == null ? text.length() : tokenCounter.count(text);
     }
 
     /**
@@ -39,95 +75,213 @@ public class TextChunker {
         if (fullText == null || fullText.isBlank()) {
             return List.of();
         }
-        String normalized = fullText.replace("\r\n", "\n").replace("\r", "\n").trim();
-        List<String> sentences = splitIntoSentences(normalized);
-        return groupSentencesIntoChunks(sentences);
+        List<String> chunks = new ArrayList<>();
+        Session session = open(chunks::add);
+        session.feed(fullText);
+        session.finish();
+        return chunks;
     }
 
     /**
-     * 按句子结束符和换行切分为句子（保留尾部标点在同一句内）。
+     * 从 Reader 按块读取并流式分块，块产出即回调。
      */
-    private List<String> splitIntoSentences(String text) {
-        List<String> list = new ArrayList<>();
-        for (String s : SENTENCE_END.split(text)) {
-            String t = s.replace("\n", " ").trim();
-            if (!t.isEmpty()) {
-                list.add(t);
-            }
-        }
-        // 若整段没有句末标点，会得到一整块，后面按长度兜底
-        if (list.isEmpty() && !text.isBlank()) {
-            list.add(text.replace("\n", " ").trim());
+    public void chunk(Reader reader, Consumer<String> chunkConsumer) throws IOException {
+        Session session = open(chunkConsumer);
+        CharBuffer block = CharBuffer.allocate(READ_BLOCK_CHARS);
+        while (reader.read(block) >= 0) {
+            block.flip();
+            session.feed(block);
+            block.clear();
         }
-        return list;
+        session.finish();
     }
 
     /**
-     * 将句子列表按 chunkSize 聚合成块，块内句子完整；可选句子级重叠。
+     * 流式分块：正文可分段（如按页）喂入，块产出即回调；结果与对拼接全文调用 {@link #chunk} 一致。
+     * 内存只保留未遇到句子边界的尾部文本与当前块。
      */
-    private List<String> groupSentencesIntoChunks(List<String> sentences) {
-        List<String> chunks = new ArrayList<>();
-        List<String> overlapBuffer = new ArrayList<>(); // 用于重叠的句子
-        StringBuilder current = new StringBuilder();
-        int overlapCharCount = 0;
+    public Session open(Consumer<String> chunkConsumer) {
+        return new Session(chunkConsumer);
+    }
+
+    /**
+     * 一次流式分块会话（非线程安全）。
+     */
+    public final class Session {
+
+        private final Consumer<String> out;
+        /** 尚未遇到句子边界的尾部文本，与下一段拼接后继续扫描 */
+        private final StringBuilder pending = new StringBuilder();
+        /** pending 中已扫描、确认不含边界的前缀长度，续扫时不重复扫描 */
+        private int scanned = 0;
+        private final List<String> overlapBuffer = new ArrayList<>(); // 用于重叠的句子
+        private final StringBuilder current = new StringBuilder();
+        /** current 的长度（按 {@link #measure} 计） */
+        private int currentSize = 0;
+
+        private Session(Consumer<String> out) {
+            this.out = out;
+        }
 
-        for (String sentence : sentences) {
-            boolean singleSentenceExceedsChunk = sentence.length() > chunkSize;
+        /** 喂入一段正文；段间可在句中截断 */
+        public void feed(CharSequence segment) {
+            if (segment == null || segment.isEmpty()) {
+                return;
+            }
+            if (pending.isEmpty()) {
+                // 无未结束尾部：直接扫描本段，只复制尾部
+                int consumed = scanSentences(segment, 0, this::sentence);
+                pending.append(segment, consumed, segment.length());
+            } else {
+                pending.append(segment);
+                int consumed = scanSentences(pending, scanned, this::sentence);
+                pending.delete(0, consumed);
+            }
+            scanned = pending.length();
+        }
+
+        /** 输入结束：处理尾部文本并输出最后一块 */
+        public void finish() {
+            emitTrimmed(pending, 0, pending.length(), this::sentence);
+            pending.setLength(0);
+            scanned = 0;
+            if (current.length() > 0) {
+                out.accept(current.toString().trim());
+                current.setLength(0);
+                currentSize = 0;
+            }
+        }
+
+        /**
+         * 将句子按 chunkSize 聚合成块，块内句子完整；可选句子级重叠。
+         */
+        private void sentence(String sentence) {
+            int size = measure(sentence);
+            boolean singleSentenceExceedsChunk = size > chunkSize;
 
             if (singleSentenceExceedsChunk) {
                 // 先 flush 当前块
                 if (current.length() > 0) {
-                    chunks.add(current.toString().trim());
+                    out.accept(current.toString().trim());
                     current.setLength(0);
+                    currentSize = 0;
                     overlapBuffer.clear();
-                    overlapCharCount = 0;
                 }
                 // 超长句：按次要标点或按长度切分
                 for (String fragment : splitLongSentence(sentence)) {
-                    chunks.add(fragment.trim());
+                    out.accept(fragment.trim());
                 }
-                continue;
+                return;
             }
 
-            int needSpace = current.length() > 0 ? 1 : 0;
-            if (current.length() + needSpace + sentence.length() <= chunkSize) {
+            int needSpace = current.length() > 0 ? separator : 0;
+            if (currentSize + needSpace + size <= chunkSize) {
                 if (current.length() > 0) current.append(" ");
                 current.append(sentence);
                 overlapBuffer.add(sentence);
-                overlapCharCount += (needSpace + sentence.length());
+                currentSize += needSpace + size;
             } else {
                 if (current.length() > 0) {
-                    chunks.add(current.toString().trim());
-                    // 重叠：从 overlapBuffer 末尾取若干句，使总字符数约等于 chunkOverlap
+                    out.accept(current.toString().trim());
+                    // 重叠：从 overlapBuffer 末尾取若干句，使总长度约等于 chunkOverlap
                     List<String> overlap = buildOverlapSentences(overlapBuffer);
                     current.setLength(0);
-                    overlapCharCount = 0;
+                    currentSize = 0;
                     for (String o : overlap) {
-                        if (current.length() > 0) current.append(" ");
+                        if (current.length() > 0) {
+                            current.append(" ");
+                            currentSize += separator;
+                        }
                         current.append(o);
-                        overlapCharCount += o.length() + (current.length() > 0 ? 1 : 0);
+                        currentSize += measure(o);
                     }
                     overlapBuffer.clear();
                     overlapBuffer.addAll(overlap);
                 }
-                if (current.length() + 1 + sentence.length() <= chunkSize) {
-                    if (current.length() > 0) current.append(" ");
+                if (currentSize + separator + size <= chunkSize) {
+                    if (current.length() > 0) {
+                        current.append(" ");
+                        currentSize += separator;
+                    }
                     current.append(sentence);
                     overlapBuffer.add(sentence);
-                    overlapCharCount += sentence.length() + 1;
+                    currentSize += size;
                 } else {
                     current.setLength(0);
                     current.append(sentence);
                     overlapBuffer.clear();
                     overlapBuffer.add(sentence);
-                    overlapCharCount = sentence.length();
+                    currentSize = size;
+                }
+            }
+        }
+    }
+
+    /**
+     * 从 from 起扫描句子边界，把 [0, 最后一个边界) 内的句子依次交给 sentenceConsumer（去首尾空白，空句跳过）。
+     * 边界与原正则 {@code (?<=[。！？.!?])\s+|\n+}（\r 视同 \n）一致：句末标点后的空白串，或换行串。
+     * 到达末尾的边界串视为已结束——续段开头的空白会在下一句去首尾空白时丢弃，结果不变。
+     *
+     * @param from 已确认无边界的前缀长度（其前一字符用于判断句末标点）
+     * @return 已消费的长度（末个边界的结束位置），其后为未结束的尾部
+     */
+    static int scanSentences(CharSequence text, int from, Consumer<String> sentenceConsumer) {
+        int length = text.length();
+        int sentenceStart = 0;
+        int i = from;
+        while (i < length) {
+            char c = text.charAt(i);
+            int boundaryEnd = -1;
+            if (i > 0 && isSentenceEnd(text.charAt(i - 1)) && isSpace(c)) {
+                boundaryEnd = i + 1;
+                while (boundaryEnd < length && isSpace(text.charAt(boundaryEnd))) {
+                    boundaryEnd++;
+                }
+            } else if (isLineBreak(c)) {
+                boundaryEnd = i + 1;
+                while (boundaryEnd < length && isLineBreak(text.charAt(boundaryEnd))) {
+                    boundaryEnd++;
                 }
             }
+            if (boundaryEnd < 0) {
+                i++;
+                continue;
+            }
+            emitTrimmed(text, sentenceStart, i, sentenceConsumer);
+            sentenceStart = boundaryEnd;
+            i = boundaryEnd;
         }
-        if (current.length() > 0) {
-            chunks.add(current.toString().trim());
+        return sentenceStart;
+    }
+
+    /** 输出 [start, end) 去首尾空白（同 {@link String#trim}）后的非空文本 */
+    private static void emitTrimmed(CharSequence text, int start, int end, Consumer<String> consumer) {
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
         }
-        return chunks;
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (start < end) {
+            consumer.accept(text.subSequence(start, end).toString());
+        }
+    }
+
+    private static boolean isSentenceEnd(char c) {
+        return c == '。' || c == '！' || c == '？' || c == '.' || c == '!' || c == '?';
+    }
+
+    private static boolean isWeakBoundary(char c) {
+        return c == '，' || c == '；' || c == '、' || c == ',' || c == ';';
+    }
+
+    private static boolean isLineBreak(char c) {
+        return c == '\n' || c == '\r';
+    }
+
+    /** 与正则 \s 一致（非 Unicode 模式）：空格、\t、\n、\x0B、\f、\r */
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
     }
 
     /** 从末尾取句子，使总长度尽量接近 chunkOverlap（至少取一句） */
@@ -137,9 +291,10 @@ public class TextChunker {
         int len = 0;
         for (int i = buffer.size() - 1; i >= 0; i--) {
             String s = buffer.get(i);
-            if (len + s.length() > chunkOverlap && !out.isEmpty()) break;
+            int size = measure(s);
+            if (len + size > chunkOverlap && !out.isEmpty()) break;
             out.add(0, s);
-            len += s.length() + (out.size() > 1 ? 1 : 0);
+            len += size + (out.size() > 1 ? separator : 0);
         }
         return out;
     }
@@ -149,24 +304,29 @@ public class TextChunker {
      */
     private List<String> splitLongSentence(String sentence) {
         List<String> fragments = new ArrayList<>();
-        String[] byWeak = WEAK_BOUNDARY.split(sentence);
         StringBuilder acc = new StringBuilder();
-        for (String part : byWeak) {
-            String p = part.trim();
-            if (p.isEmpty()) continue;
-            if (acc.length() + p.length() + 1 <= chunkSize) {
-                if (acc.length() > 0) acc.append(" ");
+        int accSize = 0;
+        for (String p : splitWeak(sentence)) {
+            int size = measure(p);
+            if (accSize + size + separator <= chunkSize) {
+                if (acc.length() > 0) {
+                    acc.append(" ");
+                    accSize += separator;
+                }
                 acc.append(p);
+                accSize += size;
             } else {
                 if (acc.length() > 0) {
                     fragments.add(acc.toString().trim());
                     acc.setLength(0);
+                    accSize = 0;
                 }
-                if (p.length() > chunkSize) {
-                    // 仍超长：按字符切，尽量在空格处断
+                if (size > chunkSize) {
+                    // 仍超长：按长度切，尽量在空格处断
                     fragments.addAll(splitByLength(p));
                 } else {
                     acc.append(p);
+                    accSize = size;
                 }
             }
         }
@@ -176,19 +336,48 @@ public class TextChunker {
         return fragments;
     }
 
-    /** 按长度硬切，尽量在空格处断句 */
+    /** 在次要标点后切分（其后空白丢弃），片段去首尾空白、空片段跳过 */
+    static List<String> splitWeak(String sentence) {
+        List<String> parts = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < sentence.length(); i++) {
+            if (isWeakBoundary(sentence.charAt(i))) {
+                emitTrimmed(sentence, start, i + 1, parts::add);
+                start = i + 1;
+                while (start < sentence.length() && isSpace(sentence.charAt(start))) {
+                    start++;
+                }
+                i = start - 1;
+            }
+        }
+        emitTrimmed(sentence, start, sentence.length(), parts::add);
+        return parts;
+    }
+
+    /**
+     * 按长度硬切，尽量在空格处断句。token 模式下按整段的平均字符/token 比估算窗口，
+     * 切出的片段超出 chunkSize 时逐步收窄。
+     */
     private List<String> splitByLength(String text) {
         List<String> list = new ArrayList<>();
+        int window = tokenCounter == null ? chunkSize
+                : (int) Math.max(1, (long) chunkSize * text.length() / Math.max(1, measure(text)));
         int start = 0;
         while (start < text.length()) {
-            int end = Math.min(start + chunkSize, text.length());
-            if (end < text.length()) {
-                int lastSpace = text.lastIndexOf(' ', end);
-                if (lastSpace > start) {
-                    end = lastSpace + 1;
+            int limit = window;
+            String piece;
+            int end;
+            do {
+                end = Math.min(start + limit, text.length());
+                if (end < text.length()) {
+                    int lastSpace = text.lastIndexOf(' ', end);
+                    if (lastSpace > start) {
+                        end = lastSpace + 1;
+                    }
                 }
-            }
-            String piece = text.substring(start, end).trim();
+                piece = text.substring(start, end).trim();
+                limit = limit * 9 / 10;
+            } while (tokenCounter != null && limit > 0 && !piece.isEmpty() && measure(piece) > chunkSize);
             if (!piece.isEmpty()) list.add(piece);
             start = end;
         }
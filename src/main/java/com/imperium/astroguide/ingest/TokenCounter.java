@@ -0,0 +1,10 @@
+package com.imperium.astroguide.ingest;
+
+/**
+ * 文本 token 计数（不含 [CLS]/[SEP] 等特殊 token），用于按 token 分块。实现须线程安全。
+ */
+@FunctionalInterface
+public interface TokenCounter {
+
+    int count(String text);
+}
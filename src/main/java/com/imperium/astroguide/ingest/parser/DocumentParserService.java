@@ -1,13 +1,18 @@
 package com.imperium.astroguide.ingest.parser;
 
 import java.io.InputStream;
+import java.nio.file.Path;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 /**
  * 将各类资料（PDF、EPUB、TXT、MD）解析为纯文本。
  */
 public interface DocumentParserService {
 
+    /** 既无文件名也无文件内标题时的占位来源标签；不同资料会共用它们，不能作为来源的唯一标识 */
+    List<String> PLACEHOLDER_LABELS = List.of("document.pdf", "document.epub", "document.txt");
+
     /**
      * 根据文件名与内容类型解析输入流，得到纯文本与来源标签。
      *
@@ -17,4 +22,15 @@ public interface DocumentParserService {
      * @return 解析结果，若格式不支持或解析失败可返回 null 或抛异常
      */
     DocumentParseResult parse(InputStream inputStream, String filename, String contentType);
+
+    /**
+     * 流式解析本地文件：正文按文档顺序分段交给 sink，不在内存中拼接全文（PDF 按页区间抽取）。
+     *
+     * @param file        本地文件（调用方负责删除）
+     * @param filename    原始文件名（用于选择解析器与默认 sourceLabel）
+     * @param contentType 可选
+     * @param sink        接收来源标签与正文片段
+     * @throws UnsupportedFormatException 格式不支持
+     */
+    void parse(Path file, String filename, String contentType, ParsedTextSink sink);
 }
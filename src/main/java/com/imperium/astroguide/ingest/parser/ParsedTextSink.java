@@ -0,0 +1,20 @@
+package com.imperium.astroguide.ingest.parser;
+
+/**
+ * 流式解析的接收方：按文档顺序接收正文片段，不要求解析器拼接全文。
+ */
+public interface ParsedTextSink {
+
+    /** 来源标签确定后、首段正文前调用一次 */
+    void start(String sourceLabel);
+
+    /**
+     * 章节边界：其后的正文属于标题为 title 的新章节（title 可为 null）；此前的正文不与之后的拼接。
+     * 无章节结构的格式不调用。
+     */
+    default void section(String title) {
+    }
+
+    /** 一段正文（如若干页）；段与段之间可能在句中截断，由分块器衔接 */
+    void text(String segment);
+}
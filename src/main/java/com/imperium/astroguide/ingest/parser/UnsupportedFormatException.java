@@ -0,0 +1,13 @@
+package com.imperium.astroguide.ingest.parser;
+
+/**
+ * 无法识别或不支持的资料格式。重试不会改变结果，异步任务遇到时直接失败而不重新排队。
+ */
+public class UnsupportedFormatException extends IllegalArgumentException {
+
+    private static final long serialVersionUID = 1L;
+
+    public UnsupportedFormatException(String message) {
+        super(message);
+    }
+}
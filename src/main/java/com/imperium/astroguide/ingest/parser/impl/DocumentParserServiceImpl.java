@@ -2,29 +2,65 @@ package com.imperium.astroguide.ingest.parser.impl;
 
 import com.imperium.astroguide.ingest.parser.DocumentParseResult;
 import com.imperium.astroguide.ingest.parser.DocumentParserService;
+import com.imperium.astroguide.ingest.parser.ParsedTextSink;
+import com.imperium.astroguide.ingest.parser.UnsupportedFormatException;
 import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.IOUtils;
+import org.apache.pdfbox.io.RandomAccessReadBufferedFile;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.text.PDFTextStripper;
 import org.jsoup.Jsoup;
+import jakarta.annotation.PreDestroy;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import io.documentnode.epub4j.domain.Book;
 import io.documentnode.epub4j.domain.Resource;
+import io.documentnode.epub4j.domain.TOCReference;
 import io.documentnode.epub4j.epub.EpubReader;
+import net.lingala.zip4j.ZipFile;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Reader;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 /**
  * 支持 PDF、EPUB、TXT、MD 的解析实现。
+ * <p>
+ * PDF 以文件为后端随机读取（输入流先落临时文件），按 pages-per-range 页一段抽取；
+ * 每段使用独立打开的文档句柄，段结束即关闭，已解析的页对象不会随页数累积，峰值内存与文档大小无关。
+ * 多于一段时各段在共享的 workers 线程池上并行抽取，按页序交给下游；已提交未输出的段数不超过 workers * 2，内存仍有界。
+ * <p>
+ * EPUB 以 zip 文件随机读取，资源按需解压；每个章节（HTML 资源）是独立单元，在同一线程池上并行解析，
+ * 按阅读顺序逐章交给下游（先 {@link ParsedTextSink#section} 报告章节标题，再给出正文），下游随即分块写入。
+ * 章节标题取目录（TOC）标题，缺省时取章节首个 h1–h3 或 title。
+ * TXT/MD 按块读取。
+ * <p>
+ * 抽取线程池随容器关闭；直接构造的实例（测试、基准）用完须 {@link #close}。
  */
 @Service
-public class DocumentParserServiceImpl implements DocumentParserService {
+public class DocumentParserServiceImpl implements DocumentParserService, AutoCloseable {
 
     private static final Logger log = LoggerFactory.getLogger(DocumentParserServiceImpl.class);
 
@@ -32,6 +68,34 @@ public class DocumentParserServiceImpl implements DocumentParserService {
     private static final String EPUB = "application/epub+zip";
     private static final String TEXT = "text/plain";
     private static final String MARKDOWN = "text/markdown";
+    private static final int TEXT_BLOCK_CHARS = 1 << 16;
+
+    private final int pagesPerRange;
+    private final int workers;
+    /** PDF 页区间与 EPUB 章节共用的抽取线程池，所有解析请求共享；单线程时为 null，在调用线程顺序抽取 */
+    private final ExecutorService extractPool;
+
+    /**
+     * @param workers 并行抽取线程数，不大于 0 时取 CPU 核数
+     */
+    public DocumentParserServiceImpl(@Value("${app.ingest.pdf.pages-per-range:20}") int pagesPerRange,
+            @Value("${app.ingest.pdf.workers:0}") int workers) {
+        this.pagesPerRange = Math.max(1, pagesPerRange);
+        this.workers = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+        this.extractPool = this.workers > 1 ? Executors.newFixedThreadPool(this.workers, r -> {
+            Thread t = new Thread(r, "doc-extract");
+            t.setDaemon(true);
+            return t;
+        }) : null;
+    }
+
+    @Override
+    @PreDestroy
+    public void close() {
+        if (extractPool != null) {
+            extractPool.shutdownNow();
+        }
+    }
 
     @Override
     public DocumentParseResult parse(InputStream inputStream, String filename, String contentType) {
@@ -40,10 +104,21 @@ public class DocumentParserServiceImpl implements DocumentParserService {
             case PDF -> parsePdf(inputStream, filename);
             case EPUB -> parseEpub(inputStream, filename);
             case TEXT, MARKDOWN -> parseText(inputStream, filename);
-            default -> throw new IllegalArgumentException("Unsupported format: " + type + " (filename=" + filename + ")");
+            default -> throw new UnsupportedFormatException("Unsupported format: " + type + " (filename=" + filename + ")");
         };
     }
 
+    @Override
+    public void parse(Path file, String filename, String contentType, ParsedTextSink sink) {
+        String type = resolveMediaType(filename, contentType);
+        switch (type) {
+            case PDF -> streamPdf(file, filename, sink);
+            case EPUB -> streamEpub(file, filename, sink);
+            case TEXT, MARKDOWN -> streamText(file, filename, sink);
+            default -> throw new UnsupportedFormatException("Unsupported format: " + type + " (filename=" + filename + ")");
+        }
+    }
+
     private String resolveMediaType(String filename, String contentType) {
         if (contentType != null && !contentType.isBlank()) {
             String lower = contentType.toLowerCase(Locale.ROOT).split(";")[0].trim();
@@ -58,65 +133,244 @@ public class DocumentParserServiceImpl implements DocumentParserService {
                 case "epub" -> EPUB;
                 case "txt" -> TEXT;
                 case "md", "markdown" -> MARKDOWN;
-                default -> throw new IllegalArgumentException("Unsupported file extension: ." + ext);
+                default -> throw new UnsupportedFormatException("Unsupported file extension: ." + ext);
             };
         }
-        throw new IllegalArgumentException("Cannot determine format: provide filename or content-type");
+        throw new UnsupportedFormatException("Cannot determine format: provide filename or content-type");
     }
 
+    /** 输入流先落临时文件，再按页区间抽取后拼接（供需要全文的调用方） */
     private DocumentParseResult parsePdf(InputStream inputStream, String filename) {
-        try (PDDocument doc = Loader.loadPDF(inputStream.readAllBytes())) {
-            PDFTextStripper stripper = new PDFTextStripper();
-            String text = stripper.getText(doc);
-            String sourceLabel = filename != null && !filename.isBlank() ? filename : "document.pdf";
+        Path spool = null;
+        try {
+            spool = Files.createTempFile("astroguide-pdf-", ".pdf");
+            Files.copy(inputStream, spool, StandardCopyOption.REPLACE_EXISTING);
+            StringBuilder full = new StringBuilder();
+            String[] label = new String[1];
+            streamPdf(spool, filename, new ParsedTextSink() {
+                @Override
+                public void start(String sourceLabel) {
+                    label[0] = sourceLabel;
+                }
+
+                @Override
+                public void text(String segment) {
+                    full.append(segment);
+                }
+            });
             return DocumentParseResult.builder()
-                    .fullText(normalizeText(text))
-                    .sourceLabel(sourceLabel)
+                    .fullText(normalizeText(full.toString()))
+                    .sourceLabel(label[0])
                     .build();
         } catch (IOException e) {
             log.warn("PDF parse failed: {}", e.getMessage());
             throw new RuntimeException("Failed to parse PDF", e);
+        } finally {
+            deleteQuietly(spool);
         }
     }
 
-    private DocumentParseResult parseEpub(InputStream inputStream, String filename) {
+    private void streamPdf(Path file, String filename, ParsedTextSink sink) {
         try {
-            EpubReader reader = new EpubReader();
-            Book book = reader.readEpub(inputStream);
-            String title = book.getTitle();
-            String sourceLabel = (title != null && !title.isBlank()) ? title : (filename != null && !filename.isBlank() ? filename : "document.epub");
-            StringBuilder full = new StringBuilder();
-            List<Resource> contents = book.getContents();
-            for (Resource res : contents) {
-                String href = res.getHref();
-                if (href == null) continue;
-                String lower = href.toLowerCase(Locale.ROOT);
-                if (!lower.endsWith(".html") && !lower.endsWith(".xhtml") && !lower.endsWith(".htm")) {
-                    continue;
+            int pages;
+            try (PDDocument doc = open(file)) {
+                pages = doc.getNumberOfPages();
+            }
+            sink.start(filename != null && !filename.isBlank() ? filename : "document.pdf");
+            int[] next = {1};
+            runOrdered(() -> {
+                if (next[0] > pages) {
+                    return null;
                 }
+                int start = next[0];
+                int end = Math.min(pages, start + pagesPerRange - 1);
+                next[0] = end + 1;
+                return () -> extractPages(file, start, end);
+            }, sink::text, "PDF");
+        } catch (IOException e) {
+            log.warn("PDF parse failed: {}", e.getMessage());
+            throw new RuntimeException("Failed to parse PDF", e);
+        }
+    }
+
+    /** 按文档顺序产出抽取任务，null 表示结束；在调用线程执行，可在此顺序读取输入 */
+    @FunctionalInterface
+    private interface TaskSource<T> {
+
+        Callable<T> next() throws IOException;
+    }
+
+    /**
+     * 执行 tasks 并按产出顺序把结果交给 consumer。有线程池时滑动窗口提交，按提交顺序等待队首结果输出，
+     * 保证下游收到的内容与顺序处理一致；已提交未输出的任务不超过 workers * 2。
+     */
+    private <T> void runOrdered(TaskSource<T> tasks, Consumer<T> consumer, String format) throws IOException {
+        if (extractPool == null) {
+            for (Callable<T> task = tasks.next(); task != null; task = tasks.next()) {
                 try {
-                    byte[] data = res.getData();
-                    if (data == null || data.length == 0) continue;
-                    String html = new String(data, StandardCharsets.UTF_8);
-                    String plain = Jsoup.parse(html).text();
-                    if (plain != null && !plain.isBlank()) {
-                        if (full.length() > 0) full.append("\n\n");
-                        full.append(plain);
-                    }
+                    consumer.accept(task.call());
+                } catch (IOException | RuntimeException e) {
+                    throw e;
                 } catch (Exception e) {
-                    log.debug("Skip resource {}: {}", href, e.getMessage());
+                    throw new IOException(format + " extraction failed: " + e.getMessage(), e);
+                }
+            }
+            return;
+        }
+        Deque<Future<T>> window = new ArrayDeque<>();
+        try {
+            Callable<T> task = tasks.next();
+            while (task != null || !window.isEmpty()) {
+                while (task != null && window.size() < workers * 2) {
+                    window.addLast(extractPool.submit(task));
+                    task = tasks.next();
                 }
+                consumer.accept(window.removeFirst().get());
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(format + " extraction interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException(format + " extraction failed: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            window.forEach(f -> f.cancel(true));
+        }
+    }
+
+    /** 以独立句柄抽取 [startPage, endPage]（1 起、闭区间）的正文 */
+    static String extractPages(Path file, int startPage, int endPage) throws IOException {
+        try (PDDocument doc = open(file)) {
+            PDFTextStripper stripper = new PDFTextStripper();
+            stripper.setStartPage(startPage);
+            stripper.setEndPage(endPage);
+            return stripper.getText(doc);
+        }
+    }
+
+    /** 文件后端随机读取，解码后的流缓存也落临时文件，不占堆 */
+    private static PDDocument open(Path file) throws IOException {
+        return Loader.loadPDF(new RandomAccessReadBufferedFile(file), IOUtils.createTempFileOnlyStreamCache());
+    }
+
+    /** 输入流先落临时文件，再逐章解析后拼接（供需要全文的调用方） */
+    private DocumentParseResult parseEpub(InputStream inputStream, String filename) {
+        Path spool = null;
+        try {
+            spool = Files.createTempFile("astroguide-epub-", ".epub");
+            Files.copy(inputStream, spool, StandardCopyOption.REPLACE_EXISTING);
+            StringBuilder full = new StringBuilder();
+            String[] label = new String[1];
+            streamEpub(spool, filename, new ParsedTextSink() {
+                @Override
+                public void start(String sourceLabel) {
+                    label[0] = sourceLabel;
+                }
+
+                @Override
+                public void section(String title) {
+                    if (full.length() > 0) {
+                        full.append("\n\n");
+                    }
+                }
+
+                @Override
+                public void text(String segment) {
+                    full.append(segment);
+                }
+            });
             return DocumentParseResult.builder()
                     .fullText(normalizeText(full.toString()))
-                    .sourceLabel(sourceLabel)
+                    .sourceLabel(label[0])
                     .build();
         } catch (IOException e) {
             log.warn("EPUB parse failed: {}", e.getMessage());
             throw new RuntimeException("Failed to parse EPUB", e);
+        } finally {
+            deleteQuietly(spool);
+        }
+    }
+
+    private void streamEpub(Path file, String filename, ParsedTextSink sink) {
+        try (ZipFile zip = new ZipFile(file.toFile())) {
+            Book book = new EpubReader().readEpubLazy(zip, StandardCharsets.UTF_8.name());
+            String title = book.getTitle();
+            sink.start((title != null && !title.isBlank()) ? title : (filename != null && !filename.isBlank() ? filename : "document.epub"));
+            Map<String, String> titles = new HashMap<>();
+            collectTocTitles(book.getTableOfContents().getTocReferences(), titles);
+            Iterator<Resource> resources = book.getContents().iterator();
+            runOrdered(() -> {
+                while (resources.hasNext()) {
+                    Resource res = resources.next();
+                    String href = res.getHref();
+                    if (href == null) continue;
+                    String lower = href.toLowerCase(Locale.ROOT);
+                    if (!lower.endsWith(".html") && !lower.endsWith(".xhtml") && !lower.endsWith(".htm")) {
+                        continue;
+                    }
+                    // 按阅读顺序在调用线程读出章节字节，解析交给线程池
+                    byte[] data;
+                    try (InputStream in = res.getInputStream()) {
+                        data = in.readAllBytes();
+                    } catch (IOException e) {
+                        log.debug("Skip resource {}: {}", href, e.getMessage());
+                        continue;
+                    }
+                    if (data.length == 0) continue;
+                    String tocTitle = titles.get(href);
+                    return () -> parseChapter(href, data, tocTitle);
+                }
+                return null;
+            }, chapter -> {
+                if (chapter != null) {
+                    sink.section(chapter.title());
+                    sink.text(chapter.text());
+                }
+            }, "EPUB");
+        } catch (IOException e) {
+            log.warn("EPUB parse failed: {}", e.getMessage());
+            throw new RuntimeException("Failed to parse EPUB", e);
         }
     }
 
+    /** 目录标题按资源 href 索引（去掉片段）；同一资源取先出现的（即较高层级的）标题 */
+    private static void collectTocTitles(List<TOCReference> references, Map<String, String> titles) {
+        for (TOCReference ref : references) {
+            Resource res = ref.getResource();
+            if (res != null && res.getHref() != null && ref.getTitle() != null && !ref.getTitle().isBlank()) {
+                titles.putIfAbsent(res.getHref(), ref.getTitle().strip());
+            }
+            collectTocTitles(ref.getChildren(), titles);
+        }
+    }
+
+    /** 解析一个章节；文本为空或解析失败时返回 null（跳过该章） */
+    static Chapter parseChapter(String href, byte[] data, String tocTitle) {
+        try {
+            Document doc = Jsoup.parse(new String(data, StandardCharsets.UTF_8));
+            // 与按整本解析时一样取整个文档的文本（含 <title>）：章节内 chunk 的正文哈希不变，重新摄入时免于重新 embedding
+            String plain = doc.text();
+            if (plain.isBlank()) {
+                return null;
+            }
+            String title = tocTitle;
+            if (title == null) {
+                Element heading = doc.selectFirst("h1, h2, h3");
+                title = heading != null && !heading.text().isBlank() ? heading.text() : doc.title();
+            }
+            return new Chapter(title != null && !title.isBlank() ? title.strip() : null, plain);
+        } catch (RuntimeException e) {
+            log.debug("Skip resource {}: {}", href, e.getMessage());
+            return null;
+        }
+    }
+
+    /** 一个章节的标题（可为 null）与正文 */
+    record Chapter(String title, String text) {
+    }
+
     private DocumentParseResult parseText(InputStream inputStream, String filename) {
         try {
             String text = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
@@ -131,6 +385,31 @@ public class DocumentParserServiceImpl implements DocumentParserService {
         }
     }
 
+    private void streamText(Path file, String filename, ParsedTextSink sink) {
+        sink.start(filename != null && !filename.isBlank() ? filename : "document.txt");
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            char[] block = new char[TEXT_BLOCK_CHARS];
+            int n;
+            while ((n = reader.read(block)) > 0) {
+                sink.text(new String(block, 0, n));
+            }
+        } catch (IOException e) {
+            log.warn("Text parse failed: {}", e.getMessage());
+            throw new RuntimeException("Failed to read text", e);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.debug("Failed to delete temp file {}: {}", file, e.getMessage());
+        }
+    }
+
     private static String normalizeText(String s) {
         if (s == null) return "";
         return s.replace("\r\n", "\n").replace("\r", "\n").trim();
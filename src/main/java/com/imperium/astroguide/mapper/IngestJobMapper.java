@@ -0,0 +1,9 @@
+package com.imperium.astroguide.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.imperium.astroguide.model.entity.IngestJob;
+import org.apache.ibatis.annotations.Mapper;
+
+@Mapper
+public interface IngestJobMapper extends BaseMapper<IngestJob> {
+}
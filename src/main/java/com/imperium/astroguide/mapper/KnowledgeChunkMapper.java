@@ -0,0 +1,27 @@
+package com.imperium.astroguide.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.imperium.astroguide.model.entity.KnowledgeChunk;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+@Mapper
+public interface KnowledgeChunkMapper extends BaseMapper<KnowledgeChunk> {
+
+    /** 批量写入，主键已存在时覆盖除 created_at 外的各列（重写目录行仍在的 chunk 时不因主键冲突失败） */
+    @Insert({"<script>",
+            "INSERT INTO knowledge_chunks (id, source, chunk_index, chunk_total, parent_id, content_hash,",
+            " source_version, content, metadata_json, created_at) VALUES",
+            "<foreach collection='rows' item='r' separator=','>",
+            "(#{r.id}, #{r.source}, #{r.chunkIndex}, #{r.chunkTotal}, #{r.parentId}, #{r.contentHash},",
+            " #{r.sourceVersion}, #{r.content}, #{r.metadataJson}, #{r.createdAt})",
+            "</foreach>",
+            " ON DUPLICATE KEY UPDATE source = VALUES(source), chunk_index = VALUES(chunk_index),",
+            " chunk_total = VALUES(chunk_total), parent_id = VALUES(parent_id), content_hash = VALUES(content_hash),",
+            " source_version = VALUES(source_version), content = VALUES(content), metadata_json = VALUES(metadata_json)",
+            "</script>"})
+    int upsertBatch(@Param("rows") List<KnowledgeChunk> rows);
+}
@@ -5,6 +5,8 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.List;
+
 /**
  * V1 RAG：单条参考来源，用于 SSE done 事件的 citations 数组。
  */
@@ -20,4 +22,10 @@ public class CitationDto {
     private String source;
     /** 摘要或片段原文 */
     private String excerpt;
+    /** 摘录句子在原 chunk 中的字符区间（仅知识库抽取式压缩时填充） */
+    private List<ExcerptSpan> spans;
+
+    public CitationDto(String chunkId, String source, String excerpt) {
+        this(chunkId, source, excerpt, null);
+    }
 }
@@ -0,0 +1,28 @@
+package com.imperium.astroguide.model.dto.rag;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 摘录在原始 chunk 文本中的字符区间 [start, end)，用于校验压缩后的引用。
+ * 引用由多个小块合并而成时（父窗口扩展），区间按所在小块拆分并标注其 id。
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExcerptSpan {
+
+    /** 起始偏移（含） */
+    private int start;
+    /** 结束偏移（不含） */
+    private int end;
+    /** 区间所在 chunk 的 id；为 null 时即引用本身的 chunkId */
+    private String chunkId;
+
+    public ExcerptSpan(int start, int end) {
+        this(start, end, null);
+    }
+}
@@ -4,6 +4,7 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.Data;
 
 import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.Pattern;
 import jakarta.validation.constraints.Size;
 
 /**
@@ -21,4 +22,12 @@ public class IngestTextRequest {
     @Size(max = 500)
     @Schema(description = "来源显示名（如《基础天文学》第3章）")
     private String sourceName;
+
+    @Pattern(regexp = "en|zh", message = "language must be en or zh")
+    @Schema(description = "正文语言（en | zh），缺省按文字自动判定")
+    private String language;
+
+    @Pattern(regexp = "basic|intermediate|advanced", message = "level must be basic, intermediate or advanced")
+    @Schema(description = "适用难度档位，缺省表示不限")
+    private String level;
 }
@@ -0,0 +1,44 @@
+package com.imperium.astroguide.model.dto.response;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * 知识库 chunk 详情（citation 展开）。
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "知识库 chunk")
+public class ChunkResponse {
+
+    @Schema(description = "chunk id（与 citation.chunkId 一致）")
+    private String id;
+
+    @Schema(description = "来源显示名")
+    private String source;
+
+    @Schema(description = "在来源内的序号")
+    private Integer chunkIndex;
+
+    @Schema(description = "来源的 chunk 总数")
+    private Integer chunkTotal;
+
+    @Schema(description = "父窗口 id（父子分块时）")
+    private String parentId;
+
+    @Schema(description = "正文 SHA-256")
+    private String contentHash;
+
+    @Schema(description = "chunk 正文")
+    private String content;
+
+    @Schema(description = "其余 metadata")
+    private Map<String, Object> metadata;
+}
@@ -0,0 +1,68 @@
+package com.imperium.astroguide.model.dto.response;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 异步摄入任务状态与进度。
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "异步摄入任务")
+public class IngestJobResponse {
+
+    @Schema(description = "任务 id")
+    private String jobId;
+
+    @Schema(description = "来源显示名（解析前可能为空）")
+    private String source;
+
+    @Schema(description = "原始文件名")
+    private String fileName;
+
+    @Schema(description = "queued | running | succeeded | failed")
+    private String status;
+
+    @Schema(description = "queued | parsing | embedding | stored")
+    private String stage;
+
+    @Schema(description = "chunk 总数（解析结束后可知）")
+    private Integer chunksTotal;
+
+    @Schema(description = "已在库中（同来源同内容）而跳过、未重新 embedding 的 chunk 数")
+    private Integer chunksSkipped;
+
+    @Schema(description = "资料修订后已删去、写完后清理的旧 chunk 数")
+    private Integer chunksDeleted;
+
+    @Schema(description = "本次摄入的来源版本（提交时刻毫秒数）")
+    private Long sourceVersion;
+
+    @Schema(description = "批次总数（解析结束后可知）")
+    private Integer batchesTotal;
+
+    @Schema(description = "已提交批次数")
+    private Integer batchesDone;
+
+    @Schema(description = "进度 0~1，按已提交批次计；流式摄入中总批次未知时为空")
+    private Double progress;
+
+    @Schema(description = "已领取执行次数（>1 表示中断后续传或重试）")
+    private Integer attempts;
+
+    @Schema(description = "失败原因")
+    private String message;
+
+    private LocalDateTime createdAt;
+
+    private LocalDateTime updatedAt;
+
+    private LocalDateTime finishedAt;
+}
@@ -25,6 +25,15 @@ public class IngestResponse {
     @Schema(description = "本次写入的块数量")
     private int chunksAdded;
 
+    @Schema(description = "已在库中（同来源同内容）而跳过的块数量")
+    private int chunksSkipped;
+
+    @Schema(description = "资料修订后已删去、本次清理的旧块数量（删除来源时为删除的块数量）")
+    private int chunksDeleted;
+
+    @Schema(description = "本次摄入的来源版本（摄入开始时刻毫秒数）")
+    private Long sourceVersion;
+
     @Schema(description = "说明或错误信息")
     private String message;
 }
@@ -0,0 +1,93 @@
+package com.imperium.astroguide.model.entity;
+
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 异步摄入任务表实体，对应 ingest_jobs 表；记录阶段与已提交批次，供进度查询与断点续传。
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@TableName("ingest_jobs")
+public class IngestJob {
+
+    /** 任务 id */
+    @TableId
+    private String id;
+
+    /** 来源显示名；未指定时解析后取文件内标题 */
+    private String source;
+
+    /** 来源名是否由提交方显式指定；只有显式指定的来源才在写完后清理旧版本 chunk */
+    @TableField("source_named")
+    private Boolean sourceNamed;
+
+    /** 原始文件名 */
+    @TableField("file_name")
+    private String fileName;
+
+    @TableField("content_type")
+    private String contentType;
+
+    private String language;
+
+    private String level;
+
+    /** 本次摄入的来源版本（提交时刻毫秒数，续传不变） */
+    @TableField("source_version")
+    private Long sourceVersion;
+
+    /** 上传文件暂存路径 */
+    @TableField("spool_path")
+    private String spoolPath;
+
+    /** queued | running | succeeded | failed */
+    private String status;
+
+    /** queued | parsing | embedding | stored */
+    private String stage;
+
+    @TableField("chunks_total")
+    private Integer chunksTotal;
+
+    /** 已在库中（同来源同内容）而跳过的 chunk 数 */
+    @TableField("chunks_skipped")
+    private Integer chunksSkipped;
+
+    /** 资料修订后已删去、写完后清理的旧 chunk 数 */
+    @TableField("chunks_deleted")
+    private Integer chunksDeleted;
+
+    @TableField("batches_total")
+    private Integer batchesTotal;
+
+    /** 已提交（目录与向量库均写入）的批次数 */
+    @TableField("batches_done")
+    private Integer batchesDone;
+
+    /** 已领取执行的次数 */
+    private Integer attempts;
+
+    /** 当前执行实例 */
+    private String owner;
+
+    @TableField("error_message")
+    private String errorMessage;
+
+    @TableField("created_at")
+    private LocalDateTime createdAt;
+
+    /** 最近一次进度或心跳时间；running 且超过租期未更新视为执行实例已退出 */
+    @TableField("updated_at")
+    private LocalDateTime updatedAt;
+
+    @TableField("finished_at")
+    private LocalDateTime finishedAt;
+}
@@ -0,0 +1,58 @@
+package com.imperium.astroguide.model.entity;
+
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * 知识库 chunk 目录表实体，对应 knowledge_chunks 表；id 与向量库点位 id 一致。
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@TableName("knowledge_chunks")
+public class KnowledgeChunk {
+
+    /** chunk id（即 Qdrant 点位 UUID） */
+    @TableId
+    private String id;
+
+    /** 来源显示名（如书名、文件名） */
+    private String source;
+
+    /** 在来源内的序号 */
+    @TableField("chunk_index")
+    private Integer chunkIndex;
+
+    /** 来源的 chunk 总数 */
+    @TableField("chunk_total")
+    private Integer chunkTotal;
+
+    /** 父窗口 id（父子分块时） */
+    @TableField("parent_id")
+    private String parentId;
+
+    /** 正文 SHA-256（hex） */
+    @TableField("content_hash")
+    private String contentHash;
+
+    /** 来源版本：最近一次包含该 chunk 的摄入（见 ChunkMetadata#SOURCE_VERSION） */
+    @TableField("source_version")
+    private Long sourceVersion;
+
+    /** chunk 正文 */
+    private String content;
+
+    /** 其余 metadata（JSON） */
+    @TableField("metadata_json")
+    private String metadataJson;
+
+    /** 创建时间 */
+    @TableField("created_at")
+    private LocalDateTime createdAt;
+}
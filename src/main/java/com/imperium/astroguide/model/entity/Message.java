@@ -38,6 +38,14 @@ public class Message {
     /** 语言：en | zh */
     private String language;
 
+    /** 难度档位是否由客户端显式指定（否则为默认值，不用于缩小检索范围） */
+    @TableField("difficulty_explicit")
+    private Boolean difficultyExplicit;
+
+    /** 语言是否由客户端显式指定（否则为默认值，不用于缩小检索范围） */
+    @TableField("language_explicit")
+    private Boolean languageExplicit;
+
     /** 状态：queued | streaming | done | error | cancelled */
     private String status;
 
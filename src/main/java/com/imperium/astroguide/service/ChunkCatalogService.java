@@ -0,0 +1,49 @@
+package com.imperium.astroguide.service;
+
+import com.imperium.astroguide.model.dto.response.ChunkResponse;
+import com.imperium.astroguide.model.entity.KnowledgeChunk;
+import org.springframework.ai.document.Document;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * 知识库 chunk 目录：摄入时与向量库同步写入，供 citation 展开、按来源枚举与审计，不依赖向量库往返。
+ */
+public interface ChunkCatalogService {
+
+    boolean enabled();
+
+    /** 目录是否持有正文（向量库 payload 不再写正文，检索结果需经 {@link #hydrate} 补全） */
+    boolean ownsText();
+
+    void saveAll(List<Document> documents);
+
+    void deleteByIds(Collection<String> ids);
+
+    /** 把内容未变的已有行归入来源版本 version，并按本次 metadata 刷新序号、父窗口等列（已记为更新版本的不回退） */
+    void refresh(List<Document> documents, long version);
+
+    /** 删除来源中版本早于 version 的行（含未记版本的旧数据），返回删除行数 */
+    int deleteStale(String source, long version);
+
+    /** 删除来源的全部行，返回删除行数 */
+    int deleteBySource(String source);
+
+    /** 单条查询（citation 展开），经本地缓存 */
+    Optional<ChunkResponse> lookup(String id);
+
+    Map<String, KnowledgeChunk> findByIds(Collection<String> ids);
+
+    /** 目录中已存在的 id（只查主键，不读正文；去重判断用） */
+    Set<String> existingIds(Collection<String> ids);
+
+    /** 某来源写入的 chunk，按序号升序 */
+    List<ChunkResponse> listBySource(String source, int limit);
+
+    /** 为正文为空的检索结果从目录补全正文；其余原样返回 */
+    List<Document> hydrate(List<Document> documents);
+}
@@ -0,0 +1,29 @@
+package com.imperium.astroguide.service;
+
+import com.imperium.astroguide.model.dto.response.IngestJobResponse;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * 异步摄入任务：上传文件先落盘并登记任务，立即返回任务 id；后台 worker 执行解析 → 分块 → 分批写入，
+ * 每批提交后记录进度，实例重启或中断后从最后提交的批次继续。
+ */
+public interface IngestJobService {
+
+    /**
+     * @param file               上传的文件（PDF、EPUB、TXT、MD）
+     * @param sourceNameOverride 可选，覆盖来源名
+     * @param language           可选，正文语言 en | zh
+     * @param level              可选，难度档位
+     * @return 新建任务（status=queued）
+     * @throws IllegalArgumentException 未提供文件
+     * @throws IllegalStateException    RAG 未启用
+     * @throws IOException              暂存文件失败
+     */
+    IngestJobResponse submit(MultipartFile file, String sourceNameOverride, String language, String level)
+            throws IOException;
+
+    Optional<IngestJobResponse> find(String jobId);
+}
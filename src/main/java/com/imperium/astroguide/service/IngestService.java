@@ -1,7 +1,6 @@
 package com.imperium.astroguide.service;
 
 import com.imperium.astroguide.model.dto.response.IngestResponse;
-import org.springframework.web.multipart.MultipartFile;
 
 import java.io.InputStream;
 
@@ -10,15 +9,6 @@ import java.io.InputStream;
  */
 public interface IngestService {
 
-    /**
-     * 上传文件并摄入（PDF、EPUB、TXT、MD）。
-     *
-     * @param file           上传的文件
-     * @param sourceNameOverride 可选，覆盖解析出的来源名（如自定义书名）
-     * @return 摄入结果
-     */
-    IngestResponse ingestFromFile(MultipartFile file, String sourceNameOverride);
-
     /**
      * 从输入流摄入（供内部或脚本调用）。
      *
@@ -26,16 +16,31 @@ public interface IngestService {
      * @param filename    文件名（用于判断格式）
      * @param contentType 可选，如 application/pdf
      * @param sourceNameOverride 可选，覆盖来源名
+     * @param language    可选，正文语言
+     * @param level       可选，难度档位
      * @return 摄入结果
      */
-    IngestResponse ingestFromStream(InputStream inputStream, String filename, String contentType, String sourceNameOverride);
+    IngestResponse ingestFromStream(InputStream inputStream, String filename, String contentType, String sourceNameOverride,
+            String language, String level);
 
     /**
      * 直接摄入一段文本（如粘贴或 API 传入）。
      *
      * @param content   正文
      * @param sourceName 来源显示名
+     * @param language  可选，正文语言
+     * @param level     可选，难度档位
      * @return 摄入结果
      */
-    IngestResponse ingestFromText(String content, String sourceName);
+    IngestResponse ingestFromText(String content, String sourceName, String language, String level);
+
+    /**
+     * 删除某来源的全部 chunk（向量库按 payload 过滤删除，目录按来源删除）。
+     *
+     * @param source 来源显示名（与摄入时一致）
+     * @return 删除结果，chunksDeleted 为删除的块数量
+     * @throws IllegalArgumentException 来源为空，或为解析器的占位标签（如 document.pdf，可能被不同资料共用）
+     * @throws IllegalStateException    向量库不可用或删除失败
+     */
+    IngestResponse deleteSource(String source);
 }
@@ -0,0 +1,327 @@
+package com.imperium.astroguide.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.imperium.astroguide.ingest.ChunkMetadata;
+import com.imperium.astroguide.mapper.KnowledgeChunkMapper;
+import com.imperium.astroguide.model.dto.response.ChunkResponse;
+import com.imperium.astroguide.model.entity.KnowledgeChunk;
+import com.imperium.astroguide.service.ChunkCatalogService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * MySQL 实现：单条查询经本地 LRU 缓存（正文写入后不变，刷新 metadata 或删除时逐出）；批量补全正文一次 IN 查询。
+ */
+@Service
+public class ChunkCatalogServiceImpl implements ChunkCatalogService {
+
+    private static final Logger log = LoggerFactory.getLogger(ChunkCatalogServiceImpl.class);
+    private static final int UPSERT_BATCH_SIZE = 500;
+
+    private final KnowledgeChunkMapper chunkMapper;
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final boolean textInPayload;
+    private final Map<String, KnowledgeChunk> cache;
+
+    public ChunkCatalogServiceImpl(KnowledgeChunkMapper chunkMapper,
+            ObjectMapper objectMapper,
+            @Value("${app.rag.catalog.enabled:false}") boolean enabled,
+            @Value("${app.rag.catalog.text-in-payload:true}") boolean textInPayload,
+            @Value("${app.rag.catalog.cache-entries:2000}") int cacheEntries) {
+        this.chunkMapper = chunkMapper;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.textInPayload = textInPayload;
+        int capacity = Math.max(1, cacheEntries);
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, KnowledgeChunk> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    @Override
+    public boolean enabled() {
+        return enabled;
+    }
+
+    @Override
+    public boolean ownsText() {
+        return enabled && !textInPayload;
+    }
+
+    /** 按主键 upsert：向量库缺点位而目录行仍在时（见 ChunkStoreWriter#unknown）会重写同一行 */
+    @Override
+    public void saveAll(List<Document> documents) {
+        if (!enabled || documents == null || documents.isEmpty()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        List<KnowledgeChunk> rows = new ArrayList<>(documents.size());
+        for (Document doc : documents) {
+            rows.add(toRow(doc, now));
+        }
+        for (int from = 0; from < rows.size(); from += UPSERT_BATCH_SIZE) {
+            chunkMapper.upsertBatch(rows.subList(from, Math.min(rows.size(), from + UPSERT_BATCH_SIZE)));
+        }
+        synchronized (cache) {
+            documents.forEach(doc -> cache.remove(doc.getId()));
+        }
+    }
+
+    @Override
+    public void deleteByIds(Collection<String> ids) {
+        if (!enabled || ids == null || ids.isEmpty()) {
+            return;
+        }
+        chunkMapper.deleteByIds(ids);
+        synchronized (cache) {
+            ids.forEach(cache::remove);
+        }
+    }
+
+    /** 逐行更新：各行 metadata 不同；正文与哈希未变不改写 */
+    @Override
+    public void refresh(List<Document> documents, long version) {
+        if (!enabled || documents == null || documents.isEmpty()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        for (Document doc : documents) {
+            KnowledgeChunk row = toRow(doc, now);
+            chunkMapper.update(null, new LambdaUpdateWrapper<KnowledgeChunk>()
+                    .eq(KnowledgeChunk::getId, row.getId())
+                    .and(w -> w.isNull(KnowledgeChunk::getSourceVersion).or().lt(KnowledgeChunk::getSourceVersion, version))
+                    .set(KnowledgeChunk::getChunkIndex, row.getChunkIndex())
+                    .set(KnowledgeChunk::getChunkTotal, row.getChunkTotal())
+                    .set(KnowledgeChunk::getParentId, row.getParentId())
+                    .set(KnowledgeChunk::getMetadataJson, row.getMetadataJson())
+                    .set(KnowledgeChunk::getSourceVersion, version));
+        }
+        synchronized (cache) {
+            documents.forEach(doc -> cache.remove(doc.getId()));
+        }
+    }
+
+    @Override
+    public int deleteStale(String source, long version) {
+        if (!enabled || source == null || source.isBlank()) {
+            return 0;
+        }
+        int deleted = chunkMapper.delete(new LambdaQueryWrapper<KnowledgeChunk>()
+                .eq(KnowledgeChunk::getSource, source)
+                .and(w -> w.isNull(KnowledgeChunk::getSourceVersion).or().lt(KnowledgeChunk::getSourceVersion, version)));
+        evictSource(source);
+        return deleted;
+    }
+
+    @Override
+    public int deleteBySource(String source) {
+        if (!enabled || source == null || source.isBlank()) {
+            return 0;
+        }
+        int deleted = chunkMapper.delete(new LambdaQueryWrapper<KnowledgeChunk>().eq(KnowledgeChunk::getSource, source));
+        evictSource(source);
+        return deleted;
+    }
+
+    /** 按来源删除时不知道具体 id，逐出缓存中该来源的全部行 */
+    private void evictSource(String source) {
+        synchronized (cache) {
+            cache.values().removeIf(row -> source.equals(row.getSource()));
+        }
+    }
+
+    @Override
+    public Optional<ChunkResponse> lookup(String id) {
+        if (!enabled || id == null || id.isBlank()) {
+            return Optional.empty();
+        }
+        KnowledgeChunk row;
+        synchronized (cache) {
+            row = cache.get(id);
+        }
+        if (row == null) {
+            row = chunkMapper.selectById(id);
+            if (row != null) {
+                synchronized (cache) {
+                    cache.put(id, row);
+                }
+            }
+        }
+        return Optional.ofNullable(row).map(this::toResponse);
+    }
+
+    @Override
+    public Map<String, KnowledgeChunk> findByIds(Collection<String> ids) {
+        Map<String, KnowledgeChunk> out = new HashMap<>();
+        if (!enabled || ids == null || ids.isEmpty()) {
+            return out;
+        }
+        List<String> missing = new ArrayList<>();
+        synchronized (cache) {
+            for (String id : ids) {
+                KnowledgeChunk cached = cache.get(id);
+                if (cached != null) {
+                    out.put(id, cached);
+                } else {
+                    missing.add(id);
+                }
+            }
+        }
+        if (!missing.isEmpty()) {
+            List<KnowledgeChunk> rows = chunkMapper.selectByIds(missing);
+            synchronized (cache) {
+                for (KnowledgeChunk row : rows) {
+                    cache.put(row.getId(), row);
+                    out.put(row.getId(), row);
+                }
+            }
+        }
+        return out;
+    }
+
+    @Override
+    public Set<String> existingIds(Collection<String> ids) {
+        if (!enabled || ids == null || ids.isEmpty()) {
+            return new HashSet<>();
+        }
+        Set<String> out = new HashSet<>();
+        for (KnowledgeChunk row : chunkMapper.selectList(new LambdaQueryWrapper<KnowledgeChunk>()
+                .select(KnowledgeChunk::getId)
+                .in(KnowledgeChunk::getId, ids))) {
+            out.add(row.getId());
+        }
+        return out;
+    }
+
+    @Override
+    public List<ChunkResponse> listBySource(String source, int limit) {
+        if (!enabled || source == null || source.isBlank()) {
+            return List.of();
+        }
+        return chunkMapper.selectList(new LambdaQueryWrapper<KnowledgeChunk>()
+                        .eq(KnowledgeChunk::getSource, source)
+                        .orderByAsc(KnowledgeChunk::getChunkIndex)
+                        .last("LIMIT " + Math.max(1, limit)))
+                .stream().map(this::toResponse).toList();
+    }
+
+    @Override
+    public List<Document> hydrate(List<Document> documents) {
+        if (!enabled || documents == null || documents.isEmpty()) {
+            return documents;
+        }
+        List<String> ids = documents.stream()
+                .filter(doc -> doc.getId() != null && (doc.getText() == null || doc.getText().isBlank()))
+                .map(Document::getId)
+                .toList();
+        if (ids.isEmpty()) {
+            return documents;
+        }
+        Map<String, KnowledgeChunk> rows;
+        try {
+            rows = findByIds(ids);
+        } catch (Exception e) {
+            log.warn("Chunk catalog lookup failed: {}", e.getMessage());
+            return documents;
+        }
+        List<Document> out = new ArrayList<>(documents.size());
+        for (Document doc : documents) {
+            KnowledgeChunk row = doc.getId() != null ? rows.get(doc.getId()) : null;
+            if (row == null || (doc.getText() != null && !doc.getText().isBlank())) {
+                out.add(doc);
+                continue;
+            }
+            out.add(Document.builder()
+                    .id(doc.getId())
+                    .text(row.getContent())
+                    .metadata(doc.getMetadata())
+                    .score(doc.getScore())
+                    .build());
+        }
+        return out;
+    }
+
+    private ChunkResponse toResponse(KnowledgeChunk row) {
+        Map<String, Object> metadata = Map.of();
+        if (row.getMetadataJson() != null && !row.getMetadataJson().isBlank()) {
+            try {
+                metadata = objectMapper.readValue(row.getMetadataJson(), new TypeReference<Map<String, Object>>() {
+                });
+            } catch (Exception e) {
+                log.debug("Chunk metadata unreadable: id={}", row.getId());
+            }
+        }
+        return ChunkResponse.builder()
+                .id(row.getId())
+                .source(row.getSource())
+                .chunkIndex(row.getChunkIndex())
+                .chunkTotal(row.getChunkTotal())
+                .parentId(row.getParentId())
+                .contentHash(row.getContentHash())
+                .content(row.getContent())
+                .metadata(metadata)
+                .build();
+    }
+
+    private KnowledgeChunk toRow(Document doc, LocalDateTime now) {
+        Map<String, Object> extra = new HashMap<>(doc.getMetadata());
+        KnowledgeChunk row = new KnowledgeChunk();
+        row.setId(doc.getId());
+        row.setSource(stringOrNull(extra.remove(ChunkMetadata.SOURCE)));
+        row.setChunkIndex(intOrNull(extra.remove(ChunkMetadata.CHUNK_INDEX)));
+        row.setChunkTotal(intOrNull(extra.remove(ChunkMetadata.CHUNK_TOTAL)));
+        row.setParentId(stringOrNull(extra.remove(ChunkMetadata.PARENT_ID)));
+        String text = doc.getText() != null ? doc.getText() : "";
+        Object hash = extra.remove(ChunkMetadata.CONTENT_HASH);
+        row.setSourceVersion(extra.remove(ChunkMetadata.SOURCE_VERSION) instanceof Number n ? n.longValue() : null);
+        row.setContentHash(hash != null ? hash.toString() : sha256(text));
+        row.setContent(text);
+        row.setMetadataJson(toJson(extra));
+        row.setCreatedAt(now);
+        return row;
+    }
+
+    private String toJson(Map<String, Object> metadata) {
+        if (metadata.isEmpty()) {
+            return null;
+        }
+        try {
+            return objectMapper.writeValueAsString(metadata);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    static String sha256(String text) {
+        return ChunkMetadata.contentHash(text);
+    }
+
+    private static String stringOrNull(Object value) {
+        return value != null ? value.toString() : null;
+    }
+
+    private static Integer intOrNull(Object value) {
+        return value instanceof Number n ? n.intValue() : null;
+    }
+}
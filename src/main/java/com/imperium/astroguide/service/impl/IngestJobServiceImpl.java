@@ -0,0 +1,475 @@
+package com.imperium.astroguide.service.impl;
+
+import com.baomidou.mybatisplus.core.conditions.AbstractLambdaWrapper;
+import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
+import com.imperium.astroguide.infra.cache.KnowledgeBaseGeneration;
+import com.imperium.astroguide.ingest.ChunkDocumentFactory;
+import com.imperium.astroguide.ingest.ChunkMetadata;
+import com.imperium.astroguide.ingest.ChunkStoreWriter;
+import com.imperium.astroguide.ingest.ChunkingTextSink;
+import com.imperium.astroguide.ingest.parser.DocumentParserService;
+import com.imperium.astroguide.ingest.parser.ParsedTextSink;
+import com.imperium.astroguide.ingest.parser.UnsupportedFormatException;
+import com.imperium.astroguide.mapper.IngestJobMapper;
+import com.imperium.astroguide.model.dto.response.IngestJobResponse;
+import com.imperium.astroguide.model.entity.IngestJob;
+import com.imperium.astroguide.service.IngestJobService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 异步摄入任务：上传文件暂存到 {@code app.ingest.jobs.dir}，任务登记在 ingest_jobs 表。
+ * <p>
+ * 调度：单线程定时轮询领取 queued 任务，以及 running 但超过租期未更新的任务（执行实例已退出），
+ * 以条件更新抢占（多实例下同一任务只有一个实例领到），交给 workers 个线程执行；轮询同时为本实例在执行的任务续租。
+ * <p>
+ * 执行：流式解析 → 流式分块（chunk id 按来源 + 正文哈希 + 出现次序生成，续传时不变）→ 每攒满 batch-size 个 chunk 即写入目录与向量库，
+ * 每批提交后记录 batches_done；全文与全部 chunk 不会同时驻留内存，总批次数在解析结束后才确定。
+ * 续传时重新解析与分块（结果与 id 不变），跳过已提交批次，并先清理中断批次可能残留的目录行。
+ * 每个任务在提交时取定来源版本（续传不变），库中已有的 chunk 不重新 embedding，只按本次 metadata 刷新并改记该版本；全部写完后按 payload 过滤删除
+ * 同来源中版本更旧的 chunk（资料修订时删去的内容），再递增知识库代次并删除暂存文件。
+ * 清理只对提交时显式指定来源名的任务执行：取自文件名或文件内标题的来源可能被不同资料共用。
+ * <p>
+ * 格式不支持（{@link UnsupportedFormatException}）直接失败；其余错误重新排队，累计领取超过 max-attempts 次后失败。
+ * 任务状态的每次写入都以 owner 为条件，租约被接管后本实例不会覆盖新执行者的进度。
+ * <p>
+ * 轮询在 Bean 初始化完成后启动，容器关闭时停止轮询并中断执行中的任务（其租约过期后由其他实例接续）。
+ */
+@Service
+public class IngestJobServiceImpl implements IngestJobService {
+
+    private static final Logger log = LoggerFactory.getLogger(IngestJobServiceImpl.class);
+
+    static final String STATUS_QUEUED = "queued";
+    static final String STATUS_RUNNING = "running";
+    static final String STATUS_SUCCEEDED = "succeeded";
+    static final String STATUS_FAILED = "failed";
+
+    static final String STAGE_QUEUED = "queued";
+    static final String STAGE_PARSING = "parsing";
+    static final String STAGE_EMBEDDING = "embedding";
+    static final String STAGE_STORED = "stored";
+
+    private static final int MAX_ERROR_CHARS = 2000;
+
+    private final IngestJobMapper ingestJobMapper;
+    private final DocumentParserService documentParserService;
+    private final ChunkDocumentFactory chunkDocumentFactory;
+    private final ChunkStoreWriter chunkStoreWriter;
+    private final KnowledgeBaseGeneration knowledgeBaseGeneration;
+    private final Path spoolDir;
+    private final int batchSize;
+    private final int workers;
+    private final long leaseMs;
+    private final int maxAttempts;
+    private final long pollIntervalMs;
+    /** 本实例标识，用于领取与续租 */
+    private final String owner = UUID.randomUUID().toString();
+    private final Set<String> active = ConcurrentHashMap.newKeySet();
+    private final ExecutorService pool;
+    private final ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "ingest-job-poller");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public IngestJobServiceImpl(IngestJobMapper ingestJobMapper,
+            DocumentParserService documentParserService,
+            ChunkDocumentFactory chunkDocumentFactory,
+            ChunkStoreWriter chunkStoreWriter,
+            KnowledgeBaseGeneration knowledgeBaseGeneration,
+            @Value("${app.ingest.jobs.dir:ingest-jobs}") String spoolDir,
+            @Value("${app.ingest.jobs.batch-size:128}") int batchSize,
+            @Value("${app.ingest.jobs.workers:2}") int workers,
+            @Value("${app.ingest.jobs.lease-ms:120000}") long leaseMs,
+            @Value("${app.ingest.jobs.max-attempts:3}") int maxAttempts,
+            @Value("${app.ingest.jobs.poll-interval-ms:5000}") long pollIntervalMs) {
+        this.ingestJobMapper = ingestJobMapper;
+        this.documentParserService = documentParserService;
+        this.chunkDocumentFactory = chunkDocumentFactory;
+        this.chunkStoreWriter = chunkStoreWriter;
+        this.knowledgeBaseGeneration = knowledgeBaseGeneration;
+        this.spoolDir = Path.of(spoolDir).toAbsolutePath().normalize();
+        this.batchSize = Math.max(1, batchSize);
+        this.workers = Math.max(1, workers);
+        this.leaseMs = Math.max(1000, leaseMs);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.pollIntervalMs = pollIntervalMs;
+        this.pool = Executors.newFixedThreadPool(this.workers, r -> {
+            Thread t = new Thread(r, "ingest-job-worker");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PostConstruct
+    void start() {
+        if (chunkStoreWriter.available() && pollIntervalMs > 0) {
+            poller.scheduleWithFixedDelay(this::tick, pollIntervalMs, pollIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        poller.shutdownNow();
+        pool.shutdownNow();
+    }
+
+    @Override
+    public IngestJobResponse submit(MultipartFile file, String sourceNameOverride, String language, String level)
+            throws IOException {
+        if (file == null || file.isEmpty()) {
+            throw new IllegalArgumentException("No file provided");
+        }
+        if (!chunkStoreWriter.available()) {
+            throw new IllegalStateException("RAG is disabled; vector store not available");
+        }
+        String jobId = UUID.randomUUID().toString();
+        Files.createDirectories(spoolDir);
+        Path spool = spoolDir.resolve(jobId + extension(file.getOriginalFilename()));
+        file.transferTo(spool);
+
+        LocalDateTime now = LocalDateTime.now();
+        IngestJob job = new IngestJob();
+        job.setId(jobId);
+        boolean named = sourceNameOverride != null && !sourceNameOverride.isBlank();
+        job.setSource(named ? sourceNameOverride.trim() : null);
+        job.setSourceNamed(named);
+        job.setFileName(file.getOriginalFilename());
+        job.setContentType(file.getContentType());
+        job.setLanguage(ChunkMetadata.normalize(language, ChunkMetadata.LANGUAGES));
+        job.setLevel(ChunkMetadata.normalize(level, ChunkMetadata.LEVELS));
+        job.setSpoolPath(spool.toString());
+        job.setStatus(STATUS_QUEUED);
+        job.setStage(STAGE_QUEUED);
+        job.setBatchesDone(0);
+        job.setChunksSkipped(0);
+        job.setChunksDeleted(0);
+        job.setSourceVersion(System.currentTimeMillis());
+        job.setAttempts(0);
+        job.setCreatedAt(now);
+        job.setUpdatedAt(now);
+        try {
+            ingestJobMapper.insert(job);
+        } catch (RuntimeException e) {
+            Files.deleteIfExists(spool);
+            throw e;
+        }
+        log.info("Ingest job queued: jobId={} file={} bytes={}", jobId, file.getOriginalFilename(), file.getSize());
+        poller.execute(this::tick);
+        return toResponse(job);
+    }
+
+    @Override
+    public Optional<IngestJobResponse> find(String jobId) {
+        if (jobId == null || jobId.isBlank()) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(ingestJobMapper.selectById(jobId)).map(IngestJobServiceImpl::toResponse);
+    }
+
+    /** 续租本实例在执行的任务，并按空闲 worker 数领取新任务 */
+    void tick() {
+        try {
+            if (!active.isEmpty()) {
+                ingestJobMapper.update(null, new LambdaUpdateWrapper<IngestJob>()
+                        .in(IngestJob::getId, active)
+                        .eq(IngestJob::getOwner, owner)
+                        .set(IngestJob::getUpdatedAt, LocalDateTime.now()));
+            }
+            int free = workers - active.size();
+            if (free <= 0) {
+                return;
+            }
+            LocalDateTime expired = LocalDateTime.now().minus(Duration.ofMillis(leaseMs));
+            List<IngestJob> candidates = ingestJobMapper.selectList(claimable(new LambdaQueryWrapper<IngestJob>(), expired)
+                    .orderByAsc(IngestJob::getCreatedAt)
+                    .last("LIMIT " + free));
+            for (IngestJob candidate : candidates) {
+                if (claim(candidate.getId(), expired)) {
+                    active.add(candidate.getId());
+                    pool.execute(() -> run(candidate.getId()));
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Ingest job poll failed: {}", e.getMessage());
+        }
+    }
+
+    private boolean claim(String jobId, LocalDateTime expired) {
+        LambdaUpdateWrapper<IngestJob> update = new LambdaUpdateWrapper<IngestJob>()
+                .eq(IngestJob::getId, jobId)
+                .and(w -> claimable(w, expired))
+                .set(IngestJob::getStatus, STATUS_RUNNING)
+                .set(IngestJob::getOwner, owner)
+                .set(IngestJob::getUpdatedAt, LocalDateTime.now())
+                .setSql("attempts = attempts + 1");
+        return ingestJobMapper.update(null, update) == 1;
+    }
+
+    private static <W extends AbstractLambdaWrapper<IngestJob, W>> W claimable(
+            W wrapper, LocalDateTime expired) {
+        return wrapper.eq(IngestJob::getStatus, STATUS_QUEUED)
+                .or(w -> w.eq(IngestJob::getStatus, STATUS_RUNNING).lt(IngestJob::getUpdatedAt, expired));
+    }
+
+    private void run(String jobId) {
+        IngestJob job = null;
+        try {
+            job = ingestJobMapper.selectById(jobId);
+            if (job == null) {
+                return;
+            }
+            if (job.getAttempts() != null && job.getAttempts() > maxAttempts) {
+                finish(job, STATUS_FAILED, "Gave up after " + maxAttempts + " attempts: " + job.getErrorMessage());
+                return;
+            }
+            process(job);
+        } catch (LeaseLostException e) {
+            log.warn("Ingest job {} taken over by another instance; stopping", jobId);
+        } catch (UnsupportedFormatException e) {
+            finish(job, STATUS_FAILED, e.getMessage());
+        } catch (Exception e) {
+            log.warn("Ingest job {} failed at batch {}: {}", jobId, job != null ? job.getBatchesDone() : null, e.getMessage());
+            if (job != null && job.getAttempts() != null && job.getAttempts() >= maxAttempts) {
+                finish(job, STATUS_FAILED, e.getMessage());
+            } else if (job != null) {
+                job.setStatus(STATUS_QUEUED);
+                job.setErrorMessage(truncate(e.getMessage()));
+                saveQuietly(job);
+            }
+        } finally {
+            active.remove(jobId);
+        }
+    }
+
+    /** 从 batches_done 继续执行任务（首次执行时为 0） */
+    void process(IngestJob job) {
+        int from = job.getBatchesDone() != null ? job.getBatchesDone() : 0;
+        if (from > 0) {
+            log.info("Ingest job {} resuming after batch {}", job.getId(), from);
+        }
+        BatchCommitter committer = new BatchCommitter(job, from, job.getAttempts() != null && job.getAttempts() > 1);
+        ChunkingTextSink chunking = chunkDocumentFactory.sink(job.getSource(), job.getLanguage(), job.getLevel(),
+                committer::add);
+        documentParserService.parse(Path.of(job.getSpoolPath()), job.getFileName(), job.getContentType(),
+                new ParsedTextSink() {
+                    @Override
+                    public void start(String sourceLabel) {
+                        chunking.start(sourceLabel);
+                        job.setSource(chunking.sourceLabel());
+                        advance(job, STAGE_PARSING);
+                    }
+
+                    @Override
+                    public void text(String segment) {
+                        chunking.text(segment);
+                    }
+                });
+        chunking.finish();
+        committer.flush();
+
+        int chunks = chunking.produced();
+        boolean named = Boolean.TRUE.equals(job.getSourceNamed());
+        long deleted = chunks > 0 && named ? chunkStoreWriter.purgeStale(job.getSource(), job.getSourceVersion()) : 0;
+        long generation = committer.written || deleted > 0 ? knowledgeBaseGeneration.bump() : -1;
+        job.setChunksTotal(chunks);
+        job.setChunksDeleted((int) deleted);
+        job.setBatchesTotal(committer.batches);
+        job.setStage(STAGE_STORED);
+        finish(job, STATUS_SUCCEEDED, chunks == 0 ? "No text chunks produced (empty or too short)" : null);
+        log.info("Ingest job completed: jobId={} source={} version={} chunks={} skipped={} deleted={} batches={} "
+                + "attempts={} kbGeneration={}", job.getId(), job.getSource(), job.getSourceVersion(), chunks,
+                job.getChunksSkipped(), deleted, committer.batches, job.getAttempts(), generation);
+    }
+
+    /**
+     * 攒满 batch-size 个 chunk 提交一批；续传时跳过已提交批次，并在第一个待写批次前清理其残留目录行。
+     * 每批只写入库中尚无的 chunk，已存在的刷新 metadata、归入本次来源版本并计入 chunks_skipped。
+     */
+    private final class BatchCommitter {
+
+        private final IngestJob job;
+        private final int from;
+        private final boolean resumed;
+        private final List<Document> batch = new ArrayList<>(batchSize);
+        private int batches;
+        /** 是否写入过 chunk（含此前执行已提交的批次；决定是否递增知识库代次） */
+        private boolean written;
+
+        BatchCommitter(IngestJob job, int from, boolean resumed) {
+            this.job = job;
+            this.from = from;
+            this.resumed = resumed;
+            this.written = from > 0;
+        }
+
+        void add(Document document) {
+            batch.add(document);
+            if (batch.size() >= batchSize) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (batch.isEmpty()) {
+                return;
+            }
+            int index = batches++;
+            if (index >= from) {
+                List<Document> documents = List.copyOf(batch);
+                if (index == from && resumed) {
+                    chunkStoreWriter.discardCatalog(documents.stream().map(Document::getId).toList());
+                }
+                int added;
+                try {
+                    added = chunkStoreWriter.commit(documents, job.getSourceVersion());
+                } catch (ChunkStoreWriter.VersionUpdateException e) {
+                    // 新 chunk 已可检索，本批重试时会被判为已存在而不再计入写入，先使检索缓存失效
+                    if (e.written() > 0) {
+                        knowledgeBaseGeneration.bump();
+                    }
+                    throw e;
+                }
+                if (added > 0) {
+                    written = true;
+                }
+                int skipped = job.getChunksSkipped() != null ? job.getChunksSkipped() : 0;
+                job.setChunksSkipped(skipped + documents.size() - added);
+                job.setBatchesDone(index + 1);
+                advance(job, STAGE_EMBEDDING);
+            }
+            batch.clear();
+        }
+    }
+
+    /** 记录阶段进度；条件更新失败说明租约已被其他实例接管，中止本次执行 */
+    private void advance(IngestJob job, String stage) {
+        job.setStage(stage);
+        job.setUpdatedAt(LocalDateTime.now());
+        int updated = ingestJobMapper.update(job, new LambdaUpdateWrapper<IngestJob>()
+                .eq(IngestJob::getId, job.getId())
+                .eq(IngestJob::getOwner, owner));
+        if (updated != 1) {
+            throw new LeaseLostException();
+        }
+    }
+
+    private void finish(IngestJob job, String status, String message) {
+        if (job == null) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        job.setStatus(status);
+        job.setErrorMessage(truncate(message));
+        job.setUpdatedAt(now);
+        job.setFinishedAt(now);
+        if (!saveQuietly(job)) {
+            // 状态未落库（租约已被接管或数据库不可用），保留暂存文件供接手的执行使用
+            return;
+        }
+        try {
+            Files.deleteIfExists(Path.of(job.getSpoolPath()));
+        } catch (Exception e) {
+            log.warn("Failed to delete ingest spool file {}: {}", job.getSpoolPath(), e.getMessage());
+        }
+        if (STATUS_FAILED.equals(status)) {
+            log.warn("Ingest job failed: jobId={} file={} reason={}", job.getId(), job.getFileName(), message);
+        }
+    }
+
+    /**
+     * 与 advance 相同按 owner 条件更新；租约已被接管时放弃写入，不覆盖新执行者的状态。
+     *
+     * @return 是否已写入
+     */
+    private boolean saveQuietly(IngestJob job) {
+        try {
+            job.setUpdatedAt(LocalDateTime.now());
+            int updated = ingestJobMapper.update(job, new LambdaUpdateWrapper<IngestJob>()
+                    .eq(IngestJob::getId, job.getId())
+                    .eq(IngestJob::getOwner, owner));
+            if (updated != 1) {
+                log.warn("Ingest job {} no longer owned by this instance; status {} not saved", job.getId(),
+                        job.getStatus());
+                return false;
+            }
+            return true;
+        } catch (Exception e) {
+            log.warn("Failed to update ingest job {}: {}", job.getId(), e.getMessage());
+            return false;
+        }
+    }
+
+    static IngestJobResponse toResponse(IngestJob job) {
+        Double progress = STATUS_SUCCEEDED.equals(job.getStatus()) ? Double.valueOf(1.0)
+                : (job.getBatchesTotal() != null && job.getBatchesTotal() > 0 && job.getBatchesDone() != null
+                        ? (double) job.getBatchesDone() / job.getBatchesTotal() : null);
+        return IngestJobResponse.builder()
+                .jobId(job.getId())
+                .source(job.getSource())
+                .fileName(job.getFileName())
+                .status(job.getStatus())
+                .stage(job.getStage())
+                .chunksTotal(job.getChunksTotal())
+                .chunksSkipped(job.getChunksSkipped())
+                .chunksDeleted(job.getChunksDeleted())
+                .sourceVersion(job.getSourceVersion())
+                .batchesTotal(job.getBatchesTotal())
+                .batchesDone(job.getBatchesDone())
+                .progress(progress)
+                .attempts(job.getAttempts())
+                .message(job.getErrorMessage())
+                .createdAt(job.getCreatedAt())
+                .updatedAt(job.getUpdatedAt())
+                .finishedAt(job.getFinishedAt())
+                .build();
+    }
+
+    /** 保留扩展名供解析器识别格式；只接受简单扩展名 */
+    private static String extension(String filename) {
+        if (filename == null) {
+            return "";
+        }
+        int dot = filename.lastIndexOf('.');
+        String ext = dot >= 0 ? filename.substring(dot).toLowerCase(Locale.ROOT) : "";
+        return ext.matches("\\.[a-z0-9]{1,8}") ? ext : "";
+    }
+
+    private static String truncate(String message) {
+        return message != null && message.length() > MAX_ERROR_CHARS ? message.substring(0, MAX_ERROR_CHARS) : message;
+    }
+
+    private static final class LeaseLostException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        LeaseLostException() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -1,26 +1,37 @@
 package com.imperium.astroguide.service.impl;
 
-import com.imperium.astroguide.ingest.TextChunker;
-import com.imperium.astroguide.ingest.parser.DocumentParseResult;
+import com.imperium.astroguide.infra.cache.KnowledgeBaseGeneration;
+import com.imperium.astroguide.ingest.ChunkDocumentFactory;
+import com.imperium.astroguide.ingest.ChunkStoreWriter;
+import com.imperium.astroguide.ingest.ChunkingTextSink;
 import com.imperium.astroguide.ingest.parser.DocumentParserService;
 import com.imperium.astroguide.model.dto.response.IngestResponse;
 import com.imperium.astroguide.service.IngestService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.document.Document;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.lang.Nullable;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.multipart.MultipartFile;
 
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.UUID;
 
 /**
- * 解析 → 分块 → 写入 VectorStore。
+ * 解析 → 分块（{@link ChunkDocumentFactory}）→ 落库（{@link ChunkStoreWriter}：先目录后向量库）；
+ * 写入成功后递增知识库代次，使检索缓存失效。
+ * <p>
+ * 同步执行，适合文本与小文件；大文件走 {@link com.imperium.astroguide.service.IngestJobService} 异步任务。
+ * 输入流先落临时文件再流式解析与分块，不在内存中拼接全文；chunk 每攒满 batch-size（与异步任务共用）个即提交一批，
+ * 全部 chunk 不会同时驻留内存（流式摄入因此不带 {@code chunk_total}，与异步任务一致）。
+ * chunk id 按内容寻址，已在库中的 chunk 不再写入；重复摄入同一资料只写入变化的部分。
+ * 每次摄入为来源取新版本，全部批次写完后删除本次未再出现的旧 chunk（资料修订时删去的内容）；无写入也无删除时不递增代次。
+ * 某批失败即中止：此前提交的批次保留（有写入则递增代次），不清理旧 chunk。
+ * 只有调用方显式指定来源名时才清理旧 chunk：文件名或占位标签可能被不同资料共用，按它们清理会删掉别的资料。
  */
 @Service
 public class IngestServiceImpl implements IngestService {
@@ -28,50 +39,28 @@ public class IngestServiceImpl implements IngestService {
     private static final Logger log = LoggerFactory.getLogger(IngestServiceImpl.class);
 
     private final DocumentParserService documentParserService;
-    private final TextChunker textChunker;
-    @Nullable
-    private final org.springframework.ai.vectorstore.VectorStore vectorStore;
+    private final ChunkDocumentFactory chunkDocumentFactory;
+    private final ChunkStoreWriter chunkStoreWriter;
+    private final KnowledgeBaseGeneration knowledgeBaseGeneration;
+    private final int batchSize;
 
-    @Autowired(required = false)
     public IngestServiceImpl(
             DocumentParserService documentParserService,
-            TextChunker textChunker,
-            @Nullable org.springframework.ai.vectorstore.VectorStore vectorStore) {
+            ChunkDocumentFactory chunkDocumentFactory,
+            ChunkStoreWriter chunkStoreWriter,
+            KnowledgeBaseGeneration knowledgeBaseGeneration,
+            @Value("${app.ingest.jobs.batch-size:128}") int batchSize) {
         this.documentParserService = documentParserService;
-        this.textChunker = textChunker;
-        this.vectorStore = vectorStore;
+        this.chunkDocumentFactory = chunkDocumentFactory;
+        this.chunkStoreWriter = chunkStoreWriter;
+        this.knowledgeBaseGeneration = knowledgeBaseGeneration;
+        this.batchSize = Math.max(1, batchSize);
     }
 
     @Override
-    public IngestResponse ingestFromFile(MultipartFile file, String sourceNameOverride) {
-        if (file == null || file.isEmpty()) {
-            return IngestResponse.builder()
-                    .accepted(false)
-                    .source(null)
-                    .chunksAdded(0)
-                    .message("No file provided")
-                    .build();
-        }
-        try (InputStream is = file.getInputStream()) {
-            return ingestFromStream(
-                    is,
-                    file.getOriginalFilename(),
-                    file.getContentType(),
-                    sourceNameOverride);
-        } catch (Exception e) {
-            log.warn("Ingest file failed: {}", e.getMessage());
-            return IngestResponse.builder()
-                    .accepted(false)
-                    .source(file.getOriginalFilename())
-                    .chunksAdded(0)
-                    .message("Failed to read file: " + e.getMessage())
-                    .build();
-        }
-    }
-
-    @Override
-    public IngestResponse ingestFromStream(InputStream inputStream, String filename, String contentType, String sourceNameOverride) {
-        if (vectorStore == null) {
+    public IngestResponse ingestFromStream(InputStream inputStream, String filename, String contentType, String sourceNameOverride,
+            String language, String level) {
+        if (!chunkStoreWriter.available()) {
             return IngestResponse.builder()
                     .accepted(false)
                     .source(filename)
@@ -79,33 +68,35 @@ public class IngestServiceImpl implements IngestService {
                     .message("RAG is disabled; vector store not available")
                     .build();
         }
+        Path spool = null;
+        BatchCommitter committer = new BatchCommitter();
+        ChunkingTextSink sink = chunkDocumentFactory.sink(sourceNameOverride, language, level, committer::add);
         try {
-            DocumentParseResult parsed = documentParserService.parse(inputStream, filename, contentType);
-            String sourceLabel = (sourceNameOverride != null && !sourceNameOverride.isBlank())
-                    ? sourceNameOverride
-                    : parsed.getSourceLabel();
-            return addChunksToStore(parsed.getFullText(), sourceLabel);
-        } catch (IllegalArgumentException e) {
-            return IngestResponse.builder()
-                    .accepted(false)
-                    .source(filename)
-                    .chunksAdded(0)
-                    .message(e.getMessage())
-                    .build();
+            spool = Files.createTempFile("astroguide-ingest-", ".upload");
+            Files.copy(inputStream, spool, StandardCopyOption.REPLACE_EXISTING);
+            documentParserService.parse(spool, filename, contentType, sink);
+            sink.finish();
+            committer.flush();
+            boolean named = sourceNameOverride != null && !sourceNameOverride.isBlank();
+            return store(committer, sink.sourceLabel() != null ? sink.sourceLabel() : filename, named);
         } catch (Exception e) {
+            String source = sink.sourceLabel() != null ? sink.sourceLabel() : filename;
+            if (committer.failure != null) {
+                return rejected(committer, source, committer.failure.getMessage());
+            }
+            if (e instanceof IllegalArgumentException) {
+                return rejected(committer, source, e.getMessage());
+            }
             log.warn("Ingest stream failed: {}", e.getMessage());
-            return IngestResponse.builder()
-                    .accepted(false)
-                    .source(filename)
-                    .chunksAdded(0)
-                    .message("Parse or ingest failed: " + e.getMessage())
-                    .build();
+            return rejected(committer, source, "Parse or ingest failed: " + e.getMessage());
+        } finally {
+            deleteQuietly(spool);
         }
     }
 
     @Override
-    public IngestResponse ingestFromText(String content, String sourceName) {
-        if (vectorStore == null) {
+    public IngestResponse ingestFromText(String content, String sourceName, String language, String level) {
+        if (!chunkStoreWriter.available()) {
             return IngestResponse.builder()
                     .accepted(false)
                     .source(sourceName)
@@ -121,13 +112,30 @@ public class IngestServiceImpl implements IngestService {
                     .message("Content is empty")
                     .build();
         }
-        String label = (sourceName != null && !sourceName.isBlank()) ? sourceName : "text_" + UUID.randomUUID().toString().substring(0, 8);
-        return addChunksToStore(content.trim(), label);
+        boolean named = sourceName != null && !sourceName.isBlank();
+        String label = named ? sourceName : "text_" + UUID.randomUUID().toString().substring(0, 8);
+        return addChunksToStore(content.trim(), label, named, language, level);
+    }
+
+    private IngestResponse addChunksToStore(String fullText, String sourceLabel, boolean named, String language,
+            String level) {
+        BatchCommitter committer = new BatchCommitter();
+        try {
+            chunkDocumentFactory.build(fullText, sourceLabel, language, level).forEach(committer::add);
+            committer.flush();
+        } catch (IllegalStateException e) {
+            return rejected(committer, sourceLabel, e.getMessage());
+        }
+        return store(committer, sourceLabel, named);
     }
 
-    private IngestResponse addChunksToStore(String fullText, String sourceLabel) {
-        List<String> chunks = textChunker.chunk(fullText);
-        if (chunks.isEmpty()) {
+    /**
+     * 所有批次提交后清理旧版本并汇总结果。
+     *
+     * @param named 来源名由调用方显式指定；否则只写入不清理旧版本
+     */
+    private IngestResponse store(BatchCommitter committer, String sourceLabel, boolean named) {
+        if (committer.total == 0) {
             return IngestResponse.builder()
                     .accepted(true)
                     .source(sourceLabel)
@@ -135,31 +143,112 @@ public class IngestServiceImpl implements IngestService {
                     .message("No text chunks produced (empty or too short)")
                     .build();
         }
-        List<Document> documents = new ArrayList<>(chunks.size());
-        for (int i = 0; i < chunks.size(); i++) {
-            Map<String, Object> metadata = Map.of(
-                    "source", sourceLabel,
-                    "chunk_index", i,
-                    "chunk_total", chunks.size());
-            documents.add(new Document(chunks.get(i), metadata));
+        long deleted;
+        try {
+            deleted = named ? chunkStoreWriter.purgeStale(sourceLabel, committer.version) : 0;
+        } catch (IllegalStateException e) {
+            return rejected(committer, sourceLabel, e.getMessage());
+        }
+        int added = committer.added;
+        int skipped = committer.total - added;
+        long generation = added > 0 || deleted > 0 ? knowledgeBaseGeneration.bump() : -1;
+        log.info("Ingest completed: source={}, version={}, chunks={}, skipped={}, deleted={}, kbGeneration={}",
+                sourceLabel, committer.version, added, skipped, deleted, generation);
+        String message = added == 0 && deleted == 0
+                ? "All " + skipped + " chunks already in vector store"
+                : "Ingested " + added + " chunks into vector store"
+                        + (skipped > 0 ? " (" + skipped + " unchanged chunks skipped)" : "")
+                        + (deleted > 0 ? "; removed " + deleted + " stale chunks" : "");
+        return IngestResponse.builder()
+                .accepted(true)
+                .source(sourceLabel)
+                .chunksAdded(added)
+                .chunksSkipped(skipped)
+                .chunksDeleted((int) deleted)
+                .sourceVersion(committer.version)
+                .message(message)
+                .build();
+    }
+
+    /** 中止摄入；此前提交的批次已可检索，有写入时使检索缓存失效 */
+    private IngestResponse rejected(BatchCommitter committer, String sourceLabel, String message) {
+        if (committer.added > 0) {
+            knowledgeBaseGeneration.bump();
+        }
+        return IngestResponse.builder()
+                .accepted(false)
+                .source(sourceLabel)
+                .chunksAdded(committer.added)
+                .message(message)
+                .build();
+    }
+
+    /**
+     * 攒满 batch-size 个 chunk 按本次来源版本提交一批（同 {@link IngestJobServiceImpl} 的任务批次，但不记录进度）。
+     * 提交失败时记下原因后抛出，供调用方与解析错误区分。
+     */
+    private final class BatchCommitter {
+
+        private final long version = System.currentTimeMillis();
+        private final List<Document> batch = new ArrayList<>(batchSize);
+        private int total;
+        private int added;
+        private IllegalStateException failure;
+
+        void add(Document document) {
+            batch.add(document);
+            total++;
+            if (batch.size() >= batchSize) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (batch.isEmpty()) {
+                return;
+            }
+            List<Document> documents = List.copyOf(batch);
+            batch.clear();
+            try {
+                added += chunkStoreWriter.commit(documents, version);
+            } catch (IllegalStateException e) {
+                if (e instanceof ChunkStoreWriter.VersionUpdateException partial) {
+                    added += partial.written();
+                }
+                failure = e;
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public IngestResponse deleteSource(String source) {
+        if (source == null || source.isBlank()) {
+            throw new IllegalArgumentException("source is required");
+        }
+        if (DocumentParserService.PLACEHOLDER_LABELS.contains(source)) {
+            throw new IllegalArgumentException("Ambiguous default source label: " + source
+                    + "; it may be shared by unrelated uploads");
+        }
+        long deleted = chunkStoreWriter.purgeSource(source);
+        long generation = deleted > 0 ? knowledgeBaseGeneration.bump() : -1;
+        log.info("Source deleted: source={}, chunks={}, kbGeneration={}", source, deleted, generation);
+        return IngestResponse.builder()
+                .accepted(true)
+                .source(source)
+                .chunksDeleted((int) deleted)
+                .message(deleted > 0 ? "Deleted " + deleted + " chunks" : "No chunks stored for this source")
+                .build();
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
         }
         try {
-            vectorStore.add(documents);
-            log.info("Ingest completed: source={}, chunks={}", sourceLabel, chunks.size());
-            return IngestResponse.builder()
-                    .accepted(true)
-                    .source(sourceLabel)
-                    .chunksAdded(chunks.size())
-                    .message("Ingested " + chunks.size() + " chunks into vector store")
-                    .build();
+            Files.deleteIfExists(file);
         } catch (Exception e) {
-            log.warn("VectorStore.add failed: {}", e.getMessage());
-            return IngestResponse.builder()
-                    .accepted(false)
-                    .source(sourceLabel)
-                    .chunksAdded(0)
-                    .message("Failed to write to vector store: " + e.getMessage())
-                    .build();
+            log.debug("Failed to delete temp file {}: {}", file, e.getMessage());
         }
     }
 }
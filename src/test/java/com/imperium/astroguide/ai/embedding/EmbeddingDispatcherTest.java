@@ -0,0 +1,159 @@
+package com.imperium.astroguide.ai.embedding;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.retry.NonTransientAiException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class EmbeddingDispatcherTest {
+
+    @Test
+    void concurrentRequestsAreMergedAndDemultiplexed() throws Exception {
+        EmbeddingModel model = mock(EmbeddingModel.class);
+        when(model.embed(anyList())).thenAnswer(inv -> {
+            List<String> texts = inv.getArgument(0);
+            return texts.stream().map(t -> new float[]{t.length()}).toList();
+        });
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        EmbeddingDispatcher dispatcher = new EmbeddingDispatcher(model, registry, throttle(1), true, 32, 200, 1);
+
+        CompletableFuture<List<float[]>> a = dispatcher.submit(List.of("a"));
+        CompletableFuture<List<float[]>> b = dispatcher.submit(List.of("bb", "ccc"));
+
+        assertEquals(1f, a.get(2, TimeUnit.SECONDS).getFirst()[0]);
+        List<float[]> bVectors = b.get(2, TimeUnit.SECONDS);
+        assertEquals(2f, bVectors.get(0)[0]);
+        assertEquals(3f, bVectors.get(1)[0]);
+        verify(model, times(1)).embed(anyList());
+        assertEquals(3.0, registry.get("astroguide.embedding.batch.size").summary().totalAmount());
+        assertEquals(2.0, registry.get("astroguide.embedding.batch.requests").summary().totalAmount());
+    }
+
+    @Test
+    void batchIsCutAtMaxSize() throws Exception {
+        EmbeddingModel model = mock(EmbeddingModel.class);
+        when(model.embed(anyList())).thenAnswer(inv -> {
+            List<String> texts = inv.getArgument(0);
+            return texts.stream().map(t -> new float[]{1f}).toList();
+        });
+        EmbeddingDispatcher dispatcher = new EmbeddingDispatcher(model, new SimpleMeterRegistry(), throttle(2), true, 2, 200, 2);
+
+        CompletableFuture<List<float[]>> a = dispatcher.submit(List.of("a", "b"));
+        CompletableFuture<List<float[]>> b = dispatcher.submit(List.of("c"));
+
+        assertEquals(2, a.get(2, TimeUnit.SECONDS).size());
+        assertEquals(1, b.get(2, TimeUnit.SECONDS).size());
+        verify(model, times(2)).embed(anyList());
+    }
+
+    @Test
+    void interactiveRequestsPreemptQueuedBulkBatches() throws Exception {
+        List<String> calls = Collections.synchronizedList(new ArrayList<>());
+        EmbeddingModel model = mock(EmbeddingModel.class);
+        when(model.embed(anyList())).thenAnswer(inv -> {
+            List<String> texts = inv.getArgument(0);
+            calls.add(texts.getFirst());
+            Thread.sleep(40);
+            return texts.stream().map(t -> new float[]{1f}).toList();
+        });
+        EmbeddingDispatcher dispatcher = new EmbeddingDispatcher(model, new SimpleMeterRegistry(), throttle(2), true, 1, 0, 2);
+
+        List<CompletableFuture<List<float[]>>> bulk = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            bulk.add(dispatcher.submit(List.of("bulk-" + i), EmbeddingDispatcher.Lane.BULK));
+        }
+        Thread.sleep(10);
+        CompletableFuture<List<float[]>> query = dispatcher.submit(List.of("query"));
+
+        query.get(2, TimeUnit.SECONDS);
+        CompletableFuture.allOf(bulk.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+        // 批量最多占用并发上限减一，交互请求用预留槽位立即发出，不排在其余批量批次之后
+        assertTrue(calls.indexOf("query") <= 1, "call order " + calls);
+    }
+
+    @Test
+    void abandonedRequestsAreNotSentToProvider() throws Exception {
+        List<String> calls = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch release = new CountDownLatch(1);
+        EmbeddingModel model = mock(EmbeddingModel.class);
+        when(model.embed(anyList())).thenAnswer(inv -> {
+            List<String> texts = inv.getArgument(0);
+            calls.addAll(texts);
+            release.await(2, TimeUnit.SECONDS);
+            return texts.stream().map(t -> new float[]{1f}).toList();
+        });
+        EmbeddingDispatcher dispatcher = new EmbeddingDispatcher(model, new SimpleMeterRegistry(), throttle(1), true, 1, 0, 1);
+
+        CompletableFuture<List<float[]>> running = dispatcher.submit(List.of("running"));
+        CompletableFuture<List<float[]>> waiting = dispatcher.submit(List.of("waiting"));
+        CompletableFuture<List<float[]>> queued = dispatcher.submit(List.of("queued"));
+        CompletableFuture<List<float[]>> kept = dispatcher.submit(List.of("kept"));
+        Thread.sleep(50);
+        waiting.cancel(false);
+        queued.orTimeout(1, TimeUnit.MILLISECONDS);
+        Thread.sleep(20);
+        release.countDown();
+
+        assertEquals(1, running.get(2, TimeUnit.SECONDS).size());
+        assertEquals(1, kept.get(2, TimeUnit.SECONDS).size());
+        assertEquals(List.of("running", "kept"), calls);
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void shutdownFailsQueuedAndLaterRequests() throws Exception {
+        EmbeddingModel model = mock(EmbeddingModel.class);
+        when(model.embed(anyList())).thenAnswer(inv -> List.of(new float[]{1f}));
+        EmbeddingDispatcher dispatcher = new EmbeddingDispatcher(model, new SimpleMeterRegistry(), throttle(1), true, 32, 5_000, 1);
+
+        CompletableFuture<List<float[]>> queued = dispatcher.submit(List.of("a"));
+        dispatcher.shutdown();
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> queued.get(2, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof IllegalStateException);
+        assertTrue(dispatcher.submit(List.of("b")).isCompletedExceptionally());
+    }
+
+    @Test
+    void dimensionsWithoutModelFailsClearly() {
+        EmbeddingDispatcher dispatcher = new EmbeddingDispatcher(null, new SimpleMeterRegistry(), throttle(1), true, 32, 0, 1);
+
+        assertThrows(IllegalStateException.class, dispatcher::dimensions);
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void rateLimitedBatchesAreRequeuedAndHalveConcurrency() throws Exception {
+        EmbeddingModel model = mock(EmbeddingModel.class);
+        when(model.embed(anyList()))
+                .thenThrow(new NonTransientAiException("429 - Too Many Requests"))
+                .thenAnswer(inv -> List.of(new float[]{7f}));
+        EmbeddingThrottle throttle = throttle(4);
+        EmbeddingDispatcher dispatcher = new EmbeddingDispatcher(model, new SimpleMeterRegistry(), throttle, true, 32, 0, 4);
+
+        assertEquals(7f, dispatcher.submit(List.of("a")).get(2, TimeUnit.SECONDS).getFirst()[0]);
+        verify(model, times(2)).embed(anyList());
+        assertTrue(throttle.limit() <= 3, "limit " + throttle.limit());
+    }
+
+    private static EmbeddingThrottle throttle(int maxInFlight) {
+        return new EmbeddingThrottle(new SimpleMeterRegistry(), maxInFlight, 0, 0, 0.2, 0, 10, 3);
+    }
+}
@@ -0,0 +1,135 @@
+package com.imperium.astroguide.ai.embedding;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EmbeddingThrottleTest {
+
+    private static final EmbeddingDispatcher.Lane INTERACTIVE = EmbeddingDispatcher.Lane.INTERACTIVE;
+    private static final EmbeddingDispatcher.Lane BULK = EmbeddingDispatcher.Lane.BULK;
+
+    private final AtomicLong clock = new AtomicLong();
+
+    @Test
+    void requestBucket_holdsBackReserveFromBulkAndRefillsOverTime() {
+        EmbeddingThrottle throttle = throttle(8, 10, 0, 0);
+        int bulk = 0;
+        while (throttle.tryAcquire(BULK, 1) == 0) {
+            throttle.release(0, EmbeddingThrottle.Outcome.FAILED);
+            bulk++;
+        }
+        // 10 RPM、预留 20%：批量只能用到 8 个，剩余留给交互检索
+        assertEquals(8, bulk);
+        assertEquals(0, throttle.tryAcquire(INTERACTIVE, 1));
+        throttle.release(0, EmbeddingThrottle.Outcome.FAILED);
+        assertEquals(0, throttle.tryAcquire(INTERACTIVE, 1));
+        throttle.release(0, EmbeddingThrottle.Outcome.FAILED);
+
+        long wait = throttle.tryAcquire(INTERACTIVE, 1);
+        assertTrue(wait > 0 && wait <= TimeUnit.MILLISECONDS.toNanos(6001), "wait " + wait);
+        clock.addAndGet(wait + 1);
+        assertEquals(0, throttle.tryAcquire(INTERACTIVE, 1));
+    }
+
+    @Test
+    void tokenBucket_letsOversizedBatchThroughWhenFullThenChargesItInFull() {
+        EmbeddingThrottle throttle = throttle(8, 0, 1000, 0);
+
+        assertEquals(0, throttle.tryAcquire(INTERACTIVE, 5000));
+        throttle.release(0, EmbeddingThrottle.Outcome.SUCCESS);
+
+        long wait = throttle.tryAcquire(INTERACTIVE, 10);
+        assertTrue(wait > TimeUnit.MINUTES.toNanos(4), "wait " + wait);
+    }
+
+    @Test
+    void tokenBucket_oversizedBulkBatchDoesNotConsumeInteractiveReserve() {
+        EmbeddingThrottle throttle = throttle(8, 0, 1000, 0);
+
+        assertEquals(0, throttle.tryAcquire(BULK, 5000));
+        throttle.release(0, EmbeddingThrottle.Outcome.SUCCESS);
+
+        assertTrue(throttle.tryAcquire(BULK, 10) > TimeUnit.MINUTES.toNanos(4));
+        // 预留的 200 token 仍归交互检索
+        assertEquals(0, throttle.tryAcquire(INTERACTIVE, 150));
+    }
+
+    @Test
+    void bulkStillRunsWhenConcurrencyLimitDropsToOne() {
+        EmbeddingThrottle throttle = throttle(2, 0, 0, 0);
+        assertEquals(0, throttle.tryAcquire(INTERACTIVE, 1));
+        throttle.release(0, EmbeddingThrottle.Outcome.RATE_LIMITED);
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertEquals(1, throttle.limit());
+
+        assertEquals(0, throttle.tryAcquire(BULK, 1));
+        assertEquals(Long.MAX_VALUE, throttle.tryAcquire(INTERACTIVE, 1));
+    }
+
+    @Test
+    void bulkLeavesOneSlotForInteractive() {
+        EmbeddingThrottle throttle = throttle(3, 0, 0, 0);
+
+        assertEquals(0, throttle.tryAcquire(BULK, 1));
+        assertEquals(0, throttle.tryAcquire(BULK, 1));
+        assertEquals(Long.MAX_VALUE, throttle.tryAcquire(BULK, 1));
+        assertEquals(0, throttle.tryAcquire(INTERACTIVE, 1));
+        assertEquals(Long.MAX_VALUE, throttle.tryAcquire(INTERACTIVE, 1));
+    }
+
+    @Test
+    void rateLimitHalvesConcurrencyPausesAndRecoversAdditively() {
+        EmbeddingThrottle throttle = throttle(8, 0, 0, 0);
+        assertEquals(0, throttle.tryAcquire(INTERACTIVE, 1));
+
+        throttle.release(0, EmbeddingThrottle.Outcome.RATE_LIMITED);
+
+        assertEquals(4, throttle.limit());
+        long pause = throttle.tryAcquire(INTERACTIVE, 1);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1000), pause);
+        clock.addAndGet(pause);
+        for (int i = 0; i < 4; i++) {
+            assertEquals(0, throttle.tryAcquire(INTERACTIVE, 1));
+            throttle.release(0, EmbeddingThrottle.Outcome.SUCCESS);
+        }
+        assertEquals(5, throttle.limit());
+    }
+
+    @Test
+    void slowBatchesShrinkConcurrency() {
+        EmbeddingThrottle throttle = throttle(4, 0, 0, 200);
+        assertEquals(0, throttle.tryAcquire(INTERACTIVE, 1));
+
+        throttle.release(TimeUnit.MILLISECONDS.toNanos(500), EmbeddingThrottle.Outcome.SUCCESS);
+
+        assertEquals(3, throttle.limit());
+    }
+
+    @Test
+    void rateLimitDetectionAndTokenEstimate() {
+        assertTrue(EmbeddingThrottle.isRateLimited(new RuntimeException("wrapped",
+                new NonTransientAiException("429 - {\"error\":{\"message\":\"Rate limit reached\"}}"))));
+        assertTrue(EmbeddingThrottle.isRateLimited(
+                HttpClientErrorException.create(HttpStatus.TOO_MANY_REQUESTS, "Too Many Requests", null, null, null)));
+        assertFalse(EmbeddingThrottle.isRateLimited(new NonTransientAiException("400 - batch of 429 inputs too large")));
+        assertFalse(EmbeddingThrottle.isRateLimited(new IllegalStateException("429 Too Many Requests")));
+        assertFalse(EmbeddingThrottle.isRateLimited(new IllegalStateException("connection reset")));
+        assertEquals(3, EmbeddingThrottle.estimateTokens("Black holes"));
+        assertEquals(4, EmbeddingThrottle.estimateTokens("黑洞引力"));
+    }
+
+    private EmbeddingThrottle throttle(int maxInFlight, int rpm, int tpm, long latencyTargetMs) {
+        return new EmbeddingThrottle(new SimpleMeterRegistry(), maxInFlight, rpm, tpm, 0.2, latencyTargetMs, 1000, 3,
+                clock::get);
+    }
+}
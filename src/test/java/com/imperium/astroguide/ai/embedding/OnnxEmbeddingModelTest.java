@@ -0,0 +1,76 @@
+package com.imperium.astroguide.ai.embedding;
+
+import com.imperium.astroguide.infra.onnx.OnnxTextModel;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OnnxEmbeddingModelTest {
+
+    @Test
+    void pool_meanPoolsUnmaskedTokensAndNormalizes() {
+        // batch=2, seq=2, hidden=2；第二条的第二个 token 是 padding
+        float[] hidden = {1f, 0f, 3f, 0f, 0f, 2f, 9f, 9f};
+        long[] mask = {1, 1, 1, 0};
+        OnnxTextModel.Output output = new OnnxTextModel.Output(hidden, new long[]{2, 2, 2}, mask, 2);
+
+        List<float[]> vectors = OnnxEmbeddingModel.pool(output);
+
+        assertEquals(2, vectors.size());
+        assertArrayEquals(new float[]{1f, 0f}, vectors.get(0), 1e-6f);
+        assertArrayEquals(new float[]{0f, 1f}, vectors.get(1), 1e-6f);
+    }
+
+    @Test
+    void pool_usesSentenceEmbeddingOutputDirectly() {
+        OnnxTextModel.Output output = new OnnxTextModel.Output(new float[]{3f, 4f}, new long[]{1, 2}, new long[]{1}, 1);
+
+        assertArrayEquals(new float[]{0.6f, 0.8f}, OnnxEmbeddingModel.pool(output).getFirst(), 1e-6f);
+    }
+
+    /**
+     * 真实模型推理，默认跳过。目录需含 model.onnx 与 tokenizer.json：
+     * <pre>
+     * mvn test -Dtest=OnnxEmbeddingModelTest -Donnx.embedding.dir=models/embedding
+     * </pre>
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "onnx.embedding.dir", matches = ".+")
+    void embed_tokenizesAndInfersConsistentlyAcrossBatches() throws Exception {
+        Path dir = Path.of(System.getProperty("onnx.embedding.dir"));
+        OnnxTextModel model = new OnnxTextModel(dir.resolve("model.onnx"), dir.resolve("tokenizer.json"), 128, 1);
+        try (OnnxEmbeddingModel embedding = new OnnxEmbeddingModel(model, 2, 2)) {
+            List<String> texts = List.of(
+                    "A neutron star is the collapsed core of a massive star.",
+                    "Neutron stars form when massive stars collapse.",
+                    "黑洞是连光都无法逃逸的区域。",
+                    "How do I bake sourdough bread?");
+
+            List<float[]> vectors = embedding.embed(texts);
+
+            int dim = embedding.dimensions();
+            assertEquals(texts.size(), vectors.size());
+            for (float[] v : vectors) {
+                assertEquals(dim, v.length);
+                assertEquals(1.0, Math.sqrt(dot(v, v)), 1e-3);
+            }
+            // 单条推理与批内补齐后的推理结果一致
+            assertArrayEquals(vectors.get(3), embedding.embed(texts.get(3)), 1e-3f);
+            assertTrue(dot(vectors.get(0), vectors.get(1)) > dot(vectors.get(0), vectors.get(3)));
+        }
+    }
+
+    private static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += (double) a[i] * b[i];
+        }
+        return sum;
+    }
+}
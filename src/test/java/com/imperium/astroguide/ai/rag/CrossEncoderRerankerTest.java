@@ -0,0 +1,109 @@
+package com.imperium.astroguide.ai.rag;
+
+import com.imperium.astroguide.infra.onnx.OnnxTextModel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CrossEncoderRerankerTest {
+
+    private final List<Document> docs = List.of(
+            new Document("a", "Stars form in molecular clouds.", Map.of()),
+            new Document("b", "A black hole is a region of spacetime.", Map.of()),
+            new Document("c", "Black holes have an event horizon.", Map.of()));
+
+    @Test
+    void rerank_keepsHighestScoredInBatches() {
+        CrossEncoderReranker reranker = new CrossEncoderReranker(
+                (query, passages) -> {
+                    float[] scores = new float[passages.size()];
+                    for (int i = 0; i < scores.length; i++) {
+                        scores[i] = passages.get(i).toLowerCase().contains("black hole") ? passages.get(i).length() : 0;
+                    }
+                    return scores;
+                },
+                Runnable::run, new SimpleMeterRegistry(), 30, 2, 1000, 2, 2);
+
+        List<Document> kept = reranker.rerank("what is a black hole", docs).orElseThrow();
+
+        assertEquals(List.of("b", "c"), kept.stream().map(Document::getId).toList());
+    }
+
+    @Test
+    void rerank_bypassesWhenBudgetExhausted() {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CrossEncoderReranker reranker = new CrossEncoderReranker(
+                    (query, passages) -> {
+                        Thread.sleep(2_000);
+                        return new float[passages.size()];
+                    },
+                    executor, new SimpleMeterRegistry(), 30, 2, 50, 16, 2);
+
+            Optional<List<Document>> out = reranker.rerank("q", docs);
+
+            assertTrue(out.isEmpty());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void rerank_bypassesWhenExecutorRejects() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        CrossEncoderReranker reranker = new CrossEncoderReranker(
+                (query, passages) -> new float[passages.size()],
+                task -> {
+                    throw new RejectedExecutionException("queue full");
+                },
+                registry, 30, 2, 1000, 16, 1);
+
+        assertTrue(reranker.rerank("q", docs).isEmpty());
+        assertEquals(1, registry.timer("astroguide.rag.rerank", "outcome", "rejected").count());
+        // 拒绝后名额已归还，下一次仍可提交
+        assertTrue(reranker.rerank("q", docs).isEmpty());
+        assertEquals(2, registry.timer("astroguide.rag.rerank", "outcome", "rejected").count());
+    }
+
+    @Test
+    void rerank_timedOutScoringKeepsSlotUntilItFinishes() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            CrossEncoderReranker reranker = new CrossEncoderReranker(
+                    (query, passages) -> {
+                        release.await();
+                        return new float[passages.size()];
+                    },
+                    executor, registry, 30, 2, 50, 16, 1);
+
+            assertTrue(reranker.rerank("q", docs).isEmpty());
+            assertTrue(reranker.rerank("q", docs).isEmpty());
+            assertEquals(1, registry.timer("astroguide.rag.rerank", "outcome", "busy").count());
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void relevance_takesPositiveClassLogit() {
+        OnnxTextModel.Output output = new OnnxTextModel.Output(new float[]{0.1f, 2f, 3f, -1f},
+                new long[]{2, 2}, new long[0], 0);
+
+        assertArrayEquals(new float[]{2f, -1f}, CrossEncoderReranker.relevance(output));
+    }
+}
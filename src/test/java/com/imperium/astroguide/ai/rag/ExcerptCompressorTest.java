@@ -0,0 +1,84 @@
+package com.imperium.astroguide.ai.rag;
+
+import com.imperium.astroguide.ai.context.TokenBudgetEstimator;
+import com.imperium.astroguide.model.dto.rag.ExcerptSpan;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExcerptCompressorTest {
+
+    @Test
+    void compress_respectsGlobalTokenBudgetInRankOrder() {
+        ExcerptCompressor compressor = new ExcerptCompressor(new TokenBudgetEstimator(), true, 20, 500);
+        String first = "Pulsars are rotating neutron stars. They emit beams of radiation.";
+        String second = "Neutron stars are extremely dense remnants of supernovae.";
+
+        List<ExcerptCompressor.CompressedExcerpt> out = compressor.compress("neutron stars", List.of(first, second));
+
+        assertEquals("Pulsars are rotating neutron stars.", out.get(0).text());
+        assertTrue(out.get(1).text().length() < second.length());
+        assertTrue(out.get(1).text().endsWith("..."));
+    }
+
+    @Test
+    void compress_truncatesFirstSentenceWhenBudgetIsSmallerThanIt() {
+        TokenBudgetEstimator estimator = new TokenBudgetEstimator();
+        ExcerptCompressor compressor = new ExcerptCompressor(estimator, true, 3, 500);
+        String first = "Neutron stars are extremely dense remnants of massive supernovae.";
+        String second = "Neutron stars spin.";
+
+        List<ExcerptCompressor.CompressedExcerpt> out = compressor.compress("neutron stars", List.of(first, second));
+
+        ExcerptSpan span = out.get(0).spans().getFirst();
+        assertEquals(0, span.getStart());
+        assertEquals(estimator.charsForTokens(3), span.getEnd());
+        assertEquals(first.substring(span.getStart(), span.getEnd()) + "...", out.get(0).text());
+        // 预算已被首个 chunk 用尽
+        assertTrue(out.get(1).isEmpty());
+        assertTrue(out.get(1).spans().isEmpty());
+    }
+
+    @Test
+    void compress_picksCjkSentenceWithoutWhitespace() {
+        ExcerptCompressor compressor = new ExcerptCompressor(new TokenBudgetEstimator(), true, 1200, 500);
+        String text = "中子星由超新星爆发形成。黑洞的引力极强，连光也无法逃脱。脉冲星会周期性地发出辐射。";
+
+        ExcerptCompressor.CompressedExcerpt out = compressor.compress("黑洞引力", List.of(text)).getFirst();
+
+        assertEquals("黑洞的引力极强，连光也无法逃脱。", out.text());
+        ExcerptSpan span = out.spans().getFirst();
+        assertEquals(text.indexOf("黑洞"), span.getStart());
+        assertEquals(out.text(), text.substring(span.getStart(), span.getEnd()));
+    }
+
+    @Test
+    void compress_spansMatchSourceSubstringsInExcerptOrder() {
+        ExcerptCompressor compressor = new ExcerptCompressor(new TokenBudgetEstimator(), true, 1200, 500);
+        String text = "  Black holes bend light.\nGalaxies are large. Black holes can merge!  Comets have tails. "
+                + "Black holes evaporate slowly.";
+
+        ExcerptCompressor.CompressedExcerpt out = compressor.compress("black holes", List.of(text)).getFirst();
+
+        List<String> pieces = out.spans().stream().map(span -> text.substring(span.getStart(), span.getEnd())).toList();
+        assertEquals(List.of("Black holes bend light.", "Black holes can merge!", "Black holes evaporate slowly."), pieces);
+        assertEquals("Black holes bend light. … Black holes can merge! … Black holes evaporate slowly.", out.text());
+        for (int i = 1; i < out.spans().size(); i++) {
+            assertTrue(out.spans().get(i - 1).getEnd() <= out.spans().get(i).getStart());
+        }
+    }
+
+    @Test
+    void splitSentences_handlesChineseAndDecimals() {
+        String text = "黑洞是时空区域。 The ratio is 3.5 today! 引力极强";
+        List<int[]> spans = ExcerptCompressor.splitSentences(text);
+
+        assertEquals(3, spans.size());
+        assertEquals("The ratio is 3.5 today!", text.substring(spans.get(1)[0], spans.get(1)[1]));
+        assertFalse(ExcerptCompressor.terms("黑洞").isEmpty());
+    }
+}
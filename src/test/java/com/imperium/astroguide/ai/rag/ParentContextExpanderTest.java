@@ -0,0 +1,99 @@
+package com.imperium.astroguide.ai.rag;
+
+import com.imperium.astroguide.ai.context.TokenBudgetEstimator;
+import com.imperium.astroguide.ingest.ChunkMetadata;
+import com.imperium.astroguide.model.dto.rag.ExcerptSpan;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParentContextExpanderTest {
+
+    private static final List<Document> PARENT_A = List.of(
+            child("a0", "A", 0, "Alpha zero."),
+            child("a1", "A", 1, "Alpha one."),
+            child("a2", "A", 2, "Alpha two."),
+            child("a3", "A", 3, "Alpha three."),
+            child("a4", "A", 4, "Alpha four."));
+
+    @Test
+    void expand_mergesHitsOfSameParentAndFillsNeighboursWithinBudget() {
+        List<Document> siblings = new ArrayList<>(PARENT_A);
+        ParentContextExpander expander = new ParentContextExpander((ids, limit) -> siblings,
+                new TokenBudgetEstimator(), true, 100, 1);
+        Document legacy = new Document("legacy", "No parent here.", Map.of("source", "Old"));
+
+        List<Document> out = expander.expand(List.of(PARENT_A.get(1), legacy, PARENT_A.get(4)));
+
+        assertEquals(2, out.size());
+        assertEquals("a1", out.get(0).getId());
+        assertEquals("Alpha zero. Alpha one. Alpha two. Alpha three. Alpha four.", out.get(0).getText());
+        assertEquals(List.of("a0", "a1", "a2", "a3", "a4"), out.get(0).getMetadata().get(ParentContextExpander.MERGED_CHUNK_IDS));
+        assertSame(legacy, out.get(1));
+    }
+
+    @Test
+    void expand_stopsAtTokenBudgetAndMarksGaps() {
+        ParentContextExpander expander = new ParentContextExpander((ids, limit) -> PARENT_A,
+                new TokenBudgetEstimator(), true, 12, 2);
+
+        List<Document> out = expander.expand(List.of(PARENT_A.get(0), PARENT_A.get(3)));
+
+        assertEquals("Alpha zero. Alpha one. … Alpha three.", out.get(0).getText());
+    }
+
+    @Test
+    void chunkSpans_mapExcerptOfMergedTextBackToCitedChunks() {
+        ParentContextExpander expander = new ParentContextExpander((ids, limit) -> PARENT_A,
+                new TokenBudgetEstimator(), true, 100, 1);
+        Document merged = expander.expand(List.of(PARENT_A.get(1), PARENT_A.get(3))).getFirst();
+        ExcerptCompressor compressor = new ExcerptCompressor(new TokenBudgetEstimator(), true, 1200, 500);
+        List<ExcerptSpan> spans = compressor.compress("alpha three", List.of(merged.getText())).getFirst().spans();
+
+        List<ExcerptSpan> mapped = ParentContextExpander.chunkSpans(merged, spans);
+
+        // 最相关的句子即 a3 的全文，偏移相对 a3 自身文本
+        assertTrue(mapped.contains(new ExcerptSpan(0, 12, "a3")));
+        for (ExcerptSpan span : mapped) {
+            String chunkText = text(span.getChunkId());
+            assertTrue(span.getEnd() <= chunkText.length());
+            assertTrue(merged.getText().contains(chunkText.substring(span.getStart(), span.getEnd())));
+        }
+        // 跨越小块边界的区间拆到两个小块，分隔符不计入
+        int start = merged.getText().indexOf("one.");
+        int end = merged.getText().indexOf("two.");
+        assertEquals(List.of(new ExcerptSpan(6, 10, "a1"), new ExcerptSpan(0, 6, "a2")),
+                ParentContextExpander.chunkSpans(merged, List.of(new ExcerptSpan(start, end))));
+        // 未合并的命中原样返回
+        assertSame(spans, ParentContextExpander.chunkSpans(PARENT_A.get(0), spans));
+    }
+
+    @Test
+    void expand_fallsBackToRawHitsWhenLoaderFails() {
+        ParentContextExpander expander = new ParentContextExpander((ids, limit) -> {
+            throw new IllegalStateException("qdrant down");
+        }, new TokenBudgetEstimator(), true, 100, 2);
+        List<Document> hits = List.of(PARENT_A.get(2));
+
+        assertSame(hits, expander.expand(hits));
+    }
+
+    private static String text(String id) {
+        return PARENT_A.stream().filter(doc -> doc.getId().equals(id)).findFirst().orElseThrow().getText();
+    }
+
+    private static Document child(String id, String parent, int index, String text) {
+        return new Document(id, text, Map.of(
+                ChunkMetadata.SOURCE, "Book",
+                ChunkMetadata.PARENT_ID, parent,
+                ChunkMetadata.CHILD_INDEX, (long) index,
+                ChunkMetadata.CHILD_TOTAL, 5L));
+    }
+}
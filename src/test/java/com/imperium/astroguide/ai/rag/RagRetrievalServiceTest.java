@@ -1,5 +1,15 @@
 package com.imperium.astroguide.ai.rag;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.imperium.astroguide.ai.context.TokenBudgetEstimator;
+import com.imperium.astroguide.ai.embedding.EmbeddingDispatcher;
+import com.imperium.astroguide.ai.embedding.EmbeddingThrottle;
+import com.imperium.astroguide.infra.cache.InMemoryKnowledgeBaseGeneration;
+import com.imperium.astroguide.infra.cache.KnowledgeBaseGeneration;
+import com.imperium.astroguide.infra.qdrant.MatryoshkaLayout;
+import com.imperium.astroguide.infra.qdrant.QdrantQuantization;
+import com.imperium.astroguide.infra.resilience.CircuitBreakerRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.vectorstore.SearchRequest;
@@ -7,10 +17,13 @@ import org.springframework.ai.vectorstore.VectorStore;
 
 import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 class RagRetrievalServiceTest {
@@ -21,7 +34,7 @@ class RagRetrievalServiceTest {
         when(vectorStore.similaritySearch(any(SearchRequest.class)))
                 .thenThrow(new RuntimeException("qdrant down"));
 
-        RagRetrievalService service = new RagRetrievalService(vectorStore);
+        RagRetrievalService service = newService(vectorStore);
         org.springframework.test.util.ReflectionTestUtils.setField(service, "ragEnabled", true);
         org.springframework.test.util.ReflectionTestUtils.setField(service, "ragTopK", 4);
 
@@ -36,11 +49,133 @@ class RagRetrievalServiceTest {
         Document doc = new Document("id-1", "excerpt text", java.util.Map.of("source", "Book"));
         when(vectorStore.similaritySearch(any(SearchRequest.class))).thenReturn(List.of(doc));
 
-        RagRetrievalService service = new RagRetrievalService(vectorStore);
+        RagRetrievalService service = newService(vectorStore);
         org.springframework.test.util.ReflectionTestUtils.setField(service, "ragEnabled", true);
         org.springframework.test.util.ReflectionTestUtils.setField(service, "ragTopK", 4);
 
         RagRetrievalResult result = service.retrieve("black hole");
         assertFalse(result.citations().isEmpty());
     }
+
+    @Test
+    void retrieve_compressesExcerptToQueryRelevantSentences() {
+        VectorStore vectorStore = mock(VectorStore.class);
+        String text = "Stars form in molecular clouds. A black hole forms when a massive star collapses. "
+                + "Galaxies contain billions of stars.";
+        Document doc = new Document("id-1", text, java.util.Map.of("source", "Book"));
+        when(vectorStore.similaritySearch(any(SearchRequest.class))).thenReturn(List.of(doc));
+
+        RagRetrievalService service = newService(vectorStore);
+        org.springframework.test.util.ReflectionTestUtils.setField(service, "ragEnabled", true);
+        org.springframework.test.util.ReflectionTestUtils.setField(service, "ragTopK", 4);
+
+        RagRetrievalResult result = service.retrieve("what is a black hole");
+        var citation = result.citations().getFirst();
+        assertEquals("A black hole forms when a massive star collapses.", citation.getExcerpt());
+        var span = citation.getSpans().getFirst();
+        assertEquals("A black hole forms when a massive star collapses.", text.substring(span.getStart(), span.getEnd()));
+    }
+
+    @Test
+    void retrieve_fusesSubQueryResultsWithoutDuplicates() {
+        VectorStore vectorStore = mock(VectorStore.class);
+        Document shared = new Document("id-1", "Black holes bend light.", java.util.Map.of("source", "Book"));
+        Document other = new Document("id-2", "Neutron stars spin fast.", java.util.Map.of("source", "Book"));
+        when(vectorStore.similaritySearch(any(SearchRequest.class)))
+                .thenReturn(List.of(shared))
+                .thenReturn(List.of(other, shared));
+
+        RagRetrievalService service = newService(vectorStore);
+        org.springframework.test.util.ReflectionTestUtils.setField(service, "ragEnabled", true);
+        org.springframework.test.util.ReflectionTestUtils.setField(service, "ragTopK", 4);
+        org.springframework.test.util.ReflectionTestUtils.setField(service, "maxQueries", 4);
+
+        RagRetrievalResult result = service.retrieve("black holes", List.of("neutron stars"));
+        assertEquals(List.of("id-1", "id-2"), result.citations().stream().map(c -> c.getChunkId()).toList());
+    }
+
+    @Test
+    void retrieve_servesRepeatedQueryFromCacheUntilGenerationBumps() {
+        VectorStore vectorStore = mock(VectorStore.class);
+        Document doc = new Document("id-1", "A black hole is a region of spacetime.", java.util.Map.of("source", "Book"));
+        when(vectorStore.similaritySearch(any(SearchRequest.class))).thenReturn(List.of(doc));
+        KnowledgeBaseGeneration generation = new InMemoryKnowledgeBaseGeneration();
+        RagRetrievalService service = new RagRetrievalService(vectorStore,
+                newSearcher(vectorStore),
+                new ExcerptCompressor(new TokenBudgetEstimator(), true, 1200, 500),
+                newCache(generation), null, noExpansion(), noAudit());
+        org.springframework.test.util.ReflectionTestUtils.setField(service, "ragEnabled", true);
+        org.springframework.test.util.ReflectionTestUtils.setField(service, "ragTopK", 4);
+
+        service.retrieve("What is a black hole?");
+        service.retrieve("what is a  black hole");
+        verify(vectorStore, times(1)).similaritySearch(any(SearchRequest.class));
+
+        generation.bump();
+        service.retrieve("what is a black hole");
+        verify(vectorStore, times(2)).similaritySearch(any(SearchRequest.class));
+    }
+
+    @Test
+    void retrieve_keysCacheOnUserQuestionNotGeneratedSubQueries() {
+        VectorStore vectorStore = mock(VectorStore.class);
+        Document doc = new Document("id-1", "A black hole is a region of spacetime.", java.util.Map.of("source", "Book"));
+        when(vectorStore.similaritySearch(any(SearchRequest.class))).thenReturn(List.of(doc));
+        RagRetrievalService service = newService(vectorStore);
+        org.springframework.test.util.ReflectionTestUtils.setField(service, "ragEnabled", true);
+        org.springframework.test.util.ReflectionTestUtils.setField(service, "ragTopK", 4);
+        org.springframework.test.util.ReflectionTestUtils.setField(service, "maxQueries", 4);
+
+        service.retrieve("What is a black hole?", List.of("event horizon"));
+        service.retrieve("what is a black hole", List.of("black hole definition"));
+
+        verify(vectorStore, times(2)).similaritySearch(any(SearchRequest.class));
+    }
+
+    @Test
+    void retrieve_treatsGenerationFailureAsCacheMiss() {
+        VectorStore vectorStore = mock(VectorStore.class);
+        Document doc = new Document("id-1", "A black hole is a region of spacetime.", java.util.Map.of("source", "Book"));
+        when(vectorStore.similaritySearch(any(SearchRequest.class))).thenReturn(List.of(doc));
+        KnowledgeBaseGeneration generation = mock(KnowledgeBaseGeneration.class);
+        when(generation.current()).thenThrow(new IllegalStateException("redis down"));
+        RagRetrievalService service = new RagRetrievalService(vectorStore,
+                newSearcher(vectorStore),
+                new ExcerptCompressor(new TokenBudgetEstimator(), true, 1200, 500),
+                newCache(generation), null, noExpansion(), noAudit());
+        org.springframework.test.util.ReflectionTestUtils.setField(service, "ragEnabled", true);
+        org.springframework.test.util.ReflectionTestUtils.setField(service, "ragTopK", 4);
+
+        assertFalse(service.retrieve("what is a black hole").citations().isEmpty());
+        assertFalse(service.retrieve("what is a black hole").citations().isEmpty());
+        verify(vectorStore, times(2)).similaritySearch(any(SearchRequest.class));
+    }
+
+    private static RagRetrievalService newService(VectorStore vectorStore) {
+        return new RagRetrievalService(vectorStore,
+                newSearcher(vectorStore),
+                new ExcerptCompressor(new TokenBudgetEstimator(), true, 1200, 500),
+                newCache(new InMemoryKnowledgeBaseGeneration()), null, noExpansion(), noAudit());
+    }
+
+    private static ParentContextExpander noExpansion() {
+        return new ParentContextExpander(null, new TokenBudgetEstimator(), false, 1500, 2);
+    }
+
+    private static RetrievalMetrics noAudit() {
+        return new RetrievalMetrics(new SimpleMeterRegistry(), null, new ObjectMapper(), 0, false, 100);
+    }
+
+    private static BatchVectorSearcher newSearcher(VectorStore vectorStore) {
+        CircuitBreakerRegistry breakers = new CircuitBreakerRegistry(new SimpleMeterRegistry(), 20, 10, 50, 1500, 80, 30_000, 3);
+        EmbeddingDispatcher dispatcher = new EmbeddingDispatcher(null, new SimpleMeterRegistry(),
+                new EmbeddingThrottle(new SimpleMeterRegistry(), 4, 0, 0, 0.2, 0, 0, 0), false, 32, 5, 4);
+        return new BatchVectorSearcher(null, dispatcher, vectorStore, Runnable::run, breakers,
+                new QdrantQuantization("none", true, true, 2.0, true), new MatryoshkaLayout(false, 512, 4), null,
+                "astro_knowledge", 1000, 1000);
+    }
+
+    private static RetrievalCache newCache(KnowledgeBaseGeneration generation) {
+        return new RetrievalCache(generation, null, new ObjectMapper(), new SimpleMeterRegistry(), true, 100, 60_000);
+    }
 }
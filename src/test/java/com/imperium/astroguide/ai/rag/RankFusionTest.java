@@ -0,0 +1,72 @@
+package com.imperium.astroguide.ai.rag;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RankFusionTest {
+
+    @Test
+    void reciprocalRank_ordersByRankNotBySimilarityScore() {
+        // 相似度分数与排名相反：融合只看名次
+        Document a = doc("a", 0.2);
+        Document b = doc("b", 0.5);
+        Document c = doc("c", 0.9);
+
+        List<Document> out = RankFusion.reciprocalRank(List.of(List.of(a, b, c)), 2);
+
+        assertEquals(List.of("a", "b"), ids(out));
+        assertSame(a, out.getFirst());
+    }
+
+    @Test
+    void reciprocalRank_keepsFirstSeenOrderOnTies() {
+        List<Document> out = RankFusion.reciprocalRank(
+                List.of(List.of(doc("a", 0.1), doc("c", 0.1)), List.of(doc("b", 0.9), doc("d", 0.9))), 10);
+
+        // a 与 b 同为第 1 名、c 与 d 同为第 2 名
+        assertEquals(List.of("a", "b", "c", "d"), ids(out));
+    }
+
+    @Test
+    void reciprocalRank_sumsScoresOfDocumentFoundBySeveralSubQueries() {
+        Document shared = doc("shared", 0.5);
+
+        List<Document> out = RankFusion.reciprocalRank(List.of(
+                List.of(doc("a", 0.9), doc("b", 0.8), shared),
+                List.of(doc("c", 0.9), shared),
+                List.of(shared, doc("d", 0.9))), 10);
+
+        // 三路分数累加（1/63 + 1/62 + 1/61）高于任何单路第 1 名的 1/61
+        assertEquals("shared", out.getFirst().getId());
+        assertEquals(1, out.stream().filter(d -> "shared".equals(d.getId())).count());
+        assertEquals(List.of("shared", "a", "c", "b", "d"), ids(out));
+    }
+
+    @Test
+    void reciprocalRank_handlesEmptyAndMissingSubQueryResults() {
+        assertTrue(RankFusion.reciprocalRank(List.of(), 5).isEmpty());
+        List<List<Document>> lists = new ArrayList<>(Arrays.asList(null, List.of()));
+        assertTrue(RankFusion.reciprocalRank(lists, 5).isEmpty());
+
+        lists.add(List.of(new Document("blank", " ", Map.of()), doc("a", 0.3)));
+        assertEquals(List.of("a"), ids(RankFusion.reciprocalRank(lists, 5)));
+        assertTrue(RankFusion.reciprocalRank(lists, 0).isEmpty());
+    }
+
+    private static Document doc(String id, double score) {
+        return Document.builder().id(id).text("Text of " + id + ".").score(score).build();
+    }
+
+    private static List<String> ids(List<Document> documents) {
+        return documents.stream().map(Document::getId).toList();
+    }
+}
@@ -0,0 +1,49 @@
+package com.imperium.astroguide.ai.rag;
+
+import com.imperium.astroguide.infra.qdrant.QdrantFilters;
+import com.imperium.astroguide.ingest.ChunkMetadata;
+import io.qdrant.client.grpc.Points;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RetrievalFilterTest {
+
+    @Test
+    void matches_allowsLowerLevelsAndUnlabelledChunks() {
+        RetrievalFilter filter = RetrievalFilter.of("ZH", "intermediate").withSources(List.of("Book", " "));
+
+        assertEquals(List.of("basic", "intermediate"), filter.allowedLevels());
+        assertEquals(List.of("Book"), filter.sources());
+        assertTrue(filter.matches(Map.of("source", "Book", "language", "zh", "level", "basic")));
+        assertTrue(filter.matches(Map.of("source", "Book")));
+        assertFalse(filter.matches(Map.of("source", "Book", "language", "zh", "level", "advanced")));
+        assertFalse(filter.matches(Map.of("source", "Book", "language", "en")));
+        assertFalse(filter.matches(Map.of("source", "Other", "language", "zh")));
+        assertEquals(RetrievalFilter.NONE, RetrievalFilter.of("fr", "expert"));
+    }
+
+    @Test
+    void toFilter_pushesEveryConditionWithMissingFieldFallback() {
+        Points.Filter filter = QdrantFilters.toFilter(new RetrievalFilter("en", "basic", List.of("Book"))).orElseThrow();
+
+        assertEquals(3, filter.getMustCount());
+        Points.Filter language = filter.getMust(0).getFilter();
+        assertEquals(ChunkMetadata.LANGUAGE, language.getShould(0).getField().getKey());
+        assertEquals(ChunkMetadata.LANGUAGE, language.getShould(1).getIsEmpty().getKey());
+        assertEquals(List.of("basic"), filter.getMust(1).getFilter().getShould(0).getField().getMatch().getKeywords().getStringsList());
+        assertEquals(ChunkMetadata.SOURCE, filter.getMust(2).getField().getKey());
+        assertTrue(QdrantFilters.toFilter(RetrievalFilter.NONE).isEmpty());
+    }
+
+    @Test
+    void detectLanguage_usesHanShare() {
+        assertEquals("zh", ChunkMetadata.detectLanguage("黑洞是时空中引力极强的区域 (black hole)。"));
+        assertEquals("en", ChunkMetadata.detectLanguage("A black hole is a region of spacetime."));
+    }
+}
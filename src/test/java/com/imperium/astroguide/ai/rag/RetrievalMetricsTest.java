@@ -0,0 +1,86 @@
+package com.imperium.astroguide.ai.rag;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RetrievalMetricsTest {
+
+    @Test
+    void record_tagsStagesAndScoresByRouteAndLanguage() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        RetrievalMetrics metrics = new RetrievalMetrics(registry, null, new ObjectMapper(), 1, false, 100);
+        RetrievalTrace trace = new RetrievalTrace();
+        trace.addEmbed(2_000_000);
+        trace.addSearch(5_000_000);
+        List<Document> retrieved = List.of(doc("a", 0.9), doc("b", 0.5), doc("c", 0.7), doc("d", 0.6));
+
+        metrics.record("black hole", "COMPLEX", "en", trace, retrieved, 2, List.of("a"), 120, false);
+
+        assertEquals(4, registry.get("astroguide.rag.chunks").tags("route", "COMPLEX", "language", "en", "stage", "retrieved")
+                .summary().totalAmount());
+        assertEquals(2, registry.get("astroguide.rag.chunks").tag("stage", "kept").summary().totalAmount());
+        assertEquals(1, registry.get("astroguide.rag.chunks").tag("stage", "injected").summary().totalAmount());
+        assertEquals(0.9, registry.get("astroguide.rag.score.top").summary().max(), 1e-9);
+        assertEquals(0.65, registry.get("astroguide.rag.score.median").summary().max(), 1e-9);
+        assertEquals(5.0, registry.get("astroguide.rag.search").timer().totalTime(TimeUnit.MILLISECONDS), 1e-9);
+        assertEquals(0, registry.find("astroguide.rag.zero_hit").counters().size());
+    }
+
+    @Test
+    void record_countsZeroHits() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        RetrievalMetrics metrics = new RetrievalMetrics(registry, null, new ObjectMapper(), 0, false, 100);
+
+        metrics.record("quasar", "SIMPLE", "zh", new RetrievalTrace(), List.of(), 0, List.of(), 0, true);
+
+        assertEquals(1, registry.get("astroguide.rag.zero_hit").tags("route", "SIMPLE", "language", "zh").counter().count());
+        assertEquals(0, registry.find("astroguide.rag.score.top").summaries().size());
+    }
+
+    @Test
+    void audit_recordsQueryHashAndRawTextOnlyWhenEnabled() {
+        Logger logger = (Logger) LoggerFactory.getLogger(RetrievalMetrics.AUDIT_LOGGER);
+        ListAppender<ILoggingEvent> appender = new ListAppender<>();
+        appender.start();
+        logger.addAppender(appender);
+        try {
+            new RetrievalMetrics(new SimpleMeterRegistry(), null, new ObjectMapper(), 1, false, 100)
+                    .record("My name is Ada, what is a pulsar?", "SIMPLE", "en", new RetrievalTrace(),
+                            List.of(), 0, List.of(), 0, false);
+            new RetrievalMetrics(new SimpleMeterRegistry(), null, new ObjectMapper(), 1, true, 100)
+                    .record("what is a pulsar", "SIMPLE", "en", new RetrievalTrace(), List.of(), 0, List.of(), 0, false);
+
+            String hashedOnly = appender.list.get(0).getFormattedMessage();
+            assertFalse(hashedOnly.contains("Ada"));
+            assertTrue(hashedOnly.contains(RetrievalMetrics.queryHash("my name is ada,  what is a pulsar?")));
+            assertTrue(appender.list.get(1).getFormattedMessage().contains("\"query\":\"what is a pulsar\""));
+        } finally {
+            logger.detachAppender(appender);
+        }
+    }
+
+    @Test
+    void median_handlesOddAndEvenCounts() {
+        assertEquals(List.of(0.9, 0.7, 0.5), RetrievalMetrics.scores(List.of(doc("a", 0.5), doc("b", 0.9), doc("c", 0.7))));
+        assertEquals(0.7, RetrievalMetrics.median(List.of(0.9, 0.7, 0.5)), 1e-9);
+        assertEquals(0.8, RetrievalMetrics.median(List.of(0.9, 0.7)), 1e-9);
+    }
+
+    private static Document doc(String id, double score) {
+        return Document.builder().id(id).text("text " + id).metadata(Map.of()).score(score).build();
+    }
+}
@@ -0,0 +1,107 @@
+package com.imperium.astroguide.infra.qdrant;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.imperium.astroguide.infra.cache.KnowledgeBaseGeneration;
+import com.imperium.astroguide.infra.resilience.RetryScheduler;
+import com.imperium.astroguide.model.entity.KnowledgeChunk;
+import com.imperium.astroguide.service.ChunkCatalogService;
+import io.qdrant.client.PointIdFactory;
+import io.qdrant.client.QdrantClient;
+import io.qdrant.client.ValueFactory;
+import io.qdrant.client.VectorsFactory;
+import io.qdrant.client.grpc.Collections;
+import io.qdrant.client.grpc.Points;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.ai.document.Document;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class KnowledgeSnapshotServiceTest {
+
+    private static final String TEXT = "Comets have tails.";
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void exportAndImport_carryTextOwnedByTheCatalog(@TempDir Path dir) throws Exception {
+        String id = UUID.randomUUID().toString();
+        Points.RetrievedPoint stored = Points.RetrievedPoint.newBuilder()
+                .setId(PointIdFactory.id(UUID.fromString(id)))
+                .putAllPayload(Map.of(QdrantPayloads.CONTENT_FIELD, ValueFactory.value(""),
+                        "source", ValueFactory.value("Comets"),
+                        "chunk_index", ValueFactory.value(0)))
+                .setVectors(Points.VectorsOutput.newBuilder().setVector(Points.VectorOutput.newBuilder()
+                        .addAllData(List.of(0.6f, 0.8f))))
+                .build();
+        ListenableFuture<Collections.CollectionInfo> info = done(Collections.CollectionInfo.newBuilder()
+                .setConfig(Collections.CollectionConfig.newBuilder().setParams(Collections.CollectionParams.newBuilder()
+                        .setVectorsConfig(Collections.VectorsConfig.newBuilder()
+                                .setParams(Collections.VectorParams.newBuilder().setSize(2)))))
+                .build());
+        ListenableFuture<Points.ScrollResponse> page = done(Points.ScrollResponse.newBuilder().addResult(stored).build());
+        ListenableFuture<Points.UpdateResult> updated = done(Points.UpdateResult.getDefaultInstance());
+        QdrantClient client = mock(QdrantClient.class);
+        when(client.getCollectionInfoAsync(anyString())).thenReturn(info);
+        when(client.scrollAsync(any(Points.ScrollPoints.class), any(Duration.class))).thenReturn(page);
+        when(client.upsertAsync(any(Points.UpsertPoints.class), any(Duration.class))).thenReturn(updated);
+        QdrantClientPool pool = mock(QdrantClientPool.class);
+        when(pool.primary()).thenReturn(client);
+        when(pool.next()).thenReturn(client);
+        ChunkCatalogService catalog = mock(ChunkCatalogService.class);
+        when(catalog.enabled()).thenReturn(true);
+        when(catalog.ownsText()).thenReturn(true);
+        when(catalog.findByIds(anyCollection())).thenReturn(Map.of(id, new KnowledgeChunk(id, "Comets", 0, 1, null,
+                "hash", 1L, TEXT, null, LocalDateTime.now())));
+        KnowledgeSnapshotService service = new KnowledgeSnapshotService(pool, mock(KnowledgeBaseGeneration.class),
+                catalog, new RetryScheduler(1, 0, 0), "astro", dir.toString(), 16, 1, 1000);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        service.export(out);
+
+        // 快照自带目录中的正文
+        try (SnapshotCodec.Reader reader = new SnapshotCodec.Reader(new ByteArrayInputStream(out.toByteArray()))) {
+            Points.PointStruct point = reader.nextFrame().get(0);
+            assertEquals(TEXT, point.getPayloadMap().get(QdrantPayloads.CONTENT_FIELD).getStringValue());
+            assertEquals(VectorsFactory.vectors(0.6f, 0.8f), point.getVectors());
+        }
+
+        Files.write(dir.resolve("kb.agks"), out.toByteArray());
+        assertEquals(1, service.importSnapshot("kb.agks").points());
+
+        // 导入时目录行带回正文，点位 payload 仍不写正文
+        ArgumentCaptor<List<Document>> rows = ArgumentCaptor.forClass(List.class);
+        verify(catalog).saveAll(rows.capture());
+        Document row = rows.getValue().get(0);
+        assertEquals(id, row.getId());
+        assertEquals(TEXT, row.getText());
+        assertEquals("Comets", row.getMetadata().get("source"));
+        ArgumentCaptor<Points.UpsertPoints> upsert = ArgumentCaptor.forClass(Points.UpsertPoints.class);
+        verify(client).upsertAsync(upsert.capture(), any(Duration.class));
+        assertEquals("", upsert.getValue().getPoints(0).getPayloadMap().get(QdrantPayloads.CONTENT_FIELD).getStringValue());
+        service.shutdown();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> ListenableFuture<T> done(T value) throws Exception {
+        ListenableFuture<T> future = mock(ListenableFuture.class);
+        when(future.get()).thenReturn(value);
+        return future;
+    }
+}
@@ -0,0 +1,132 @@
+package com.imperium.astroguide.infra.qdrant;
+
+import io.qdrant.client.PointIdFactory;
+import io.qdrant.client.QdrantClient;
+import io.qdrant.client.QueryFactory;
+import io.qdrant.client.VectorFactory;
+import io.qdrant.client.VectorsFactory;
+import io.qdrant.client.grpc.Points;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Matryoshka 两阶段检索基准：以完整维度精确检索为真值，比较仅前缀检索与“前缀召回 + 完整向量重排”
+ * 在不同前缀维度与候选倍数下的 recall@10 与延迟。
+ * <p>
+ * 默认跳过。需用 Matryoshka 训练模型产生的真实向量才有意义：
+ * <pre>
+ * mvn test -Dtest=MatryoshkaBenchmarkTest -Dqdrant.bench.host=localhost -Dqdrant.bench.source=astro_knowledge
+ * </pre>
+ */
+@EnabledIfSystemProperty(named = "qdrant.bench.host", matches = ".+")
+class MatryoshkaBenchmarkTest {
+
+    private static final int K = 10;
+    private static final int QUERIES = 200;
+
+    @Test
+    void recallAtKAgainstFullDimension() throws Exception {
+        String host = System.getProperty("qdrant.bench.host");
+        int port = Integer.getInteger("qdrant.bench.port", 6334);
+        int points = Integer.getInteger("qdrant.bench.points", 10_000);
+        Random random = new Random(11);
+        QdrantQuantization none = new QdrantQuantization("none", true, true, 1.0, true);
+
+        try (QdrantClientPool pool = QdrantClientPool.create(host, port, 1, 30_000, 5_000, 120_000)) {
+            QdrantClient client = pool.primary();
+            List<float[]> corpus = QdrantBenchSupport.loadVectors(client,
+                    System.getProperty("qdrant.bench.source"), points, 2560, random);
+            int dim = corpus.getFirst().length;
+            List<float[]> queries = QdrantBenchSupport.queries(corpus, QUERIES, random);
+            System.out.printf("points=%d dim=%d queries=%d%n", corpus.size(), dim, QUERIES);
+            System.out.printf("%-6s %-12s %10s %10s %10s%n", "dims", "strategy", "recall@10", "p50(ms)", "p95(ms)");
+
+            for (int prefixDims : new int[]{256, 512, 1024}) {
+                MatryoshkaLayout layout = new MatryoshkaLayout(true, prefixDims, 1);
+                String collection = "bench_mrl_" + prefixDims + "_" + UUID.randomUUID().toString().substring(0, 8);
+                client.createCollectionAsync(QdrantCollectionInitializer.createRequest(collection, dim, none, layout)).get();
+                try {
+                    upsert(client, collection, corpus, layout);
+                    QdrantBenchSupport.awaitGreen(client, collection);
+                    List<List<String>> truth = new ArrayList<>();
+                    for (float[] q : queries) {
+                        truth.add(run(client, Points.QueryPoints.newBuilder()
+                                .setCollectionName(collection)
+                                .setQuery(QueryFactory.nearest(q))
+                                .setUsing(MatryoshkaLayout.FULL_VECTOR)
+                                .setParams(Points.SearchParams.newBuilder().setExact(true))
+                                .setLimit(K).build()));
+                    }
+                    report(client, collection, queries, truth, layout, prefixDims, 0);
+                    for (int multiplier : new int[]{2, 4, 8}) {
+                        report(client, collection, queries, truth, layout, prefixDims, multiplier);
+                    }
+                } finally {
+                    client.deleteCollectionAsync(collection).get();
+                }
+            }
+        }
+    }
+
+    /** multiplier=0 表示仅前缀检索（不重排） */
+    private static void report(QdrantClient client, String collection, List<float[]> queries,
+            List<List<String>> truth, MatryoshkaLayout layout, int prefixDims, int multiplier) throws Exception {
+        long[] latencies = new long[queries.size()];
+        double recallSum = 0;
+        for (int i = 0; i < queries.size(); i++) {
+            float[] full = queries.get(i);
+            float[] prefix = MatryoshkaLayout.truncate(full, layout.prefixDims(full.length));
+            Points.QueryPoints.Builder query = Points.QueryPoints.newBuilder().setCollectionName(collection).setLimit(K);
+            if (multiplier == 0) {
+                query.setQuery(QueryFactory.nearest(prefix)).setUsing(MatryoshkaLayout.PREFIX_VECTOR);
+            } else {
+                query.addPrefetch(Points.PrefetchQuery.newBuilder()
+                                .setQuery(QueryFactory.nearest(prefix))
+                                .setUsing(MatryoshkaLayout.PREFIX_VECTOR)
+                                .setLimit((long) K * multiplier))
+                        .setQuery(QueryFactory.nearest(full))
+                        .setUsing(MatryoshkaLayout.FULL_VECTOR);
+            }
+            long t0 = System.nanoTime();
+            List<String> ids = run(client, query.build());
+            latencies[i] = System.nanoTime() - t0;
+            recallSum += QdrantBenchSupport.recall(truth.get(i), ids);
+        }
+        System.out.printf("%-6d %-12s %10.3f %10.2f %10.2f%n", prefixDims,
+                multiplier == 0 ? "prefix-only" : "rerank x" + multiplier,
+                recallSum / queries.size(),
+                QdrantBenchSupport.percentileMs(latencies, 0.50),
+                QdrantBenchSupport.percentileMs(latencies, 0.95));
+    }
+
+    private static List<String> run(QdrantClient client, Points.QueryPoints query) throws Exception {
+        return client.queryAsync(query, Duration.ofSeconds(30)).get().stream()
+                .map(p -> QdrantPayloads.pointId(p.getId()))
+                .toList();
+    }
+
+    private static void upsert(QdrantClient client, String collection, List<float[]> corpus, MatryoshkaLayout layout)
+            throws Exception {
+        for (int offset = 0; offset < corpus.size(); offset += 256) {
+            List<Points.PointStruct> batch = new ArrayList<>();
+            for (int i = offset; i < Math.min(corpus.size(), offset + 256); i++) {
+                float[] full = corpus.get(i);
+                batch.add(Points.PointStruct.newBuilder()
+                        .setId(PointIdFactory.id(i))
+                        .setVectors(VectorsFactory.namedVectors(Map.of(
+                                MatryoshkaLayout.FULL_VECTOR, VectorFactory.vector(full),
+                                MatryoshkaLayout.PREFIX_VECTOR, VectorFactory.vector(
+                                        MatryoshkaLayout.truncate(full, layout.prefixDims(full.length))))))
+                        .build());
+            }
+            client.upsertAsync(collection, batch, Duration.ofSeconds(60)).get();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.imperium.astroguide.infra.qdrant;
+
+import io.qdrant.client.grpc.Collections;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MatryoshkaLayoutTest {
+
+    @Test
+    void truncate_keepsPrefixAndRenormalizes() {
+        float[] prefix = MatryoshkaLayout.truncate(new float[]{3f, 4f, 12f}, 2);
+
+        assertArrayEquals(new float[]{0.6f, 0.8f}, prefix, 1e-6f);
+        assertArrayEquals(new float[]{0f, 0f}, MatryoshkaLayout.truncate(new float[]{0f, 0f, 1f}, 2));
+    }
+
+    @Test
+    void createRequest_indexesPrefixAndKeepsFullVectorOnDiskWithoutIndex() {
+        MatryoshkaLayout layout = new MatryoshkaLayout(true, 512, 4);
+        QdrantQuantization scalar = new QdrantQuantization("scalar", true, true, 2.0, true);
+
+        Collections.CreateCollection request = QdrantCollectionInitializer.createRequest("kb", 2560, scalar, layout);
+
+        Map<String, Collections.VectorParams> vectors = request.getVectorsConfig().getParamsMap().getMapMap();
+        Collections.VectorParams prefix = vectors.get(MatryoshkaLayout.PREFIX_VECTOR);
+        Collections.VectorParams full = vectors.get(MatryoshkaLayout.FULL_VECTOR);
+        assertEquals(512, prefix.getSize());
+        assertTrue(prefix.getQuantizationConfig().hasScalar());
+        assertEquals(2560, full.getSize());
+        assertTrue(full.getOnDisk());
+        assertEquals(0, full.getHnswConfig().getM());
+        assertFalse(full.hasQuantizationConfig());
+        assertEquals(16, layout.candidates(4));
+    }
+
+    @Test
+    void updateRequest_migratesQuantizationOnPrefixVectorOnly() {
+        QdrantQuantization binary = new QdrantQuantization("binary", true, true, 3.0, true);
+        Collections.VectorParams scalarPrefix = QdrantCollectionInitializer.createRequest("kb", 2560,
+                        new QdrantQuantization("scalar", true, true, 2.0, true), new MatryoshkaLayout(true, 512, 4))
+                .getVectorsConfig().getParamsMap().getMapOrThrow(MatryoshkaLayout.PREFIX_VECTOR);
+        assertFalse(binary.matches(scalarPrefix));
+
+        Collections.UpdateCollection update = QdrantCollectionInitializer.updateRequest("kb", binary, true);
+
+        assertFalse(update.hasQuantizationConfig());
+        Map<String, Collections.VectorParamsDiff> diffs = update.getVectorsConfig().getParamsMap().getMapMap();
+        assertEquals(Set.of(MatryoshkaLayout.PREFIX_VECTOR), diffs.keySet());
+        assertTrue(diffs.get(MatryoshkaLayout.PREFIX_VECTOR).getQuantizationConfig().hasBinary());
+        assertTrue(diffs.get(MatryoshkaLayout.PREFIX_VECTOR).getOnDisk());
+    }
+
+    @Test
+    void pointId_rejectsNonUuidIds() {
+        String id = "0f8fad5b-d9cb-469f-a165-70867728950e";
+
+        assertEquals(id, QdrantPointWriter.pointId(id).getUuid());
+        assertThrows(IllegalArgumentException.class, () -> QdrantPointWriter.pointId("chunk-42"));
+        assertThrows(IllegalArgumentException.class, () -> QdrantPointWriter.pointId("1-1-1-1-1"));
+        assertThrows(IllegalArgumentException.class, () -> QdrantPointWriter.pointId(null));
+    }
+
+    @Test
+    void payload_roundTripsTextAndMetadata() {
+        Document doc = new Document("Jupiter is a gas giant.", Map.of("source", "planets", "chunk_index", 2,
+                "tags", List.of("a", "b")));
+
+        Map<String, Object> back = QdrantPayloads.toObjectMap(QdrantPayloads.toPayload(doc));
+
+        assertEquals("Jupiter is a gas giant.", back.get(QdrantPayloads.CONTENT_FIELD));
+        assertEquals("planets", back.get("source"));
+        assertEquals(2L, back.get("chunk_index"));
+        assertEquals(List.of("a", "b"), back.get("tags"));
+    }
+}
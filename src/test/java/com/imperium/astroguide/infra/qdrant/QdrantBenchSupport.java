@@ -0,0 +1,136 @@
+package com.imperium.astroguide.infra.qdrant;
+
+import io.qdrant.client.QdrantClient;
+import io.qdrant.client.WithVectorsSelectorFactory;
+import io.qdrant.client.grpc.Collections;
+import io.qdrant.client.grpc.Points;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * 基准测试公共工具：准备向量（优先取已有知识库集合的真实向量，否则生成带簇结构的随机向量）、
+ * 等待索引完成、计算 recall@k 与分位延迟。
+ */
+final class QdrantBenchSupport {
+
+    private QdrantBenchSupport() {
+    }
+
+    /**
+     * @param source 已有集合名（-Dqdrant.bench.source），为空则生成随机向量
+     */
+    static List<float[]> loadVectors(QdrantClient client, String source, int limit, int dim, Random random)
+            throws Exception {
+        if (source == null || source.isBlank()) {
+            return randomClustered(limit, dim, random);
+        }
+        List<float[]> out = new ArrayList<>();
+        Points.PointId offset = null;
+        while (out.size() < limit) {
+            Points.ScrollPoints.Builder scroll = Points.ScrollPoints.newBuilder()
+                    .setCollectionName(source)
+                    .setLimit(Math.min(256, limit - out.size()))
+                    .setWithVectors(WithVectorsSelectorFactory.enable(true));
+            if (offset != null) {
+                scroll.setOffset(offset);
+            }
+            Points.ScrollResponse page = client.scrollAsync(scroll.build(), Duration.ofSeconds(30)).get();
+            for (Points.RetrievedPoint point : page.getResultList()) {
+                List<Float> data = point.getVectors().getVector().getDataList();
+                float[] v = new float[data.size()];
+                for (int i = 0; i < v.length; i++) {
+                    v[i] = data.get(i);
+                }
+                out.add(v);
+            }
+            if (!page.hasNextPageOffset() || page.getResultCount() == 0) {
+                break;
+            }
+            offset = page.getNextPageOffset();
+        }
+        return out;
+    }
+
+    /** 围绕若干簇中心加噪声，比均匀随机更接近真实 embedding 的分布 */
+    static List<float[]> randomClustered(int count, int dim, Random random) {
+        int clusters = Math.max(1, count / 100);
+        List<float[]> centers = new ArrayList<>();
+        for (int c = 0; c < clusters; c++) {
+            centers.add(gaussian(dim, random, 1.0f));
+        }
+        List<float[]> out = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            float[] center = centers.get(random.nextInt(clusters));
+            float[] noise = gaussian(dim, random, 0.5f);
+            for (int d = 0; d < dim; d++) {
+                noise[d] += center[d];
+            }
+            out.add(noise);
+        }
+        return out;
+    }
+
+    /** 取已有向量加轻微扰动作为查询，避免查询与库内点完全重合 */
+    static List<float[]> queries(List<float[]> corpus, int count, Random random) {
+        List<float[]> out = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            float[] base = corpus.get(random.nextInt(corpus.size()));
+            float[] q = Arrays.copyOf(base, base.length);
+            for (int d = 0; d < q.length; d++) {
+                q[d] += (float) (random.nextGaussian() * 0.05);
+            }
+            out.add(q);
+        }
+        return out;
+    }
+
+    static void awaitGreen(QdrantClient client, String collection) throws Exception {
+        for (int i = 0; i < 600; i++) {
+            Collections.CollectionInfo info = client.getCollectionInfoAsync(collection).get();
+            if (info.getStatus() == Collections.CollectionStatus.Green) {
+                return;
+            }
+            Thread.sleep(500);
+        }
+    }
+
+    static double recall(List<String> truth, List<String> actual) {
+        if (truth.isEmpty()) {
+            return 1.0;
+        }
+        Set<String> expected = new HashSet<>(truth);
+        long hit = actual.stream().filter(expected::contains).count();
+        return (double) hit / truth.size();
+    }
+
+    static double percentileMs(long[] nanos, double p) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        int idx = Math.min(sorted.length - 1, Math.max(0, (int) Math.ceil(sorted.length * p) - 1));
+        return sorted[idx] / 1e6;
+    }
+
+    static Points.SearchPoints.Builder search(String collection, float[] vector, int limit) {
+        Points.SearchPoints.Builder builder = Points.SearchPoints.newBuilder()
+                .setCollectionName(collection)
+                .setLimit(limit);
+        for (float v : vector) {
+            builder.addVector(v);
+        }
+        return builder;
+    }
+
+    private static float[] gaussian(int dim, Random random, float scale) {
+        float[] v = new float[dim];
+        for (int d = 0; d < dim; d++) {
+            v[d] = (float) (random.nextGaussian() * scale);
+        }
+        return v;
+    }
+}
@@ -0,0 +1,121 @@
+package com.imperium.astroguide.infra.qdrant;
+
+import io.qdrant.client.QdrantClient;
+import io.qdrant.client.PointIdFactory;
+import io.qdrant.client.VectorsFactory;
+import io.qdrant.client.grpc.Collections;
+import io.qdrant.client.grpc.Points;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 连接池吞吐基准：对本地 Qdrant 容器在 1..32 并发下比较单连接与连接池的检索 QPS 与 p99。
+ * <p>
+ * 默认跳过。运行方式：
+ * <pre>
+ * docker run -p 6334:6334 qdrant/qdrant
+ * mvn test -Dtest=QdrantClientPoolBenchmarkTest -Dqdrant.bench.host=localhost
+ * </pre>
+ */
+@EnabledIfSystemProperty(named = "qdrant.bench.host", matches = ".+")
+class QdrantClientPoolBenchmarkTest {
+
+    private static final int DIM = 384;
+    private static final int POINTS = 5_000;
+    private static final int REQUESTS_PER_WORKER = 200;
+
+    @Test
+    void searchThroughput_singleChannelVsPool() throws Exception {
+        String host = System.getProperty("qdrant.bench.host");
+        int port = Integer.getInteger("qdrant.bench.port", 6334);
+        String collection = "bench_pool_" + UUID.randomUUID().toString().substring(0, 8);
+        Random random = new Random(42);
+
+        try (QdrantClientPool single = QdrantClientPool.create(host, port, 1, 30_000, 5_000, 30_000);
+             QdrantClientPool pooled = QdrantClientPool.create(host, port, 8, 30_000, 5_000, 30_000)) {
+            QdrantClient admin = single.primary();
+            admin.createCollectionAsync(collection, Collections.VectorParams.newBuilder()
+                    .setSize(DIM).setDistance(Collections.Distance.Cosine).build()).get();
+            try {
+                for (int offset = 0; offset < POINTS; offset += 500) {
+                    List<Points.PointStruct> batch = new ArrayList<>();
+                    for (int i = 0; i < 500; i++) {
+                        batch.add(Points.PointStruct.newBuilder()
+                                .setId(PointIdFactory.id(UUID.randomUUID()))
+                                .setVectors(VectorsFactory.vectors(randomVector(random)))
+                                .build());
+                    }
+                    admin.upsertAsync(collection, batch, Duration.ofSeconds(30)).get();
+                }
+                System.out.printf("%-8s %-11s %10s %10s%n", "clients", "concurrency", "qps", "p99(ms)");
+                for (int concurrency : new int[]{1, 2, 4, 8, 16, 32}) {
+                    run("single", single, collection, concurrency, random);
+                    run("pool(8)", pooled, collection, concurrency, random);
+                }
+            } finally {
+                admin.deleteCollectionAsync(collection).get();
+            }
+        }
+    }
+
+    private static void run(String label, QdrantClientPool pool, String collection, int concurrency,
+            Random random) throws Exception {
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        long[] latencies = new long[concurrency * REQUESTS_PER_WORKER];
+        AtomicLong slot = new AtomicLong();
+        List<float[]> queries = new ArrayList<>();
+        for (int i = 0; i < 64; i++) {
+            queries.add(randomVector(random));
+        }
+        long start = System.nanoTime();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int w = 0; w < concurrency; w++) {
+            futures.add(CompletableFuture.runAsync(() -> {
+                for (int r = 0; r < REQUESTS_PER_WORKER; r++) {
+                    Points.SearchPoints.Builder search = Points.SearchPoints.newBuilder()
+                            .setCollectionName(collection).setLimit(8);
+                    for (float v : queries.get(r % queries.size())) {
+                        search.addVector(v);
+                    }
+                    long t0 = System.nanoTime();
+                    try {
+                        pool.next().searchBatchAsync(collection, List.of(search.build()), null,
+                                Duration.ofSeconds(5)).get();
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                    latencies[(int) slot.getAndIncrement()] = System.nanoTime() - t0;
+                }
+            }, workers));
+        }
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).get();
+        long elapsed = System.nanoTime() - start;
+        workers.shutdown();
+        workers.awaitTermination(10, TimeUnit.SECONDS);
+
+        Arrays.sort(latencies);
+        double qps = latencies.length / (elapsed / 1e9);
+        double p99 = latencies[(int) (latencies.length * 0.99) - 1] / 1e6;
+        System.out.printf("%-8s %-11d %10.0f %10.2f%n", label, concurrency, qps, p99);
+    }
+
+    private static float[] randomVector(Random random) {
+        float[] v = new float[DIM];
+        for (int i = 0; i < DIM; i++) {
+            v[i] = random.nextFloat() - 0.5f;
+        }
+        return v;
+    }
+}
@@ -0,0 +1,129 @@
+package com.imperium.astroguide.infra.qdrant;
+
+import io.qdrant.client.PointIdFactory;
+import io.qdrant.client.QdrantClient;
+import io.qdrant.client.VectorsFactory;
+import io.qdrant.client.grpc.Points;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * 量化报告：none / scalar / binary 三种集合配置下的 recall@10（以精确检索为真值）、检索延迟与向量内存估算。
+ * <p>
+ * 默认跳过。用已有知识库的真实向量运行：
+ * <pre>
+ * mvn test -Dtest=QdrantQuantizationBenchmarkTest -Dqdrant.bench.host=localhost -Dqdrant.bench.source=astro_knowledge
+ * </pre>
+ * 未指定 source 时使用 2560 维带簇结构的随机向量。
+ */
+@EnabledIfSystemProperty(named = "qdrant.bench.host", matches = ".+")
+class QdrantQuantizationBenchmarkTest {
+
+    private static final int K = 10;
+    private static final int QUERIES = 200;
+
+    @Test
+    void quantizationReport() throws Exception {
+        String host = System.getProperty("qdrant.bench.host");
+        int port = Integer.getInteger("qdrant.bench.port", 6334);
+        int points = Integer.getInteger("qdrant.bench.points", 10_000);
+        Random random = new Random(7);
+
+        try (QdrantClientPool pool = QdrantClientPool.create(host, port, 1, 30_000, 5_000, 120_000)) {
+            QdrantClient client = pool.primary();
+            List<float[]> corpus = QdrantBenchSupport.loadVectors(client,
+                    System.getProperty("qdrant.bench.source"), points, 2560, random);
+            int dim = corpus.getFirst().length;
+            List<float[]> queries = QdrantBenchSupport.queries(corpus, QUERIES, random);
+
+            System.out.printf("points=%d dim=%d queries=%d%n", corpus.size(), dim, QUERIES);
+            System.out.printf("%-8s %-8s %10s %10s %10s %14s%n",
+                    "mode", "oversamp", "recall@10", "p50(ms)", "p95(ms)", "ram(MiB,est)");
+            List<List<String>> truth = null;
+            for (String mode : new String[]{"none", "scalar", "binary"}) {
+                QdrantQuantization quantization = new QdrantQuantization(mode, true, true, 2.0, true);
+                String collection = "bench_quant_" + mode + "_" + UUID.randomUUID().toString().substring(0, 8);
+                QdrantCollectionInitializer.ensure(client, collection, dim, quantization,
+                        new MatryoshkaLayout(false, dim, 1), false);
+                try {
+                    upsert(client, collection, corpus);
+                    QdrantBenchSupport.awaitGreen(client, collection);
+                    if (truth == null) {
+                        truth = exactTopK(client, collection, queries);
+                    }
+                    for (double oversampling : quantization.enabled() ? new double[]{1.0, 2.0, 4.0} : new double[]{1.0}) {
+                        report(client, collection, queries, truth,
+                                new QdrantQuantization(mode, true, true, oversampling, true), corpus.size(), dim);
+                    }
+                } finally {
+                    client.deleteCollectionAsync(collection).get();
+                }
+            }
+        }
+    }
+
+    private static void report(QdrantClient client, String collection, List<float[]> queries,
+            List<List<String>> truth, QdrantQuantization quantization, int points, int dim) throws Exception {
+        long[] latencies = new long[queries.size()];
+        double recallSum = 0;
+        for (int i = 0; i < queries.size(); i++) {
+            Points.SearchPoints.Builder search = QdrantBenchSupport.search(collection, queries.get(i), K);
+            quantization.searchParams().ifPresent(search::setParams);
+            long t0 = System.nanoTime();
+            List<Points.ScoredPoint> hits = client.searchAsync(search.build(), Duration.ofSeconds(10)).get();
+            latencies[i] = System.nanoTime() - t0;
+            recallSum += QdrantBenchSupport.recall(truth.get(i), ids(hits));
+        }
+        System.out.printf("%-8s %-8.1f %10.3f %10.2f %10.2f %14.1f%n",
+                quantization.mode().name().toLowerCase(),
+                quantization.searchParams().map(p -> p.getQuantization().getOversampling()).orElse(1.0),
+                recallSum / queries.size(),
+                QdrantBenchSupport.percentileMs(latencies, 0.50),
+                QdrantBenchSupport.percentileMs(latencies, 0.95),
+                ramBytes(quantization, points, dim) / (1024.0 * 1024.0));
+    }
+
+    /** 常驻内存的向量字节数估算：未量化为 float32；量化后仅量化向量常驻，原始向量在磁盘 */
+    private static double ramBytes(QdrantQuantization quantization, int points, int dim) {
+        return switch (quantization.mode()) {
+            case NONE -> (double) points * dim * 4;
+            case SCALAR -> (double) points * dim;
+            case BINARY -> (double) points * Math.ceil(dim / 8.0);
+        };
+    }
+
+    private static List<List<String>> exactTopK(QdrantClient client, String collection, List<float[]> queries)
+            throws Exception {
+        List<List<String>> out = new ArrayList<>();
+        for (float[] q : queries) {
+            Points.SearchPoints search = QdrantBenchSupport.search(collection, q, K)
+                    .setParams(Points.SearchParams.newBuilder().setExact(true))
+                    .build();
+            out.add(ids(client.searchAsync(search, Duration.ofSeconds(30)).get()));
+        }
+        return out;
+    }
+
+    private static void upsert(QdrantClient client, String collection, List<float[]> corpus) throws Exception {
+        for (int offset = 0; offset < corpus.size(); offset += 256) {
+            List<Points.PointStruct> batch = new ArrayList<>();
+            for (int i = offset; i < Math.min(corpus.size(), offset + 256); i++) {
+                batch.add(Points.PointStruct.newBuilder()
+                        .setId(PointIdFactory.id(i))
+                        .setVectors(VectorsFactory.vectors(corpus.get(i)))
+                        .build());
+            }
+            client.upsertAsync(collection, batch, Duration.ofSeconds(60)).get();
+        }
+    }
+
+    private static List<String> ids(List<Points.ScoredPoint> hits) {
+        return hits.stream().map(h -> QdrantPayloads.pointId(h.getId())).toList();
+    }
+}
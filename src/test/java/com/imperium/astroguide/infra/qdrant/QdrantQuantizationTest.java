@@ -0,0 +1,39 @@
+package com.imperium.astroguide.infra.qdrant;
+
+import io.qdrant.client.grpc.Collections;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QdrantQuantizationTest {
+
+    @Test
+    void none_keepsOriginalsInRamAndAddsNoSearchParams() {
+        QdrantQuantization none = new QdrantQuantization("none", true, true, 2.0, true);
+
+        assertFalse(none.originalsOnDisk());
+        assertTrue(none.collectionConfig().isEmpty());
+        assertTrue(none.searchParams().isEmpty());
+        assertTrue(none.collectionConfigDiff().hasDisabled());
+        assertTrue(none.matches(Collections.CollectionConfig.getDefaultInstance()));
+    }
+
+    @Test
+    void binary_oversamplesAndRescoresAndDetectsMismatch() {
+        QdrantQuantization binary = new QdrantQuantization("Binary", true, true, 3.0, true);
+
+        assertTrue(binary.originalsOnDisk());
+        assertEquals(3.0, binary.searchParams().orElseThrow().getQuantization().getOversampling());
+        assertTrue(binary.searchParams().orElseThrow().getQuantization().getRescore());
+
+        Collections.CollectionConfig scalarConfig = Collections.CollectionConfig.newBuilder()
+                .setQuantizationConfig(new QdrantQuantization("scalar", true, true, 2.0, true)
+                        .collectionConfig().orElseThrow())
+                .build();
+        assertFalse(binary.matches(scalarConfig));
+        assertTrue(binary.matches(Collections.CollectionConfig.newBuilder()
+                .setQuantizationConfig(binary.collectionConfig().orElseThrow()).build()));
+    }
+}
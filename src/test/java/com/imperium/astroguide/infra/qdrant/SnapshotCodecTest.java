@@ -0,0 +1,72 @@
+package com.imperium.astroguide.infra.qdrant;
+
+import io.qdrant.client.PointIdFactory;
+import io.qdrant.client.ValueFactory;
+import io.qdrant.client.VectorFactory;
+import io.qdrant.client.VectorsFactory;
+import io.qdrant.client.grpc.Points;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class SnapshotCodecTest {
+
+    @Test
+    void writerAndReader_roundTripFramesAndHeader() throws Exception {
+        SnapshotCodec.Header header = new SnapshotCodec.Header("astro_knowledge",
+                List.of(new SnapshotCodec.VectorSpec("full", 3), new SnapshotCodec.VectorSpec("prefix", 2)));
+        List<Points.PointStruct> first = List.of(point("黑洞是时空区域。"), point("Pulsars spin."));
+        List<Points.PointStruct> second = List.of(point("Neutron stars are dense."));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (SnapshotCodec.Writer writer = new SnapshotCodec.Writer(out, header)) {
+            writer.writeFrame(first);
+            writer.writeFrame(List.of());
+            writer.writeFrame(second);
+        }
+
+        try (SnapshotCodec.Reader reader = new SnapshotCodec.Reader(new ByteArrayInputStream(out.toByteArray()))) {
+            assertEquals(header, reader.header());
+            assertEquals(first, reader.nextFrame());
+            assertEquals(second, reader.nextFrame());
+            assertNull(reader.nextFrame());
+            assertNull(reader.nextFrame());
+        }
+    }
+
+    @Test
+    void progressTracker_advancesOnlyOverContiguousBatches(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("kb.agks.progress");
+        KnowledgeSnapshotService.ProgressTracker tracker = new KnowledgeSnapshotService.ProgressTracker(file, 1);
+
+        tracker.completed(3);
+        assertEquals(1, tracker.watermark());
+        assertEquals(-1, KnowledgeSnapshotService.readProgress(file));
+
+        tracker.completed(2);
+        assertEquals(3, tracker.watermark());
+        assertEquals(3, KnowledgeSnapshotService.readProgress(file));
+    }
+
+    private static Points.PointStruct point(String text) {
+        List<Float> full = new ArrayList<>(List.of(0.6f, 0.8f, 0f));
+        return Points.PointStruct.newBuilder()
+                .setId(PointIdFactory.id(UUID.randomUUID()))
+                .setVectors(VectorsFactory.namedVectors(Map.of(
+                        "full", VectorFactory.vector(full),
+                        "prefix", VectorFactory.vector(List.of(0.6f, 0.8f)))))
+                .putAllPayload(Map.of(QdrantPayloads.CONTENT_FIELD, ValueFactory.value(text),
+                        "chunk_index", ValueFactory.value(3)))
+                .build();
+    }
+}
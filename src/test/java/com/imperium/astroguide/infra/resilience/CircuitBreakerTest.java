@@ -0,0 +1,89 @@
+package com.imperium.astroguide.infra.resilience;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CircuitBreakerTest {
+
+    private final AtomicLong clock = new AtomicLong(1_000);
+    private final CircuitBreaker breaker = new CircuitBreaker("test",
+            new CircuitBreaker.Settings(4, 4, 50, 500, 100, 10_000, 1),
+            clock::get, CircuitBreaker.Listener.NOOP);
+
+    @Test
+    void opensOnFailureRateAndRejectsImmediately() {
+        breaker.onResult(true, 10);
+        breaker.onResult(true, 10);
+        breaker.onResult(false, 10);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        breaker.onResult(false, 10);
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertThrows(CircuitOpenException.class, () -> breaker.call(() -> "unreachable"));
+    }
+
+    @Test
+    void halfOpenProbeClosesOnSuccessAndReopensOnSlowCall() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            breaker.onResult(false, 10);
+        }
+        clock.addAndGet(10_000);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        long probe = breaker.tryAcquire();
+        assertNotEquals(CircuitBreaker.REJECTED, probe);
+        assertEquals(CircuitBreaker.REJECTED, breaker.tryAcquire());
+        breaker.onResult(probe, true, 900);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+
+        clock.addAndGet(10_000);
+        assertEquals("ok", breaker.call(() -> "ok"));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    @Test
+    void lateResultFromBeforeOpenDoesNotCountAsProbe() {
+        CompletableFuture<String> stale = new CompletableFuture<>();
+        CompletableFuture<String> staleCall = breaker.callAsync(() -> stale);
+        for (int i = 0; i < 4; i++) {
+            breaker.onResult(false, 10);
+        }
+        clock.addAndGet(10_000);
+        CompletableFuture<String> probe = new CompletableFuture<>();
+        CompletableFuture<String> probeCall = breaker.callAsync(() -> probe);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+
+        stale.complete("late");
+        assertEquals("late", staleCall.join());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+        assertThrows(ExecutionException.class,
+                () -> breaker.callAsync(() -> CompletableFuture.completedFuture("x")).get());
+
+        probe.complete("ok");
+        assertEquals("ok", probeCall.join());
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    @Test
+    void callAsync_recordsOutcomeOnCompletionAndFailsFastWhenOpen() {
+        for (int i = 0; i < 4; i++) {
+            CompletableFuture<String> pending = new CompletableFuture<>();
+            CompletableFuture<String> guarded = breaker.callAsync(() -> pending);
+            assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+            pending.completeExceptionally(new IllegalStateException("down"));
+            assertTrue(guarded.isCompletedExceptionally());
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> breaker.callAsync(() -> CompletableFuture.completedFuture("x")).get());
+        assertTrue(e.getCause() instanceof CircuitOpenException);
+    }
+}
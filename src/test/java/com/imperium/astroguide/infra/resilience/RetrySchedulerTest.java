@@ -0,0 +1,85 @@
+package com.imperium.astroguide.infra.resilience;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.retry.NonTransientAiException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RetrySchedulerTest {
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void submit_retriesOnTheExecutorUntilSuccess() throws Exception {
+        RetryScheduler retry = new RetryScheduler(3, 1, 5);
+        AtomicInteger calls = new AtomicInteger();
+        AtomicInteger retries = new AtomicInteger();
+
+        CompletableFuture<String> result = retry.submit(() -> {
+            if (calls.incrementAndGet() < 3) {
+                throw new IllegalStateException("boom");
+            }
+            return Thread.currentThread().getName();
+        }, executor, (attempt, delayMs, e) -> retries.incrementAndGet());
+
+        assertTrue(result.get(2, TimeUnit.SECONDS).startsWith("pool-"));
+        assertEquals(3, calls.get());
+        assertEquals(2, retries.get());
+        retry.shutdown();
+    }
+
+    @Test
+    void submit_doesNotRetryInputErrorsOrProviderRateLimits() {
+        RetryScheduler retry = new RetryScheduler(3, 1, 5);
+        AtomicInteger calls = new AtomicInteger();
+        NonTransientAiException rateLimited = new NonTransientAiException("429 - Too Many Requests");
+
+        CompletableFuture<Object> limited = retry.submit(() -> {
+            calls.incrementAndGet();
+            throw new IllegalStateException("Failed to write to vector store", rateLimited);
+        }, executor, (attempt, delayMs, e) -> { });
+        CompletableFuture<Object> invalid = retry.submit(() -> {
+            calls.incrementAndGet();
+            throw new IllegalArgumentException("bad input");
+        }, executor, (attempt, delayMs, e) -> { });
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> limited.get(2, TimeUnit.SECONDS));
+        assertSame(rateLimited, e.getCause().getCause());
+        assertThrows(ExecutionException.class, () -> invalid.get(2, TimeUnit.SECONDS));
+        assertEquals(2, calls.get());
+        retry.shutdown();
+    }
+
+    @Test
+    void maxAttemptsIsCapped() {
+        assertEquals(RetryScheduler.MAX_ATTEMPTS_CAP, new RetryScheduler(50, 1, 1).maxAttempts());
+    }
+
+    @Test
+    void backoff_growsExponentiallyWithinCap() {
+        for (int i = 0; i < 50; i++) {
+            long first = RetryScheduler.backoff(1, 100, 1000);
+            long third = RetryScheduler.backoff(3, 100, 1000);
+            long capped = RetryScheduler.backoff(10, 100, 1000);
+            assertTrue(first >= 50 && first <= 100, "first " + first);
+            assertTrue(third >= 200 && third <= 400, "third " + third);
+            assertTrue(capped >= 500 && capped <= 1000, "capped " + capped);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.imperium.astroguide.ingest;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.imperium.astroguide.ai.embedding.EmbeddingDispatcher;
+import com.imperium.astroguide.infra.qdrant.MatryoshkaLayout;
+import com.imperium.astroguide.infra.qdrant.QdrantClientPool;
+import com.imperium.astroguide.infra.qdrant.QdrantPayloads;
+import com.imperium.astroguide.infra.qdrant.QdrantPointWriter;
+import com.imperium.astroguide.infra.resilience.RetryScheduler;
+import com.imperium.astroguide.service.ChunkCatalogService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.qdrant.client.PointIdFactory;
+import io.qdrant.client.QdrantClient;
+import io.qdrant.client.grpc.JsonWithInt;
+import io.qdrant.client.grpc.Points;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.qdrant.QdrantVectorStore;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ChunkStoreWriterTest {
+
+    private static final String TEXT = "Stars form in molecular clouds. Black holes bend light. Pulsars spin fast. ".repeat(12);
+
+    private final ChunkDocumentFactory factory =
+            new ChunkDocumentFactory(new TextChunker(200, 0), new ParentChildChunker(false, 2000, 300));
+
+    @Test
+    void contentIds_areStablePerSourceAndDifferAcrossSources() {
+        List<Document> first = factory.build(TEXT, "Stars", null, null);
+        List<Document> again = factory.build(TEXT, "Stars", "en", "basic");
+        List<Document> other = factory.build(TEXT, "Other book", null, null);
+
+        assertEquals(ids(first), ids(again));
+        assertNotEquals(ids(first).get(0), ids(other).get(0));
+        assertEquals(ChunkMetadata.contentHash(first.get(0).getText()),
+                first.get(0).getMetadata().get(ChunkMetadata.CONTENT_HASH));
+    }
+
+    @Test
+    void repeatedPassages_getTheirOwnIds() {
+        List<Document> documents = factory.build(TEXT, "Stars", null, null);
+
+        assertEquals(documents.size(), Set.copyOf(ids(documents)).size());
+        assertEquals(ChunkMetadata.contentId("Stars", "chunk", ChunkMetadata.contentHash(documents.get(0).getText())),
+                documents.get(0).getId());
+        // 正文重复出现（12 遍相同句子）
+        assertTrue(documents.stream().map(Document::getText).distinct().count() < documents.size());
+    }
+
+    @Test
+    void unknown_dropsStoredAndRepeatedChunks() throws Exception {
+        List<Document> built = factory.build(TEXT, "Stars", null, null);
+        List<String> distinct = ids(built);
+        List<Document> documents = new ArrayList<>(built);
+        documents.addAll(built.subList(0, 3));
+        QdrantPointWriter pointWriter = mock(QdrantPointWriter.class);
+        ChunkCatalogService catalog = mock(ChunkCatalogService.class);
+        when(pointWriter.existingIds(anyCollection())).thenReturn(new HashSet<>(Set.of(distinct.get(0), distinct.get(1))));
+        when(catalog.enabled()).thenReturn(true);
+        // 目录中缺第二条：向量库有而目录无，仍需重写
+        when(catalog.existingIds(anyCollection())).thenReturn(Set.of(distinct.get(0)));
+        ChunkStoreWriter writer = new ChunkStoreWriter(mock(VectorStore.class), pointWriter, catalog, pipeline());
+
+        List<Document> fresh = writer.unknown(documents);
+
+        assertEquals(distinct.subList(1, distinct.size()), ids(fresh));
+    }
+
+    @Test
+    void unknown_writesEverythingWhenLookupFails() throws Exception {
+        List<Document> documents = factory.build("Comets have tails.", "Comets", null, null);
+        QdrantPointWriter pointWriter = mock(QdrantPointWriter.class);
+        when(pointWriter.existingIds(anyCollection())).thenThrow(new IllegalStateException("qdrant down"));
+        ChunkStoreWriter writer = new ChunkStoreWriter(mock(VectorStore.class), pointWriter,
+                mock(ChunkCatalogService.class), pipeline());
+
+        assertEquals(ids(documents), ids(writer.unknown(documents)));
+    }
+
+    @Test
+    void commit_writesNewChunksAndMovesUnchangedOnesToTheNewVersion() throws Exception {
+        List<Document> documents = factory.build(TEXT, "Stars", null, null);
+        List<String> distinct = ids(documents);
+        QdrantPointWriter pointWriter = mock(QdrantPointWriter.class);
+        ChunkCatalogService catalog = mock(ChunkCatalogService.class);
+        when(pointWriter.existingIds(anyCollection())).thenReturn(new HashSet<>(Set.of(distinct.get(0))));
+        ChunkStoreWriter writer = new ChunkStoreWriter(mock(VectorStore.class), pointWriter, catalog, pipeline());
+
+        int added = writer.commit(documents, 7L);
+
+        assertEquals(distinct.size() - 1, added);
+        verify(pointWriter).refreshPayload(List.of(documents.get(0)), 7L);
+        verify(catalog).refresh(List.of(documents.get(0)), 7L);
+        documents.forEach(doc -> assertEquals(7L, doc.getMetadata().get(ChunkMetadata.SOURCE_VERSION)));
+    }
+
+    @Test
+    void commit_failsWhenVersionCannotBeUpdated() throws Exception {
+        List<Document> documents = factory.build("Comets have tails.", "Comets", null, null);
+        QdrantPointWriter pointWriter = mock(QdrantPointWriter.class);
+        when(pointWriter.existingIds(anyCollection())).thenReturn(new HashSet<>(ids(documents)));
+        doThrow(new IllegalStateException("qdrant down")).when(pointWriter).refreshPayload(anyCollection(), anyLong());
+        ChunkStoreWriter writer = new ChunkStoreWriter(mock(VectorStore.class), pointWriter,
+                mock(ChunkCatalogService.class), pipeline());
+
+        // 版本未更新时若继续清理旧版本会删掉未变的 chunk，必须失败
+        assertThrows(IllegalStateException.class, () -> writer.commit(documents, 7L));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void commit_throughVectorStoreRewritesVersionAsIntegerPayload() throws Exception {
+        List<Document> documents = factory.build("Comets have tails. Meteors burn up in the air.", "Comets", null, null);
+        ListenableFuture<List<Points.RetrievedPoint>> none = done(List.of());
+        ListenableFuture<Points.UpdateResult> updated = done(null);
+        QdrantClient client = mock(QdrantClient.class);
+        when(client.retrieveAsync(anyString(), anyList(), anyBoolean(), anyBoolean(), any())).thenReturn(none);
+        when(client.upsertAsync(anyString(), anyList())).thenReturn(updated);
+        when(client.setPayloadAsync(anyString(), any(), any(Points.Filter.class), any(), any(), any())).thenReturn(updated);
+        EmbeddingModel model = mock(EmbeddingModel.class);
+        when(model.embed(anyList(), any(), any())).thenAnswer(inv -> ((List<Document>) inv.getArgument(0)).stream()
+                .map(doc -> new float[] {1f, 0f}).toList());
+        QdrantClientPool pool = mock(QdrantClientPool.class);
+        when(pool.primary()).thenReturn(client);
+        when(pool.next()).thenReturn(client);
+        QdrantPointWriter pointWriter = new QdrantPointWriter(pool, mock(EmbeddingDispatcher.class),
+                new MatryoshkaLayout(false, 512, 4), "astro", false, true);
+        VectorStore vectorStore = QdrantVectorStore.builder(client, model).collectionName("astro").build();
+        ChunkStoreWriter writer = new ChunkStoreWriter(vectorStore, pointWriter, mock(ChunkCatalogService.class), pipeline());
+
+        assertEquals(documents.size(), writer.commit(documents, 1_700_000_000_000L));
+
+        // Spring AI 把 Long 型 metadata 写成字符串，范围过滤匹配不到
+        ArgumentCaptor<List<Points.PointStruct>> points = ArgumentCaptor.forClass(List.class);
+        verify(client).upsertAsync(eq("astro"), points.capture());
+        assertEquals(JsonWithInt.Value.KindCase.STRING_VALUE,
+                points.getValue().get(0).getPayloadMap().get(ChunkMetadata.SOURCE_VERSION).getKindCase());
+        // 写入后改写为整数
+        ArgumentCaptor<Map<String, JsonWithInt.Value>> payload = ArgumentCaptor.forClass(Map.class);
+        ArgumentCaptor<Points.Filter> filter = ArgumentCaptor.forClass(Points.Filter.class);
+        verify(client).setPayloadAsync(eq("astro"), payload.capture(), filter.capture(), any(), any(), any());
+        assertEquals(1_700_000_000_000L, payload.getValue().get(ChunkMetadata.SOURCE_VERSION).getIntegerValue());
+        assertEquals(new HashSet<>(ids(documents)), filter.getValue().getMust(0).getHasId().getHasIdList().stream()
+                .map(Points.PointId::getUuid).collect(Collectors.toSet()));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void commit_reingestWithAnotherLevelRewritesPayloadOfUnchangedChunks() throws Exception {
+        String text = "Comets have tails. Meteors burn up in the air.";
+        List<Document> documents = factory.build(text, "Comets", "en", "advanced");
+        List<Points.RetrievedPoint> stored = ids(documents).stream()
+                .map(id -> Points.RetrievedPoint.newBuilder().setId(PointIdFactory.id(UUID.fromString(id))).build())
+                .toList();
+        ListenableFuture<List<Points.RetrievedPoint>> existing = done(stored);
+        ListenableFuture<List<Points.UpdateResult>> updated = done(List.of());
+        QdrantClient client = mock(QdrantClient.class);
+        when(client.retrieveAsync(anyString(), anyList(), anyBoolean(), anyBoolean(), any())).thenReturn(existing);
+        when(client.batchUpdateAsync(anyString(), anyList())).thenReturn(updated);
+        QdrantClientPool pool = mock(QdrantClientPool.class);
+        when(pool.primary()).thenReturn(client);
+        when(pool.next()).thenReturn(client);
+        QdrantPointWriter pointWriter = new QdrantPointWriter(pool, mock(EmbeddingDispatcher.class),
+                new MatryoshkaLayout(false, 512, 4), "astro", false, true);
+        ChunkCatalogService catalog = mock(ChunkCatalogService.class);
+        ChunkStoreWriter writer = new ChunkStoreWriter(mock(VectorStore.class), pointWriter, catalog, pipeline());
+
+        // 点位已按其他 level 写入，以 advanced 重新摄入：内容未变，不重新 embedding，payload 整体刷新
+        assertEquals(0, writer.commit(documents, 9L));
+
+        ArgumentCaptor<List<Points.PointsUpdateOperation>> operations = ArgumentCaptor.forClass(List.class);
+        verify(client).batchUpdateAsync(eq("astro"), operations.capture());
+        assertEquals(documents.size(), operations.getValue().size());
+        Points.PointsUpdateOperation.OverwritePayload first = operations.getValue().get(0).getOverwritePayload();
+        assertEquals("advanced", first.getPayloadMap().get(ChunkMetadata.LEVEL).getStringValue());
+        assertEquals(0, first.getPayloadMap().get(ChunkMetadata.CHUNK_INDEX).getIntegerValue());
+        assertEquals(documents.size(), first.getPayloadMap().get(ChunkMetadata.CHUNK_TOTAL).getIntegerValue());
+        assertEquals(9L, first.getPayloadMap().get(ChunkMetadata.SOURCE_VERSION).getIntegerValue());
+        assertEquals(documents.get(0).getText(), first.getPayloadMap().get(QdrantPayloads.CONTENT_FIELD).getStringValue());
+        assertEquals(documents.get(0).getId(),
+                first.getPointsSelector().getFilter().getMust(0).getHasId().getHasId(0).getUuid());
+        verify(catalog).refresh(documents, 9L);
+        verify(client, never()).upsertAsync(anyString(), anyList());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> ListenableFuture<T> done(T value) throws Exception {
+        ListenableFuture<T> future = mock(ListenableFuture.class);
+        when(future.get()).thenReturn(value);
+        return future;
+    }
+
+    private static EmbeddingUpsertPipeline pipeline() {
+        return new EmbeddingUpsertPipeline(new SimpleMeterRegistry(), new RetryScheduler(1, 0, 0), 32, 2);
+    }
+
+    private static List<String> ids(List<Document> documents) {
+        return documents.stream().map(Document::getId).toList();
+    }
+}
@@ -0,0 +1,71 @@
+package com.imperium.astroguide.ingest;
+
+import com.imperium.astroguide.infra.resilience.RetryScheduler;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EmbeddingUpsertPipelineTest {
+
+    @Test
+    void run_writesEveryChunkOnceWithBoundedConcurrencyAndRetriesFailedBatches() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        EmbeddingUpsertPipeline pipeline = new EmbeddingUpsertPipeline(registry, new RetryScheduler(3, 1, 5), 10, 3);
+        List<Document> documents = documents(95);
+        List<String> written = Collections.synchronizedList(new ArrayList<>());
+        Map<String, AtomicInteger> calls = new ConcurrentHashMap<>();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+
+        pipeline.run(documents, batch -> {
+            int now = running.incrementAndGet();
+            peak.accumulateAndGet(now, Math::max);
+            try {
+                Thread.sleep(5);
+                // 每批首次调用失败一次，模拟提供方瞬时错误
+                if (calls.computeIfAbsent(batch.get(0).getId(), k -> new AtomicInteger()).incrementAndGet() == 1) {
+                    throw new IllegalStateException("429 Too Many Requests");
+                }
+                batch.forEach(doc -> written.add(doc.getId()));
+            } finally {
+                running.decrementAndGet();
+            }
+        });
+
+        assertEquals(documents.stream().map(Document::getId).sorted().toList(), written.stream().sorted().toList());
+        assertTrue(peak.get() <= 3, "peak in-flight " + peak.get());
+        assertEquals(10.0, registry.get("astroguide.ingest.pipeline.retries").counter().count());
+        assertEquals(95.0, registry.get("astroguide.ingest.pipeline.chunks").counter().count());
+        assertEquals(1, registry.get("astroguide.ingest.pipeline.throughput").summary().count());
+    }
+
+    @Test
+    void run_stopsAfterMaxAttemptsAndSurfacesTheLastError() {
+        EmbeddingUpsertPipeline pipeline = new EmbeddingUpsertPipeline(new SimpleMeterRegistry(), new RetryScheduler(2, 1, 1), 10, 2);
+        AtomicInteger calls = new AtomicInteger();
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> pipeline.run(documents(5), batch -> {
+            calls.incrementAndGet();
+            throw new IllegalStateException("Failed to write to vector store: boom");
+        }));
+
+        assertEquals("Failed to write to vector store: boom", e.getMessage());
+        assertEquals(2, calls.get());
+    }
+
+    private static List<Document> documents(int n) {
+        return IntStream.range(0, n).mapToObj(i -> new Document("c" + i, "chunk " + i, Map.of())).toList();
+    }
+}
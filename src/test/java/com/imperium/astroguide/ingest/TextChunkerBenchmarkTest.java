@@ -0,0 +1,93 @@
+package com.imperium.astroguide.ingest;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 分块吞吐与分配基准：约 8 MB 中英混排正文上比较正则实现（整本 normalize + Pattern.split）
+ * 与手写扫描实现（一次性 / Reader 流式），输出每次耗时（ms/op）与本线程分配量（MB/op），并校验输出一致。
+ * <p>
+ * 未引入 JMH：按预热轮 + 测量轮取平均，分配量取 {@code ThreadMXBean#getCurrentThreadAllocatedBytes} 差值。
+ * 默认跳过。运行方式：
+ * <pre>
+ * mvn test -Dtest=TextChunkerBenchmarkTest -Dingest.bench=true -DargLine="-Xmx2g"
+ * </pre>
+ */
+@EnabledIfSystemProperty(named = "ingest.bench", matches = "true")
+class TextChunkerBenchmarkTest {
+
+    private static final int TARGET_CHARS = 8 << 20;
+    private static final int WARMUP = 3;
+    private static final int ITERATIONS = 8;
+
+    private static final String[] SENTENCES = {
+            "A neutron star is the collapsed core of a massive supergiant star.",
+            "Pulsars emit beams of electromagnetic radiation, which are observed as pulses; their periods range widely.",
+            "黑洞是时空中引力极强、连光都无法逃逸的区域。",
+            "脉冲星是高速自转的中子星，其辐射束扫过地球时被观测为脉冲，周期极其稳定！",
+            "Why do stars twinkle?",
+            "Main sequence stars fuse hydrogen into helium in their cores, releasing energy that balances gravity."
+    };
+
+    @Test
+    void throughputAndAllocation_regexVsScanner() throws Exception {
+        String book = book(new Random(7));
+        TextChunker chunker = new TextChunker(600, 80);
+        LegacyTextChunker legacy = new LegacyTextChunker(600, 80);
+        System.out.printf("text: %.1f M chars%n", book.length() / 1048576.0);
+
+        List<String> expected = legacy.chunk(book);
+        assertEquals(expected, chunker.chunk(book));
+
+        run("regex (one-shot)", () -> legacy.chunk(book).size());
+        run("scanner (one-shot)", () -> chunker.chunk(book).size());
+        run("scanner (reader)", () -> {
+            AtomicInteger chunks = new AtomicInteger();
+            chunker.chunk(new StringReader(book), chunk -> chunks.incrementAndGet());
+            return chunks.get();
+        });
+    }
+
+    private interface Op {
+        int run() throws Exception;
+    }
+
+    private static void run(String label, Op op) throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        int chunks = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            chunks = op.run();
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            chunks = op.run();
+        }
+        double msPerOp = (System.nanoTime() - start) / 1e6 / ITERATIONS;
+        double mbPerOp = (threads.getCurrentThreadAllocatedBytes() - allocated) / 1048576.0 / ITERATIONS;
+        System.out.printf("%-20s chunks=%6d  %8.1f ms/op  %8.1f MB/op%n", label, chunks, msPerOp, mbPerOp);
+    }
+
+    /** 随机句子拼成段落，段间换行（部分为 \r\n），模拟抽取后的书籍正文 */
+    private static String book(Random random) {
+        StringBuilder text = new StringBuilder(TARGET_CHARS + 1024);
+        List<String> paragraph = new ArrayList<>();
+        while (text.length() < TARGET_CHARS) {
+            paragraph.clear();
+            for (int i = 2 + random.nextInt(6); i > 0; i--) {
+                paragraph.add(SENTENCES[random.nextInt(SENTENCES.length)]);
+            }
+            text.append(String.join(" ", paragraph)).append(random.nextInt(4) == 0 ? "\r\n" : "\n\n");
+        }
+        return text.toString();
+    }
+}
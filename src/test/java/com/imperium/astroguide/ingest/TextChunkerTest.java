@@ -0,0 +1,166 @@
+package com.imperium.astroguide.ingest;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TextChunkerTest {
+
+    /** 覆盖句末标点、全角标点、\r\n、制表符、次要标点与超长无标点串 */
+    private static final String[] TOKENS = {
+            "Pulsars spin", "黑洞是时空区域", "a", " ", "  ", ".", "。", "！", "?", "\n", "\r\n", "\r", "\t",
+            ",", "，", "；", "、", ";", "　", "x".repeat(250), "neutron star matter is dense"
+    };
+
+    @Test
+    void chunk_matchesRegexImplementation_forOneShotStreamedAndReaderInput() throws Exception {
+        Random random = new Random(42);
+        for (int round = 0; round < 300; round++) {
+            String text = randomText(random, 50 + random.nextInt(400));
+            int size = 200 + random.nextInt(400);
+            int overlap = random.nextInt(120);
+            TextChunker chunker = new TextChunker(size, overlap);
+            List<String> expected = new LegacyTextChunker(size, overlap).chunk(text);
+
+            assertEquals(expected, chunker.chunk(text), "one-shot, round " + round);
+
+            List<String> streamed = new ArrayList<>();
+            TextChunker.Session session = chunker.open(streamed::add);
+            for (int start = 0; start < text.length(); ) {
+                int end = Math.min(text.length(), start + 1 + random.nextInt(40));
+                session.feed(text.substring(start, end));
+                start = end;
+            }
+            session.finish();
+            assertEquals(expected, streamed, "streamed, round " + round);
+
+            List<String> fromReader = new ArrayList<>();
+            chunker.chunk(new StringReader(text), fromReader::add);
+            assertEquals(expected, fromReader, "reader, round " + round);
+        }
+    }
+
+    @Test
+    void scanSentences_keepsUnterminatedTailForNextSegment() {
+        List<String> sentences = new ArrayList<>();
+        int consumed = TextChunker.scanSentences("Stars fuse hydrogen. 恒星\n通过核聚变. Neutron", 0, sentences::add);
+
+        assertEquals(List.of("Stars fuse hydrogen.", "恒星", "通过核聚变."), sentences);
+        assertEquals("Neutron", "Stars fuse hydrogen. 恒星\n通过核聚变. Neutron".substring(consumed));
+    }
+
+    @Test
+    void tokenMode_boundsChunksByTokensForCjkAndEnglishAlike() {
+        TextChunker chunker = TextChunker.tokens(40, 8, TextChunkerTest::wordsAndHanzi);
+        String english = "A neutron star is the collapsed core of a massive star. ".repeat(30);
+        String chinese = "黑洞是时空中引力极强的区域。".repeat(30);
+
+        for (String text : List.of(english, chinese)) {
+            List<String> chunks = chunker.chunk(text);
+            assertTrue(chunks.size() > 1);
+            for (String chunk : chunks) {
+                int tokens = wordsAndHanzi(chunk);
+                assertTrue(tokens <= 40, chunk);
+                assertTrue(tokens >= 20, chunk);
+            }
+        }
+        // 字符模式下中文块的 token 数远高于英文块
+        TextChunker chars = new TextChunker(200, 0);
+        assertTrue(wordsAndHanzi(chars.chunk(chinese).get(0)) > 3 * wordsAndHanzi(chars.chunk(english).get(0)));
+    }
+
+    @Test
+    void tokenMode_hardSplitsUnpunctuatedRunsWithinBudget() {
+        TextChunker chunker = TextChunker.tokens(30, 0, TextChunkerTest::wordsAndHanzi);
+        String run = "星".repeat(100) + " " + "dust ".repeat(70);
+
+        List<String> chunks = chunker.chunk(run);
+
+        assertEquals(run.replace(" ", ""), String.join("", chunks).replace(" ", ""));
+        chunks.forEach(chunk -> assertTrue(wordsAndHanzi(chunk) <= 30, chunk));
+    }
+
+    @Test
+    void tokenMode_joinedChunkStaysWithinBudgetWhenJoiningAddsTokens() {
+        // 拼接处多出 1 个 token 的分词器：句末 ". " 计为额外 token
+        TextChunker chunker = TextChunker.tokens(40, 8, TextChunkerTest::wordsAndSentenceJoins);
+
+        List<String> chunks = chunker.chunk("Pulsars are rotating neutron stars. ".repeat(40));
+
+        assertTrue(chunks.size() > 1);
+        chunks.forEach(chunk -> assertTrue(wordsAndSentenceJoins(chunk) <= 40, chunk));
+    }
+
+    @Test
+    void cachingTokenCounter_doesNotCacheOversizedText() {
+        AtomicInteger calls = new AtomicInteger();
+        CachingTokenCounter counter = new CachingTokenCounter(text -> {
+            calls.incrementAndGet();
+            return text.length();
+        }, 100);
+        String run = "x".repeat(CachingTokenCounter.MAX_CACHED_CHARS + 1);
+
+        counter.count(run);
+        counter.count(run);
+        counter.count("short");
+        counter.count("short");
+
+        assertEquals(3, calls.get());
+        assertEquals(1, counter.hits());
+    }
+
+    @Test
+    void cachingTokenCounter_tokenizesRepeatedSentencesOnce() {
+        AtomicInteger calls = new AtomicInteger();
+        CachingTokenCounter counter = new CachingTokenCounter(text -> {
+            calls.incrementAndGet();
+            return wordsAndHanzi(text);
+        }, 100);
+        TextChunker chunker = TextChunker.tokens(32, 8, counter);
+
+        chunker.chunk("Page footer: Astronomy 101. Stars fuse hydrogen. ".repeat(50));
+
+        assertEquals(2, calls.get());
+        assertEquals(2, counter.misses());
+        assertTrue(counter.hits() > 100);
+    }
+
+    /** 测试用计数：每个汉字、每个非空白 ASCII 词各计 1 */
+    private static int wordsAndHanzi(String text) {
+        int tokens = 0;
+        boolean inWord = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.UnicodeScript.of(c) == Character.UnicodeScript.HAN) {
+                tokens++;
+                inWord = false;
+            } else if (Character.isWhitespace(c)) {
+                inWord = false;
+            } else if (!inWord) {
+                tokens++;
+                inWord = true;
+            }
+        }
+        return tokens;
+    }
+
+    /** 在 {@link #wordsAndHanzi} 基础上，每处句间拼接（". "）另计 1 */
+    private static int wordsAndSentenceJoins(String text) {
+        return wordsAndHanzi(text) + text.split("\\. ", -1).length - 1;
+    }
+
+    private static String randomText(Random random, int tokens) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < tokens; i++) {
+            text.append(TOKENS[random.nextInt(TOKENS.length)]);
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,110 @@
+package com.imperium.astroguide.ingest;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.nio.file.Path;
+import java.util.IntSummaryStatistics;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 按 token 分块的吞吐基准：约 2 MB 中英分段正文（含重复页眉）上比较字符分块、token 分块（无缓存 / 句子缓存），
+ * 输出耗时与缓存命中率，并按语言统计块的 token 长度分布（字符分块下中英文块 token 数差异大）。
+ * <p>
+ * 指定 {@code -Dingest.bench.tokenizer=<tokenizer.json>} 时使用真实分词器，否则用「汉字与英文词各计 1」的近似计数。
+ * 默认跳过。运行方式：
+ * <pre>
+ * mvn test -Dtest=TokenChunkingBenchmarkTest -Dingest.bench=true -Dingest.bench.tokenizer=models/embedding/tokenizer.json
+ * </pre>
+ */
+@EnabledIfSystemProperty(named = "ingest.bench", matches = "true")
+class TokenChunkingBenchmarkTest {
+
+    private static final int TARGET_CHARS = 2 << 20;
+    private static final int ITERATIONS = 3;
+
+    private static final String[] ENGLISH = {
+            "A neutron star is the collapsed core of a massive supergiant star.",
+            "Pulsars emit beams of electromagnetic radiation, which are observed as pulses.",
+            "Main sequence stars fuse hydrogen into helium in their cores.",
+            "Why do stars twinkle?"
+    };
+    private static final String[] CHINESE = {
+            "黑洞是时空中引力极强、连光都无法逃逸的区域。",
+            "脉冲星是高速自转的中子星，其辐射束扫过地球时被观测为脉冲。",
+            "主序星在核心把氢聚变为氦，释放的能量与引力相平衡。",
+            "恒星为什么会闪烁？"
+    };
+
+    @Test
+    void throughput_charsVsTokens() throws Exception {
+        String tokenizer = System.getProperty("ingest.bench.tokenizer");
+        TokenCounter counter = tokenizer == null || tokenizer.isBlank()
+                ? TokenChunkingBenchmarkTest::approximate
+                : new HuggingFaceTokenCounter(Path.of(tokenizer));
+        System.out.println("tokenizer: " + (tokenizer == null ? "approximate (hanzi + words)" : tokenizer));
+        Random random = new Random(11);
+        String english = book(random, ENGLISH);
+        String chinese = book(random, CHINESE);
+
+        TextChunker chars = new TextChunker(600, 80);
+        run("chars(600/80)", chars, english, chinese, counter);
+        run("tokens(256/32)", TextChunker.tokens(256, 32, counter), english, chinese, counter);
+        CachingTokenCounter cached = new CachingTokenCounter(counter, 20_000);
+        run("tokens+cache", TextChunker.tokens(256, 32, cached), english, chinese, counter);
+        System.out.printf("cache: hits=%d misses=%d hitRate=%.1f%%%n", cached.hits(), cached.misses(),
+                100.0 * cached.hits() / Math.max(1, cached.hits() + cached.misses()));
+    }
+
+    private static void run(String label, TextChunker chunker, String english, String chinese, TokenCounter counter) {
+        List<String> en = chunker.chunk(english);
+        List<String> zh = chunker.chunk(chinese);
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            chunker.chunk(english);
+            chunker.chunk(chinese);
+        }
+        double msPerOp = (System.nanoTime() - start) / 1e6 / ITERATIONS;
+        double mbPerSec = (english.length() + chinese.length()) / 1048576.0 / (msPerOp / 1000);
+        IntSummaryStatistics enTokens = en.stream().mapToInt(counter::count).summaryStatistics();
+        IntSummaryStatistics zhTokens = zh.stream().mapToInt(counter::count).summaryStatistics();
+        System.out.printf("%-15s %8.0f ms/op  %6.2f Mchars/s  en chunks=%5d tokens avg=%5.0f max=%4d"
+                        + "  zh chunks=%5d tokens avg=%5.0f max=%4d%n",
+                label, msPerOp, mbPerSec, en.size(), enTokens.getAverage(), enTokens.getMax(),
+                zh.size(), zhTokens.getAverage(), zhTokens.getMax());
+    }
+
+    /** 段落由随机句子组成，每 40 段插入一行重复页眉 */
+    private static String book(Random random, String[] sentences) {
+        StringBuilder text = new StringBuilder(TARGET_CHARS / 2 + 1024);
+        for (int paragraph = 0; text.length() < TARGET_CHARS / 2; paragraph++) {
+            if (paragraph % 40 == 0) {
+                text.append("Astronomy Textbook — Chapter ").append(paragraph / 400 + 1).append("\n");
+            }
+            for (int i = 2 + random.nextInt(6); i > 0; i--) {
+                text.append(sentences[random.nextInt(sentences.length)]).append(' ');
+            }
+            text.append("\n\n");
+        }
+        return text.toString();
+    }
+
+    private static int approximate(String text) {
+        int tokens = 0;
+        boolean inWord = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.UnicodeScript.of(c) == Character.UnicodeScript.HAN) {
+                tokens++;
+                inWord = false;
+            } else if (Character.isWhitespace(c)) {
+                inWord = false;
+            } else if (!inWord) {
+                tokens++;
+                inWord = true;
+            }
+        }
+        return tokens;
+    }
+}
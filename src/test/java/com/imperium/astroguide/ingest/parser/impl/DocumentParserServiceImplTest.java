@@ -0,0 +1,182 @@
+package com.imperium.astroguide.ingest.parser.impl;
+
+import com.imperium.astroguide.ingest.ChunkDocumentFactory;
+import com.imperium.astroguide.ingest.ChunkMetadata;
+import com.imperium.astroguide.ingest.ChunkingTextSink;
+import com.imperium.astroguide.ingest.ParentChildChunker;
+import com.imperium.astroguide.ingest.TextChunker;
+import com.imperium.astroguide.ingest.parser.ParsedTextSink;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.document.Document;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DocumentParserServiceImplTest {
+
+    @Test
+    void parallelPdfExtraction_emitsRangesInPageOrder(@TempDir Path dir) throws Exception {
+        Path pdf = dir.resolve("stars.pdf");
+        PdfFixtures.writePdf(pdf, 23, 3);
+
+        List<String> sequential = segments(new DocumentParserServiceImpl(2, 1), pdf);
+        List<String> parallel = segments(new DocumentParserServiceImpl(2, 4), pdf);
+
+        assertEquals(12, sequential.size());
+        assertEquals(sequential, parallel);
+        assertTrue(parallel.get(0).contains("Page 0 line 0"));
+        assertTrue(parallel.get(11).contains("Page 22 line 2"));
+    }
+
+    @Test
+    void parallelEpubParsing_emitsChaptersInReadingOrderWithTitles(@TempDir Path dir) throws Exception {
+        Path epub = writeEpub(dir.resolve("stars.epub"), 12);
+
+        List<String> sequential = chapters(new DocumentParserServiceImpl(20, 1), epub);
+        List<String> parallel = chapters(new DocumentParserServiceImpl(20, 4), epub);
+
+        // 空白章节被跳过；无目录标题的章节取首个标题元素；正文保留 <title>，与整本解析时的文本一致
+        assertEquals(13, sequential.size());
+        assertEquals(sequential, parallel);
+        assertTrue(parallel.get(0).startsWith("Chapter 0 | chapter0 Chapter 0 sentence 0."), parallel.get(0));
+        assertEquals("Appendix heading", parallel.get(12).substring(0, parallel.get(12).indexOf(" |")));
+    }
+
+    @Test
+    void epubChunks_carrySectionTitleAndNeverSpanChapters(@TempDir Path dir) throws Exception {
+        Path epub = writeEpub(dir.resolve("stars.epub"), 3);
+        ChunkDocumentFactory factory = new ChunkDocumentFactory(new TextChunker(200, 0),
+                new ParentChildChunker(true, 400, 200));
+        List<Document> out = new ArrayList<>();
+        ChunkingTextSink sink = factory.sink(null, "en", null, out::add);
+
+        try (DocumentParserServiceImpl parser = new DocumentParserServiceImpl(20, 4)) {
+            parser.parse(epub, "stars.epub", null, sink);
+        }
+        sink.finish();
+
+        assertEquals("Stellar Evolution", sink.sourceLabel());
+        int lastParent = -1;
+        for (int i = 0; i < out.size(); i++) {
+            var metadata = out.get(i).getMetadata();
+            String section = (String) metadata.get(ChunkMetadata.SECTION);
+            String chapter = section.startsWith("Chapter ") ? section : "Chapter 3";
+            assertTrue(out.get(i).getText().contains(chapter + " sentence"), section);
+            assertFalse(out.get(i).getText().replace(chapter + " sentence", "").contains(" sentence"));
+            assertEquals(i, metadata.get(ChunkMetadata.CHUNK_INDEX));
+            int parent = (Integer) metadata.get(ChunkMetadata.PARENT_INDEX);
+            assertTrue(parent == lastParent || parent == lastParent + 1);
+            lastParent = parent;
+        }
+        assertEquals("Appendix heading", out.get(out.size() - 1).getMetadata().get(ChunkMetadata.SECTION));
+    }
+
+    /** chapters 个带目录标题的章节，外加一个空白章节与一个不在目录中的附录（标题取 h1） */
+    private static Path writeEpub(Path file, int chapters) throws Exception {
+        List<String> items = new ArrayList<>();
+        StringBuilder manifest = new StringBuilder("<item id=\"ncx\" href=\"toc.ncx\" media-type=\"application/x-dtbncx+xml\"/>");
+        StringBuilder spine = new StringBuilder();
+        StringBuilder navMap = new StringBuilder();
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(file))) {
+            for (int c = 0; c < chapters; c++) {
+                StringBuilder body = new StringBuilder();
+                for (int s = 0; s < 20; s++) {
+                    body.append("<p>Chapter ").append(c).append(" sentence ").append(s).append(".</p>");
+                }
+                items.add("chapter" + c);
+                put(zip, "OEBPS/chapter" + c + ".xhtml", xhtml("chapter" + c, "", body.toString()));
+                navMap.append("<navPoint id=\"np").append(c).append("\" playOrder=\"").append(c + 1)
+                        .append("\"><navLabel><text>Chapter ").append(c).append("</text></navLabel><content src=\"chapter")
+                        .append(c).append(".xhtml\"/></navPoint>");
+                if (c == 0) {
+                    items.add("blank");
+                    put(zip, "OEBPS/blank.xhtml", xhtml("", "", "<p> </p>"));
+                }
+            }
+            items.add("appendix");
+            put(zip, "OEBPS/appendix.xhtml", xhtml("appendix", "<h1>Appendix heading</h1>", "<p>Chapter 3 sentence 0.</p>"));
+            for (String id : items) {
+                manifest.append("<item id=\"").append(id).append("\" href=\"").append(id)
+                        .append(".xhtml\" media-type=\"application/xhtml+xml\"/>");
+                spine.append("<itemref idref=\"").append(id).append("\"/>");
+            }
+            put(zip, "OEBPS/content.opf", "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                    + "<package xmlns=\"http://www.idpf.org/2007/opf\" version=\"2.0\" unique-identifier=\"id\">"
+                    + "<metadata xmlns:dc=\"http://purl.org/dc/elements/1.1/\"><dc:title>Stellar Evolution</dc:title>"
+                    + "<dc:identifier id=\"id\">stars</dc:identifier></metadata>"
+                    + "<manifest>" + manifest + "</manifest><spine toc=\"ncx\">" + spine + "</spine></package>");
+            put(zip, "OEBPS/toc.ncx", "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                    + "<ncx xmlns=\"http://www.daisy.org/z3986/2005/ncx/\" version=\"2005-1\"><head/>"
+                    + "<docTitle><text>Stellar Evolution</text></docTitle><navMap>" + navMap + "</navMap></ncx>");
+            put(zip, "META-INF/container.xml", "<?xml version=\"1.0\"?>"
+                    + "<container version=\"1.0\" xmlns=\"urn:oasis:names:tc:opendocument:xmlns:container\">"
+                    + "<rootfiles><rootfile full-path=\"OEBPS/content.opf\" media-type=\"application/oebps-package+xml\"/>"
+                    + "</rootfiles></container>");
+            put(zip, "mimetype", "application/epub+zip");
+        }
+        return file;
+    }
+
+    private static void put(ZipOutputStream zip, String name, String content) throws Exception {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(content.getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+    }
+
+    private static String xhtml(String title, String heading, String body) {
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?><html xmlns=\"http://www.w3.org/1999/xhtml\">"
+                + "<head><title>" + title + "</title></head><body>" + heading + body + "</body></html>";
+    }
+
+    /** 每章输出为 "标题 | 正文" */
+    private static List<String> chapters(DocumentParserServiceImpl parser, Path epub) {
+        try (parser) {
+            List<String> out = new ArrayList<>();
+            parser.parse(epub, "stars.epub", null, new ParsedTextSink() {
+                @Override
+                public void start(String sourceLabel) {
+                    assertEquals("Stellar Evolution", sourceLabel);
+                }
+
+                @Override
+                public void section(String title) {
+                    out.add(title + " | ");
+                }
+
+                @Override
+                public void text(String segment) {
+                    out.set(out.size() - 1, out.get(out.size() - 1) + segment);
+                }
+            });
+            return out;
+        }
+    }
+
+    private static List<String> segments(DocumentParserServiceImpl parser, Path pdf) {
+        try (parser) {
+            List<String> out = new ArrayList<>();
+            parser.parse(pdf, "stars.pdf", null, new ParsedTextSink() {
+                @Override
+                public void start(String sourceLabel) {
+                    assertEquals("stars.pdf", sourceLabel);
+                }
+
+                @Override
+                public void text(String segment) {
+                    out.add(segment);
+                }
+            });
+            return out;
+        }
+    }
+}
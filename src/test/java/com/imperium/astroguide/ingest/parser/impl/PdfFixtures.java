@@ -0,0 +1,41 @@
+package com.imperium.astroguide.ingest.parser.impl;
+
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+
+import java.nio.file.Path;
+
+/**
+ * 测试用 PDF 生成：每页 linesPerPage 行带页号、行号的英文句子（Helvetica 10pt）。
+ */
+final class PdfFixtures {
+
+    private PdfFixtures() {
+    }
+
+    static void writePdf(Path target, int pages, int linesPerPage) throws Exception {
+        PDType1Font font = new PDType1Font(Standard14Fonts.FontName.HELVETICA);
+        try (PDDocument doc = new PDDocument()) {
+            for (int p = 0; p < pages; p++) {
+                PDPage page = new PDPage();
+                doc.addPage(page);
+                try (PDPageContentStream content = new PDPageContentStream(doc, page)) {
+                    content.beginText();
+                    content.setFont(font, 10);
+                    content.setLeading(14);
+                    content.newLineAtOffset(40, 750);
+                    for (int line = 0; line < linesPerPage; line++) {
+                        content.showText("Page " + p + " line " + line
+                                + ": a neutron star is the collapsed core of a massive star. It spins fast.");
+                        content.newLine();
+                    }
+                    content.endText();
+                }
+            }
+            doc.save(target.toFile());
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.imperium.astroguide.ingest.parser.impl;
+
+import com.imperium.astroguide.ingest.parser.ParsedTextSink;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * PDF 并行抽取吞吐基准：1200 页 PDF 上分别以 1/2/4/8 个 worker 按页区间抽取，
+ * 输出页/秒与相对单线程的加速比，并校验各并行度的输出与单线程逐段一致。
+ * <p>
+ * 默认跳过。运行方式：
+ * <pre>
+ * mvn test -Dtest=PdfParallelExtractionBenchmarkTest -Dingest.bench=true
+ * </pre>
+ */
+@EnabledIfSystemProperty(named = "ingest.bench", matches = "true")
+class PdfParallelExtractionBenchmarkTest {
+
+    private static final int PAGES = 1200;
+    private static final int LINES_PER_PAGE = 45;
+    private static final int PAGES_PER_RANGE = 20;
+    private static final int[] WORKERS = {1, 2, 4, 8};
+
+    @Test
+    void throughput_acrossWorkerCounts(@TempDir Path dir) throws Exception {
+        Path pdf = dir.resolve("textbook.pdf");
+        PdfFixtures.writePdf(pdf, PAGES, LINES_PER_PAGE);
+        System.out.printf("pdf: %d pages, %.1f MB, %d cores%n",
+                PAGES, Files.size(pdf) / 1048576.0, Runtime.getRuntime().availableProcessors());
+
+        // 预热：字体映射、类加载与 JIT
+        extract(new DocumentParserServiceImpl(PAGES_PER_RANGE, 1), pdf);
+
+        List<String> baseline = null;
+        double baselineMs = 0;
+        for (int workers : WORKERS) {
+            DocumentParserServiceImpl parser = new DocumentParserServiceImpl(PAGES_PER_RANGE, workers);
+            long start = System.nanoTime();
+            List<String> segments = extract(parser, pdf);
+            double elapsedMs = (System.nanoTime() - start) / 1e6;
+            if (baseline == null) {
+                baseline = segments;
+                baselineMs = elapsedMs;
+            } else {
+                assertEquals(baseline, segments);
+            }
+            System.out.printf("workers=%d  elapsed=%7.0f ms  pages/s=%7.1f  speedup=%.2fx%n",
+                    workers, elapsedMs, PAGES / (elapsedMs / 1000), baselineMs / elapsedMs);
+        }
+    }
+
+    private static List<String> extract(DocumentParserServiceImpl parser, Path pdf) {
+        List<String> segments = new ArrayList<>();
+        try (parser) {
+            parser.parse(pdf, "textbook.pdf", null, new ParsedTextSink() {
+                @Override
+                public void start(String sourceLabel) {
+                }
+
+                @Override
+                public void text(String segment) {
+                    segments.add(segment);
+                }
+            });
+        }
+        return segments;
+    }
+}
@@ -0,0 +1,117 @@
+package com.imperium.astroguide.ingest.parser.impl;
+
+import com.imperium.astroguide.ingest.ChunkDocumentFactory;
+import com.imperium.astroguide.ingest.ChunkingTextSink;
+import com.imperium.astroguide.ingest.ParentChildChunker;
+import com.imperium.astroguide.ingest.TextChunker;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.io.InputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * PDF 抽取堆内存基准：1000 页 PDF 上比较整本读入（readAllBytes + 全文 getText + 一次性分块）
+ * 与按页区间流式抽取 + 流式分块的峰值堆占用（相对基线）与耗时。
+ * <p>
+ * 默认跳过。运行方式（建议固定堆大小以便比较）：
+ * <pre>
+ * mvn test -Dtest=PdfStreamingHeapBenchmarkTest -Dingest.bench=true -DargLine="-Xmx1g"
+ * </pre>
+ * GC 后存活量受分代回收时机影响较大；更稳定的对比是用 {@code -Dingest.bench.mode=whole|ranges}
+ * 单独运行一种方式并逐步调小 {@code -Xmx}，记录不 OOM 的最小堆。
+ */
+@EnabledIfSystemProperty(named = "ingest.bench", matches = "true")
+class PdfStreamingHeapBenchmarkTest {
+
+    private static final int PAGES = 1000;
+    private static final int LINES_PER_PAGE = 45;
+
+    @Test
+    void peakHeap_wholeDocumentVsPageRanges(@TempDir Path dir) throws Exception {
+        Path pdf = dir.resolve("textbook.pdf");
+        PdfFixtures.writePdf(pdf, PAGES, LINES_PER_PAGE);
+        System.out.printf("pdf: %d pages, %.1f MB%n", PAGES, Files.size(pdf) / 1048576.0);
+        ChunkDocumentFactory factory = new ChunkDocumentFactory(new TextChunker(600, 80), new ParentChildChunker(false, 2000, 300));
+
+        String mode = System.getProperty("ingest.bench.mode", "both");
+        int legacy = mode.equals("ranges") ? -1 : measure("whole-document", () -> {
+            try (InputStream in = Files.newInputStream(pdf);
+                 PDDocument doc = Loader.loadPDF(in.readAllBytes())) {
+                String text = new PDFTextStripper().getText(doc);
+                return factory.build(text.replace("\r\n", "\n").trim(), "textbook.pdf", null, null).size();
+            }
+        });
+        int streamed = mode.equals("whole") ? -1 : measure("page-ranges(20)", () -> {
+            AtomicInteger chunks = new AtomicInteger();
+            ChunkingTextSink sink = factory.sink(null, null, null, doc -> chunks.incrementAndGet());
+            try (DocumentParserServiceImpl parser = new DocumentParserServiceImpl(20, 1)) {
+                parser.parse(pdf, "textbook.pdf", null, sink);
+            }
+            sink.finish();
+            return chunks.get();
+        });
+        if (mode.equals("both")) {
+            assertEquals(legacy, streamed);
+        }
+    }
+
+    private interface Run {
+        int run() throws Exception;
+    }
+
+    /**
+     * 峰值堆占用取每次 GC 后的存活量（各堆内存池 after-GC used 之和）的最大值，排除未回收垃圾的干扰。
+     */
+    private static int measure(String label, Run run) throws Exception {
+        System.gc();
+        Thread.sleep(200);
+        long baseline = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP && pool.getCollectionUsage() != null)
+                .mapToLong(pool -> pool.getCollectionUsage().getUsed())
+                .sum();
+        AtomicLong peak = new AtomicLong(baseline);
+        NotificationListener listener = (notification, handback) -> {
+            if (GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from(
+                        (CompositeData) notification.getUserData());
+                long after = info.getGcInfo().getMemoryUsageAfterGc().values().stream()
+                        .mapToLong(MemoryUsage::getUsed).sum();
+                peak.accumulateAndGet(after, Math::max);
+            }
+        };
+        List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+        collectors.forEach(gc -> ((NotificationEmitter) gc).addNotificationListener(listener, null, null));
+        long start = System.nanoTime();
+        int chunks;
+        try {
+            chunks = run.run();
+        } finally {
+            for (GarbageCollectorMXBean gc : collectors) {
+                ((NotificationEmitter) gc).removeNotificationListener(listener);
+            }
+        }
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        System.out.printf("%-16s chunks=%6d  peakLiveHeapDelta=%7.1f MB  elapsed=%6d ms%n",
+                label, chunks, (peak.get() - baseline) / 1048576.0, elapsedMs);
+        return chunks;
+    }
+}
@@ -0,0 +1,77 @@
+package com.imperium.astroguide.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.imperium.astroguide.mapper.KnowledgeChunkMapper;
+import com.imperium.astroguide.model.entity.KnowledgeChunk;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.ai.document.Document;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ChunkCatalogServiceImplTest {
+
+    @Test
+    void hydrate_fillsOnlyBlankTextAndCachesRows() {
+        KnowledgeChunkMapper mapper = mock(KnowledgeChunkMapper.class);
+        KnowledgeChunk row = new KnowledgeChunk("c1", "Book", 0, 2, null,
+                ChunkCatalogServiceImpl.sha256("Full text."), 1L, "Full text.", "{\"lang\":\"en\"}", LocalDateTime.now());
+        when(mapper.selectByIds(anyList())).thenReturn(List.of(row));
+        ChunkCatalogServiceImpl catalog = new ChunkCatalogServiceImpl(mapper, new ObjectMapper(), true, false, 10);
+        Document empty = Document.builder().id("c1").text("").metadata(Map.of("source", "Book")).score(0.9).build();
+        Document withText = new Document("c2", "Already here.", Map.of());
+
+        List<Document> out = catalog.hydrate(List.of(empty, withText));
+
+        assertEquals("Full text.", out.get(0).getText());
+        assertEquals(0.9, out.get(0).getScore());
+        assertSame(withText, out.get(1));
+        assertTrue(catalog.ownsText());
+
+        assertEquals("en", catalog.lookup("c1").orElseThrow().getMetadata().get("lang"));
+        catalog.hydrate(List.of(empty));
+        verify(mapper, times(1)).selectByIds(anyList());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void saveAll_upsertsInBatchesAndEvictsCachedRows() {
+        KnowledgeChunkMapper mapper = mock(KnowledgeChunkMapper.class);
+        KnowledgeChunk cached = new KnowledgeChunk("c0", "Book", 0, 1, null,
+                ChunkCatalogServiceImpl.sha256("Old."), 1L, "Old.", null, LocalDateTime.now());
+        when(mapper.selectById("c0")).thenReturn(cached);
+        ChunkCatalogServiceImpl catalog = new ChunkCatalogServiceImpl(mapper, new ObjectMapper(), true, false, 10);
+        catalog.lookup("c0");
+        List<Document> documents = IntStream.range(0, 501)
+                .mapToObj(i -> new Document("c" + i, "Chunk " + i + ".", Map.of("source", "Book", "chunk_index", i)))
+                .toList();
+
+        catalog.saveAll(documents);
+
+        ArgumentCaptor<List<KnowledgeChunk>> rows = ArgumentCaptor.forClass(List.class);
+        verify(mapper, times(2)).upsertBatch(rows.capture());
+        assertEquals(500, rows.getAllValues().get(0).size());
+        assertEquals("c500", rows.getAllValues().get(1).get(0).getId());
+        assertEquals(500, rows.getAllValues().get(1).get(0).getChunkIndex());
+        // 重写后的行重新从库中读取
+        catalog.lookup("c0");
+        verify(mapper, times(2)).selectById("c0");
+    }
+
+    @Test
+    void sha256_isStableHex() {
+        assertEquals("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855", ChunkCatalogServiceImpl.sha256(""));
+    }
+}
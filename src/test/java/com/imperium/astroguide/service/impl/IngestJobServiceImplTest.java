@@ -0,0 +1,243 @@
+package com.imperium.astroguide.service.impl;
+
+import com.imperium.astroguide.infra.cache.InMemoryKnowledgeBaseGeneration;
+import com.imperium.astroguide.ingest.ChunkDocumentFactory;
+import com.imperium.astroguide.ingest.ChunkStoreWriter;
+import com.imperium.astroguide.ingest.ParentChildChunker;
+import com.imperium.astroguide.ingest.TextChunker;
+import com.imperium.astroguide.ingest.parser.DocumentParserService;
+import com.imperium.astroguide.ingest.parser.ParsedTextSink;
+import com.imperium.astroguide.mapper.IngestJobMapper;
+import com.imperium.astroguide.model.entity.IngestJob;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.springframework.ai.document.Document;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class IngestJobServiceImplTest {
+
+    private static final String TEXT = "Stars form in molecular clouds. ".repeat(20)
+            + "Black holes bend light around them. ".repeat(20)
+            + "Pulsars are rotating neutron stars. ".repeat(20);
+
+    @Test
+    void process_resumesAfterLastCommittedBatchWithStableChunkIds(@TempDir Path dir) throws Exception {
+        Path spool = Files.writeString(dir.resolve("job.txt"), TEXT);
+        IngestJobMapper mapper = mock(IngestJobMapper.class);
+        when(mapper.update(any(), any())).thenReturn(1);
+        DocumentParserService parser = mock(DocumentParserService.class);
+        streamsText(parser);
+        ChunkDocumentFactory factory = new ChunkDocumentFactory(new TextChunker(200, 0), new ParentChildChunker(false, 2000, 300));
+        ChunkStoreWriter writer = writesEverything();
+        InMemoryKnowledgeBaseGeneration generation = new InMemoryKnowledgeBaseGeneration();
+        IngestJobServiceImpl service = new IngestJobServiceImpl(mapper, parser, factory, writer, generation,
+                dir.toString(), 2, 1, 60_000, 3, 0);
+        List<Document> expected = factory.build(TEXT, "Stars", null, null);
+        int batches = (expected.size() + 1) / 2;
+
+        IngestJob job = job(spool, 1, 2);
+        service.process(job);
+
+        ArgumentCaptor<List<Document>> written = captor();
+        verify(writer, times(batches - 1)).commit(written.capture(), eq(42L));
+        List<String> writtenIds = new ArrayList<>();
+        written.getAllValues().forEach(batch -> batch.forEach(d -> writtenIds.add(d.getId())));
+        assertEquals(expected.subList(2, expected.size()).stream().map(Document::getId).toList(), writtenIds);
+        verify(writer).discardCatalog(List.of(expected.get(2).getId(), expected.get(3).getId()));
+
+        assertEquals(IngestJobServiceImpl.STATUS_SUCCEEDED, job.getStatus());
+        assertEquals("Stars", job.getSource());
+        assertEquals(IngestJobServiceImpl.STAGE_STORED, job.getStage());
+        assertEquals(batches, job.getBatchesDone());
+        assertEquals(expected.size(), job.getChunksTotal());
+        assertEquals(0, job.getChunksSkipped());
+        verify(writer).purgeStale("Stars", 42L);
+        assertEquals(1.0, IngestJobServiceImpl.toResponse(job).getProgress());
+        assertFalse(Files.exists(spool));
+        assertEquals(1, generation.current());
+    }
+
+    @Test
+    void process_firstAttemptDoesNotTouchCatalog(@TempDir Path dir) throws Exception {
+        Path spool = Files.writeString(dir.resolve("job.txt"), TEXT);
+        IngestJobMapper mapper = mock(IngestJobMapper.class);
+        when(mapper.update(any(), any())).thenReturn(1);
+        DocumentParserService parser = mock(DocumentParserService.class);
+        streamsText(parser);
+        ChunkStoreWriter writer = writesEverything();
+        IngestJobServiceImpl service = new IngestJobServiceImpl(mapper, parser,
+                new ChunkDocumentFactory(new TextChunker(200, 0), new ParentChildChunker(false, 2000, 300)),
+                writer, new InMemoryKnowledgeBaseGeneration(), dir.toString(), 100, 1, 60_000, 3, 0);
+
+        service.process(job(spool, 0, 1));
+
+        verify(writer, times(1)).commit(anyList(), anyLong());
+        verify(writer, times(0)).discardCatalog(anyList());
+    }
+
+    @Test
+    void process_reingestOfStoredContentSkipsEveryChunkWithoutBumpingGeneration(@TempDir Path dir) throws Exception {
+        Path spool = Files.writeString(dir.resolve("job.txt"), TEXT);
+        IngestJobMapper mapper = mock(IngestJobMapper.class);
+        when(mapper.update(any(), any())).thenReturn(1);
+        DocumentParserService parser = mock(DocumentParserService.class);
+        streamsText(parser);
+        ChunkStoreWriter writer = mock(ChunkStoreWriter.class);
+        when(writer.commit(anyList(), anyLong())).thenReturn(0);
+        InMemoryKnowledgeBaseGeneration generation = new InMemoryKnowledgeBaseGeneration();
+        IngestJobServiceImpl service = new IngestJobServiceImpl(mapper, parser,
+                new ChunkDocumentFactory(new TextChunker(200, 0), new ParentChildChunker(false, 2000, 300)),
+                writer, generation, dir.toString(), 2, 1, 60_000, 3, 0);
+
+        IngestJob job = job(spool, 0, 1);
+        service.process(job);
+
+        assertEquals(job.getChunksTotal(), job.getChunksSkipped());
+        assertEquals(IngestJobServiceImpl.STATUS_SUCCEEDED, job.getStatus());
+        assertEquals(0, generation.current());
+    }
+
+    @Test
+    void process_revisedSourceRemovesStaleChunksAndBumpsGeneration(@TempDir Path dir) throws Exception {
+        Path spool = Files.writeString(dir.resolve("job.txt"), TEXT);
+        IngestJobMapper mapper = mock(IngestJobMapper.class);
+        when(mapper.update(any(), any())).thenReturn(1);
+        DocumentParserService parser = mock(DocumentParserService.class);
+        streamsText(parser);
+        ChunkStoreWriter writer = mock(ChunkStoreWriter.class);
+        when(writer.commit(anyList(), anyLong())).thenReturn(0);
+        when(writer.purgeStale("Stars", 42L)).thenReturn(3L);
+        InMemoryKnowledgeBaseGeneration generation = new InMemoryKnowledgeBaseGeneration();
+        IngestJobServiceImpl service = new IngestJobServiceImpl(mapper, parser,
+                new ChunkDocumentFactory(new TextChunker(200, 0), new ParentChildChunker(false, 2000, 300)),
+                writer, generation, dir.toString(), 2, 1, 60_000, 3, 0);
+
+        IngestJob job = job(spool, 0, 1);
+        service.process(job);
+
+        assertEquals(3, job.getChunksDeleted());
+        assertEquals(IngestJobServiceImpl.STATUS_SUCCEEDED, job.getStatus());
+        assertEquals(1, generation.current());
+    }
+
+    @Test
+    void process_unnamedSourceIsNeverPurged(@TempDir Path dir) throws Exception {
+        Path spool = Files.writeString(dir.resolve("job.txt"), TEXT);
+        IngestJobMapper mapper = mock(IngestJobMapper.class);
+        when(mapper.update(any(), any())).thenReturn(1);
+        DocumentParserService parser = mock(DocumentParserService.class);
+        streamsText(parser);
+        ChunkStoreWriter writer = writesEverything();
+        IngestJobServiceImpl service = new IngestJobServiceImpl(mapper, parser,
+                new ChunkDocumentFactory(new TextChunker(200, 0), new ParentChildChunker(false, 2000, 300)),
+                writer, new InMemoryKnowledgeBaseGeneration(), dir.toString(), 2, 1, 60_000, 3, 0);
+
+        // 来源取自文件内标题，可能与其他资料重名
+        IngestJob job = job(spool, 0, 1);
+        job.setSourceNamed(false);
+        service.process(job);
+
+        assertEquals(IngestJobServiceImpl.STATUS_SUCCEEDED, job.getStatus());
+        verify(writer, never()).purgeStale(any(), anyLong());
+    }
+
+    @Test
+    void process_versionUpdateFailureStillInvalidatesCacheForWrittenChunks(@TempDir Path dir) throws Exception {
+        Path spool = Files.writeString(dir.resolve("job.txt"), TEXT);
+        IngestJobMapper mapper = mock(IngestJobMapper.class);
+        when(mapper.update(any(), any())).thenReturn(1);
+        DocumentParserService parser = mock(DocumentParserService.class);
+        streamsText(parser);
+        ChunkStoreWriter writer = mock(ChunkStoreWriter.class);
+        ChunkStoreWriter.VersionUpdateException failure = mock(ChunkStoreWriter.VersionUpdateException.class);
+        when(failure.written()).thenReturn(1);
+        when(writer.commit(anyList(), anyLong())).thenThrow(failure);
+        InMemoryKnowledgeBaseGeneration generation = new InMemoryKnowledgeBaseGeneration();
+        IngestJobServiceImpl service = new IngestJobServiceImpl(mapper, parser,
+                new ChunkDocumentFactory(new TextChunker(200, 0), new ParentChildChunker(false, 2000, 300)),
+                writer, generation, dir.toString(), 2, 1, 60_000, 3, 0);
+
+        assertThrows(ChunkStoreWriter.VersionUpdateException.class, () -> service.process(job(spool, 0, 1)));
+
+        assertEquals(1, generation.current());
+        verify(writer, never()).purgeStale(any(), anyLong());
+    }
+
+    @Test
+    void process_finishAfterLeaseTakeoverKeepsStatusAndSpoolForNewOwner(@TempDir Path dir) throws Exception {
+        Path spool = Files.writeString(dir.resolve("job.txt"), TEXT);
+        IngestJobMapper mapper = mock(IngestJobMapper.class);
+        // 阶段进度写入成功，写终态时租约已被其他实例接管
+        when(mapper.update(any(), any())).thenAnswer(invocation -> {
+            IngestJob saved = invocation.getArgument(0);
+            return IngestJobServiceImpl.STATUS_SUCCEEDED.equals(saved.getStatus()) ? 0 : 1;
+        });
+        DocumentParserService parser = mock(DocumentParserService.class);
+        streamsText(parser);
+        IngestJobServiceImpl service = new IngestJobServiceImpl(mapper, parser,
+                new ChunkDocumentFactory(new TextChunker(200, 0), new ParentChildChunker(false, 2000, 300)),
+                writesEverything(), new InMemoryKnowledgeBaseGeneration(), dir.toString(), 2, 1, 60_000, 3, 0);
+
+        service.process(job(spool, 0, 1));
+
+        verify(mapper, never()).updateById(any(IngestJob.class));
+        assertTrue(Files.exists(spool));
+    }
+
+    private static ChunkStoreWriter writesEverything() {
+        ChunkStoreWriter writer = mock(ChunkStoreWriter.class);
+        when(writer.commit(anyList(), anyLong())).thenAnswer(invocation -> invocation.<List<?>>getArgument(0).size());
+        return writer;
+    }
+
+    /** 按 100 字符一段回放正文，模拟按页输出 */
+    private static void streamsText(DocumentParserService parser) {
+        doAnswer(invocation -> {
+            ParsedTextSink sink = invocation.getArgument(3);
+            sink.start("Stars");
+            for (int i = 0; i < TEXT.length(); i += 100) {
+                sink.text(TEXT.substring(i, Math.min(TEXT.length(), i + 100)));
+            }
+            return null;
+        }).when(parser).parse(any(Path.class), any(), any(), any());
+    }
+
+    private static IngestJob job(Path spool, int batchesDone, int attempts) {
+        IngestJob job = new IngestJob();
+        job.setId("job-1");
+        job.setFileName("stars.txt");
+        job.setSpoolPath(spool.toString());
+        job.setStatus(IngestJobServiceImpl.STATUS_RUNNING);
+        job.setStage(IngestJobServiceImpl.STAGE_QUEUED);
+        job.setBatchesDone(batchesDone);
+        job.setAttempts(attempts);
+        job.setSourceVersion(42L);
+        job.setSourceNamed(true);
+        return job;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArgumentCaptor<List<Document>> captor() {
+        return ArgumentCaptor.forClass(List.class);
+    }
+}
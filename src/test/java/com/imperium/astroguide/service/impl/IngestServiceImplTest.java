@@ -0,0 +1,116 @@
+package com.imperium.astroguide.service.impl;
+
+import com.imperium.astroguide.infra.cache.InMemoryKnowledgeBaseGeneration;
+import com.imperium.astroguide.ingest.ChunkDocumentFactory;
+import com.imperium.astroguide.ingest.ChunkStoreWriter;
+import com.imperium.astroguide.ingest.ParentChildChunker;
+import com.imperium.astroguide.ingest.TextChunker;
+import com.imperium.astroguide.ingest.parser.DocumentParserService;
+import com.imperium.astroguide.ingest.parser.ParsedTextSink;
+import com.imperium.astroguide.model.dto.response.IngestResponse;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.ai.document.Document;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class IngestServiceImplTest {
+
+    private static final String TEXT = "Stars form in molecular clouds. ".repeat(20)
+            + "Black holes bend light around them. ".repeat(20)
+            + "Pulsars are rotating neutron stars. ".repeat(20);
+
+    private final ChunkDocumentFactory factory =
+            new ChunkDocumentFactory(new TextChunker(200, 0), new ParentChildChunker(false, 2000, 300));
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void ingestFromStream_commitsEachBatchWhileParsing() {
+        List<Integer> pendingAtCommit = new ArrayList<>();
+        AtomicInteger fed = new AtomicInteger();
+        DocumentParserService parser = streamsText(fed);
+        ChunkStoreWriter writer = mock(ChunkStoreWriter.class);
+        when(writer.available()).thenReturn(true);
+        when(writer.commit(anyList(), anyLong())).thenAnswer(invocation -> {
+            pendingAtCommit.add(fed.get());
+            return invocation.<List<?>>getArgument(0).size();
+        });
+        InMemoryKnowledgeBaseGeneration generation = new InMemoryKnowledgeBaseGeneration();
+        IngestServiceImpl service = new IngestServiceImpl(parser, factory, writer, generation, 4);
+        List<Document> expected = factory.build(TEXT, "Stars", null, null);
+
+        IngestResponse response = service.ingestFromStream(input(), "stars.txt", "text/plain", "Stars", null, null);
+
+        assertTrue(response.isAccepted());
+        assertEquals(expected.size(), response.getChunksAdded());
+        ArgumentCaptor<List<Document>> batches = ArgumentCaptor.forClass(List.class);
+        verify(writer, times((expected.size() + 3) / 4)).commit(batches.capture(), anyLong());
+        batches.getAllValues().forEach(batch -> assertTrue(batch.size() <= 4));
+        assertEquals(expected.stream().map(Document::getId).toList(),
+                batches.getAllValues().stream().flatMap(List::stream).map(Document::getId).toList());
+        // 首批在正文读完之前即已提交
+        assertTrue(pendingAtCommit.getFirst() < TEXT.length());
+        verify(writer).purgeStale("Stars", response.getSourceVersion());
+        assertEquals(1, generation.current());
+    }
+
+    @Test
+    void ingestFromStream_keepsCommittedBatchesWhenLaterBatchFails() {
+        DocumentParserService parser = streamsText(new AtomicInteger());
+        ChunkStoreWriter writer = mock(ChunkStoreWriter.class);
+        when(writer.available()).thenReturn(true);
+        when(writer.commit(anyList(), anyLong()))
+                .thenAnswer(invocation -> invocation.<List<?>>getArgument(0).size())
+                .thenThrow(new IllegalStateException("Failed to write to vector store: qdrant down"));
+        InMemoryKnowledgeBaseGeneration generation = new InMemoryKnowledgeBaseGeneration();
+        IngestServiceImpl service = new IngestServiceImpl(parser, factory, writer, generation, 4);
+
+        IngestResponse response = service.ingestFromStream(input(), "stars.txt", "text/plain", "Stars", null, null);
+
+        assertFalse(response.isAccepted());
+        assertEquals(4, response.getChunksAdded());
+        assertEquals("Failed to write to vector store: qdrant down", response.getMessage());
+        verify(writer, never()).purgeStale(anyString(), anyLong());
+        // 首批已可检索
+        assertEquals(1, generation.current());
+    }
+
+    /** 按 100 字符一段回放正文，fed 记录已回放的字符数 */
+    private static DocumentParserService streamsText(AtomicInteger fed) {
+        DocumentParserService parser = mock(DocumentParserService.class);
+        doAnswer(invocation -> {
+            ParsedTextSink sink = invocation.getArgument(3);
+            sink.start("Stars");
+            for (int i = 0; i < TEXT.length(); i += 100) {
+                int end = Math.min(TEXT.length(), i + 100);
+                fed.set(end);
+                sink.text(TEXT.substring(i, end));
+            }
+            return null;
+        }).when(parser).parse(any(Path.class), any(), any(), any());
+        return parser;
+    }
+
+    private static ByteArrayInputStream input() {
+        return new ByteArrayInputStream(TEXT.getBytes(StandardCharsets.UTF_8));
+    }
+}